@@ -5,6 +5,8 @@ import com.yuzhi.dtadmin.domain.enumeration.AuditOutcome;
 import com.yuzhi.dtadmin.security.AdminPrincipal;
 import com.yuzhi.dtadmin.security.AdminSecurityUtils;
 import com.yuzhi.dtadmin.service.admin.AuditService;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.Arrays;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -58,7 +60,9 @@ public class AuditAspect {
 
     private String serializeArgs(Object[] args) {
         try {
-            return objectMapper.writeValueAsString(args);
+            // Servlet request/response handles (e.g. streaming endpoints) are not part of the audited input
+            Object[] auditable = Arrays.stream(args).filter(arg -> !(arg instanceof ServletRequest || arg instanceof ServletResponse)).toArray();
+            return objectMapper.writeValueAsString(auditable);
         } catch (Exception e) {
             return "[]";
         }
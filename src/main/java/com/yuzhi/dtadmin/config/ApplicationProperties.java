@@ -1,5 +1,6 @@
 package com.yuzhi.dtadmin.config;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -13,12 +14,42 @@ public class ApplicationProperties {
 
     private final Liquibase liquibase = new Liquibase();
 
+    private final Audit audit = new Audit();
+
+    private final Whitelist whitelist = new Whitelist();
+
+    private final Userinfo userinfo = new Userinfo();
+
+    private final TokenContext tokenContext = new TokenContext();
+
+    private final Jwks jwks = new Jwks();
+
     // jhipster-needle-application-properties-property
 
     public Liquibase getLiquibase() {
         return liquibase;
     }
 
+    public Audit getAudit() {
+        return audit;
+    }
+
+    public Whitelist getWhitelist() {
+        return whitelist;
+    }
+
+    public Userinfo getUserinfo() {
+        return userinfo;
+    }
+
+    public TokenContext getTokenContext() {
+        return tokenContext;
+    }
+
+    public Jwks getJwks() {
+        return jwks;
+    }
+
     // jhipster-needle-application-properties-property-getter
 
     public static class Liquibase {
@@ -33,5 +64,370 @@ public class ApplicationProperties {
             this.asyncStart = asyncStart;
         }
     }
+
+    /**
+     * Write-behind audit pipeline: events are buffered in memory and inserted in JDBC batches by a background writer.
+     */
+    public static class Audit {
+
+        public enum OverflowPolicy {
+            /** Wait up to {@code blockTimeout} for space, then spill to disk. */
+            BLOCK,
+            /** Append to a spill file that the writer replays once the buffer drains. */
+            SPILL,
+            /** Discard the event and count it in {@code audit.events.dropped}. */
+            DROP,
+        }
+
+        public enum RetentionAction {
+            /** Detach expired partitions and keep them as standalone tables. */
+            DETACH,
+            /** Detach and drop expired partitions; requires an archive directory and only drops verified archives. */
+            DROP,
+        }
+
+        private int bufferCapacity = 8192;
+
+        private int batchSize = 200;
+
+        private Duration flushInterval = Duration.ofMillis(500);
+
+        private OverflowPolicy overflowPolicy = OverflowPolicy.SPILL;
+
+        private Duration blockTimeout = Duration.ofSeconds(1);
+
+        /** Durable location for entries waiting to be written; required, checked for writability at startup. */
+        private String spillDirectory;
+
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+        private int exportFetchSize = 1000;
+
+        private int partitionMonthsAhead = 3;
+
+        /** Months of audit data to keep; 0 disables retention. */
+        private int retentionMonths = 0;
+
+        private RetentionAction retentionAction = RetentionAction.DETACH;
+
+        /** Durable location for archives of expired audit data; required before any audit rows are deleted. */
+        private String archiveDirectory;
+
+        public int getBufferCapacity() {
+            return bufferCapacity;
+        }
+
+        public void setBufferCapacity(int bufferCapacity) {
+            this.bufferCapacity = bufferCapacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public Duration getBlockTimeout() {
+            return blockTimeout;
+        }
+
+        public void setBlockTimeout(Duration blockTimeout) {
+            this.blockTimeout = blockTimeout;
+        }
+
+        public String getSpillDirectory() {
+            return spillDirectory;
+        }
+
+        public void setSpillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+        }
+
+        public Duration getShutdownTimeout() {
+            return shutdownTimeout;
+        }
+
+        public void setShutdownTimeout(Duration shutdownTimeout) {
+            this.shutdownTimeout = shutdownTimeout;
+        }
+
+        public int getExportFetchSize() {
+            return exportFetchSize;
+        }
+
+        public void setExportFetchSize(int exportFetchSize) {
+            this.exportFetchSize = exportFetchSize;
+        }
+
+        public int getPartitionMonthsAhead() {
+            return partitionMonthsAhead;
+        }
+
+        public void setPartitionMonthsAhead(int partitionMonthsAhead) {
+            this.partitionMonthsAhead = partitionMonthsAhead;
+        }
+
+        public int getRetentionMonths() {
+            return retentionMonths;
+        }
+
+        public void setRetentionMonths(int retentionMonths) {
+            this.retentionMonths = retentionMonths;
+        }
+
+        public RetentionAction getRetentionAction() {
+            return retentionAction;
+        }
+
+        public void setRetentionAction(RetentionAction retentionAction) {
+            this.retentionAction = retentionAction;
+        }
+
+        public String getArchiveDirectory() {
+            return archiveDirectory;
+        }
+
+        public void setArchiveDirectory(String archiveDirectory) {
+            this.archiveDirectory = archiveDirectory;
+        }
+    }
+
+    /**
+     * Caching of admin whitelist decisions made by {@code AdminAccessFilter}.
+     */
+    public static class Whitelist {
+
+        private Duration decisionTtl = Duration.ofSeconds(60);
+
+        private int decisionMaxSize = 10_000;
+
+        private Duration snapshotRefresh = Duration.ofMinutes(5);
+
+        public Duration getDecisionTtl() {
+            return decisionTtl;
+        }
+
+        public void setDecisionTtl(Duration decisionTtl) {
+            this.decisionTtl = decisionTtl;
+        }
+
+        public int getDecisionMaxSize() {
+            return decisionMaxSize;
+        }
+
+        public void setDecisionMaxSize(int decisionMaxSize) {
+            this.decisionMaxSize = decisionMaxSize;
+        }
+
+        public Duration getSnapshotRefresh() {
+            return snapshotRefresh;
+        }
+
+        public void setSnapshotRefresh(Duration snapshotRefresh) {
+            this.snapshotRefresh = snapshotRefresh;
+        }
+    }
+
+    /**
+     * OIDC userinfo lookups made by {@code CustomClaimConverter} when a token lacks identity claims.
+     */
+    public static class Userinfo {
+
+        private int cacheMaxSize = 10_000;
+
+        private Duration expireAfterWrite = Duration.ofHours(1);
+
+        private Duration refreshAfterWrite = Duration.ofMinutes(15);
+
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        private Duration readTimeout = Duration.ofSeconds(3);
+
+        private int failureThreshold = 5;
+
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        public int getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(int cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+
+        public Duration getRefreshAfterWrite() {
+            return refreshAfterWrite;
+        }
+
+        public void setRefreshAfterWrite(Duration refreshAfterWrite) {
+            this.refreshAfterWrite = refreshAfterWrite;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+    }
+
+    /**
+     * Per-token authorization data cached by {@code TokenAuthorizationContextCache}.
+     */
+    public static class TokenContext {
+
+        private int maxSize = 10_000;
+
+        /** Lifetime of contexts for tokens without {@code exp}. */
+        private Duration defaultLifetime = Duration.ofMinutes(5);
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getDefaultLifetime() {
+            return defaultLifetime;
+        }
+
+        public void setDefaultLifetime(Duration defaultLifetime) {
+            this.defaultLifetime = defaultLifetime;
+        }
+    }
+
+    /**
+     * Signing keys used to validate bearer tokens, see {@code JwksManager}.
+     */
+    public static class Jwks {
+
+        /** JWKS endpoint; defaults to the Keycloak certs endpoint of the issuer. */
+        private String uri;
+
+        private Duration ttl = Duration.ofMinutes(10);
+
+        private Duration refreshInterval = Duration.ofMinutes(5);
+
+        private Duration unknownKidMinInterval = Duration.ofSeconds(30);
+
+        /**
+         * Last-known JWKS, used on cold start before the IdP answers. Not set by default; when set, its directory must
+         * exist, belong to the application user and have owner-only permissions, otherwise persistence is disabled.
+         */
+        private String cacheFile;
+
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        private Duration readTimeout = Duration.ofSeconds(3);
+
+        public String getUri() {
+            return uri;
+        }
+
+        public void setUri(String uri) {
+            this.uri = uri;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public Duration getUnknownKidMinInterval() {
+            return unknownKidMinInterval;
+        }
+
+        public void setUnknownKidMinInterval(Duration unknownKidMinInterval) {
+            this.unknownKidMinInterval = unknownKidMinInterval;
+        }
+
+        public String getCacheFile() {
+            return cacheFile;
+        }
+
+        public void setCacheFile(String cacheFile) {
+            this.cacheFile = cacheFile;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+    }
     // jhipster-needle-application-properties-property-class
 }
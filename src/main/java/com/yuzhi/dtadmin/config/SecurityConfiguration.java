@@ -3,11 +3,19 @@ package com.yuzhi.dtadmin.config;
 import static org.springframework.security.config.Customizer.withDefaults;
 import static org.springframework.security.oauth2.core.oidc.StandardClaimNames.PREFERRED_USERNAME;
 
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.DefaultJOSEObjectTypeVerifier;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
 import com.yuzhi.dtadmin.security.*;
 import com.yuzhi.dtadmin.security.SecurityUtils;
 import com.yuzhi.dtadmin.security.oauth2.AudienceValidator;
 import com.yuzhi.dtadmin.security.oauth2.CustomClaimConverter;
+import com.yuzhi.dtadmin.security.oauth2.JwksManager;
 import com.yuzhi.dtadmin.service.admin.WhitelistService;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.util.*;
@@ -38,6 +46,7 @@ import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.csrf.*;
 import org.springframework.security.web.servlet.util.matcher.MvcRequestMatcher;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
 import tech.jhipster.config.JHipsterProperties;
 
@@ -47,6 +56,14 @@ public class SecurityConfiguration {
 
     private final JHipsterProperties jHipsterProperties;
 
+    private static final Set<JWSAlgorithm> JWS_ALGORITHMS = Set.of(
+        JWSAlgorithm.RS256,
+        JWSAlgorithm.RS384,
+        JWSAlgorithm.RS512,
+        JWSAlgorithm.PS256,
+        JWSAlgorithm.ES256
+    );
+
     @Value("${spring.security.oauth2.client.provider.oidc.issuer-uri}")
     private String issuerUri;
 
@@ -55,8 +72,12 @@ public class SecurityConfiguration {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http, MvcRequestMatcher.Builder mvc, WhitelistService whitelistService)
-        throws Exception {
+    public SecurityFilterChain filterChain(
+        HttpSecurity http,
+        MvcRequestMatcher.Builder mvc,
+        WhitelistService whitelistService,
+        TokenAuthorizationContextCache tokenContexts
+    ) throws Exception {
         http
             .cors(withDefaults())
             .csrf(csrf ->
@@ -73,7 +94,7 @@ public class SecurityConfiguration {
                     .requestMatchers(mvc.pattern("/management/**")).permitAll()
                     .anyRequest().permitAll()
             )
-            .oauth2ResourceServer(oauth2 -> oauth2.jwt(jwt -> jwt.jwtAuthenticationConverter(authenticationConverter())))
+            .oauth2ResourceServer(oauth2 -> oauth2.jwt(jwt -> jwt.jwtAuthenticationConverter(authenticationConverter(tokenContexts))))
             .oauth2Login(oauth2 -> oauth2.loginPage("/").userInfoEndpoint(userInfo -> userInfo.oidcUserService(this.oidcUserService())))
             .oauth2Client(withDefaults())
             .exceptionHandling(exceptions -> exceptions
@@ -88,7 +109,7 @@ public class SecurityConfiguration {
                     }
                 })
             );
-        http.addFilterAfter(new AdminAccessFilter(whitelistService), BearerTokenAuthenticationFilter.class);
+        http.addFilterAfter(new AdminAccessFilter(whitelistService, tokenContexts), BearerTokenAuthenticationFilter.class);
         return http.build();
     }
 
@@ -97,13 +118,18 @@ public class SecurityConfiguration {
         return new MvcRequestMatcher.Builder(introspector);
     }
 
-    Converter<Jwt, AbstractAuthenticationToken> authenticationConverter() {
+    @Bean
+    TokenAuthorizationContextCache tokenAuthorizationContextCache(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        return new TokenAuthorizationContextCache(applicationProperties.getTokenContext(), meterRegistry);
+    }
+
+    Converter<Jwt, AbstractAuthenticationToken> authenticationConverter(TokenAuthorizationContextCache tokenContexts) {
         JwtAuthenticationConverter jwtAuthenticationConverter = new JwtAuthenticationConverter();
         jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(
             new Converter<Jwt, Collection<GrantedAuthority>>() {
                 @Override
                 public Collection<GrantedAuthority> convert(Jwt jwt) {
-                    return SecurityUtils.extractAuthorityFromClaims(jwt.getClaims());
+                    return tokenContexts.get(jwt).getAuthorities();
                 }
             }
         );
@@ -143,17 +169,44 @@ public class SecurityConfiguration {
         };
     }
 
+    @Bean(destroyMethod = "close")
+    JwksManager jwksManager(RestTemplateBuilder restTemplateBuilder, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        // Keys come from the local JWKS cache instead of OIDC discovery, so startup does not wait for the IdP
+        ApplicationProperties.Jwks jwks = applicationProperties.getJwks();
+        String jwksUri = StringUtils.hasText(jwks.getUri()) ? jwks.getUri() : issuerUri + "/protocol/openid-connect/certs";
+        RestTemplate jwksRestTemplate = restTemplateBuilder.connectTimeout(jwks.getConnectTimeout()).readTimeout(jwks.getReadTimeout()).build();
+        return new JwksManager(jwksUri, jwksRestTemplate, jwks, meterRegistry);
+    }
+
     @Bean
-    JwtDecoder jwtDecoder(ClientRegistrationRepository clientRegistrationRepository, RestTemplateBuilder restTemplateBuilder) {
-        NimbusJwtDecoder jwtDecoder = JwtDecoders.fromOidcIssuerLocation(issuerUri);
+    JwtDecoder jwtDecoder(
+        ClientRegistrationRepository clientRegistrationRepository,
+        RestTemplateBuilder restTemplateBuilder,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry,
+        JwksManager jwksManager
+    ) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWS_ALGORITHMS, jwksManager));
+        // Claims are validated by the Spring validators below, as NimbusJwtDecoder's own builders do
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {});
+        // Keycloak access tokens carry typ "JWT"; anything else (e.g. logout or ID tokens with another typ) is rejected
+        jwtProcessor.setJWSTypeVerifier(new DefaultJOSEObjectTypeVerifier<>(JOSEObjectType.JWT, null));
+        NimbusJwtDecoder jwtDecoder = new NimbusJwtDecoder(jwtProcessor);
 
         OAuth2TokenValidator<Jwt> audienceValidator = new AudienceValidator(jHipsterProperties.getSecurity().getOauth2().getAudience());
         OAuth2TokenValidator<Jwt> withIssuer = JwtValidators.createDefaultWithIssuer(issuerUri);
         OAuth2TokenValidator<Jwt> withAudience = new DelegatingOAuth2TokenValidator<>(withIssuer, audienceValidator);
 
         jwtDecoder.setJwtValidator(withAudience);
+        ApplicationProperties.Userinfo userinfo = applicationProperties.getUserinfo();
+        // userinfo is called while decoding the token, so a slow IdP must not hold the request thread indefinitely
+        RestTemplate restTemplate = restTemplateBuilder
+            .connectTimeout(userinfo.getConnectTimeout())
+            .readTimeout(userinfo.getReadTimeout())
+            .build();
         jwtDecoder.setClaimSetConverter(
-            new CustomClaimConverter(clientRegistrationRepository.findByRegistrationId("oidc"), restTemplateBuilder.build())
+            new CustomClaimConverter(clientRegistrationRepository.findByRegistrationId("oidc"), restTemplate, userinfo, meterRegistry)
         );
 
         return jwtDecoder;
@@ -3,6 +3,7 @@ package com.yuzhi.dtadmin.domain;
 import com.yuzhi.dtadmin.domain.enumeration.AdminRole;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
@@ -14,6 +15,7 @@ import jakarta.validation.constraints.NotBlank;
 
 @Entity
 @Table(name = "admin_user_whitelist")
+@EntityListeners(AdminUserWhitelistListener.class)
 public class AdminUserWhitelist extends AbstractAuditingEntity<Long> {
 
     @Id
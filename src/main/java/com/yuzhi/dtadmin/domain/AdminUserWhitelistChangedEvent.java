@@ -0,0 +1,6 @@
+package com.yuzhi.dtadmin.domain;
+
+/**
+ * Published after an {@link AdminUserWhitelist} row is inserted, updated or deleted through JPA.
+ */
+public record AdminUserWhitelistChangedEvent(Long id) {}
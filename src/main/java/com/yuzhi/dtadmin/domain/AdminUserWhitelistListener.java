@@ -0,0 +1,26 @@
+package com.yuzhi.dtadmin.domain;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Turns JPA lifecycle callbacks on {@link AdminUserWhitelist} into {@link AdminUserWhitelistChangedEvent}s so caches of
+ * whitelist decisions can be dropped. Instantiated by Hibernate through Spring's bean container.
+ */
+public class AdminUserWhitelistListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public AdminUserWhitelistListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(AdminUserWhitelist entry) {
+        eventPublisher.publishEvent(new AdminUserWhitelistChangedEvent(entry.getId()));
+    }
+}
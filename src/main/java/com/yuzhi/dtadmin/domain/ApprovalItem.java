@@ -1,9 +1,11 @@
 package com.yuzhi.dtadmin.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import java.io.Serializable;
+import java.time.Instant;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 
@@ -47,6 +49,20 @@ public class ApprovalItem implements Serializable {
     @JsonIgnoreProperties(value = { "items" }, allowSetters = true)
     private ApprovalRequest request;
 
+    /**
+     * Per-item apply outcome for multi-item requests (bulk import); null until the item has been attempted.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "apply_status")
+    private ApprovalItemApplyStatus applyStatus;
+
+    @Size(max = 1024)
+    @Column(name = "apply_error", length = 1024)
+    private String applyError;
+
+    @Column(name = "applied_at")
+    private Instant appliedAt;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here
 
     public Long getId() {
@@ -135,6 +151,30 @@ public class ApprovalItem implements Serializable {
         return this;
     }
 
+    public ApprovalItemApplyStatus getApplyStatus() {
+        return this.applyStatus;
+    }
+
+    public void setApplyStatus(ApprovalItemApplyStatus applyStatus) {
+        this.applyStatus = applyStatus;
+    }
+
+    public String getApplyError() {
+        return this.applyError;
+    }
+
+    public void setApplyError(String applyError) {
+        this.applyError = applyError;
+    }
+
+    public Instant getAppliedAt() {
+        return this.appliedAt;
+    }
+
+    public void setAppliedAt(Instant appliedAt) {
+        this.appliedAt = appliedAt;
+    }
+
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here
 
     @Override
@@ -163,6 +203,7 @@ public class ApprovalItem implements Serializable {
             ", targetId='" + getTargetId() + "'" +
             ", seqNumber=" + getSeqNumber() +
             ", payload='" + getPayload() + "'" +
+            ", applyStatus='" + getApplyStatus() + "'" +
             ", requestId=" + (getRequest() != null ? getRequest().getId() : null) +
             "}";
     }
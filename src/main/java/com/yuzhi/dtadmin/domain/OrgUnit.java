@@ -27,6 +27,15 @@ public class OrgUnit extends AbstractAuditingEntity<Long> {
     @Column(name = "status", nullable = false, length = 32)
     private OrgUnitStatus status = OrgUnitStatus.PENDING;
 
+    /**
+     * Ids from the root down to this unit, e.g. {@code /1/7/42/}; maintained by {@code ChangeExecutor}.
+     */
+    @Column(name = "path", length = 1024)
+    private String path;
+
+    @Column(name = "depth")
+    private Integer depth;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent_id")
     @JsonIgnoreProperties(value = { "parent", "children" }, allowSetters = true)
@@ -69,6 +78,22 @@ public class OrgUnit extends AbstractAuditingEntity<Long> {
         this.status = status;
     }
 
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Integer getDepth() {
+        return depth;
+    }
+
+    public void setDepth(Integer depth) {
+        this.depth = depth;
+    }
+
     public OrgUnit getParent() {
         return parent;
     }
@@ -0,0 +1,8 @@
+package com.yuzhi.dtadmin.domain.enumeration;
+
+public enum ApprovalApplyJobStatus {
+    PENDING,
+    RUNNING,
+    SUCCEEDED,
+    DEAD
+}
@@ -0,0 +1,9 @@
+package com.yuzhi.dtadmin.domain.enumeration;
+
+/**
+ * Outcome of applying a single approval item to Keycloak.
+ */
+public enum ApprovalItemApplyStatus {
+    SUCCEEDED,
+    FAILED
+}
@@ -9,4 +9,5 @@ public enum ApprovalType {
     DELETE_USER,
     GRANT_ROLE,
     REVOKE_ROLE,
+    IMPORT_USERS,
 }
@@ -0,0 +1,53 @@
+package com.yuzhi.dtadmin.repository;
+
+import com.yuzhi.dtadmin.domain.ApprovalApplyJob;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ApprovalApplyJobRepository extends JpaRepository<ApprovalApplyJob, Long> {
+    Optional<ApprovalApplyJob> findByIdempotencyKey(String idempotencyKey);
+
+    @Query("select j.id from ApprovalApplyJob j where j.status = :status and j.nextAttemptAt <= :now order by j.nextAttemptAt asc")
+    List<Long> findDueJobIds(@Param("status") ApprovalApplyJobStatus status, @Param("now") Instant now, Pageable pageable);
+
+    long countByStatus(ApprovalApplyJobStatus status);
+
+    /**
+     * Atomically moves a due job from PENDING to RUNNING; returns 0 when another worker claimed it first.
+     */
+    @Modifying
+    @Query(
+        "update ApprovalApplyJob j set j.status = com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus.RUNNING, j.lockedAt = :now " +
+        "where j.id = :id and j.status = com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus.PENDING"
+    )
+    int claim(@Param("id") Long id, @Param("now") Instant now);
+
+    /**
+     * Returns jobs left RUNNING by a crashed worker to the queue.
+     */
+    @Modifying
+    @Query(
+        "update ApprovalApplyJob j set j.status = com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus.PENDING, j.lockedAt = null " +
+        "where j.status = com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus.RUNNING and j.lockedAt < :cutoff"
+    )
+    int releaseStale(@Param("cutoff") Instant cutoff);
+
+    /**
+     * Extends the lock of a long-running job so that {@link #releaseStale} does not hand it to another worker.
+     */
+    @Modifying
+    @Query(
+        "update ApprovalApplyJob j set j.lockedAt = :now " +
+        "where j.id = :id and j.status = com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus.RUNNING"
+    )
+    int heartbeat(@Param("id") Long id, @Param("now") Instant now);
+}
@@ -1,7 +1,12 @@
 package com.yuzhi.dtadmin.repository;
 
 import com.yuzhi.dtadmin.domain.ApprovalItem;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus;
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -9,4 +14,38 @@ import org.springframework.stereotype.Repository;
  */
 @SuppressWarnings("unused")
 @Repository
-public interface ApprovalItemRepository extends JpaRepository<ApprovalItem, Long> {}
+public interface ApprovalItemRepository extends JpaRepository<ApprovalItem, Long> {
+    long countByRequestId(Long requestId);
+
+    long countByRequestIdAndApplyStatus(Long requestId, ApprovalItemApplyStatus applyStatus);
+
+    List<ApprovalItem> findByRequestIdAndApplyStatusOrderBySeqNumberAsc(
+        Long requestId,
+        ApprovalItemApplyStatus applyStatus,
+        Pageable pageable
+    );
+
+    /**
+     * Keyset page of items not yet applied successfully, in sequence order after {@code afterSeq}.
+     */
+    @Query(
+        "select i from ApprovalItem i where i.requestId = :requestId and i.seqNumber > :afterSeq " +
+        "and (i.applyStatus is null or i.applyStatus <> com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus.SUCCEEDED) " +
+        "order by i.seqNumber asc"
+    )
+    List<ApprovalItem> findUnappliedAfter(@Param("requestId") Long requestId, @Param("afterSeq") int afterSeq, Pageable pageable);
+
+    @Modifying
+    @Query(
+        "update ApprovalItem i set i.applyStatus = com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus.SUCCEEDED, " +
+        "i.targetId = :targetId, i.applyError = null, i.appliedAt = :now where i.id = :id"
+    )
+    int markApplied(@Param("id") Long id, @Param("targetId") String targetId, @Param("now") Instant now);
+
+    @Modifying
+    @Query(
+        "update ApprovalItem i set i.applyStatus = com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus.FAILED, " +
+        "i.applyError = :error, i.appliedAt = :now where i.id = :id"
+    )
+    int markApplyFailed(@Param("id") Long id, @Param("error") String error, @Param("now") Instant now);
+}
@@ -1,7 +1,9 @@
 package com.yuzhi.dtadmin.repository;
 
 import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import java.time.Instant;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -9,4 +11,27 @@ import org.springframework.stereotype.Repository;
  */
 @SuppressWarnings("unused")
 @Repository
-public interface ApprovalRequestRepository extends JpaRepository<ApprovalRequest, Long> {}
+public interface ApprovalRequestRepository extends JpaRepository<ApprovalRequest, Long> {
+    /**
+     * Approve the request only if it is still PENDING; returns 0 when it was already decided.
+     */
+    @Modifying
+    @Query(
+        "update ApprovalRequest r set r.status = com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus.APPROVED, " +
+        "r.approver = :approver, r.decisionNote = :note, r.decidedAt = :decidedAt " +
+        "where r.id = :id and r.status = com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus.PENDING"
+    )
+    int approveIfPending(
+        @Param("id") Long id,
+        @Param("approver") String approver,
+        @Param("note") String note,
+        @Param("decidedAt") Instant decidedAt
+    );
+
+    /**
+     * Set the reason without loading the request, e.g. once the final row count of an import is known.
+     */
+    @Modifying
+    @Query("update ApprovalRequest r set r.reason = :reason where r.id = :id")
+    int updateReason(@Param("id") Long id, @Param("reason") String reason);
+}
@@ -0,0 +1,14 @@
+package com.yuzhi.dtadmin.repository;
+
+import com.yuzhi.dtadmin.domain.AuditEvent;
+import java.util.List;
+import org.springframework.data.jpa.domain.Specification;
+
+public interface AuditEventRepositoryCustom {
+    /**
+     * Selects list columns of the events matching {@code spec}, newest first ordered by {@code (event_ts, id)}.
+     *
+     * @param limit maximum number of rows, or {@code null} for no limit.
+     */
+    List<AuditEventSummary> findSummaries(Specification<AuditEvent> spec, Integer limit);
+}
@@ -0,0 +1,53 @@
+package com.yuzhi.dtadmin.repository;
+
+import com.yuzhi.dtadmin.domain.AuditEvent;
+import com.yuzhi.dtadmin.domain.AuditEvent_;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.util.List;
+import org.springframework.data.jpa.domain.Specification;
+
+class AuditEventRepositoryCustomImpl implements AuditEventRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AuditEventSummary> findSummaries(Specification<AuditEvent> spec, Integer limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AuditEventSummary> query = cb.createQuery(AuditEventSummary.class);
+        Root<AuditEvent> root = query.from(AuditEvent.class);
+        query.select(
+            cb.construct(
+                AuditEventSummary.class,
+                root.get(AuditEvent_.id),
+                root.get(AuditEvent_.timestamp),
+                root.get(AuditEvent_.actor),
+                root.get(AuditEvent_.actorRoles),
+                root.get(AuditEvent_.ip),
+                root.get(AuditEvent_.userAgent),
+                root.get(AuditEvent_.action),
+                root.get(AuditEvent_.resource),
+                root.get(AuditEvent_.outcome)
+            )
+        );
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        query.orderBy(cb.desc(root.get(AuditEvent_.timestamp)), cb.desc(root.get(AuditEvent_.id)));
+
+        TypedQuery<AuditEventSummary> typedQuery = entityManager.createQuery(query);
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        return typedQuery.getResultList();
+    }
+}
@@ -0,0 +1,55 @@
+package com.yuzhi.dtadmin.repository;
+
+import com.yuzhi.dtadmin.domain.AuditEvent;
+import com.yuzhi.dtadmin.domain.AuditEvent_;
+import com.yuzhi.dtadmin.domain.enumeration.AuditOutcome;
+import java.time.Instant;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Filters on {@code audit_event}. Each factory returns {@code null} for an absent value so they can be combined with
+ * {@link Specification#allOf} and only the supplied filters reach SQL.
+ */
+public final class AuditEventSpecifications {
+
+    private AuditEventSpecifications() {}
+
+    public static Specification<AuditEvent> timestampFrom(Instant from) {
+        return from == null ? null : (root, query, cb) -> cb.greaterThanOrEqualTo(root.get(AuditEvent_.timestamp), from);
+    }
+
+    public static Specification<AuditEvent> timestampTo(Instant to) {
+        return to == null ? null : (root, query, cb) -> cb.lessThanOrEqualTo(root.get(AuditEvent_.timestamp), to);
+    }
+
+    public static Specification<AuditEvent> actorEquals(String actor) {
+        return actor == null ? null : (root, query, cb) -> cb.equal(root.get(AuditEvent_.actor), actor);
+    }
+
+    public static Specification<AuditEvent> actionEquals(String action) {
+        return action == null ? null : (root, query, cb) -> cb.equal(root.get(AuditEvent_.action), action);
+    }
+
+    public static Specification<AuditEvent> resourceEquals(String resource) {
+        return resource == null ? null : (root, query, cb) -> cb.equal(root.get(AuditEvent_.resource), resource);
+    }
+
+    public static Specification<AuditEvent> outcomeEquals(AuditOutcome outcome) {
+        return outcome == null ? null : (root, query, cb) -> cb.equal(root.get(AuditEvent_.outcome), outcome);
+    }
+
+    /**
+     * Keyset condition for the page after {@code (timestamp, id)} in newest-first order:
+     * {@code event_ts < :ts or (event_ts = :ts and id < :id)}.
+     */
+    public static Specification<AuditEvent> before(Instant timestamp, Long id) {
+        if (timestamp == null || id == null) {
+            return null;
+        }
+        return (root, query, cb) ->
+            cb.or(
+                cb.lessThan(root.get(AuditEvent_.timestamp), timestamp),
+                cb.and(cb.equal(root.get(AuditEvent_.timestamp), timestamp), cb.lessThan(root.get(AuditEvent_.id), id))
+            );
+    }
+}
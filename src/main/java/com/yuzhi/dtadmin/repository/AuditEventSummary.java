@@ -0,0 +1,19 @@
+package com.yuzhi.dtadmin.repository;
+
+import com.yuzhi.dtadmin.domain.enumeration.AuditOutcome;
+import java.time.Instant;
+
+/**
+ * List-view projection of {@link com.yuzhi.dtadmin.domain.AuditEvent} without the {@code detail_json} payload.
+ */
+public record AuditEventSummary(
+    Long id,
+    Instant timestamp,
+    String actor,
+    String actorRoles,
+    String ip,
+    String userAgent,
+    String action,
+    String resource,
+    AuditOutcome outcome
+) {}
@@ -1,10 +1,15 @@
 package com.yuzhi.dtadmin.repository;
 
 import com.yuzhi.dtadmin.domain.OrgUnit;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -13,4 +18,41 @@ public interface OrgUnitRepository extends JpaRepository<OrgUnit, Long> {
 
     @EntityGraph(attributePaths = { "children" })
     List<OrgUnit> findAllByParentIsNull();
+
+    /**
+     * The unit with materialized path {@code path} and all of its descendants, in path (pre-)order.
+     */
+    @Query("select o from OrgUnit o where o.path like concat(:path, '%') order by o.path")
+    List<OrgUnit> findSubtree(@Param("path") String path);
+
+    /**
+     * Like {@link #findSubtree(String)}, limited to units at most {@code maxDepth} levels deep (roots are depth 0).
+     */
+    @Query("select o from OrgUnit o where o.path like concat(:path, '%') and o.depth <= :maxDepth order by o.path")
+    List<OrgUnit> findSubtreeToDepth(@Param("path") String path, @Param("maxDepth") int maxDepth);
+
+    List<OrgUnit> findAllByIdInOrderByDepthAsc(Collection<Long> ids);
+
+    /**
+     * Ancestors of {@code unit} from the root down, excluding the unit itself; one primary-key lookup of the ids in its
+     * path.
+     */
+    default List<OrgUnit> findAncestorChain(OrgUnit unit) {
+        List<Long> ids = Arrays.stream(unit.getPath().split("/"))
+            .filter(segment -> !segment.isEmpty())
+            .map(Long::valueOf)
+            .filter(id -> !id.equals(unit.getId()))
+            .toList();
+        return ids.isEmpty() ? List.of() : findAllByIdInOrderByDepthAsc(ids);
+    }
+
+    /**
+     * Rewrites the paths below {@code oldPath} after a move; the moved unit itself is updated through the entity.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(
+        "update OrgUnit o set o.path = concat(:newPath, substring(o.path, length(:oldPath) + 1)), o.depth = o.depth + :depthDelta " +
+        "where o.path like concat(:oldPath, '%') and o.path <> :oldPath"
+    )
+    int moveDescendants(@Param("oldPath") String oldPath, @Param("newPath") String newPath, @Param("depthDelta") int depthDelta);
 }
@@ -2,12 +2,18 @@ package com.yuzhi.dtadmin.repository;
 
 import com.yuzhi.dtadmin.domain.PortalMenu;
 import java.util.List;
-import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface PortalMenuRepository extends JpaRepository<PortalMenu, Long> {
-    @EntityGraph(attributePaths = { "children" })
-    List<PortalMenu> findAllByParentIsNullOrderBySortOrderAsc();
+    /**
+     * Every menu in one query, siblings in display order; {@code parent.id} is read from the foreign key without a join.
+     */
+    @Query(
+        "select new com.yuzhi.dtadmin.repository.PortalMenuRow(m.id, m.name, m.path, m.component, m.sortOrder, m.metadata, m.parent.id) " +
+        "from PortalMenu m order by m.sortOrder asc, m.id asc"
+    )
+    List<PortalMenuRow> findAllRows();
 }
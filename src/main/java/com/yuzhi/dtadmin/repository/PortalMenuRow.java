@@ -0,0 +1,6 @@
+package com.yuzhi.dtadmin.repository;
+
+/**
+ * Flat projection of {@link com.yuzhi.dtadmin.domain.PortalMenu} with the parent reduced to its id.
+ */
+public record PortalMenuRow(Long id, String name, String path, String component, Integer sortOrder, String metadata, Long parentId) {}
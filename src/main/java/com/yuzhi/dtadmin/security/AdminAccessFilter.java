@@ -7,9 +7,6 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
@@ -22,8 +19,11 @@ public class AdminAccessFilter extends OncePerRequestFilter {
 
     private final WhitelistService whitelistService;
 
-    public AdminAccessFilter(WhitelistService whitelistService) {
+    private final TokenAuthorizationContextCache tokenContexts;
+
+    public AdminAccessFilter(WhitelistService whitelistService, TokenAuthorizationContextCache tokenContexts) {
         this.whitelistService = whitelistService;
+        this.tokenContexts = tokenContexts;
     }
 
     @Override
@@ -47,11 +47,15 @@ public class AdminAccessFilter extends OncePerRequestFilter {
             if (jwt.getAudience() == null || jwt.getAudience().stream().noneMatch("yts-admin-ui"::equals)) {
                 throw new AccessDeniedException("Invalid audience");
             }
-            String username = jwt.getClaimAsString("preferred_username");
-            String email = jwt.getClaimAsString("email");
-            Collection<String> roles = extractRoles(jwt);
-            AdminRole role = whitelistService.enforceWhitelist(username, email, roles);
-            token.setDetails(new AdminPrincipal(username, email, role));
+            TokenAuthorizationContext context = tokenContexts.get(jwt);
+            long whitelistVersion = whitelistService.version();
+            AdminPrincipal principal = context.getAdminPrincipal(whitelistVersion);
+            if (principal == null) {
+                AdminRole role = whitelistService.enforceWhitelist(context.getUsername(), context.getEmail(), context.getRealmRoles());
+                principal = new AdminPrincipal(context.getUsername(), context.getEmail(), role);
+                context.setAdminPrincipal(principal, whitelistVersion);
+            }
+            token.setDetails(principal);
             filterChain.doFilter(request, response);
         } catch (AccessDeniedException ex) {
             response.setStatus(HttpStatus.FORBIDDEN.value());
@@ -59,16 +63,4 @@ public class AdminAccessFilter extends OncePerRequestFilter {
             response.getWriter().write("{\"message\":\"FORBIDDEN\"}");
         }
     }
-
-    @SuppressWarnings("unchecked")
-    private Collection<String> extractRoles(Jwt jwt) {
-        Object realmAccess = jwt.getClaim("realm_access");
-        if (realmAccess instanceof Map<?, ?> map) {
-            Object roles = map.get("roles");
-            if (roles instanceof Collection<?> collection) {
-                return collection.stream().map(Object::toString).toList();
-            }
-        }
-        return Collections.emptyList();
-    }
 }
@@ -0,0 +1,112 @@
+package com.yuzhi.dtadmin.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+
+/**
+ * Authorization data derived from one bearer token, parsed once and kept by {@link TokenAuthorizationContextCache}
+ * until the token expires.
+ * <p>
+ * Contexts are keyed by issuer and {@code jti}, or by a SHA-256 hash of the token when either is missing, so repeated
+ * requests with the same token skip claim walking and authority allocation. {@code jti} is only unique per issuer, and
+ * the raw token is never kept as a key. The admin principal resolved by {@link AdminAccessFilter} is cached too,
+ * stamped with the whitelist version it was resolved against so whitelist changes take effect immediately.
+ */
+public final class TokenAuthorizationContext {
+
+    private final String username;
+    private final String email;
+    private final List<String> realmRoles;
+    private final List<GrantedAuthority> authorities;
+    private final Set<String> authorityNames;
+    private final Instant expiresAt;
+
+    private volatile AdminGrant adminGrant;
+
+    TokenAuthorizationContext(Jwt jwt, Duration defaultLifetime) {
+        this.username = jwt.getClaimAsString("preferred_username");
+        this.email = jwt.getClaimAsString("email");
+        this.realmRoles = extractRealmRoles(jwt);
+        this.authorities = List.copyOf(SecurityUtils.extractAuthorityFromClaims(jwt.getClaims()));
+        this.authorityNames = authorities.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toUnmodifiableSet());
+        this.expiresAt = jwt.getExpiresAt() != null ? jwt.getExpiresAt() : Instant.now().plus(defaultLifetime);
+    }
+
+    static String cacheKey(Jwt jwt) {
+        String issuer = jwt.getClaimAsString(JwtClaimNames.ISS);
+        if (issuer != null && jwt.getId() != null) {
+            return issuer + '\n' + jwt.getId();
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(jwt.getTokenValue().getBytes(StandardCharsets.UTF_8));
+            return "sha256:" + HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Roles from the {@code realm_access.roles} claim.
+     */
+    public List<String> getRealmRoles() {
+        return realmRoles;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    public Set<String> getAuthorityNames() {
+        return authorityNames;
+    }
+
+    /**
+     * The admin principal resolved for this token, if it was resolved against {@code whitelistVersion}.
+     */
+    public AdminPrincipal getAdminPrincipal(long whitelistVersion) {
+        AdminGrant grant = adminGrant;
+        return grant != null && grant.whitelistVersion() == whitelistVersion ? grant.principal() : null;
+    }
+
+    public void setAdminPrincipal(AdminPrincipal principal, long whitelistVersion) {
+        this.adminGrant = new AdminGrant(principal, whitelistVersion);
+    }
+
+    private static List<String> extractRealmRoles(Jwt jwt) {
+        Object realmAccess = jwt.getClaim("realm_access");
+        if (realmAccess instanceof Map<?, ?> map) {
+            Object roles = map.get("roles");
+            if (roles instanceof Collection<?> collection) {
+                return collection.stream().map(Object::toString).toList();
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private record AdminGrant(AdminPrincipal principal, long whitelistVersion) {}
+}
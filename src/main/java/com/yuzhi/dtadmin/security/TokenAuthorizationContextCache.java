@@ -0,0 +1,58 @@
+package com.yuzhi.dtadmin.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.time.Instant;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Holds the {@link TokenAuthorizationContext} of each bearer token seen recently. Each entry expires with its token's
+ * {@code exp}, and the cache is bounded by {@code application.token-context.max-size}.
+ */
+public class TokenAuthorizationContextCache {
+
+    private final Cache<String, TokenAuthorizationContext> contexts;
+
+    private final Duration defaultLifetime;
+
+    public TokenAuthorizationContextCache(ApplicationProperties.TokenContext properties, MeterRegistry meterRegistry) {
+        this.defaultLifetime = properties.getDefaultLifetime();
+        this.contexts = Caffeine.newBuilder()
+            .maximumSize(properties.getMaxSize())
+            .expireAfter(new UntilTokenExpiry())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, contexts, "security.token.context");
+    }
+
+    /**
+     * Returns the cached context for {@code jwt}, parsing its claims on first use.
+     */
+    public TokenAuthorizationContext get(Jwt jwt) {
+        return contexts.get(TokenAuthorizationContext.cacheKey(jwt), key -> new TokenAuthorizationContext(jwt, defaultLifetime));
+    }
+
+    private static final class UntilTokenExpiry implements Expiry<String, TokenAuthorizationContext> {
+
+        @Override
+        public long expireAfterCreate(String key, TokenAuthorizationContext value, long currentTime) {
+            Duration remaining = Duration.between(Instant.now(), value.getExpiresAt());
+            return remaining.isNegative() ? 0 : remaining.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, TokenAuthorizationContext value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, TokenAuthorizationContext value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
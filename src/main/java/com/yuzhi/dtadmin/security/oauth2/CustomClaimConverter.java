@@ -3,14 +3,26 @@ package com.yuzhi.dtadmin.security.oauth2;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
 import com.yuzhi.dtadmin.security.SecurityUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -27,9 +39,15 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 
 /**
  * Claim converter to add custom claims by retrieving the user from the userinfo endpoint.
+ * <p>
+ * Lookups are cached per {@code sub} and loaded at most once at a time per {@code sub}; entries older than
+ * {@code refreshAfterWrite} are reloaded in the background while the cached value keeps being served. Consecutive
+ * userinfo failures open a circuit breaker, during which tokens are accepted with their own claims only.
  */
 public class CustomClaimConverter implements Converter<Map<String, Object>, Map<String, Object>> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(CustomClaimConverter.class);
+
     private final BearerTokenResolver bearerTokenResolver = new DefaultBearerTokenResolver();
 
     private final MappedJwtClaimSetConverter delegate = MappedJwtClaimSetConverter.withDefaults(Collections.emptyMap());
@@ -40,15 +58,42 @@ public class CustomClaimConverter implements Converter<Map<String, Object>, Map<
 
     // See https://github.com/jhipster/generator-jhipster/issues/18868
     // We don't use a distributed cache or the user selected cache implementation here on purpose
-    private final Cache<String, ObjectNode> users = Caffeine.newBuilder()
-        .maximumSize(10_000)
-        .expireAfterWrite(Duration.ofHours(1))
-        .recordStats()
-        .build();
+    private final LoadingCache<String, ObjectNode> users;
+
+    // Latest bearer token seen per sub, used by background refreshes which have no request to take it from
+    private final Cache<String, String> tokens;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final Counter degraded;
 
     public CustomClaimConverter(ClientRegistration registration, RestTemplate restTemplate) {
+        this(registration, restTemplate, new ApplicationProperties.Userinfo(), new SimpleMeterRegistry());
+    }
+
+    public CustomClaimConverter(
+        ClientRegistration registration,
+        RestTemplate restTemplate,
+        ApplicationProperties.Userinfo properties,
+        MeterRegistry meterRegistry
+    ) {
         this.registration = registration;
         this.restTemplate = restTemplate;
+        this.circuitBreaker = new CircuitBreaker(properties.getFailureThreshold(), properties.getOpenDuration());
+        this.tokens = Caffeine.newBuilder().maximumSize(properties.getCacheMaxSize()).expireAfterWrite(properties.getExpireAfterWrite()).build();
+        this.users = Caffeine.newBuilder()
+            .maximumSize(properties.getCacheMaxSize())
+            .expireAfterWrite(properties.getExpireAfterWrite())
+            .refreshAfterWrite(properties.getRefreshAfterWrite())
+            .recordStats()
+            .build(new UserInfoLoader());
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "oauth2.userinfo");
+        Gauge.builder("oauth2.userinfo.circuit.open", circuitBreaker, cb -> cb.isOpen() ? 1 : 0)
+            .description("1 while userinfo lookups are suspended after repeated failures")
+            .register(meterRegistry);
+        this.degraded = Counter.builder("oauth2.userinfo.degraded")
+            .description("Tokens converted without userinfo because the lookup failed or was suspended")
+            .register(meterRegistry);
     }
 
     public Map<String, Object> convert(Map<String, Object> claims) {
@@ -59,21 +104,15 @@ public class CustomClaimConverter implements Converter<Map<String, Object>, Map<
         }
         RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
         if (attributes instanceof ServletRequestAttributes) {
-            // Retrieve and set the token
+            // Remember the token so the loader and background refreshes can call userinfo with it
+            String sub = claims.get("sub").toString();
             String token = bearerTokenResolver.resolve(((ServletRequestAttributes) attributes).getRequest());
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(token);
+            if (token != null) {
+                tokens.put(sub, token);
+            }
 
             // Retrieve user info from OAuth provider if not already loaded
-            ObjectNode user = users.get(claims.get("sub").toString(), s -> {
-                ResponseEntity<ObjectNode> userInfo = restTemplate.exchange(
-                    registration.getProviderDetails().getUserInfoEndpoint().getUri(),
-                    HttpMethod.GET,
-                    new HttpEntity<String>(headers),
-                    ObjectNode.class
-                );
-                return userInfo.getBody();
-            });
+            ObjectNode user = lookup(sub);
 
             // Add custom claims
             if (user != null) {
@@ -109,4 +148,146 @@ public class CustomClaimConverter implements Converter<Map<String, Object>, Map<
         }
         return convertedClaims;
     }
+
+    private ObjectNode lookup(String sub) {
+        if (circuitBreaker.isOpen()) {
+            // Serve what is cached; a miss goes to the loader only to attempt the single half-open probe
+            ObjectNode cached = users.getIfPresent(sub);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        try {
+            return users.get(sub);
+        } catch (CallNotPermittedException e) {
+            degraded.increment();
+            return null;
+        } catch (RuntimeException e) {
+            LOG.warn("Userinfo lookup for {} failed, using token claims only: {}", sub, e.getMessage());
+            degraded.increment();
+            return null;
+        }
+    }
+
+    private ObjectNode fetch(String sub) {
+        String token = tokens.getIfPresent(sub);
+        if (token == null) {
+            return null;
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            throw new CallNotPermittedException();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(token);
+        try {
+            ResponseEntity<ObjectNode> userInfo = restTemplate.exchange(
+                registration.getProviderDetails().getUserInfoEndpoint().getUri(),
+                HttpMethod.GET,
+                new HttpEntity<String>(headers),
+                ObjectNode.class
+            );
+            circuitBreaker.onSuccess();
+            return userInfo.getBody();
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        }
+    }
+
+    private final class UserInfoLoader implements CacheLoader<String, ObjectNode> {
+
+        @Override
+        public ObjectNode load(String sub) {
+            return fetch(sub);
+        }
+
+        @Override
+        public ObjectNode reload(String sub, ObjectNode oldValue) {
+            // Keep serving the cached user while userinfo is unavailable
+            try {
+                ObjectNode user = fetch(sub);
+                return user != null ? user : oldValue;
+            } catch (RuntimeException e) {
+                LOG.debug("Background userinfo refresh for {} failed: {}", sub, e.getMessage());
+                return oldValue;
+            }
+        }
+    }
+
+    /**
+     * Thrown by the loader when the circuit breaker does not let the call through.
+     */
+    private static final class CallNotPermittedException extends RuntimeException {
+
+        CallNotPermittedException() {
+            super("Userinfo lookups are suspended", null, false, false);
+        }
+    }
+
+    /**
+     * Opens after {@code failureThreshold} consecutive failures. Once {@code openDuration} has passed, the first caller
+     * wins a CAS from OPEN to HALF_OPEN and makes a single probe call; everyone else stays short-circuited until the
+     * probe closes the breaker or reopens it for another {@code openDuration}.
+     */
+    static final class CircuitBreaker {
+
+        private enum State {
+            CLOSED,
+            OPEN,
+            HALF_OPEN,
+        }
+
+        private final int failureThreshold;
+
+        private final long openNanos;
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+        private volatile long openUntil;
+
+        CircuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openDuration.toNanos();
+        }
+
+        /**
+         * Whether calls are currently short-circuited, including while a half-open probe is in flight.
+         */
+        boolean isOpen() {
+            return state.get() != State.CLOSED;
+        }
+
+        /**
+         * Returns whether the caller may call the endpoint; in the half-open state only the probe gets {@code true}.
+         */
+        boolean tryAcquire() {
+            State current = state.get();
+            if (current == State.CLOSED) {
+                return true;
+            }
+            return current == State.OPEN && System.nanoTime() - openUntil >= 0 && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+
+        void onSuccess() {
+            consecutiveFailures.set(0);
+            state.set(State.CLOSED);
+        }
+
+        void onFailure() {
+            if (state.get() == State.HALF_OPEN) {
+                openUntil = System.nanoTime() + openNanos;
+                state.set(State.OPEN);
+                LOG.warn("Userinfo probe failed, suspending lookups again");
+                return;
+            }
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && state.get() == State.CLOSED) {
+                openUntil = System.nanoTime() + openNanos;
+                if (state.compareAndSet(State.CLOSED, State.OPEN)) {
+                    LOG.warn("Userinfo endpoint failed {} times in a row, suspending lookups", consecutiveFailures.get());
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,275 @@
+package com.yuzhi.dtadmin.security.oauth2;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Token signing keys, fetched from the JWKS endpoint and cached locally.
+ * <p>
+ * Keys are refreshed in the background every {@code refreshInterval}; a lookup only fetches synchronously when the
+ * cache is empty or older than {@code ttl}, and no more than once per {@code unknownKidMinInterval}. Tokens signed with an unknown {@code kid} (key rotation) trigger a refetch,
+ * at most once per {@code unknownKidMinInterval}. If the IdP cannot be reached, the last known keys keep being used.
+ * <p>
+ * Persisting the JWKS is opt-in: when {@code cacheFile} is set, the last JWKS fetched is written there so a restart can
+ * validate tokens before the IdP is reachable. Whoever can write that file chooses which keys are trusted, so its
+ * directory must already exist, belong to the user running the application and grant no access to group or others,
+ * and the file itself must be owned by that user and writable by nobody else. This is checked both when loading and
+ * when writing; persistence is disabled otherwise.
+ */
+public class JwksManager implements JWKSource<SecurityContext>, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JwksManager.class);
+
+    private static final Set<PosixFilePermission> ACCESSIBLE_TO_OTHERS = EnumSet.of(
+        PosixFilePermission.GROUP_READ,
+        PosixFilePermission.GROUP_WRITE,
+        PosixFilePermission.GROUP_EXECUTE,
+        PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.OTHERS_WRITE,
+        PosixFilePermission.OTHERS_EXECUTE
+    );
+
+    private static final Set<PosixFilePermission> WRITABLE_BY_OTHERS = EnumSet.of(
+        PosixFilePermission.GROUP_WRITE,
+        PosixFilePermission.OTHERS_WRITE
+    );
+
+    private final String uri;
+
+    private final RestTemplate restTemplate;
+
+    private final Duration ttl;
+
+    private final Duration unknownKidMinInterval;
+
+    private final Path cacheFile;
+
+    private final ScheduledExecutorService refresher;
+
+    private final Counter fetchSuccess;
+    private final Counter fetchFailure;
+    private final Counter unknownKidRefetched;
+    private final Counter unknownKidThrottled;
+
+    private volatile Keys keys;
+
+    private volatile Instant lastAttempt = Instant.EPOCH;
+
+    public JwksManager(String uri, RestTemplate restTemplate, ApplicationProperties.Jwks properties, MeterRegistry meterRegistry) {
+        this.uri = uri;
+        this.restTemplate = restTemplate;
+        this.ttl = properties.getTtl();
+        this.unknownKidMinInterval = properties.getUnknownKidMinInterval();
+        String file = properties.getCacheFile();
+        this.cacheFile = file == null || file.isBlank() ? null : Paths.get(file).toAbsolutePath();
+
+        this.fetchSuccess = Counter.builder("jwks.fetch").tag("result", "success").register(meterRegistry);
+        this.fetchFailure = Counter.builder("jwks.fetch").tag("result", "failure").register(meterRegistry);
+        this.unknownKidRefetched = Counter.builder("jwks.unknown.kid").tag("action", "refetched").register(meterRegistry);
+        this.unknownKidThrottled = Counter.builder("jwks.unknown.kid").tag("action", "throttled").register(meterRegistry);
+        Gauge.builder("jwks.keys", this, m -> m.keys != null ? m.keys.set().size() : 0)
+            .description("Signing keys currently cached")
+            .register(meterRegistry);
+        Gauge.builder("jwks.age", this, m -> m.keys != null ? Duration.between(m.keys.fetchedAt(), Instant.now()).toSeconds() : -1)
+            .description("Seconds since the cached JWKS was fetched")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+
+        this.keys = loadCacheFile();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = properties.getRefreshInterval().toMillis();
+        refresher.scheduleWithFixedDelay(this::backgroundRefresh, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        Keys current = keys;
+        Instant now = Instant.now();
+        // Stale or missing keys are refetched inline, but not on every request while the IdP is down;
+        // within the throttle window the result of a fetch still in progress is awaited instead
+        if (current == null || current.fetchedAt().plus(ttl).isBefore(now)) {
+            current = lastAttempt.plus(unknownKidMinInterval).isBefore(now) ? refresh(current) : latest();
+        }
+        if (current == null) {
+            throw new KeySourceException("No JWKS available from " + uri);
+        }
+        List<JWK> matches = jwkSelector.select(current.set());
+        if (!matches.isEmpty()) {
+            return matches;
+        }
+
+        // Unknown kid: the IdP may have rotated its keys since the last fetch
+        if (lastAttempt.plus(unknownKidMinInterval).isAfter(now)) {
+            unknownKidThrottled.increment();
+            return matches;
+        }
+        unknownKidRefetched.increment();
+        Keys refreshed = refresh(current);
+        return refreshed != null ? jwkSelector.select(refreshed.set()) : matches;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private void backgroundRefresh() {
+        try {
+            refresh(keys);
+        } catch (RuntimeException e) {
+            LOG.warn("Background JWKS refresh failed", e);
+        }
+    }
+
+    /**
+     * Fetches the JWKS unless another thread already replaced {@code seen}; returns the newest keys available, which
+     * are the old ones if the fetch fails.
+     */
+    private synchronized Keys refresh(Keys seen) {
+        if (keys != seen) {
+            return keys;
+        }
+        lastAttempt = Instant.now();
+        try {
+            String body = restTemplate.getForObject(uri, String.class);
+            JWKSet set = JWKSet.parse(body);
+            keys = new Keys(set, Instant.now());
+            writeCacheFile(set);
+            fetchSuccess.increment();
+        } catch (RuntimeException | ParseException e) {
+            fetchFailure.increment();
+            LOG.warn("Fetching JWKS from {} failed, keeping {} cached keys: {}", uri, keys != null ? keys.set().size() : 0, e.getMessage());
+        }
+        return keys;
+    }
+
+    /**
+     * The current keys, once any fetch in progress has finished.
+     */
+    private synchronized Keys latest() {
+        return keys;
+    }
+
+    private Keys loadCacheFile() {
+        if (cacheFile == null || !isPrivateDirectory(cacheFile.getParent())) {
+            return null;
+        }
+        try {
+            if (!Files.exists(cacheFile, LinkOption.NOFOLLOW_LINKS)) {
+                return null;
+            }
+            if (!Files.isRegularFile(cacheFile, LinkOption.NOFOLLOW_LINKS) || !isOwnedAndOnlyWritableByUser(cacheFile, WRITABLE_BY_OTHERS)) {
+                LOG.warn("Ignoring JWKS cache {}: not a regular file owned by this user and writable only by it", cacheFile);
+                return null;
+            }
+            JWKSet set = JWKSet.parse(Files.readString(cacheFile, StandardCharsets.UTF_8));
+            Instant modified = Files.getLastModifiedTime(cacheFile, LinkOption.NOFOLLOW_LINKS).toInstant();
+            LOG.info("Loaded {} signing keys from {}", set.size(), cacheFile);
+            return new Keys(set, modified);
+        } catch (IOException | ParseException e) {
+            LOG.warn("Ignoring unreadable JWKS cache {}: {}", cacheFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCacheFile(JWKSet set) {
+        if (cacheFile == null || !isPrivateDirectory(cacheFile.getParent())) {
+            return;
+        }
+        Path partial = null;
+        try {
+            // A fresh, exclusively created temp file: an existing file or symlink at a predictable name is never followed
+            partial = Files.createTempFile(
+                cacheFile.getParent(),
+                cacheFile.getFileName().toString(),
+                ".part",
+                PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE))
+            );
+            // toString() serializes public keys only
+            Files.writeString(partial, set.toString(), StandardCharsets.UTF_8);
+            Files.move(partial, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("Could not persist JWKS to {}: {}", cacheFile, e.getMessage());
+        } finally {
+            deleteQuietly(partial);
+        }
+    }
+
+    private boolean isPrivateDirectory(Path directory) {
+        try {
+            if (
+                directory != null &&
+                Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS) &&
+                isOwnedAndOnlyWritableByUser(directory, ACCESSIBLE_TO_OTHERS)
+            ) {
+                return true;
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not read attributes of {}", directory, e);
+        }
+        LOG.warn("JWKS cache disabled: {} must be an existing directory owned by this user with owner-only permissions", directory);
+        return false;
+    }
+
+    /**
+     * Whether {@code path} itself (not a symlink target) belongs to the user running the application and has none of
+     * the {@code forbidden} permissions. Filesystems without POSIX attributes never qualify.
+     */
+    private static boolean isOwnedAndOnlyWritableByUser(Path path, Set<PosixFilePermission> forbidden) throws IOException {
+        try {
+            PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+            return attributes.owner().equals(user) && attributes.permissions().stream().noneMatch(forbidden::contains);
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {}", path, e);
+        }
+    }
+
+    private record Keys(JWKSet set, Instant fetchedAt) {}
+}
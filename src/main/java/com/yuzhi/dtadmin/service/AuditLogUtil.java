@@ -1,24 +1,28 @@
 package com.yuzhi.dtadmin.service;
 
-import com.yuzhi.dtadmin.domain.AuditLog;
-import com.yuzhi.dtadmin.service.dto.AuditLogDTO;
+import com.yuzhi.dtadmin.service.audit.AuditEntry;
+import com.yuzhi.dtadmin.service.audit.AuditWriteBehindSink;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
 
 /**
  * 审计日志工具类
- * 用于记录系统操作的审计日志
+ * 用于记录系统操作的审计日志，写入由后台批量写入器异步完成
  */
 @Component
 public class AuditLogUtil {
 
-    private final AuditLogService auditLogService;
+    private static final Logger LOG = LoggerFactory.getLogger(AuditLogUtil.class);
+
+    private final AuditWriteBehindSink auditSink;
     private final ObjectMapper objectMapper;
 
-    public AuditLogUtil(AuditLogService auditLogService, ObjectMapper objectMapper) {
-        this.auditLogService = auditLogService;
+    public AuditLogUtil(AuditWriteBehindSink auditSink, ObjectMapper objectMapper) {
+        this.auditSink = auditSink;
         this.objectMapper = objectMapper;
     }
 
@@ -33,22 +37,12 @@ public class AuditLogUtil {
      */
     public void log(String actor, String action, String target, Object details, String result) {
         try {
-            AuditLogDTO auditLogDTO = new AuditLogDTO();
-            auditLogDTO.setActor(actor);
-            auditLogDTO.setAction(action);
-            auditLogDTO.setTarget(target);
-            auditLogDTO.setAt(Instant.now());
-            auditLogDTO.setResult(result);
-
             // 将详情对象转换为JSON字符串
-            if (details != null) {
-                auditLogDTO.setDetails(objectMapper.writeValueAsString(details));
-            }
-
-            auditLogService.save(auditLogDTO);
+            String json = details != null ? objectMapper.writeValueAsString(details) : null;
+            auditSink.submit(AuditEntry.auditLog(actor, action, target, json, result, Instant.now()));
         } catch (Exception e) {
             // 记录审计日志失败不应该影响主流程
-            e.printStackTrace();
+            LOG.warn("Failed to record audit log {} for {}: {}", action, target, e.getMessage());
         }
     }
 
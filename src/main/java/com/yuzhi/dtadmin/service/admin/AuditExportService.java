@@ -0,0 +1,223 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.service.dto.AuditQueryCriteria;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Streams audit events to an output stream straight from a forward-only JDBC cursor.
+ * <p>
+ * Rows are formatted as they are read, so memory use does not depend on the size of the export. The query runs in a
+ * read-only transaction, which PostgreSQL needs to honour the fetch size instead of materializing the whole result.
+ */
+@Service
+public class AuditExportService {
+
+    private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private static final String CSV_HEADER = "id,timestamp,actor,roles,ip,action,resource,outcome\n";
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final int fetchSize;
+
+    public AuditExportService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, ApplicationProperties applicationProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.fetchSize = applicationProperties.getAudit().getExportFetchSize();
+    }
+
+    /**
+     * Writes every event matching {@code criteria} to {@code out}, newest first, as CSV or a JSON array.
+     * The caller owns {@code out}; this method flushes but does not close it.
+     */
+    @Transactional(readOnly = true)
+    public void export(AuditQueryCriteria criteria, boolean csv, OutputStream out) throws IOException {
+        Instant from = criteria.getFrom() != null ? criteria.getFrom() : Instant.now().minusSeconds(86400);
+        Instant to = criteria.getTo() != null ? criteria.getTo() : Instant.now();
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+        StringBuilder sql = new StringBuilder(
+            "select id, event_ts, actor, actor_roles, ip, action, resource, outcome from audit_event where event_ts >= ? and event_ts <= ?"
+        );
+        List<Object> params = new ArrayList<>();
+        params.add(Timestamp.from(from));
+        params.add(Timestamp.from(to));
+        appendEquals(sql, params, "actor", criteria.getActor());
+        appendEquals(sql, params, "action", criteria.getAction());
+        appendEquals(sql, params, "resource", criteria.getResource());
+        appendEquals(sql, params, "outcome", criteria.getOutcome() != null ? criteria.getOutcome().name() : null);
+        sql.append(" order by event_ts desc, id desc");
+
+        RowSink sink = csv ? new CsvSink(out) : new JsonSink(objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8));
+        sink.begin();
+        try {
+            jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement ps = connection.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    for (int i = 0; i < params.size(); i++) {
+                        Object param = params.get(i);
+                        if (param instanceof Timestamp ts) {
+                            ps.setTimestamp(i + 1, ts, utc);
+                        } else {
+                            ps.setString(i + 1, (String) param);
+                        }
+                    }
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> {
+                    try {
+                        sink.row(rs, utc);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            );
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        sink.end();
+    }
+
+    private static void appendEquals(StringBuilder sql, List<Object> params, String column, String value) {
+        if (value != null) {
+            sql.append(" and ").append(column).append(" = ?");
+            params.add(value);
+        }
+    }
+
+    private static String formatTimestamp(ResultSet rs, Calendar utc) throws SQLException {
+        Timestamp ts = rs.getTimestamp("event_ts", utc);
+        return ts != null ? ISO_FORMATTER.format(ts.toInstant()) : null;
+    }
+
+    private interface RowSink {
+        void begin() throws IOException;
+
+        void row(ResultSet rs, Calendar utc) throws SQLException, IOException;
+
+        void end() throws IOException;
+    }
+
+    private static final class CsvSink implements RowSink {
+
+        private final Writer writer;
+
+        CsvSink(OutputStream out) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            writer.write(CSV_HEADER);
+        }
+
+        @Override
+        public void row(ResultSet rs, Calendar utc) throws SQLException, IOException {
+            writer.write(Long.toString(rs.getLong("id")));
+            writer.write(',');
+            writeCsv(formatTimestamp(rs, utc));
+            writer.write(',');
+            writeCsv(rs.getString("actor"));
+            writer.write(',');
+            writeCsv(rs.getString("actor_roles"));
+            writer.write(',');
+            writeCsv(rs.getString("ip"));
+            writer.write(',');
+            writeCsv(rs.getString("action"));
+            writer.write(',');
+            writeCsv(rs.getString("resource"));
+            writer.write(',');
+            writeCsv(rs.getString("outcome"));
+            writer.write('\n');
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.flush();
+        }
+
+        private void writeCsv(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            String escaped = value.replace("\"", "\"\"");
+            if (escaped.contains(",") || escaped.contains("\n") || escaped.contains("\r") || escaped.contains("\"")) {
+                writer.write('"');
+                writer.write(escaped);
+                writer.write('"');
+            } else {
+                writer.write(escaped);
+            }
+        }
+    }
+
+    private static final class JsonSink implements RowSink {
+
+        private final JsonGenerator generator;
+
+        JsonSink(JsonGenerator generator) {
+            this.generator = generator;
+            // The servlet container owns the response stream
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            generator.writeStartArray();
+        }
+
+        @Override
+        public void row(ResultSet rs, Calendar utc) throws SQLException, IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", rs.getLong("id"));
+            generator.writeStringField("timestamp", formatTimestamp(rs, utc));
+            generator.writeStringField("actor", nullToEmpty(rs.getString("actor")));
+            generator.writeStringField("roles", nullToEmpty(rs.getString("actor_roles")));
+            generator.writeStringField("ip", nullToEmpty(rs.getString("ip")));
+            generator.writeStringField("action", nullToEmpty(rs.getString("action")));
+            generator.writeStringField("resource", nullToEmpty(rs.getString("resource")));
+            generator.writeStringField("outcome", nullToEmpty(rs.getString("outcome")));
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void end() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+        }
+
+        private static String nullToEmpty(String value) {
+            return value == null ? "" : value;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.yuzhi.dtadmin.repository.OrgUnitRepository;
 import com.yuzhi.dtadmin.repository.PortalMenuRepository;
 import com.yuzhi.dtadmin.repository.SystemConfigRepository;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,8 @@ public class ChangeExecutor {
     private final OrgUnitRepository orgUnitRepository;
     private final PortalMenuRepository portalMenuRepository;
     private final SystemConfigRepository systemConfigRepository;
+    private final PortalMenuService portalMenuService;
+    private final SystemConfigRegistry systemConfigRegistry;
     private final ObjectMapper objectMapper;
 
     public ChangeExecutor(
@@ -35,12 +38,16 @@ public class ChangeExecutor {
         OrgUnitRepository orgUnitRepository,
         PortalMenuRepository portalMenuRepository,
         SystemConfigRepository systemConfigRepository,
+        PortalMenuService portalMenuService,
+        SystemConfigRegistry systemConfigRegistry,
         ObjectMapper objectMapper
     ) {
         this.keycloakAdapter = keycloakAdapter;
         this.orgUnitRepository = orgUnitRepository;
         this.portalMenuRepository = portalMenuRepository;
         this.systemConfigRepository = systemConfigRepository;
+        this.portalMenuService = portalMenuService;
+        this.systemConfigRegistry = systemConfigRegistry;
         this.objectMapper = objectMapper;
     }
 
@@ -97,12 +104,17 @@ public class ChangeExecutor {
                 Long parentId = Long.valueOf(payload.get("parentId").toString());
                 orgUnitRepository.findById(parentId).ifPresent(unit::setParent);
             }
-            orgUnitRepository.save(unit);
+            // The id is generated on insert, so the path can only be completed afterwards
+            orgUnitRepository.saveAndFlush(unit);
+            assignPath(unit, unit.getParent());
         } else if (action == ChangeAction.UPDATE) {
             Long id = Long.valueOf(requiredId(resourceId));
             OrgUnit unit = orgUnitRepository.findById(id).orElseThrow(() -> new AdminOperationException("Org unit not found"));
             Optional.ofNullable(payload.get("name")).ifPresent(value -> unit.setName(value.toString()));
             Optional.ofNullable(payload.get("code")).ifPresent(value -> unit.setCode(value.toString()));
+            if (payload.containsKey("parentId")) {
+                moveOrg(unit, payload.get("parentId"));
+            }
         } else if (action == ChangeAction.DELETE) {
             orgUnitRepository.deleteById(Long.valueOf(requiredId(resourceId)));
         } else {
@@ -110,6 +122,39 @@ public class ChangeExecutor {
         }
     }
 
+    private void moveOrg(OrgUnit unit, Object parentIdValue) {
+        OrgUnit newParent = null;
+        if (parentIdValue != null) {
+            Long parentId = Long.valueOf(parentIdValue.toString());
+            newParent = orgUnitRepository.findById(parentId).orElseThrow(() -> new AdminOperationException("Parent org unit not found"));
+            if (newParent.getPath() != null && unit.getPath() != null && newParent.getPath().startsWith(unit.getPath())) {
+                throw new AdminOperationException("Org unit cannot be moved under itself");
+            }
+        }
+        Long currentParentId = unit.getParent() != null ? unit.getParent().getId() : null;
+        Long newParentId = newParent != null ? newParent.getId() : null;
+        if (Objects.equals(currentParentId, newParentId)) {
+            return;
+        }
+        String oldPath = unit.getPath();
+        int oldDepth = unit.getDepth() != null ? unit.getDepth() : 0;
+        unit.setParent(newParent);
+        assignPath(unit, newParent);
+        if (oldPath != null) {
+            orgUnitRepository.moveDescendants(oldPath, unit.getPath(), unit.getDepth() - oldDepth);
+        }
+    }
+
+    private void assignPath(OrgUnit unit, OrgUnit parent) {
+        if (parent != null && parent.getPath() != null) {
+            unit.setPath(parent.getPath() + unit.getId() + "/");
+            unit.setDepth((parent.getDepth() != null ? parent.getDepth() : 0) + 1);
+        } else {
+            unit.setPath("/" + unit.getId() + "/");
+            unit.setDepth(0);
+        }
+    }
+
     private void handleConfig(ChangeAction action, Map<String, Object> payload) {
         if (action != ChangeAction.CONFIG_SET) {
             throw new IllegalArgumentException("Unsupported config action: " + action);
@@ -123,7 +168,7 @@ public class ChangeExecutor {
         }
         config.setValue(value);
         config.setDescription(description);
-        systemConfigRepository.save(config);
+        systemConfigRegistry.putAfterCommit(systemConfigRepository.save(config));
     }
 
     private void handleMenu(ChangeAction action, String resourceId, Map<String, Object> payload) {
@@ -141,6 +186,7 @@ public class ChangeExecutor {
         } else {
             throw new IllegalArgumentException("Unsupported menu action: " + action);
         }
+        portalMenuService.invalidateAfterCommit();
     }
 
     private void applyMenuPayload(PortalMenu menu, Map<String, Object> payload) {
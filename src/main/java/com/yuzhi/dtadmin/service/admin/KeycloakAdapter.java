@@ -1,17 +1,18 @@
 package com.yuzhi.dtadmin.service.admin;
 
 import java.util.Map;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 @Service
@@ -21,20 +22,14 @@ public class KeycloakAdapter {
 
     private final RestTemplate restTemplate;
 
-    @Value("${keycloak.admin.token-url:http://localhost:8080/realms/yts/protocol/openid-connect/token}")
-    private String tokenUrl;
+    private final KeycloakServiceTokenManager tokenManager;
 
     @Value("${keycloak.admin.base-url:http://localhost:8080/admin/realms/yts}")
     private String adminBaseUrl;
 
-    @Value("${keycloak.admin.client-id:yts-admin-api}")
-    private String clientId;
-
-    @Value("${keycloak.admin.client-secret:change-me}")
-    private String clientSecret;
-
-    public KeycloakAdapter(@Qualifier("keycloakRestTemplate") RestTemplate restTemplate) {
+    public KeycloakAdapter(@Qualifier("keycloakRestTemplate") RestTemplate restTemplate, KeycloakServiceTokenManager tokenManager) {
         this.restTemplate = restTemplate;
+        this.tokenManager = tokenManager;
     }
 
     public void createUser(Map<String, Object> payload) {
@@ -74,28 +69,40 @@ public class KeycloakAdapter {
     }
 
     private void postAdmin(String path, Object payload) {
-        String token = getServiceToken();
-        HttpHeaders headers = authHeaders(token);
-        ResponseEntity<String> response = restTemplate.postForEntity(adminBaseUrl + path, new HttpEntity<>(payload, headers), String.class);
+        ResponseEntity<String> response = withToken(headers ->
+            restTemplate.postForEntity(adminBaseUrl + path, new HttpEntity<>(payload, headers), String.class)
+        );
         LOG.debug("Keycloak POST {} -> {}", path, response.getStatusCode());
     }
 
     private void putAdmin(String path, Object payload) {
-        String token = getServiceToken();
-        HttpHeaders headers = authHeaders(token);
-        restTemplate.put(adminBaseUrl + path, new HttpEntity<>(payload, headers));
+        withToken(headers -> {
+            restTemplate.put(adminBaseUrl + path, new HttpEntity<>(payload, headers));
+            return null;
+        });
     }
 
     private void deleteAdmin(String path) {
-        String token = getServiceToken();
-        HttpHeaders headers = authHeaders(token);
-        restTemplate.exchange(adminBaseUrl + path, org.springframework.http.HttpMethod.DELETE, new HttpEntity<>(headers), String.class);
+        withToken(headers -> restTemplate.exchange(adminBaseUrl + path, HttpMethod.DELETE, new HttpEntity<>(headers), String.class));
     }
 
     private void deleteAdminWithBody(String path, Object payload) {
-        String token = getServiceToken();
-        HttpHeaders headers = authHeaders(token);
-        restTemplate.exchange(adminBaseUrl + path, org.springframework.http.HttpMethod.DELETE, new HttpEntity<>(payload, headers), String.class);
+        withToken(headers ->
+            restTemplate.exchange(adminBaseUrl + path, HttpMethod.DELETE, new HttpEntity<>(payload, headers), String.class)
+        );
+    }
+
+    /**
+     * Runs the call with the cached service token; a 401 drops the token and retries once with a fresh one.
+     */
+    private <T> T withToken(Function<HttpHeaders, T> call) {
+        try {
+            return call.apply(authHeaders(tokenManager.getToken()));
+        } catch (HttpClientErrorException.Unauthorized ex) {
+            LOG.debug("Keycloak rejected cached service token, retrying with a fresh one");
+            tokenManager.invalidate();
+            return call.apply(authHeaders(tokenManager.getToken()));
+        }
     }
 
     private HttpHeaders authHeaders(String token) {
@@ -104,20 +111,4 @@ public class KeycloakAdapter {
         headers.setBearerAuth(token);
         return headers;
     }
-
-    private String getServiceToken() {
-        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
-        form.add("grant_type", "client_credentials");
-        form.add("client_id", clientId);
-        form.add("client_secret", clientSecret);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-        ResponseEntity<Map> response = restTemplate.postForEntity(tokenUrl, new HttpEntity<>(form, headers), Map.class);
-        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
-            throw new IllegalStateException("Unable to obtain Keycloak admin token");
-        }
-        return response.getBody().get("access_token").toString();
-    }
 }
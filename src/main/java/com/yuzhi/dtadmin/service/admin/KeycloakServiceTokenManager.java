@@ -0,0 +1,197 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Holds the {@code client_credentials} token used by {@link KeycloakAdapter}.
+ * <p>
+ * The token is reused until {@code expires_in} minus a safety skew. Once it enters the refresh-ahead window a
+ * background refresh is started on the task executor, so callers keep getting the still-valid token instead of
+ * waiting on the token endpoint. Concurrent refreshes are collapsed into one request.
+ */
+@Component
+public class KeycloakServiceTokenManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeycloakServiceTokenManager.class);
+
+    private final RestTemplate restTemplate;
+    private final Executor taskExecutor;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicBoolean backgroundRefreshPending = new AtomicBoolean();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter failureCounter;
+    private final Timer refreshTimer;
+
+    private volatile CachedToken current;
+
+    @Value("${keycloak.admin.token-url:http://localhost:8080/realms/yts/protocol/openid-connect/token}")
+    private String tokenUrl;
+
+    @Value("${keycloak.admin.client-id:yts-admin-api}")
+    private String clientId;
+
+    @Value("${keycloak.admin.client-secret:change-me}")
+    private String clientSecret;
+
+    @Value("${keycloak.admin.token.expiry-skew:PT30S}")
+    private Duration expirySkew;
+
+    @Value("${keycloak.admin.token.refresh-ahead:PT60S}")
+    private Duration refreshAhead;
+
+    public KeycloakServiceTokenManager(
+        @Qualifier("keycloakRestTemplate") RestTemplate restTemplate,
+        @Qualifier("taskExecutor") Executor taskExecutor,
+        MeterRegistry meterRegistry
+    ) {
+        this.restTemplate = restTemplate;
+        this.taskExecutor = taskExecutor;
+        this.hitCounter = Counter.builder("keycloak.service.token.requests")
+            .description("Service token lookups served from cache or by a synchronous fetch")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.missCounter = Counter.builder("keycloak.service.token.requests")
+            .description("Service token lookups served from cache or by a synchronous fetch")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        this.failureCounter = Counter.builder("keycloak.service.token.refresh.failures")
+            .description("Failed attempts to obtain a service token")
+            .register(meterRegistry);
+        this.refreshTimer = Timer.builder("keycloak.service.token.refresh")
+            .description("Latency of client_credentials round-trips to the token endpoint")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns a valid access token, fetching one synchronously only when no usable token is cached.
+     */
+    public String getToken() {
+        CachedToken token = current;
+        Instant now = Instant.now();
+        if (token != null && token.isUsableAt(now)) {
+            hitCounter.increment();
+            if (token.isDueForRefreshAt(now)) {
+                scheduleBackgroundRefresh();
+            }
+            return token.value();
+        }
+        missCounter.increment();
+        return refreshIfUnusable().value();
+    }
+
+    /**
+     * Drops the cached token, e.g. after Keycloak rejected it with 401.
+     */
+    public void invalidate() {
+        current = null;
+    }
+
+    private CachedToken refreshIfUnusable() {
+        refreshLock.lock();
+        try {
+            CachedToken token = current;
+            if (token != null && token.isUsableAt(Instant.now())) {
+                return token;
+            }
+            return refresh();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void scheduleBackgroundRefresh() {
+        if (!backgroundRefreshPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    refreshLock.lock();
+                    try {
+                        CachedToken token = current;
+                        if (token == null || token.isDueForRefreshAt(Instant.now())) {
+                            refresh();
+                        }
+                    } finally {
+                        refreshLock.unlock();
+                    }
+                } catch (RuntimeException ex) {
+                    LOG.warn("Background refresh of Keycloak service token failed: {}", ex.getMessage());
+                } finally {
+                    backgroundRefreshPending.set(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            backgroundRefreshPending.set(false);
+            LOG.debug("Background refresh of Keycloak service token rejected by executor");
+        }
+    }
+
+    private CachedToken refresh() {
+        try {
+            CachedToken token = refreshTimer.record(this::fetchToken);
+            current = token;
+            return token;
+        } catch (RuntimeException ex) {
+            failureCounter.increment();
+            throw ex;
+        }
+    }
+
+    private CachedToken fetchToken() {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", "client_credentials");
+        form.add("client_id", clientId);
+        form.add("client_secret", clientSecret);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        Instant requestedAt = Instant.now();
+        ResponseEntity<Map> response = restTemplate.postForEntity(tokenUrl, new HttpEntity<>(form, headers), Map.class);
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null || response.getBody().get("access_token") == null) {
+            throw new IllegalStateException("Unable to obtain Keycloak admin token");
+        }
+        Map<?, ?> body = response.getBody();
+        long expiresIn = body.get("expires_in") != null ? Long.parseLong(body.get("expires_in").toString()) : 60L;
+        Instant expiresAt = requestedAt.plusSeconds(expiresIn);
+        LOG.debug("Obtained Keycloak service token valid for {}s", expiresIn);
+        return new CachedToken(
+            body.get("access_token").toString(),
+            expiresAt.minus(expirySkew),
+            expiresAt.minus(expirySkew).minus(refreshAhead)
+        );
+    }
+
+    private record CachedToken(String value, Instant usableUntil, Instant refreshAfter) {
+        boolean isUsableAt(Instant now) {
+            return now.isBefore(usableUntil);
+        }
+
+        boolean isDueForRefreshAt(Instant now) {
+            return !now.isBefore(refreshAfter);
+        }
+    }
+}
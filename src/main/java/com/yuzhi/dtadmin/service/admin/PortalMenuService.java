@@ -1,43 +1,124 @@
 package com.yuzhi.dtadmin.service.admin;
 
-import com.yuzhi.dtadmin.domain.PortalMenu;
 import com.yuzhi.dtadmin.repository.PortalMenuRepository;
+import com.yuzhi.dtadmin.repository.PortalMenuRow;
 import com.yuzhi.dtadmin.service.dto.PortalMenuDTO;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+/**
+ * Serves the portal menu tree from an in-memory snapshot.
+ * <p>
+ * The snapshot is built from a single flat query over {@code portal_menu} and assembled by {@code parentId}; it is
+ * dropped when {@link ChangeExecutor} applies a menu change and rebuilt on the next read.
+ */
 @Service
 @Transactional(readOnly = true)
 public class PortalMenuService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(PortalMenuService.class);
+
     private final PortalMenuRepository portalMenuRepository;
 
+    private volatile List<PortalMenuDTO> snapshot;
+
+    private long version;
+
     public PortalMenuService(PortalMenuRepository portalMenuRepository) {
         this.portalMenuRepository = portalMenuRepository;
     }
 
+    /**
+     * Returns the menu tree. The returned list and the children lists are shared between callers and unmodifiable;
+     * the DTOs must not be modified either.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<PortalMenuDTO> findTree() {
-        return portalMenuRepository
-            .findAllByParentIsNullOrderBySortOrderAsc()
-            .stream()
-            .map(this::toDto)
-            .collect(Collectors.toList());
+        List<PortalMenuDTO> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        long loadingVersion;
+        synchronized (this) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+            loadingVersion = version;
+        }
+        List<PortalMenuDTO> tree = buildTree(portalMenuRepository.findAllRows());
+        synchronized (this) {
+            // A change applied while loading makes this tree stale: serve it to this caller, but do not keep it
+            if (version == loadingVersion) {
+                snapshot = tree;
+            }
+        }
+        return tree;
     }
 
-    private PortalMenuDTO toDto(PortalMenu entity) {
-        PortalMenuDTO dto = new PortalMenuDTO();
-        dto.setId(entity.getId());
-        dto.setName(entity.getName());
-        dto.setPath(entity.getPath());
-        dto.setComponent(entity.getComponent());
-        dto.setSortOrder(entity.getSortOrder());
-        dto.setMetadata(entity.getMetadata());
-        dto.setParentId(entity.getParent() != null ? entity.getParent().getId() : null);
-        if (entity.getChildren() != null) {
-            dto.setChildren(entity.getChildren().stream().map(this::toDto).collect(Collectors.toList()));
+    /**
+     * Drops the snapshot once the current transaction commits, or immediately outside a transaction.
+     */
+    public void invalidateAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate();
+                }
+            });
+        } else {
+            invalidate();
         }
+    }
+
+    public synchronized void invalidate() {
+        snapshot = null;
+        version++;
+        LOG.debug("Portal menu snapshot invalidated");
+    }
+
+    static List<PortalMenuDTO> buildTree(List<PortalMenuRow> rows) {
+        Map<Long, PortalMenuDTO> byId = new HashMap<>(rows.size() * 2);
+        Map<Long, List<PortalMenuDTO>> childrenByParent = new HashMap<>();
+        List<PortalMenuDTO> roots = new ArrayList<>();
+        for (PortalMenuRow row : rows) {
+            byId.put(row.id(), toDto(row));
+        }
+        // Rows arrive in sibling order, so appending keeps each children list sorted
+        for (PortalMenuRow row : rows) {
+            PortalMenuDTO dto = byId.get(row.id());
+            if (row.parentId() == null) {
+                roots.add(dto);
+            } else {
+                childrenByParent.computeIfAbsent(row.parentId(), id -> new ArrayList<>()).add(dto);
+            }
+        }
+        for (PortalMenuDTO dto : byId.values()) {
+            List<PortalMenuDTO> children = childrenByParent.get(dto.getId());
+            dto.setChildren(children != null ? Collections.unmodifiableList(children) : List.of());
+        }
+        return Collections.unmodifiableList(roots);
+    }
+
+    private static PortalMenuDTO toDto(PortalMenuRow row) {
+        PortalMenuDTO dto = new PortalMenuDTO();
+        dto.setId(row.id());
+        dto.setName(row.name());
+        dto.setPath(row.path());
+        dto.setComponent(row.component());
+        dto.setSortOrder(row.sortOrder());
+        dto.setMetadata(row.metadata());
+        dto.setParentId(row.parentId());
         return dto;
     }
 }
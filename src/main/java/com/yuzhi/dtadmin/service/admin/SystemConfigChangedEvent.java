@@ -0,0 +1,7 @@
+package com.yuzhi.dtadmin.service.admin;
+
+/**
+ * Published by {@link SystemConfigRegistry} after a {@code system_config} value has been committed and is visible
+ * through the registry. {@code oldValue} is {@code null} for a new key.
+ */
+public record SystemConfigChangedEvent(String key, String oldValue, String newValue) {}
@@ -0,0 +1,162 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import com.yuzhi.dtadmin.domain.SystemConfig;
+import com.yuzhi.dtadmin.repository.SystemConfigRepository;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory view of {@code system_config} for runtime consumers.
+ * <p>
+ * All rows are loaded at startup into an immutable map; lookups never touch the database. When
+ * {@link ChangeExecutor} applies a {@code CONFIG_SET}, a new map is swapped in after the transaction commits and a
+ * {@link SystemConfigChangedEvent} is published. Values that cannot be parsed as the requested type fall back to the
+ * given default.
+ */
+@Component
+public class SystemConfigRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SystemConfigRegistry.class);
+
+    private final SystemConfigRepository systemConfigRepository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile Map<String, Entry> entries;
+
+    public SystemConfigRegistry(SystemConfigRepository systemConfigRepository, ApplicationEventPublisher eventPublisher) {
+        this.systemConfigRepository = systemConfigRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            // Loaded lazily on first lookup instead
+            LOG.warn("Loading system_config on startup failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the registry with the current content of {@code system_config}.
+     */
+    public synchronized void reload() {
+        Map<String, Entry> loaded = new HashMap<>();
+        for (SystemConfig config : systemConfigRepository.findAll()) {
+            loaded.put(config.getKey(), new Entry(config.getId(), config.getKey(), config.getValue(), config.getDescription()));
+        }
+        entries = Map.copyOf(loaded);
+        LOG.debug("Loaded {} system_config entries", loaded.size());
+    }
+
+    public Collection<Entry> entries() {
+        return current().values();
+    }
+
+    public Optional<String> getString(String key) {
+        Entry entry = current().get(key);
+        return entry != null ? Optional.ofNullable(entry.value()) : Optional.empty();
+    }
+
+    public String getString(String key, String defaultValue) {
+        return getString(key).orElse(defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return parse(key, Integer::valueOf, defaultValue);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return parse(
+            key,
+            value -> {
+                if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+                    return Boolean.valueOf(value);
+                }
+                throw new IllegalArgumentException("Not a boolean");
+            },
+            defaultValue
+        );
+    }
+
+    /**
+     * Accepts ISO-8601 ({@code PT30S}) and simple ({@code 30s}, {@code 5m}) durations; plain numbers are milliseconds.
+     */
+    public Duration getDuration(String key, Duration defaultValue) {
+        return parse(key, DurationStyle::detectAndParse, defaultValue);
+    }
+
+    /**
+     * Makes {@code config} visible once the current transaction commits (immediately outside a transaction).
+     */
+    public void putAfterCommit(SystemConfig config) {
+        Entry entry = new Entry(config.getId(), config.getKey(), config.getValue(), config.getDescription());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(entry);
+                }
+            });
+        } else {
+            put(entry);
+        }
+    }
+
+    private void put(Entry entry) {
+        Entry previous;
+        synchronized (this) {
+            Map<String, Entry> updated = new HashMap<>(current());
+            previous = updated.put(entry.key(), entry);
+            entries = Map.copyOf(updated);
+        }
+        String oldValue = previous != null ? previous.value() : null;
+        if (!Objects.equals(oldValue, entry.value())) {
+            eventPublisher.publishEvent(new SystemConfigChangedEvent(entry.key(), oldValue, entry.value()));
+        }
+    }
+
+    private Map<String, Entry> current() {
+        Map<String, Entry> current = entries;
+        if (current == null) {
+            synchronized (this) {
+                if (entries == null) {
+                    reload();
+                }
+                current = entries;
+            }
+        }
+        return current;
+    }
+
+    private <T> T parse(String key, Function<String, T> parser, T defaultValue) {
+        Optional<String> value = getString(key);
+        if (value.isEmpty() || value.get().isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(value.get().trim());
+        } catch (RuntimeException e) {
+            LOG.warn("Invalid value '{}' for system_config {}, using {}", value.get(), key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public record Entry(Long id, String key, String value, String description) {}
+}
@@ -1,33 +1,38 @@
 package com.yuzhi.dtadmin.service.admin;
 
-import com.yuzhi.dtadmin.domain.SystemConfig;
-import com.yuzhi.dtadmin.repository.SystemConfigRepository;
 import com.yuzhi.dtadmin.service.dto.SystemConfigDTO;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Lists system configuration from {@link SystemConfigRegistry}, without querying the database.
+ */
 @Service
-@Transactional(readOnly = true)
 public class SystemConfigService {
 
-    private final SystemConfigRepository systemConfigRepository;
+    private final SystemConfigRegistry systemConfigRegistry;
 
-    public SystemConfigService(SystemConfigRepository systemConfigRepository) {
-        this.systemConfigRepository = systemConfigRepository;
+    public SystemConfigService(SystemConfigRegistry systemConfigRegistry) {
+        this.systemConfigRegistry = systemConfigRegistry;
     }
 
     public List<SystemConfigDTO> findAll() {
-        return systemConfigRepository.findAll().stream().map(this::toDto).collect(Collectors.toList());
+        return systemConfigRegistry
+            .entries()
+            .stream()
+            .sorted(Comparator.comparing(SystemConfigRegistry.Entry::id, Comparator.nullsLast(Comparator.naturalOrder())))
+            .map(this::toDto)
+            .collect(Collectors.toList());
     }
 
-    private SystemConfigDTO toDto(SystemConfig entity) {
+    private SystemConfigDTO toDto(SystemConfigRegistry.Entry entry) {
         SystemConfigDTO dto = new SystemConfigDTO();
-        dto.setId(entity.getId());
-        dto.setKey(entity.getKey());
-        dto.setValue(entity.getValue());
-        dto.setDescription(entity.getDescription());
+        dto.setId(entry.id());
+        dto.setKey(entry.key());
+        dto.setValue(entry.value());
+        dto.setDescription(entry.description());
         return dto;
     }
 }
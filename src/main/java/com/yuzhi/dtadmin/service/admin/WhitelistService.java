@@ -1,25 +1,71 @@
 package com.yuzhi.dtadmin.service.admin;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
 import com.yuzhi.dtadmin.domain.AdminUserWhitelist;
+import com.yuzhi.dtadmin.domain.AdminUserWhitelistChangedEvent;
 import com.yuzhi.dtadmin.domain.enumeration.AdminRole;
 import com.yuzhi.dtadmin.repository.AdminUserWhitelistRepository;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+/**
+ * Decides whether a token may use the admin console.
+ * <p>
+ * Decisions are cached per {@code (username, email, role set)} and evaluated against an in-memory snapshot of
+ * {@code admin_user_whitelist}, so the admin request path normally does no database I/O. Both are dropped when a
+ * whitelist row changes through JPA; the snapshot is also reloaded periodically to pick up changes made outside the
+ * application.
+ * <p>
+ * Decision keys carry the generation of the snapshot they were evaluated against. The snapshot is resolved before the
+ * cache lookup, so reloading it never touches the decision cache from inside one of its own loaders, and a decision
+ * computed against an old snapshot can never be served for a newer one.
+ */
 @Service
 @Transactional(readOnly = true)
 public class WhitelistService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(WhitelistService.class);
+
+    private static final Set<String> ADMIN_ROLE_NAMES = Set.of(AdminRole.SYSADMIN.name(), AdminRole.AUTHADMIN.name(), AdminRole.AUDITADMIN.name());
+
     private final AdminUserWhitelistRepository whitelistRepository;
 
-    public WhitelistService(AdminUserWhitelistRepository whitelistRepository) {
+    private final Cache<DecisionKey, Decision> decisions;
+
+    private final Duration snapshotRefresh;
+
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong snapshotGeneration = new AtomicLong();
+
+    public WhitelistService(AdminUserWhitelistRepository whitelistRepository, ApplicationProperties applicationProperties) {
         this.whitelistRepository = whitelistRepository;
+        ApplicationProperties.Whitelist properties = applicationProperties.getWhitelist();
+        this.decisions = Caffeine.newBuilder()
+            .expireAfterWrite(properties.getDecisionTtl())
+            .maximumSize(properties.getDecisionMaxSize())
+            .build();
+        this.snapshotRefresh = properties.getSnapshotRefresh();
     }
 
     public Optional<AdminUserWhitelist> findByUsernameOrEmail(String username, String email) {
@@ -35,30 +81,121 @@ public class WhitelistService {
         return Optional.empty();
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public AdminRole enforceWhitelist(String username, String email, Collection<String> roles) {
-        AdminUserWhitelist entry = findByUsernameOrEmail(username, email)
-            .orElseThrow(() -> new AccessDeniedException("User not allowed to access admin"));
-
-        Set<String> normalizedRoles = new HashSet<>();
+        Set<String> normalizedRoles = new TreeSet<>();
         if (roles != null) {
             roles.stream().filter(r -> r != null && !r.isBlank()).map(String::toUpperCase).forEach(normalizedRoles::add);
         }
+        Snapshot current = currentSnapshot();
+        DecisionKey key = new DecisionKey(current.generation(), lower(username), lower(email), normalizedRoles);
+        Decision decision = decisions.get(key, k -> decide(current, k));
+        if (decision.role() == null) {
+            throw new AccessDeniedException(decision.denial());
+        }
+        return decision.role();
+    }
+
+    /**
+     * Drops cached decisions and the snapshot once a whitelist change has committed.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWhitelistChanged(AdminUserWhitelistChangedEvent event) {
+        invalidate();
+    }
+
+    public void invalidate() {
+        snapshot = null;
+        decisions.invalidateAll();
+        version.incrementAndGet();
+        LOG.debug("Admin whitelist cache invalidated");
+    }
 
-        Set<String> adminRoles = normalizedRoles
-            .stream()
-            .filter(role -> role.equals(AdminRole.SYSADMIN.name()) || role.equals(AdminRole.AUTHADMIN.name()) || role.equals(AdminRole.AUDITADMIN.name()))
-            .collect(Collectors.toSet());
+    /**
+     * Changes whenever cached decisions are dropped; callers caching results of {@link #enforceWhitelist} compare it
+     * to tell whether their copy is still valid.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    private static Decision decide(Snapshot current, DecisionKey key) {
+        AdminRole whitelistedRole = key.username() != null ? current.roleByUsername().get(key.username()) : null;
+        if (whitelistedRole == null && key.email() != null) {
+            whitelistedRole = current.roleByEmail().get(key.email());
+        }
+        if (whitelistedRole == null) {
+            return Decision.deny("User not allowed to access admin");
+        }
 
+        Set<String> adminRoles = key.roles().stream().filter(ADMIN_ROLE_NAMES::contains).collect(Collectors.toSet());
         if (adminRoles.size() != 1) {
-            throw new AccessDeniedException("Admin user must only have one admin role");
+            return Decision.deny("Admin user must only have one admin role");
         }
+        if (!adminRoles.iterator().next().equals(whitelistedRole.name())) {
+            return Decision.deny("User role not permitted for admin");
+        }
+        return new Decision(whitelistedRole, null);
+    }
 
-        String assignedRole = adminRoles.iterator().next();
-        String expectedRole = entry.getRole().name();
-        if (!assignedRole.equals(expectedRole)) {
-            throw new AccessDeniedException("User role not permitted for admin");
+    /**
+     * Returns the snapshot, reloading it when it is missing or older than the refresh interval. A periodic reload that
+     * finds the same entries keeps the old generation, so cached decisions and {@link #version()} stay valid; only a
+     * reload that finds different entries drops the decisions and moves the version, after the new snapshot has been
+     * published and outside the reload lock.
+     */
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && current.loadedAt().plus(snapshotRefresh).isAfter(Instant.now())) {
+            return current;
+        }
+        boolean changed = false;
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || !current.loadedAt().plus(snapshotRefresh).isAfter(Instant.now())) {
+                Snapshot previous = current;
+                current = loadSnapshot(previous);
+                snapshot = current;
+                changed = previous != null && previous.generation() != current.generation();
+            }
+        }
+        if (changed) {
+            // Decisions keyed by the old generation are unreachable from now on
+            decisions.invalidateAll();
+            version.incrementAndGet();
         }
+        return current;
+    }
 
-        return entry.getRole();
+    private Snapshot loadSnapshot(Snapshot previous) {
+        Map<String, AdminRole> byUsername = new HashMap<>();
+        Map<String, AdminRole> byEmail = new HashMap<>();
+        for (AdminUserWhitelist entry : whitelistRepository.findAll()) {
+            if (entry.getUsername() != null) {
+                byUsername.put(lower(entry.getUsername()), entry.getRole());
+            }
+            if (entry.getEmail() != null) {
+                byEmail.put(lower(entry.getEmail()), entry.getRole());
+            }
+        }
+        LOG.debug("Loaded admin whitelist snapshot with {} entries", byUsername.size());
+        if (previous != null && previous.roleByUsername().equals(byUsername) && previous.roleByEmail().equals(byEmail)) {
+            return new Snapshot(previous.generation(), previous.roleByUsername(), previous.roleByEmail(), Instant.now());
+        }
+        return new Snapshot(snapshotGeneration.incrementAndGet(), Map.copyOf(byUsername), Map.copyOf(byEmail), Instant.now());
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private record DecisionKey(long generation, String username, String email, Set<String> roles) {}
+
+    private record Decision(AdminRole role, String denial) {
+        static Decision deny(String denial) {
+            return new Decision(null, denial);
+        }
     }
+
+    private record Snapshot(long generation, Map<String, AdminRole> roleByUsername, Map<String, AdminRole> roleByEmail, Instant loadedAt) {}
 }
@@ -0,0 +1,32 @@
+package com.yuzhi.dtadmin.service.audit;
+
+import java.time.Instant;
+
+/**
+ * An audit row waiting to be written by {@link AuditWriteBehindSink}.
+ * <p>
+ * One shape covers both {@code audit_event} and {@code audit_log}; for the latter {@code resource} holds the target,
+ * {@code outcome} the result and {@code detail} the details JSON. Entries are also the line format of spill files.
+ */
+public record AuditEntry(
+    Kind kind,
+    Instant timestamp,
+    String actor,
+    String actorRoles,
+    String ip,
+    String userAgent,
+    String action,
+    String resource,
+    String outcome,
+    String detail,
+    String createdBy
+) {
+    public enum Kind {
+        AUDIT_EVENT,
+        AUDIT_LOG,
+    }
+
+    public static AuditEntry auditLog(String actor, String action, String target, String details, String result, Instant at) {
+        return new AuditEntry(Kind.AUDIT_LOG, at, actor, null, null, null, action, target, result, details, null);
+    }
+}
@@ -0,0 +1,346 @@
+package com.yuzhi.dtadmin.service.audit;
+
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.config.ApplicationProperties.Audit.RetentionAction;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains the monthly partitions of {@code audit_event} on PostgreSQL.
+ * <p>
+ * Partitions ({@code audit_event_yYYYYmMM}) are created {@code partitionMonthsAhead} months in advance; rows outside
+ * every monthly range land in {@code audit_event_default} instead of failing the insert. Retention is off unless
+ * {@code retentionMonths} is set. Expired partitions are then detached and, with {@link RetentionAction#DROP}, dropped;
+ * expired {@code audit_log} rows are deleted. Nothing is ever deleted without an archive: dropping partitions and
+ * purging {@code audit_log} require {@code archiveDirectory}, and run only after the rows were copied to a gzip'd CSV
+ * there, flushed to disk and read back with the expected row count. Archiving, detaching and dropping run in one
+ * transaction holding the maintenance advisory lock, so a failure at any step leaves the data in place for the next
+ * run. On other databases, or when {@code audit_event} is not partitioned, partition maintenance is skipped.
+ */
+@Component
+public class AuditPartitionManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuditPartitionManager.class);
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("audit_event_y(\\d{4})m(\\d{2})");
+
+    /** Arbitrary key for pg_try_advisory_xact_lock so only one instance runs maintenance at a time. */
+    private static final long ADVISORY_LOCK_KEY = 0x617564697450L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationProperties.Audit properties;
+
+    public AuditPartitionManager(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, ApplicationProperties applicationProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = applicationProperties.getAudit();
+    }
+
+    /**
+     * Makes sure the current and upcoming partitions exist before the first audit insert; retention waits for the
+     * scheduled run so startup is not slowed down by archiving.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            if (isPartitioned()) {
+                ensurePartitions(YearMonth.now(ZoneOffset.UTC));
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Creating audit partitions on startup failed", e);
+        }
+    }
+
+    @Scheduled(cron = "0 30 1 * * *")
+    public void maintain() {
+        try {
+            YearMonth current = YearMonth.now(ZoneOffset.UTC);
+            boolean partitioned = isPartitioned();
+            if (partitioned) {
+                ensurePartitions(current);
+            } else {
+                LOG.debug("audit_event is not a partitioned PostgreSQL table, skipping partition maintenance");
+            }
+            if (properties.getRetentionMonths() <= 0) {
+                return;
+            }
+            YearMonth oldestKept = current.minusMonths(properties.getRetentionMonths());
+            if (partitioned) {
+                for (String partition : expiredPartitions(oldestKept)) {
+                    expire(partition);
+                }
+            }
+            purgeAuditLog(oldestKept);
+        } catch (RuntimeException e) {
+            LOG.error("Audit partition maintenance failed", e);
+        }
+    }
+
+    private void ensurePartitions(YearMonth current) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (tryLock()) {
+                createAhead(current);
+            }
+        });
+    }
+
+    private boolean isPostgres() {
+        Boolean postgres = jdbcTemplate.execute(
+            (ConnectionCallback<Boolean>) connection -> "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())
+        );
+        return Boolean.TRUE.equals(postgres);
+    }
+
+    private boolean isPartitioned() {
+        if (!isPostgres()) {
+            return false;
+        }
+        Integer count = jdbcTemplate.queryForObject(
+            "select count(*) from pg_partitioned_table pt join pg_class c on c.oid = pt.partrelid " +
+            "where c.relname = 'audit_event' and c.relnamespace = current_schema()::regnamespace",
+            Integer.class
+        );
+        return count != null && count > 0;
+    }
+
+    private boolean tryLock() {
+        Boolean locked = jdbcTemplate.queryForObject("select pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY);
+        if (!Boolean.TRUE.equals(locked)) {
+            LOG.debug("Another instance is maintaining audit partitions");
+        }
+        return Boolean.TRUE.equals(locked);
+    }
+
+    /**
+     * Creates the monthly partitions that do not exist yet. Fails if {@code audit_event_default} already holds rows of
+     * a month being created; those rows have to be moved out of the default partition first.
+     */
+    private void createAhead(YearMonth current) {
+        for (int i = 0; i <= properties.getPartitionMonthsAhead(); i++) {
+            YearMonth month = current.plusMonths(i);
+            LocalDate from = month.atDay(1);
+            LocalDate to = month.plusMonths(1).atDay(1);
+            jdbcTemplate.execute(
+                "create table if not exists " +
+                partitionName(month) +
+                " partition of audit_event for values from ('" +
+                from +
+                "') to ('" +
+                to +
+                "')"
+            );
+        }
+    }
+
+    private List<String> expiredPartitions(YearMonth oldestKept) {
+        List<String> partitions = jdbcTemplate.queryForList(
+            "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid join pg_class p on p.oid = i.inhparent " +
+            "where p.relname = 'audit_event' and p.relnamespace = current_schema()::regnamespace order by c.relname",
+            String.class
+        );
+        return partitions.stream().filter(name -> monthOf(name).map(month -> month.isBefore(oldestKept)).orElse(false)).toList();
+    }
+
+    /**
+     * Archives, detaches and optionally drops one partition in a single transaction under the advisory lock; the
+     * partition is only detached once its archive has been verified.
+     */
+    private void expire(String partition) {
+        RetentionAction action = properties.getRetentionAction();
+        Path archiveDirectory = archiveDirectory();
+        if (action == RetentionAction.DROP && archiveDirectory == null) {
+            LOG.error("Audit partition {} expired but no archive directory is configured; it is kept until one is set", partition);
+            return;
+        }
+        try {
+            Boolean expired = transactionTemplate.execute(status -> {
+                if (!tryLock()) {
+                    return false;
+                }
+                if (archiveDirectory != null) {
+                    // Block writes so the row count and the archive describe the same rows
+                    jdbcTemplate.execute("lock table " + partition + " in share mode");
+                    long rows = count("select count(*) from " + partition);
+                    archive(archiveDirectory, partition + ".csv.gz", "COPY " + partition + " TO STDOUT WITH (FORMAT csv, HEADER)", rows);
+                }
+                jdbcTemplate.execute("alter table audit_event detach partition " + partition);
+                if (action == RetentionAction.DROP) {
+                    jdbcTemplate.execute("drop table " + partition);
+                }
+                return true;
+            });
+            if (Boolean.TRUE.equals(expired)) {
+                LOG.info("Expired audit partition {} ({})", partition, action);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Expiring audit partition {} failed, keeping it attached", partition, e);
+        }
+    }
+
+    /**
+     * Archives and deletes {@code audit_log} rows older than the retention window in one transaction under the
+     * advisory lock. The expired ids are captured once, so the archive and the delete cover exactly the same rows.
+     */
+    private void purgeAuditLog(YearMonth oldestKept) {
+        Path archiveDirectory = archiveDirectory();
+        if (archiveDirectory == null) {
+            LOG.error("audit_log rows older than {} are kept: retention requires an archive directory", oldestKept.atDay(1));
+            return;
+        }
+        if (!isPostgres()) {
+            LOG.warn("audit_log retention archives with COPY and only runs on PostgreSQL");
+            return;
+        }
+        Timestamp cutoff = Timestamp.from(oldestKept.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        try {
+            Integer deleted = transactionTemplate.execute(status -> {
+                if (!tryLock()) {
+                    return 0;
+                }
+                jdbcTemplate.update("create temporary table audit_log_expired on commit drop as select id from audit_log where at < ?", cutoff);
+                long rows = count("select count(*) from audit_log_expired");
+                if (rows == 0) {
+                    return 0;
+                }
+                archive(
+                    archiveDirectory,
+                    "audit_log_before_" + oldestKept.atDay(1) + "_" + System.currentTimeMillis() + ".csv.gz",
+                    "COPY (select l.* from audit_log l join audit_log_expired e on e.id = l.id order by l.id) TO STDOUT WITH (FORMAT csv, HEADER)",
+                    rows
+                );
+                return jdbcTemplate.update("delete from audit_log where id in (select id from audit_log_expired)");
+            });
+            if (deleted != null && deleted > 0) {
+                LOG.info("Archived and purged {} audit_log rows older than {}", deleted, oldestKept.atDay(1));
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Purging audit_log failed, keeping the rows", e);
+        }
+    }
+
+    private Path archiveDirectory() {
+        String directory = properties.getArchiveDirectory();
+        return directory == null || directory.isBlank() ? null : Paths.get(directory);
+    }
+
+    private long count(String sql, Object... args) {
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, args);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Copies the rows of {@code copySql} to {@code <directory>/<fileName>} and verifies the result: the file is forced
+     * to disk, decompressed completely (which checks the gzip CRC) and must hold {@code expectedRows} records, as must
+     * the COPY itself. Only then is it moved into place; any failure throws and leaves no archive behind.
+     */
+    private void archive(Path directory, String fileName, String copySql, long expectedRows) {
+        Path target = directory.resolve(fileName);
+        Path partial = null;
+        try {
+            Files.createDirectories(directory);
+            partial = Files.createTempFile(directory, fileName, ".part");
+            Long copied;
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), 64 * 1024)) {
+                copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> copyOut(connection, copySql, out));
+            }
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            long archived = countCsvRecords(partial);
+            if (copied == null || copied != expectedRows || archived != expectedRows) {
+                throw new IOException(
+                    "Archive " + target + " is incomplete: expected " + expectedRows + " rows, COPY reported " + copied + ", file holds " + archived
+                );
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Archived {} rows to {}", archived, target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(partial);
+        }
+    }
+
+    private static Long copyOut(Connection connection, String copySql, OutputStream out) throws SQLException {
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(copySql, out);
+        } catch (IOException e) {
+            throw new SQLException("COPY failed: " + copySql, e);
+        }
+    }
+
+    /**
+     * Number of data records in a gzip'd CSV archive with a header line, counting only line breaks outside quoted
+     * fields so values containing newlines are not counted twice.
+     */
+    static long countCsvRecords(Path archive) throws IOException {
+        long lines = 0;
+        boolean quoted = false;
+        try (InputStream in = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(archive), 64 * 1024))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    lines++;
+                }
+            }
+        }
+        return Math.max(0, lines - 1);
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {}", path, e);
+        }
+    }
+
+    static String partitionName(YearMonth month) {
+        return String.format("audit_event_y%04dm%02d", month.getYear(), month.getMonthValue());
+    }
+
+    static Optional<YearMonth> monthOf(String partition) {
+        Matcher matcher = PARTITION_NAME.matcher(partition);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+    }
+}
@@ -0,0 +1,464 @@
+package com.yuzhi.dtadmin.service.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.config.ApplicationProperties.Audit.OverflowPolicy;
+import com.yuzhi.dtadmin.config.Constants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Asynchronous sink for {@code audit_event} and {@code audit_log} rows.
+ * <p>
+ * Callers only enqueue into a bounded array-backed ring buffer. A single background writer drains it and inserts rows
+ * with JDBC batch statements, bypassing the persistence context. When the buffer is full the configured
+ * {@link OverflowPolicy} applies; batches that fail to write are spilled to disk and replayed once the buffer is idle,
+ * so database hiccups do not lose events. Each batch is written in one transaction, so a failed batch leaves no rows
+ * behind. On shutdown the writer drains the buffer, and whatever is still pending after the shutdown timeout is spilled.
+ * <p>
+ * Replay records how many lines of a spill file are already in the database next to the file and resumes from there.
+ * Rows the database rejects as invalid, and lines that cannot be parsed, are moved to a dead-letter file so they do
+ * not block the files behind them.
+ */
+@Component
+public class AuditWriteBehindSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuditWriteBehindSink.class);
+
+    private static final String INSERT_AUDIT_EVENT =
+        "insert into audit_event (event_ts, actor, actor_roles, ip, user_agent, action, resource, outcome, detail_json, " +
+        "created_by, created_date, last_modified_by, last_modified_date) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_AUDIT_LOG = "insert into audit_log (actor, action, target, details, result, at) values (?, ?, ?, ?, ?, ?)";
+
+    private static final String SPILL_SUFFIX = ".jsonl";
+
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    private static final String OFFSET_SUFFIX = ".offset";
+
+    private static final String DEAD_LETTER_FILE = "audit-dead-letter.jsonl.dead";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationProperties.Audit properties;
+    private final BlockingQueue<AuditEntry> buffer;
+    private final Path spillDirectory;
+    private final Object spillLock = new Object();
+    private final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    private final Timer writeTimer;
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter spilledCounter;
+    private final Counter deadLetterCounter;
+
+    private volatile boolean running;
+    private Thread writer;
+    private Path currentSpillFile;
+
+    public AuditWriteBehindSink(
+        JdbcTemplate jdbcTemplate,
+        TransactionTemplate transactionTemplate,
+        ObjectMapper objectMapper,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.properties = applicationProperties.getAudit();
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, properties.getBufferCapacity()));
+        if (properties.getSpillDirectory() == null || properties.getSpillDirectory().isBlank()) {
+            throw new IllegalStateException("application.audit.spill-directory must be set to a durable directory");
+        }
+        this.spillDirectory = Paths.get(properties.getSpillDirectory()).toAbsolutePath().normalize();
+
+        Gauge.builder("audit.buffer.depth", buffer, BlockingQueue::size).description("Audit entries waiting to be written").register(
+            meterRegistry
+        );
+        Gauge.builder("audit.buffer.capacity", buffer, b -> b.size() + b.remainingCapacity()).register(meterRegistry);
+        this.writeTimer = Timer.builder("audit.write.batch").description("Latency of one JDBC audit batch insert").register(meterRegistry);
+        this.writtenCounter = Counter.builder("audit.events.written").register(meterRegistry);
+        this.droppedCounter = Counter.builder("audit.events.dropped").description("Audit entries discarded on overflow").register(
+            meterRegistry
+        );
+        this.spilledCounter = Counter.builder("audit.events.spilled").description("Audit entries written to the spill directory").register(
+            meterRegistry
+        );
+        this.deadLetterCounter = Counter.builder("audit.events.dead_lettered")
+            .description("Spilled audit entries the database rejected, moved to the dead-letter file")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        checkSpillDirectory();
+        running = true;
+        writer = new Thread(this::runWriter, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Spilled entries are the only copy of audit events the database has not accepted yet, so an unusable spill
+     * directory fails startup instead of surfacing on the first overflow. A directory under the temp dir works but may
+     * be wiped on reboot, which is logged loudly.
+     */
+    void checkSpillDirectory() {
+        try {
+            Files.createDirectories(spillDirectory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Audit spill directory " + spillDirectory + " cannot be created", e);
+        }
+        if (!Files.isDirectory(spillDirectory) || !Files.isWritable(spillDirectory)) {
+            throw new IllegalStateException("Audit spill directory " + spillDirectory + " is not writable");
+        }
+        Path tempDirectory = Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+        if (spillDirectory.startsWith(tempDirectory)) {
+            LOG.warn(
+                "Audit spill directory {} is inside the temp directory; spilled audit events may be lost on reboot. " +
+                "Set application.audit.spill-directory to a durable path",
+                spillDirectory
+            );
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(properties.getShutdownTimeout().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<AuditEntry> remaining = new ArrayList<>();
+        buffer.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            LOG.warn("Audit writer did not drain {} entries before shutdown, spilling them", remaining.size());
+            spill(remaining);
+        }
+    }
+
+    /**
+     * Enqueues an entry without touching the database. Never throws.
+     */
+    public void submit(AuditEntry entry) {
+        if (buffer.offer(entry)) {
+            return;
+        }
+        switch (properties.getOverflowPolicy()) {
+            case BLOCK -> {
+                try {
+                    if (buffer.offer(entry, properties.getBlockTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                spill(List.of(entry));
+            }
+            case SPILL -> spill(List.of(entry));
+            case DROP -> droppedCounter.increment();
+        }
+    }
+
+    private void runWriter() {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        long flushMillis = properties.getFlushInterval().toMillis();
+        List<AuditEntry> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                AuditEntry first = buffer.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    replaySpill();
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                writeOrSpill(batch);
+            } catch (InterruptedException e) {
+                // stop() interrupts a writer parked on an empty buffer; loop condition decides whether to keep draining
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error in audit writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeOrSpill(List<AuditEntry> batch) {
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            LOG.warn("Audit batch of {} entries failed, spilling to disk: {}", batch.size(), e.getMessage());
+            spill(batch);
+        }
+    }
+
+    void write(Collection<AuditEntry> entries) {
+        List<AuditEntry> events = entries.stream().filter(e -> e.kind() == AuditEntry.Kind.AUDIT_EVENT).toList();
+        List<AuditEntry> logs = entries.stream().filter(e -> e.kind() == AuditEntry.Kind.AUDIT_LOG).toList();
+        writeTimer.record(() ->
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!events.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_AUDIT_EVENT, setter(events, this::bindAuditEvent));
+                }
+                if (!logs.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_AUDIT_LOG, setter(logs, this::bindAuditLog));
+                }
+            })
+        );
+        writtenCounter.increment(entries.size());
+    }
+
+    private void bindAuditEvent(PreparedStatement ps, AuditEntry e) throws SQLException {
+        Timestamp ts = Timestamp.from(e.timestamp());
+        String createdBy = e.createdBy() != null ? e.createdBy() : Constants.SYSTEM;
+        ps.setTimestamp(1, ts, utc);
+        ps.setString(2, e.actor());
+        ps.setString(3, e.actorRoles());
+        ps.setString(4, e.ip());
+        ps.setString(5, e.userAgent());
+        ps.setString(6, e.action());
+        ps.setString(7, e.resource());
+        ps.setString(8, e.outcome());
+        ps.setString(9, e.detail());
+        ps.setString(10, createdBy);
+        ps.setTimestamp(11, ts, utc);
+        ps.setString(12, createdBy);
+        ps.setTimestamp(13, ts, utc);
+    }
+
+    private void bindAuditLog(PreparedStatement ps, AuditEntry e) throws SQLException {
+        ps.setString(1, e.actor());
+        ps.setString(2, e.action());
+        ps.setString(3, e.resource());
+        ps.setString(4, e.detail());
+        ps.setString(5, e.outcome());
+        ps.setTimestamp(6, Timestamp.from(e.timestamp()), utc);
+    }
+
+    private static BatchPreparedStatementSetter setter(List<AuditEntry> entries, Binder binder) {
+        return new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                binder.bind(ps, entries.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        };
+    }
+
+    private void spill(List<AuditEntry> entries) {
+        synchronized (spillLock) {
+            try {
+                if (currentSpillFile == null) {
+                    Files.createDirectories(spillDirectory);
+                    currentSpillFile = spillDirectory.resolve("audit-" + System.currentTimeMillis() + SPILL_SUFFIX);
+                }
+                try (
+                    BufferedWriter out = Files.newBufferedWriter(
+                        currentSpillFile,
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND
+                    )
+                ) {
+                    for (AuditEntry entry : entries) {
+                        out.write(objectMapper.writeValueAsString(entry));
+                        out.newLine();
+                    }
+                }
+                spilledCounter.increment(entries.size());
+            } catch (IOException e) {
+                LOG.error("Unable to spill {} audit entries to {}, dropping them", entries.size(), spillDirectory, e);
+                droppedCounter.increment(entries.size());
+            }
+        }
+    }
+
+    /**
+     * Replays the oldest spill file while the buffer is idle. The file being appended to is sealed first so new
+     * overflow goes to a fresh file. Progress is saved after every written batch; a crash between a commit and the
+     * progress update writes that one batch again.
+     */
+    private void replaySpill() {
+        Optional<Path> next = nextSpillFile();
+        if (next.isEmpty()) {
+            return;
+        }
+        Path file = next.orElseThrow();
+        if (file.toString().endsWith(SPILL_SUFFIX)) {
+            Path replay = file.resolveSibling(file.getFileName() + REPLAY_SUFFIX);
+            synchronized (spillLock) {
+                if (file.equals(currentSpillFile)) {
+                    currentSpillFile = null;
+                }
+                try {
+                    Files.move(file, replay);
+                } catch (IOException e) {
+                    LOG.warn("Unable to seal audit spill file {}: {}", file, e.getMessage());
+                    return;
+                }
+            }
+            file = replay;
+        }
+
+        Path offsetFile = file.resolveSibling(file.getFileName() + OFFSET_SUFFIX);
+        int batchSize = Math.max(1, properties.getBatchSize());
+        long offset = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            offset = readOffset(offsetFile);
+            for (long skipped = 0; skipped < offset && in.readLine() != null; skipped++) {
+                // already in the database
+            }
+            List<String> lines = new ArrayList<>(batchSize);
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() >= batchSize) {
+                    offset = replayBatch(offsetFile, offset, lines);
+                    lines.clear();
+                }
+            }
+            if (!lines.isEmpty()) {
+                offset = replayBatch(offsetFile, offset, lines);
+            }
+            Files.delete(file);
+            Files.deleteIfExists(offsetFile);
+            LOG.info("Replayed audit spill file {}", file.getFileName());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Replay of audit spill file {} stopped at line {}, retrying later: {}", file, offset, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes one batch of spill lines and returns the new offset. If the batch fails it is retried line by line so a
+     * rejected row only costs itself; any other failure propagates with the offset of the last written line saved.
+     */
+    private long replayBatch(Path offsetFile, long offset, List<String> lines) throws IOException {
+        try {
+            List<AuditEntry> entries = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                if (!line.isBlank()) {
+                    entries.add(objectMapper.readValue(line, AuditEntry.class));
+                }
+            }
+            write(entries);
+            return saveOffset(offsetFile, offset + lines.size());
+        } catch (JsonProcessingException | RuntimeException e) {
+            LOG.debug("Audit replay batch failed, retrying line by line: {}", e.getMessage());
+        }
+        for (String line : lines) {
+            replayLine(line);
+            offset = saveOffset(offsetFile, offset + 1);
+        }
+        return offset;
+    }
+
+    private void replayLine(String line) throws IOException {
+        if (line.isBlank()) {
+            return;
+        }
+        AuditEntry entry;
+        try {
+            entry = objectMapper.readValue(line, AuditEntry.class);
+        } catch (JsonProcessingException e) {
+            deadLetter(line, e);
+            return;
+        }
+        try {
+            write(List.of(entry));
+        } catch (DataIntegrityViolationException e) {
+            deadLetter(line, e);
+        }
+    }
+
+    private void deadLetter(String line, Exception cause) throws IOException {
+        Path deadLetterFile = spillDirectory.resolve(DEAD_LETTER_FILE);
+        try (
+            BufferedWriter out = Files.newBufferedWriter(
+                deadLetterFile,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+            )
+        ) {
+            out.write(line);
+            out.newLine();
+        }
+        deadLetterCounter.increment();
+        LOG.error("Audit entry rejected on replay, moved to {}: {}", deadLetterFile, cause.getMessage());
+    }
+
+    private static long readOffset(Path offsetFile) throws IOException {
+        return Files.exists(offsetFile) ? Long.parseLong(Files.readString(offsetFile, StandardCharsets.UTF_8).trim()) : 0;
+    }
+
+    private static long saveOffset(Path offsetFile, long offset) throws IOException {
+        Path tmp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        Files.writeString(tmp, Long.toString(offset), StandardCharsets.UTF_8);
+        Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return offset;
+    }
+
+    private Optional<Path> nextSpillFile() {
+        if (!Files.isDirectory(spillDirectory)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files
+                .filter(p -> p.toString().endsWith(SPILL_SUFFIX) || p.toString().endsWith(SPILL_SUFFIX + REPLAY_SUFFIX))
+                .min((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
+        } catch (IOException e) {
+            LOG.warn("Unable to list audit spill directory {}: {}", spillDirectory, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement ps, AuditEntry entry) throws SQLException;
+    }
+}
@@ -2,7 +2,9 @@ package com.yuzhi.dtadmin.service.dto;
 
 import jakarta.persistence.Lob;
 import jakarta.validation.constraints.*;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus;
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.Objects;
 
 /**
@@ -27,6 +29,12 @@ public class ApprovalItemDTO implements Serializable {
 
     private Long requestId;
 
+    private ApprovalItemApplyStatus applyStatus;
+
+    private String applyError;
+
+    private Instant appliedAt;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here
 
     public Long getId() {
@@ -77,6 +85,30 @@ public class ApprovalItemDTO implements Serializable {
         this.requestId = requestId;
     }
 
+    public ApprovalItemApplyStatus getApplyStatus() {
+        return applyStatus;
+    }
+
+    public void setApplyStatus(ApprovalItemApplyStatus applyStatus) {
+        this.applyStatus = applyStatus;
+    }
+
+    public String getApplyError() {
+        return applyError;
+    }
+
+    public void setApplyError(String applyError) {
+        this.applyError = applyError;
+    }
+
+    public Instant getAppliedAt() {
+        return appliedAt;
+    }
+
+    public void setAppliedAt(Instant appliedAt) {
+        this.appliedAt = appliedAt;
+    }
+
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here
 
     @Override
@@ -109,6 +141,7 @@ public class ApprovalItemDTO implements Serializable {
             ", targetId='" + getTargetId() + "'" +
             ", seqNumber=" + getSeqNumber() +
             ", payload='" + getPayload() + "'" +
+            ", applyStatus='" + getApplyStatus() + "'" +
             ", requestId=" + (getRequestId() != null ? getRequestId() : "null") +
             "}";
     }
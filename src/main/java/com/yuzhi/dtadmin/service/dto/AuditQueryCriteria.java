@@ -11,6 +11,12 @@ public class AuditQueryCriteria {
     private String action;
     private String resource;
     private AuditOutcome outcome;
+    /** Keyset cursor: timestamp of the last event on the previous page. */
+    private Instant beforeTimestamp;
+    /** Keyset cursor: id of the last event on the previous page. */
+    private Long beforeId;
+    /** Page size; {@code null} returns every match. */
+    private Integer size;
 
     public Instant getFrom() {
         return from;
@@ -59,4 +65,28 @@ public class AuditQueryCriteria {
     public void setOutcome(AuditOutcome outcome) {
         this.outcome = outcome;
     }
+
+    public Instant getBeforeTimestamp() {
+        return beforeTimestamp;
+    }
+
+    public void setBeforeTimestamp(Instant beforeTimestamp) {
+        this.beforeTimestamp = beforeTimestamp;
+    }
+
+    public Long getBeforeId() {
+        return beforeId;
+    }
+
+    public void setBeforeId(Long beforeId) {
+        this.beforeId = beforeId;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
 }
@@ -5,20 +5,29 @@ import com.yuzhi.dtadmin.domain.enumeration.AdminRole;
 import com.yuzhi.dtadmin.domain.enumeration.AuditOutcome;
 import com.yuzhi.dtadmin.security.AdminPrincipal;
 import com.yuzhi.dtadmin.security.AdminSecurityUtils;
+import com.yuzhi.dtadmin.service.admin.AuditExportService;
 import com.yuzhi.dtadmin.service.admin.AuditService;
 import com.yuzhi.dtadmin.service.dto.AuditEventDTO;
 import com.yuzhi.dtadmin.service.dto.AuditQueryCriteria;
 import com.yuzhi.dtadmin.web.rest.util.ApiResponseUtil;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -27,12 +36,29 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/admin/audit")
 public class AdminAuditResource {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    static final String PAGE_SIZE_HEADER = "X-Page-Size";
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final AuditService auditService;
 
-    public AdminAuditResource(AuditService auditService) {
+    private final AuditExportService auditExportService;
+
+    public AdminAuditResource(AuditService auditService, AuditExportService auditExportService) {
         this.auditService = auditService;
+        this.auditExportService = auditExportService;
     }
 
+    /**
+     * Lists events newest first, one page at a time. Without {@code size} a page holds {@value #DEFAULT_PAGE_SIZE}
+     * events and {@code size} is capped at {@value #MAX_PAGE_SIZE}; the size applied is returned in
+     * {@value #PAGE_SIZE_HEADER}. When {@value #NEXT_CURSOR_HEADER} is present more events may match: pass it back as
+     * {@code cursor} to read the next page. A malformed cursor, time or outcome is answered with 400.
+     */
     @GetMapping
     public ResponseEntity<Map<String, Object>> query(
         @RequestParam(value = "from", required = false) String from,
@@ -40,7 +66,9 @@ public class AdminAuditResource {
         @RequestParam(value = "actor", required = false) String actor,
         @RequestParam(value = "action", required = false) String action,
         @RequestParam(value = "resource", required = false) String resource,
-        @RequestParam(value = "outcome", required = false) String outcome
+        @RequestParam(value = "outcome", required = false) String outcome,
+        @RequestParam(value = "size", required = false) Integer size,
+        @RequestParam(value = "cursor", required = false) String cursor
     ) {
         requireRole(AdminRole.AUDITADMIN);
         AuditQueryCriteria criteria = new AuditQueryCriteria();
@@ -50,33 +78,101 @@ public class AdminAuditResource {
         criteria.setAction(action);
         criteria.setResource(resource);
         criteria.setOutcome(outcome != null ? AuditOutcome.valueOf(outcome.toUpperCase(Locale.ROOT)) : null);
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        criteria.setSize(pageSize);
+        applyCursor(criteria, cursor);
         List<AuditEventDTO> events = auditService.findByCriteria(criteria);
-        return ResponseEntity.ok(ApiResponseUtil.createSuccessResponse(events));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(PAGE_SIZE_HEADER, String.valueOf(pageSize));
+        if (events.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, encodeCursor(events.get(events.size() - 1)));
+        }
+        return response.body(ApiResponseUtil.createSuccessResponse(events));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> detail(@PathVariable("id") Long id) {
+        requireRole(AdminRole.AUDITADMIN);
+        return auditService
+            .findOne(id)
+            .map(event -> ResponseEntity.ok(ApiResponseUtil.createSuccessResponse(event)))
+            .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Streams the export to the response; rows go from the JDBC cursor to the socket without being collected.
+     */
     @GetMapping("/export")
     @Audited(action = "audit.export", resource = "audit")
-    public ResponseEntity<byte[]> export(
+    public void export(
         @RequestParam(value = "format", defaultValue = "csv") String format,
         @RequestParam(value = "from", required = false) String from,
-        @RequestParam(value = "to", required = false) String to
-    ) {
+        @RequestParam(value = "to", required = false) String to,
+        @RequestParam(value = "actor", required = false) String actor,
+        @RequestParam(value = "action", required = false) String action,
+        @RequestParam(value = "resource", required = false) String resource,
+        @RequestParam(value = "outcome", required = false) String outcome,
+        @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+        HttpServletResponse response
+    ) throws IOException {
         requireRole(AdminRole.AUDITADMIN);
         AuditQueryCriteria criteria = new AuditQueryCriteria();
         criteria.setFrom(parseInstant(from));
         criteria.setTo(parseInstant(to));
-        List<AuditEventDTO> events = auditService.findByCriteria(criteria);
-        byte[] data = auditService.export(events, format);
-        String filename = "audit." + ("csv".equalsIgnoreCase(format) ? "csv" : "json");
-        return ResponseEntity
-            .ok()
-            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-            .contentType("csv".equalsIgnoreCase(format) ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON)
-            .contentLength(data.length)
-            .body(data);
+        criteria.setActor(actor);
+        criteria.setAction(action);
+        criteria.setResource(resource);
+        criteria.setOutcome(outcome != null ? AuditOutcome.valueOf(outcome.toUpperCase(Locale.ROOT)) : null);
+        boolean csv = "csv".equalsIgnoreCase(format);
+        String filename = "audit." + (csv ? "csv" : "json") + (gzip ? ".gz" : "");
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+        response.setContentType(gzip ? "application/gzip" : csv ? MediaType.TEXT_PLAIN_VALUE : MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+            auditExportService.export(criteria, csv, gzipOut);
+            gzipOut.finish();
+        } else {
+            auditExportService.export(criteria, csv, out);
+        }
+        out.flush();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> handleInvalidParameter(IllegalArgumentException ex) {
+        return ResponseEntity.badRequest().body(ApiResponseUtil.createErrorResponse(HttpStatus.BAD_REQUEST.value(), ex.getMessage()));
+    }
+
+    /**
+     * Cursor format is {@code <ISO-8601 timestamp>,<id>} of the last event of the previous page, as returned in
+     * {@value #NEXT_CURSOR_HEADER}.
+     */
+    static String encodeCursor(AuditEventDTO last) {
+        return last.getTimestamp() + "," + last.getId();
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} (answered with 400) when the cursor was not produced by
+     * {@link #encodeCursor}.
+     */
+    static void applyCursor(AuditQueryCriteria criteria, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return;
+        }
+        int separator = cursor.lastIndexOf(',');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        criteria.setBeforeTimestamp(parseInstant(cursor.substring(0, separator)));
+        try {
+            criteria.setBeforeId(Long.parseLong(cursor.substring(separator + 1)));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
     }
 
-    private Instant parseInstant(String value) {
+    private static Instant parseInstant(String value) {
         if (value == null || value.isEmpty()) {
             return null;
         }
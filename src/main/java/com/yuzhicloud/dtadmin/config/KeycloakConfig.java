@@ -3,20 +3,39 @@ package com.yuzhicloud.dtadmin.config;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.DefaultHostnameVerifier;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import javax.net.ssl.HttpsURLConnection;
 import java.security.cert.X509Certificate;
 import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Keycloak配置类
@@ -56,6 +75,27 @@ public class KeycloakConfig {
     @Value("${app.keycloak.ssl.trust-all:true}")
     private boolean trustAllCertificates;
 
+    @Value("${app.keycloak.http.max-total:100}")
+    private int httpMaxTotal;
+
+    @Value("${app.keycloak.http.max-per-route:50}")
+    private int httpMaxPerRoute;
+
+    @Value("${app.keycloak.http.connect-timeout:PT5S}")
+    private Duration httpConnectTimeout;
+
+    @Value("${app.keycloak.http.read-timeout:PT30S}")
+    private Duration httpReadTimeout;
+
+    @Value("${app.keycloak.http.connection-request-timeout:PT5S}")
+    private Duration httpConnectionRequestTimeout;
+
+    @Value("${app.keycloak.http.idle-eviction:PT60S}")
+    private Duration httpIdleEviction;
+
+    @Value("${app.keycloak.http.time-to-live:PT15M}")
+    private Duration httpTimeToLive;
+
     /**
      * 创建Keycloak Admin Client
      * 用于调用Keycloak管理API
@@ -80,25 +120,90 @@ public class KeycloakConfig {
                 .build();
     }
 
+    /**
+     * 创建Keycloak REST调用共享的连接池HTTP客户端
+     * 连接按路由限流并保持长连接，复用同一个SSLContext以便TLS会话复用，空闲和过期连接由后台线程回收
+     */
+    @Bean("keycloakHttpClient")
+    public CloseableHttpClient keycloakHttpClient(MeterRegistry meterRegistry) throws Exception {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                        .setSslContext(createSslContext())
+                        .setHostnameVerifier(createHostnameVerifier())
+                        .build())
+                .setMaxConnTotal(httpMaxTotal)
+                .setMaxConnPerRoute(httpMaxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(httpConnectTimeout))
+                        .setSocketTimeout(Timeout.of(httpReadTimeout))
+                        .setTimeToLive(TimeValue.of(httpTimeToLive))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+
+        registerPoolGauge(meterRegistry, connectionManager, "keycloak.http.pool.leased", PoolStats::getLeased);
+        registerPoolGauge(meterRegistry, connectionManager, "keycloak.http.pool.available", PoolStats::getAvailable);
+        registerPoolGauge(meterRegistry, connectionManager, "keycloak.http.pool.pending", PoolStats::getPending);
+        registerPoolGauge(meterRegistry, connectionManager, "keycloak.http.pool.max", PoolStats::getMax);
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(httpConnectionRequestTimeout))
+                        .setResponseTimeout(Timeout.of(httpReadTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(httpIdleEviction))
+                .build();
+    }
+
     /**
      * 创建用于Keycloak REST API调用的RestTemplate
-     * 如果配置了trust-all-certificates，则忽略SSL证书验证
+     * 基于共享连接池，如果配置了trust-all-certificates，则忽略SSL证书验证
      */
     @Bean("keycloakRestTemplate")
-    public RestTemplate keycloakRestTemplate() throws Exception {
-        if (trustAllCertificates) {
-            configureTrustAllCertificates();
+    public RestTemplate keycloakRestTemplate(@Qualifier("keycloakHttpClient") CloseableHttpClient keycloakHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(keycloakHttpClient));
+    }
+
+    private void registerPoolGauge(MeterRegistry meterRegistry, PoolingHttpClientConnectionManager connectionManager,
+                                   String name, ToDoubleFunction<PoolStats> stat) {
+        Gauge.builder(name, connectionManager, manager -> stat.applyAsDouble(manager.getTotalStats()))
+                .description("Keycloak HTTP connection pool statistics")
+                .register(meterRegistry);
+    }
+
+    private SSLContext createSslContext() throws Exception {
+        if (!trustAllCertificates) {
+            return SSLContext.getDefault();
         }
-        
-        return new RestTemplate();
+        SSLContext sc = SSLContext.getInstance("TLS");
+        sc.init(null, trustAllTrustManagers(), new SecureRandom());
+        return sc;
+    }
+
+    private HostnameVerifier createHostnameVerifier() {
+        return trustAllCertificates ? NoopHostnameVerifier.INSTANCE : new DefaultHostnameVerifier();
     }
 
     /**
      * 配置信任所有SSL证书
      */
     private void configureTrustAllCertificates() throws Exception {
-        // 创建信任所有证书的TrustManager
-        TrustManager[] trustAllCerts = new TrustManager[] {
+        // 安装信任所有证书的TrustManager
+        SSLContext sc = SSLContext.getInstance("SSL");
+        sc.init(null, trustAllTrustManagers(), new SecureRandom());
+        HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+        
+        // 禁用主机名验证
+        HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+    }
+
+    /**
+     * 创建信任所有证书的TrustManager
+     */
+    private TrustManager[] trustAllTrustManagers() {
+        return new TrustManager[] {
             new X509TrustManager() {
                 public X509Certificate[] getAcceptedIssuers() {
                     return null;
@@ -109,14 +214,6 @@ public class KeycloakConfig {
                 }
             }
         };
-
-        // 安装信任所有证书的TrustManager
-        SSLContext sc = SSLContext.getInstance("SSL");
-        sc.init(null, trustAllCerts, new SecureRandom());
-        HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-        
-        // 禁用主机名验证
-        HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
     }
 
     public String getKeycloakServerUrl() {
@@ -0,0 +1,57 @@
+package com.yuzhicloud.dtadmin.dto.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * Keycloak批量审批DTO
+ * 用于一次审批通过多个审批请求
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KeycloakBatchApprovalDTO {
+
+    private List<Long> requestIds;
+
+    private String approver;
+
+    private String note;
+
+    // 默认构造函数
+    public KeycloakBatchApprovalDTO() {
+    }
+
+    // Getter和Setter方法
+    public List<Long> getRequestIds() {
+        return requestIds;
+    }
+
+    public void setRequestIds(List<Long> requestIds) {
+        this.requestIds = requestIds;
+    }
+
+    public String getApprover() {
+        return approver;
+    }
+
+    public void setApprover(String approver) {
+        this.approver = approver;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+
+    @Override
+    public String toString() {
+        return "KeycloakBatchApprovalDTO{" +
+                "requestIds=" + requestIds +
+                ", approver='" + approver + '\'' +
+                ", note='" + note + '\'' +
+                '}';
+    }
+}
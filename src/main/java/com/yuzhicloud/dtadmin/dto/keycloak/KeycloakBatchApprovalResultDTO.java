@@ -0,0 +1,62 @@
+package com.yuzhicloud.dtadmin.dto.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Keycloak批量审批结果DTO
+ * 记录批量审批中每个请求的执行结果
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KeycloakBatchApprovalResultDTO {
+
+    private Long requestId;
+
+    private String status;
+
+    private String errorMessage;
+
+    // 默认构造函数
+    public KeycloakBatchApprovalResultDTO() {
+    }
+
+    // 全参构造函数
+    public KeycloakBatchApprovalResultDTO(Long requestId, String status, String errorMessage) {
+        this.requestId = requestId;
+        this.status = status;
+        this.errorMessage = errorMessage;
+    }
+
+    // Getter和Setter方法
+    public Long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(Long requestId) {
+        this.requestId = requestId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "KeycloakBatchApprovalResultDTO{" +
+                "requestId=" + requestId +
+                ", status='" + status + '\'' +
+                ", errorMessage='" + errorMessage + '\'' +
+                '}';
+    }
+}
@@ -28,7 +28,7 @@ public class KeycloakTokenDTO {
     @JsonProperty("id_token")
     private String idToken;
     
-    @JsonProperty("not_before_policy")
+    @JsonProperty("not-before-policy")
     private Integer notBeforePolicy;
     
     @JsonProperty("session_state")
@@ -0,0 +1,97 @@
+package com.yuzhicloud.dtadmin.dto.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入进度DTO
+ * 按审批项的同步结果统计成功、失败与待处理行数，failures列出失败行（最多列出前若干条）
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KeycloakUserImportProgressDTO {
+
+    private Long requestId;
+
+    private String status;
+
+    private long total;
+
+    private long succeeded;
+
+    private long failed;
+
+    private long pending;
+
+    private List<KeycloakUserImportRowDTO> failures = new ArrayList<>();
+
+    // Getter和Setter方法
+    public Long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(Long requestId) {
+        this.requestId = requestId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public void setSucceeded(long succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public long getPending() {
+        return pending;
+    }
+
+    public void setPending(long pending) {
+        this.pending = pending;
+    }
+
+    public List<KeycloakUserImportRowDTO> getFailures() {
+        return failures;
+    }
+
+    public void setFailures(List<KeycloakUserImportRowDTO> failures) {
+        this.failures = failures;
+    }
+
+    @Override
+    public String toString() {
+        return "KeycloakUserImportProgressDTO{" +
+                "requestId=" + requestId +
+                ", status='" + status + '\'' +
+                ", total=" + total +
+                ", succeeded=" + succeeded +
+                ", failed=" + failed +
+                ", pending=" + pending +
+                '}';
+    }
+}
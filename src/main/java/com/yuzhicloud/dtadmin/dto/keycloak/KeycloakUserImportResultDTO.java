@@ -0,0 +1,64 @@
+package com.yuzhicloud.dtadmin.dto.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入提交结果DTO
+ * 全部行校验通过时返回创建的审批请求ID，否则requestId为空，errors列出未通过的行（最多列出前若干条）
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KeycloakUserImportResultDTO {
+
+    private Long requestId;
+
+    private int accepted;
+
+    private int rejected;
+
+    private List<KeycloakUserImportRowDTO> errors = new ArrayList<>();
+
+    // Getter和Setter方法
+    public Long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(Long requestId) {
+        this.requestId = requestId;
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(int accepted) {
+        this.accepted = accepted;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(int rejected) {
+        this.rejected = rejected;
+    }
+
+    public List<KeycloakUserImportRowDTO> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<KeycloakUserImportRowDTO> errors) {
+        this.errors = errors;
+    }
+
+    @Override
+    public String toString() {
+        return "KeycloakUserImportResultDTO{" +
+                "requestId=" + requestId +
+                ", accepted=" + accepted +
+                ", rejected=" + rejected +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package com.yuzhicloud.dtadmin.dto.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * 批量导入的单行结果
+ * 记录校验未通过或同步到Keycloak失败的行号、用户名与原因
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KeycloakUserImportRowDTO {
+
+    private Integer row;
+
+    private String username;
+
+    private String message;
+
+    // 默认构造函数
+    public KeycloakUserImportRowDTO() {
+    }
+
+    // 全参构造函数
+    public KeycloakUserImportRowDTO(Integer row, String username, String message) {
+        this.row = row;
+        this.username = username;
+        this.message = message;
+    }
+
+    // Getter和Setter方法
+    public Integer getRow() {
+        return row;
+    }
+
+    public void setRow(Integer row) {
+        this.row = row;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "KeycloakUserImportRowDTO{" +
+                "row=" + row +
+                ", username='" + username + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
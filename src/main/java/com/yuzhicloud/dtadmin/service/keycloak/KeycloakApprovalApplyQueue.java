@@ -0,0 +1,461 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhi.dtadmin.domain.ApprovalApplyJob;
+import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
+import com.yuzhi.dtadmin.repository.ApprovalApplyJobRepository;
+import com.yuzhi.dtadmin.repository.ApprovalRequestRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 审批同步队列
+ * 审批通过（单个或批量）时在同一事务中写入approval_apply_job（outbox），提交后由taskExecutor上的工作线程异步同步到Keycloak，
+ * 这是审批同步到Keycloak的唯一途径。一次拉取到的多个非导入任务作为一批交给{@link KeycloakBatchApprovalExecutor}，
+ * 同一用户的角色变更合并提交；每个任务仍单独记录结果与重试。
+ * 每个审批请求对应唯一的幂等键，失败按指数退避重试，超过最大次数后进入DEAD状态并将请求标记为FAILED。
+ * 任务执行期间按lockTimeout的三分之一周期续租（更新lockedAt），只有工作线程真正失联的任务才会被回收重新执行；
+ * 批量导入请求交给{@link KeycloakUserImportService}逐行执行，另外按处理进度发送心跳。
+ */
+@Service
+public class KeycloakApprovalApplyQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakApprovalApplyQueue.class);
+
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+
+    private final ApprovalApplyJobRepository jobRepository;
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final KeycloakBatchApprovalExecutor batchExecutor;
+    private final KeycloakUserImportService userImportService;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor taskExecutor;
+    private final Semaphore workerPermits;
+    private final ReentrantLock pollLock = new ReentrantLock();
+    private final Map<ApprovalApplyJobStatus, AtomicLong> depth = new EnumMap<>(ApprovalApplyJobStatus.class);
+    private final Timer applyLagTimer;
+    private final Counter succeededCounter;
+    private final Counter retriedCounter;
+    private final Counter deadCounter;
+    private final ScheduledExecutorService leaseRenewer;
+
+    @Value("${app.keycloak.approval.queue.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${app.keycloak.approval.queue.initial-backoff:PT5S}")
+    private Duration initialBackoff;
+
+    @Value("${app.keycloak.approval.queue.max-backoff:PT10M}")
+    private Duration maxBackoff;
+
+    @Value("${app.keycloak.approval.queue.lock-timeout:PT5M}")
+    private Duration lockTimeout;
+
+    public KeycloakApprovalApplyQueue(ApprovalApplyJobRepository jobRepository,
+                                      ApprovalRequestRepository approvalRequestRepository,
+                                      KeycloakBatchApprovalExecutor batchExecutor,
+                                      KeycloakUserImportService userImportService,
+                                      TransactionTemplate transactionTemplate,
+                                      @Qualifier("taskExecutor") Executor taskExecutor,
+                                      @Value("${app.keycloak.approval.queue.concurrency:4}") int concurrency,
+                                      MeterRegistry meterRegistry) {
+        this.jobRepository = jobRepository;
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.batchExecutor = batchExecutor;
+        this.userImportService = userImportService;
+        this.transactionTemplate = transactionTemplate;
+        this.taskExecutor = taskExecutor;
+        this.workerPermits = new Semaphore(Math.max(1, concurrency));
+
+        for (ApprovalApplyJobStatus status : List.of(ApprovalApplyJobStatus.PENDING, ApprovalApplyJobStatus.RUNNING, ApprovalApplyJobStatus.DEAD)) {
+            AtomicLong value = new AtomicLong();
+            depth.put(status, value);
+            Gauge.builder("keycloak.approval.queue.depth", value, AtomicLong::get)
+                .description("Approval apply jobs per status, refreshed on every poll")
+                .tag("status", status.name().toLowerCase())
+                .register(meterRegistry);
+        }
+        this.applyLagTimer = Timer.builder("keycloak.approval.apply.lag")
+            .description("Time from approval commit to successful Keycloak apply")
+            .register(meterRegistry);
+        this.succeededCounter = jobCounter(meterRegistry, "succeeded");
+        this.retriedCounter = jobCounter(meterRegistry, "retried");
+        this.deadCounter = jobCounter(meterRegistry, "dead");
+        this.leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-approval-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        leaseRenewer.shutdownNow();
+    }
+
+    private static Counter jobCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("keycloak.approval.apply.jobs")
+            .description("Approval apply job attempts by outcome")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * 在调用方事务中登记同步任务。同一请求重复审批时复用原任务（幂等键），
+     * 已结束的任务被重新放回队列。事务提交后立即触发一次拉取，避免等待下一个轮询周期
+     */
+    public void enqueue(Long requestId) {
+        String key = idempotencyKey(requestId);
+        ApprovalApplyJob job = jobRepository.findByIdempotencyKey(key).orElseGet(() -> {
+            ApprovalApplyJob created = new ApprovalApplyJob();
+            created.setRequestId(requestId);
+            created.setIdempotencyKey(key);
+            return created;
+        });
+        if (job.getId() != null && job.getStatus() == ApprovalApplyJobStatus.RUNNING) {
+            logger.info("Apply job for request {} is already running", requestId);
+            return;
+        }
+        Instant now = Instant.now();
+        job.setStatus(ApprovalApplyJobStatus.PENDING);
+        job.setAttempts(0);
+        job.setEnqueuedAt(now);
+        job.setNextAttemptAt(now);
+        job.setLockedAt(null);
+        job.setCompletedAt(null);
+        job.setLastError(null);
+        jobRepository.save(job);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    triggerPoll();
+                }
+            });
+        }
+    }
+
+    /**
+     * 定时拉取到期任务：先回收超时未完成的RUNNING任务，再按空闲工作线程数认领任务并提交到taskExecutor。
+     * 批量导入任务各自执行，其余任务作为一批执行，每个任务占用一个工作许可
+     */
+    @Scheduled(fixedDelayString = "${app.keycloak.approval.queue.poll-interval:PT2S}")
+    public void poll() {
+        if (!pollLock.tryLock()) {
+            return;
+        }
+        try {
+            Instant now = Instant.now();
+            Integer released = transactionTemplate.execute(status -> jobRepository.releaseStale(now.minus(lockTimeout)));
+            if (released != null && released > 0) {
+                logger.warn("Released {} stale approval apply jobs", released);
+            }
+
+            int capacity = workerPermits.availablePermits();
+            if (capacity > 0) {
+                List<Long> claimed = new ArrayList<>();
+                for (Long jobId : jobRepository.findDueJobIds(ApprovalApplyJobStatus.PENDING, now, PageRequest.of(0, capacity))) {
+                    if (!workerPermits.tryAcquire()) {
+                        break;
+                    }
+                    if (!claim(jobId)) {
+                        workerPermits.release();
+                        continue;
+                    }
+                    claimed.add(jobId);
+                }
+                if (!claimed.isEmpty()) {
+                    List<Long> imports = findImportJobs(claimed);
+                    imports.forEach(jobId -> dispatch(List.of(jobId)));
+                    List<Long> others = claimed.stream().filter(jobId -> !imports.contains(jobId)).toList();
+                    if (!others.isEmpty()) {
+                        dispatch(others);
+                    }
+                }
+            }
+            refreshDepth();
+        } catch (Exception e) {
+            logger.error("Error polling approval apply queue", e);
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    private void triggerPoll() {
+        try {
+            taskExecutor.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Immediate poll rejected, job will be picked up by the scheduler");
+        }
+    }
+
+    private boolean claim(Long jobId) {
+        Integer updated = transactionTemplate.execute(status -> jobRepository.claim(jobId, Instant.now()));
+        return updated != null && updated > 0;
+    }
+
+    private List<Long> findImportJobs(List<Long> jobIds) {
+        List<Long> imports = transactionTemplate.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (ApprovalApplyJob job : jobRepository.findAllById(jobIds)) {
+                boolean isImport = approvalRequestRepository.findById(job.getRequestId())
+                    .map(request -> request.getType() == ApprovalType.IMPORT_USERS)
+                    .orElse(false);
+                if (isImport) {
+                    ids.add(job.getId());
+                }
+            }
+            return ids;
+        });
+        return imports != null ? imports : List.of();
+    }
+
+    private void dispatch(List<Long> jobIds) {
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    process(jobIds);
+                } finally {
+                    workerPermits.release(jobIds.size());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            workerPermits.release(jobIds.size());
+            logger.warn("Executor rejected approval apply jobs {}, returning them to the queue", jobIds);
+            transactionTemplate.executeWithoutResult(status -> jobRepository.findAllById(jobIds).forEach(job -> {
+                job.setStatus(ApprovalApplyJobStatus.PENDING);
+                job.setLockedAt(null);
+                jobRepository.save(job);
+            }));
+        }
+    }
+
+    void process(Long jobId) {
+        process(List.of(jobId));
+    }
+
+    /**
+     * 执行一批任务。请求在短事务中加载，Keycloak调用期间不持有数据库连接；
+     * 导入请求逐个执行，其余请求一起交给批量执行器，按用户合并提交后逐个记录结果
+     */
+    void process(List<Long> jobIds) {
+        List<ApplyContext> contexts = transactionTemplate.execute(status -> {
+            List<ApplyContext> loaded = new ArrayList<>();
+            for (Long jobId : jobIds) {
+                jobRepository.findById(jobId).ifPresent(job -> {
+                    ApprovalRequest request = approvalRequestRepository.findById(job.getRequestId()).orElse(null);
+                    // 导入请求的审批项由导入服务分页读取
+                    if (request != null && request.getType() != ApprovalType.IMPORT_USERS) {
+                        Hibernate.initialize(request.getItems());
+                    }
+                    loaded.add(new ApplyContext(jobId, job.getRequestId(), job.getEnqueuedAt(), request));
+                });
+            }
+            return loaded;
+        });
+        if (contexts == null) {
+            return;
+        }
+
+        List<ApplyContext> batch = new ArrayList<>();
+        for (ApplyContext context : contexts) {
+            ApprovalRequest request = context.request();
+            if (request == null) {
+                markDead(context.jobId(), "Approval request not found: " + context.requestId());
+            } else if (request.getStatus() == ApprovalStatus.APPLIED) {
+                // 幂等：请求已同步过（例如worker在提交结果前崩溃），直接完成任务
+                complete(context);
+            } else if (request.getStatus() != ApprovalStatus.APPROVED) {
+                markDead(context.jobId(), "Request is not approved, current status: " + request.getStatus());
+            } else if (request.getType() == ApprovalType.IMPORT_USERS) {
+                applyImport(context);
+            } else {
+                batch.add(context);
+            }
+        }
+        if (!batch.isEmpty()) {
+            applyBatch(batch);
+        }
+    }
+
+    private void applyImport(ApplyContext context) {
+        Long jobId = context.jobId();
+        ScheduledFuture<?> lease = renewLease(jobId);
+        try {
+            userImportService.applyImport(context.requestId(), () -> heartbeat(jobId));
+        } catch (Exception e) {
+            logger.error("Error applying approval request {} (job {})", context.requestId(), jobId, e);
+            fail(jobId, context.requestId(), errorMessage(e));
+            return;
+        } finally {
+            lease.cancel(false);
+        }
+        complete(context);
+        logger.info("Applied approval request {} via queue", context.requestId());
+    }
+
+    private void applyBatch(List<ApplyContext> batch) {
+        List<ScheduledFuture<?>> leases = batch.stream().<ScheduledFuture<?>>map(context -> renewLease(context.jobId())).toList();
+        Map<Long, String> failures;
+        try {
+            failures = batchExecutor.apply(batch.stream().map(ApplyContext::request).toList());
+        } catch (Exception e) {
+            logger.error("Error applying approval requests {}", batch.stream().map(ApplyContext::requestId).toList(), e);
+            String error = errorMessage(e);
+            batch.forEach(context -> fail(context.jobId(), context.requestId(), error));
+            return;
+        } finally {
+            leases.forEach(lease -> lease.cancel(false));
+        }
+        for (ApplyContext context : batch) {
+            String error = failures.get(context.requestId());
+            if (error != null) {
+                fail(context.jobId(), context.requestId(), error);
+            } else {
+                complete(context);
+                logger.info("Applied approval request {} via queue", context.requestId());
+            }
+        }
+    }
+
+    /**
+     * 在任务执行期间定期续租，避免耗时的同步被releaseStale当作失联任务重新放回队列
+     */
+    private ScheduledFuture<?> renewLease(Long jobId) {
+        long interval = Math.max(1000L, lockTimeout.toMillis() / 3);
+        return leaseRenewer.scheduleAtFixedRate(() -> {
+            try {
+                heartbeat(jobId);
+            } catch (Exception e) {
+                logger.warn("Failed to renew lease of approval apply job {}", jobId, e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void heartbeat(Long jobId) {
+        Integer renewed = transactionTemplate.execute(status -> jobRepository.heartbeat(jobId, Instant.now()));
+        if (renewed == null || renewed == 0) {
+            logger.warn("Approval apply job {} is no longer running, its lease could not be renewed", jobId);
+        }
+    }
+
+    private void complete(ApplyContext context) {
+        Long jobId = context.jobId();
+        Instant now = Instant.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            approvalRequestRepository.findById(context.requestId()).ifPresent(request -> {
+                request.setStatus(ApprovalStatus.APPLIED);
+                request.setErrorMessage(null);
+                approvalRequestRepository.save(request);
+            });
+            jobRepository.findById(jobId).ifPresent(job -> {
+                job.setStatus(ApprovalApplyJobStatus.SUCCEEDED);
+                job.setAttempts(job.getAttempts() + 1);
+                job.setLockedAt(null);
+                job.setCompletedAt(now);
+                job.setLastError(null);
+                jobRepository.save(job);
+            });
+        });
+        succeededCounter.increment();
+        if (context.enqueuedAt() != null) {
+            applyLagTimer.record(Duration.between(context.enqueuedAt(), now));
+        }
+    }
+
+    private void fail(Long jobId, Long requestId, String error) {
+        transactionTemplate.executeWithoutResult(status -> jobRepository.findById(jobId).ifPresent(job -> {
+            int attempts = job.getAttempts() + 1;
+            job.setAttempts(attempts);
+            job.setLockedAt(null);
+            job.setLastError(error);
+            if (attempts >= maxAttempts) {
+                job.setStatus(ApprovalApplyJobStatus.DEAD);
+                job.setCompletedAt(Instant.now());
+                approvalRequestRepository.findById(requestId).ifPresent(request -> {
+                    request.setStatus(ApprovalStatus.FAILED);
+                    request.setErrorMessage(error);
+                    approvalRequestRepository.save(request);
+                });
+                deadCounter.increment();
+                logger.error("Approval apply job {} for request {} moved to dead letter after {} attempts", jobId, requestId, attempts);
+            } else {
+                job.setStatus(ApprovalApplyJobStatus.PENDING);
+                job.setNextAttemptAt(Instant.now().plus(backoff(attempts)));
+                retriedCounter.increment();
+            }
+            jobRepository.save(job);
+        }));
+    }
+
+    private void markDead(Long jobId, String error) {
+        transactionTemplate.executeWithoutResult(status -> jobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(ApprovalApplyJobStatus.DEAD);
+            job.setLockedAt(null);
+            job.setCompletedAt(Instant.now());
+            job.setLastError(error);
+            jobRepository.save(job);
+        }));
+        deadCounter.increment();
+        logger.warn("Approval apply job {} moved to dead letter: {}", jobId, error);
+    }
+
+    /**
+     * 第n次失败后的等待时间：initialBackoff * 2^(n-1)，上限maxBackoff，并加入最多20%的随机抖动
+     */
+    Duration backoff(int attempts) {
+        long base = initialBackoff.toMillis() << Math.min(Math.max(attempts - 1, 0), 20);
+        long capped = Math.min(base, maxBackoff.toMillis());
+        long jitter = (long) (capped * 0.2 * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis(capped + jitter);
+    }
+
+    private void refreshDepth() {
+        depth.forEach((status, value) -> value.set(jobRepository.countByStatus(status)));
+    }
+
+    static String idempotencyKey(Long requestId) {
+        return "approval-apply-" + requestId;
+    }
+
+    private String errorMessage(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return message.length() > MAX_ERROR_MESSAGE_LENGTH ? message.substring(0, MAX_ERROR_MESSAGE_LENGTH) : message;
+    }
+
+    private record ApplyContext(Long jobId, Long requestId, Instant enqueuedAt, ApprovalRequest request) {}
+}
@@ -10,6 +10,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * Keycloak审批服务
@@ -21,15 +24,15 @@ public class KeycloakApprovalService {
     private static final Logger logger = LoggerFactory.getLogger(KeycloakApprovalService.class);
     
     private final ApprovalRequestRepository approvalRequestRepository;
-    private final KeycloakUserSyncService userSyncService;
     private final AuditLogUtil auditLogUtil;
+    private final KeycloakApprovalApplyQueue applyQueue;
 
     public KeycloakApprovalService(ApprovalRequestRepository approvalRequestRepository,
-                                  KeycloakUserSyncService userSyncService,
-                                  AuditLogUtil auditLogUtil) {
+                                  AuditLogUtil auditLogUtil,
+                                  KeycloakApprovalApplyQueue applyQueue) {
         this.approvalRequestRepository = approvalRequestRepository;
-        this.userSyncService = userSyncService;
         this.auditLogUtil = auditLogUtil;
+        this.applyQueue = applyQueue;
     }
 
     /**
@@ -52,16 +55,42 @@ public class KeycloakApprovalService {
             // 记录审计日志
             auditLogUtil.logApprovalApproved(approver, requestId, note);
             
-            // 审批通过后立即同步到Keycloak
-            userSyncService.processApprovedRequest(requestId);
+            // 登记同步任务，事务提交后由队列异步同步到Keycloak
+            applyQueue.enqueue(requestId);
             
-            logger.info("Approved and processed request: {}", requestId);
+            logger.info("Approved request {} and queued Keycloak apply", requestId);
         } catch (Exception e) {
             logger.error("Error approving request: {}", requestId, e);
             throw new RuntimeException("Failed to approve request", e);
         }
     }
 
+    /**
+     * 批量审批通过请求
+     * 状态以条件更新从PENDING改为APPROVED，已审批（含并发审批）的请求被跳过，避免重复同步；
+     * 本次批准的请求在同一事务中登记同步任务，由队列按用户合并同步到Keycloak
+     *
+     * @return 本次由PENDING改为APPROVED的请求ID，保持传入顺序
+     */
+    @Transactional
+    public List<Long> approveRequests(List<Long> requestIds, String approver, String note) {
+        Instant decidedAt = Instant.now();
+        List<Long> approved = new ArrayList<>();
+        for (Long requestId : new LinkedHashSet<>(requestIds)) {
+            if (approvalRequestRepository.approveIfPending(requestId, approver, note, decidedAt) == 0) {
+                logger.warn("Skip approving request {}: not found or no longer pending", requestId);
+                continue;
+            }
+            approved.add(requestId);
+
+            // 记录审计日志
+            auditLogUtil.logApprovalApproved(approver, requestId, note);
+
+            applyQueue.enqueue(requestId);
+        }
+        return approved;
+    }
+
     /**
      * 审批拒绝请求
      */
@@ -90,10 +119,34 @@ public class KeycloakApprovalService {
     }
     
     /**
-     * 处理已批准的请求并同步到Keycloak
+     * 重新同步失败的请求。批量导入只会重试未成功的行
      */
     @Transactional
-    public void processApprovedRequest(Long requestId) {
-        userSyncService.processApprovedRequest(requestId);
+    public void retryRequest(Long requestId) {
+        ApprovalRequest request = approvalRequestRepository.findById(requestId)
+                .orElseThrow(() -> new IllegalArgumentException("Approval request not found: " + requestId));
+        if (request.getStatus() != ApprovalStatus.FAILED && request.getStatus() != ApprovalStatus.APPROVED) {
+            throw new IllegalStateException("Only failed or approved requests can be retried, current status: " + request.getStatus());
+        }
+        request.setStatus(ApprovalStatus.APPROVED);
+        request.setErrorMessage(null);
+        approvalRequestRepository.save(request);
+
+        applyQueue.enqueue(requestId);
+        logger.info("Re-queued Keycloak apply for request {}", requestId);
+    }
+
+    /**
+     * 为已批准的请求登记同步任务。同步只经由队列执行，重复登记复用同一任务
+     */
+    @Transactional
+    public void queueApprovedRequest(Long requestId) {
+        ApprovalRequest request = approvalRequestRepository.findById(requestId)
+                .orElseThrow(() -> new IllegalArgumentException("Approval request not found: " + requestId));
+        if (request.getStatus() != ApprovalStatus.APPROVED) {
+            throw new IllegalStateException("Request is not approved, current status: " + request.getStatus());
+        }
+        applyQueue.enqueue(requestId);
+        logger.info("Queued Keycloak apply for request {}", requestId);
     }
-}
\ No newline at end of file
+}
@@ -4,15 +4,22 @@ import com.yuzhicloud.dtadmin.config.KeycloakConfig;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakTokenDTO;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.Keycloak;
-import org.keycloak.admin.client.KeycloakBuilder;
 import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
-import org.keycloak.representations.AccessTokenResponse;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
 
 
 import java.util.List;
@@ -25,13 +32,23 @@ import java.util.List;
 public class KeycloakAuthService {
 
     private static final Logger logger = LoggerFactory.getLogger(KeycloakAuthService.class);
+
+    private static final String FALLBACK_CLIENT_ID = "admin-cli";
     
     private final KeycloakConfig keycloakConfig;
     private final Keycloak keycloakAdminClient;
+    private final RestTemplate restTemplate;
+
+    /**
+     * 最近一次登录成功所用的客户端ID，后续登录优先使用，避免每次都先失败再回退
+     */
+    private volatile String preferredClientId;
 
-    public KeycloakAuthService(Keycloak keycloakAdminClient, KeycloakConfig keycloakConfig) {
+    public KeycloakAuthService(Keycloak keycloakAdminClient, KeycloakConfig keycloakConfig,
+                               @Qualifier("keycloakRestTemplate") RestTemplate restTemplate) {
         this.keycloakConfig = keycloakConfig;
         this.keycloakAdminClient = keycloakAdminClient;
+        this.restTemplate = restTemplate;
     }
 
     /**
@@ -44,25 +61,29 @@ public class KeycloakAuthService {
     public KeycloakTokenDTO login(String username, String password) {
         try {
             logger.info("User login attempt: {}", username);
-            
-            // 先尝试使用配置的客户端
-            Exception lastException = null;
-            
-            try {
-                return attemptLogin(username, password, keycloakConfig.getClientId(), keycloakConfig.getClientSecret());
-            } catch (Exception e) {
-                logger.warn("Login failed with configured client {}: {}", keycloakConfig.getClientId(), e.getMessage());
-                lastException = e;
-            }
-            
-            // 如果失败，尝试使用admin-cli客户端（通常是公共客户端）
+
+            // 优先使用上次成功的客户端，失败且属于客户端配置问题时再尝试另一个
+            boolean fallbackPreferred = FALLBACK_CLIENT_ID.equals(preferredClientId);
             try {
-                logger.info("Fallback: trying login with admin-cli client");
-                return attemptLogin(username, password, "admin-cli", null);
-            } catch (Exception e) {
-                logger.error("Login failed with admin-cli client: {}", e.getMessage());
-                // 抛出原始异常
-                throw lastException != null ? lastException : e;
+                return fallbackPreferred
+                        ? attemptFallbackLogin(username, password)
+                        : attemptConfiguredLogin(username, password);
+            } catch (HttpClientErrorException e) {
+                if (!isClientConfigurationError(e)) {
+                    // 用户名或密码错误时换客户端也不会成功，不再回退
+                    throw e;
+                }
+                logger.warn("Login failed with client {}: {}",
+                        fallbackPreferred ? FALLBACK_CLIENT_ID : keycloakConfig.getClientId(), e.getMessage());
+                try {
+                    return fallbackPreferred
+                            ? attemptConfiguredLogin(username, password)
+                            : attemptFallbackLogin(username, password);
+                } catch (Exception fallbackException) {
+                    logger.error("Login failed with fallback client: {}", fallbackException.getMessage());
+                    // 抛出原始异常
+                    throw e;
+                }
             }
             
         } catch (Exception e) {
@@ -70,53 +91,75 @@ public class KeycloakAuthService {
             
             // 根据不同的错误类型返回更具体的错误信息
             String errorMessage = "登录失败";
-            if (e.getMessage().contains("401") || e.getMessage().contains("Unauthorized")) {
+            String message = e.getMessage() != null ? e.getMessage() : "";
+            if (message.contains("401") || message.contains("Unauthorized")) {
                 errorMessage = "登录失败：用户名或密码错误，或者客户端配置有误";
-            } else if (e.getMessage().contains("404") || e.getMessage().contains("Not Found")) {
+            } else if (message.contains("404") || message.contains("Not Found")) {
                 errorMessage = "登录失败：Keycloak服务或Realm不存在";
-            } else if (e.getMessage().contains("400") || e.getMessage().contains("Bad Request")) {
+            } else if (message.contains("400") || message.contains("Bad Request")) {
                 errorMessage = "登录失败：请求参数错误或客户端配置无效";
             }
             
             throw new RuntimeException(errorMessage, e);
         }
     }
+
+    private KeycloakTokenDTO attemptConfiguredLogin(String username, String password) {
+        return attemptLogin(username, password, keycloakConfig.getClientId(), keycloakConfig.getClientSecret());
+    }
+
+    private KeycloakTokenDTO attemptFallbackLogin(String username, String password) {
+        // admin-cli通常是公共客户端
+        return attemptLogin(username, password, FALLBACK_CLIENT_ID, null);
+    }
+
+    /**
+     * 判断失败是否由客户端配置引起（此时换用其他客户端才有意义）
+     */
+    private boolean isClientConfigurationError(HttpClientErrorException e) {
+        String body = e.getResponseBodyAsString();
+        return body.contains("invalid_client") || body.contains("unauthorized_client");
+    }
     
     /**
      * 尝试使用指定的客户端进行登录
+     * 通过共享连接池的RestTemplate直接调用令牌端点，不再为每次登录构建新的Keycloak客户端
      */
     private KeycloakTokenDTO attemptLogin(String username, String password, String clientId, String clientSecret) {
         logger.info("Attempting login with client: {}", clientId);
         logger.debug("Keycloak server URL: {}", keycloakConfig.getKeycloakServerUrl());
         logger.debug("Target realm: {}", keycloakConfig.getTargetRealm());
 
-        // 构建Keycloak客户端进行用户认证
-        KeycloakBuilder builder = KeycloakBuilder.builder()
-                .serverUrl(keycloakConfig.getKeycloakServerUrl())
-                .realm(keycloakConfig.getTargetRealm())  // 使用目标realm进行用户认证
-                .clientId(clientId)
-                .username(username)
-                .password(password)
-                .grantType(OAuth2Constants.PASSWORD);
+        String tokenUrl = String.format("%s/realms/%s/protocol/openid-connect/token",
+                keycloakConfig.getKeycloakServerUrl(),
+                keycloakConfig.getTargetRealm()); // 使用目标realm进行用户认证
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", OAuth2Constants.PASSWORD);
+        form.add("client_id", clientId);
+        form.add("username", username);
+        form.add("password", password);
 
         // 只在客户端密钥不为空时添加
         if (clientSecret != null && !clientSecret.trim().isEmpty()) {
-            builder.clientSecret(clientSecret);
+            form.add("client_secret", clientSecret);
             logger.debug("Using client secret for authentication");
         } else {
             logger.debug("Using public client (no client secret)");
         }
 
-        Keycloak keycloak = builder.build();
+        ResponseEntity<KeycloakTokenDTO> response = restTemplate.postForEntity(
+                tokenUrl, new HttpEntity<>(form, headers), KeycloakTokenDTO.class);
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            throw new IllegalStateException("Token endpoint returned " + response.getStatusCode());
+        }
 
-        // 获取访问令牌
-        AccessTokenResponse tokenResponse = keycloak.tokenManager().getAccessToken();
-        
-        // 转换为DTO
-        KeycloakTokenDTO tokenDTO = convertToTokenDTO(tokenResponse);
-        
+        preferredClientId = clientId;
         logger.info("Login successful with client: {}", clientId);
-        return tokenDTO;
+        return response.getBody();
     }
 
     /**
@@ -196,21 +239,4 @@ public class KeycloakAuthService {
             throw new RuntimeException("获取用户信息失败", e);
         }
     }
-
-    /**
-     * 将AccessTokenResponse转换为KeycloakTokenDTO
-     */
-    private KeycloakTokenDTO convertToTokenDTO(AccessTokenResponse tokenResponse) {
-        KeycloakTokenDTO tokenDTO = new KeycloakTokenDTO();
-        tokenDTO.setAccessToken(tokenResponse.getToken());
-        tokenDTO.setRefreshToken(tokenResponse.getRefreshToken());
-        tokenDTO.setExpiresIn((int) tokenResponse.getExpiresIn());
-        tokenDTO.setRefreshExpiresIn((int) tokenResponse.getRefreshExpiresIn());
-        tokenDTO.setTokenType(tokenResponse.getTokenType());
-        tokenDTO.setIdToken(tokenResponse.getIdToken());
-        tokenDTO.setSessionState(tokenResponse.getSessionState());
-        tokenDTO.setScope(tokenResponse.getScope());
-        tokenDTO.setNotBeforePolicy(tokenResponse.getNotBeforePolicy());
-        return tokenDTO;
-    }
 }
\ No newline at end of file
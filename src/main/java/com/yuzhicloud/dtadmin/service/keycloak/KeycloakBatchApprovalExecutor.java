@@ -0,0 +1,207 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhi.dtadmin.domain.ApprovalItem;
+import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.policy.KeycloakGovernancePolicyService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keycloak审批批量执行器
+ * 由{@link KeycloakApprovalApplyQueue}的工作线程调用：一次拉取到的已批准请求按目标用户分组，
+ * 同一用户的操作按请求顺序串行执行，角色授予/移除合并为一次realmLevel().add/remove调用，不同用户之间以有限并发并行执行。
+ * 只返回每个请求的执行结果，请求与同步任务的状态由队列记录，失败的请求按队列的退避策略重试。
+ * 批量导入请求不在此执行，由队列交给导入服务逐行处理。
+ */
+@Service
+public class KeycloakBatchApprovalExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakBatchApprovalExecutor.class);
+
+    private static final Set<ApprovalType> ROLE_TYPES = EnumSet.of(ApprovalType.GRANT_ROLE, ApprovalType.REVOKE_ROLE);
+
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+
+    private final KeycloakUserSyncService userSyncService;
+    private final KeycloakUserService keycloakUserService;
+    private final KeycloakGovernancePolicyService governancePolicyService;
+    private final ExecutorService executor;
+
+    public KeycloakBatchApprovalExecutor(KeycloakUserSyncService userSyncService,
+                                         KeycloakUserService keycloakUserService,
+                                         KeycloakGovernancePolicyService governancePolicyService,
+                                         @Value("${app.keycloak.approval.batch-concurrency:8}") int concurrency) {
+        this.userSyncService = userSyncService;
+        this.keycloakUserService = keycloakUserService;
+        this.governancePolicyService = governancePolicyService;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-approval-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 将已批准的请求同步到Keycloak，调用方需保证items已加载
+     *
+     * @return 失败请求的ID与错误信息，不在其中的请求已成功同步
+     */
+    public Map<Long, String> apply(List<ApprovalRequest> requests) {
+        Map<String, List<UserOperation>> operationsByUser = new LinkedHashMap<>();
+        Map<Long, String> failures = new ConcurrentHashMap<>();
+        for (ApprovalRequest request : requests) {
+            List<PendingItem> items = pendingItems(request);
+            if (items.isEmpty()) {
+                failures.put(request.getId(), "No approval items found for " + request.getType() + " request");
+                continue;
+            }
+            for (PendingItem item : items) {
+                operationsByUser
+                    .computeIfAbsent(item.targetId(), key -> new ArrayList<>())
+                    .add(new UserOperation(request.getId(), request.getType(), item.payload()));
+            }
+        }
+
+        List<CompletableFuture<Void>> futures = operationsByUser.entrySet().stream()
+            .map(entry -> CompletableFuture.runAsync(() -> applyForUser(entry.getKey(), entry.getValue(), failures), executor))
+            .toList();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        logger.info("Applied {} approval requests for {} users, {} failed", requests.size(), operationsByUser.size(), failures.size());
+        return failures;
+    }
+
+    private List<PendingItem> pendingItems(ApprovalRequest request) {
+        List<PendingItem> items = request.getItems().stream()
+            .sorted(Comparator.comparing(ApprovalItem::getSeqNumber, Comparator.nullsLast(Comparator.naturalOrder())))
+            .map(item -> new PendingItem(item.getTargetId(), item.getPayload()))
+            .toList();
+        // 用户类请求只处理第一个item
+        if (!ROLE_TYPES.contains(request.getType()) && items.size() > 1) {
+            items = items.subList(0, 1);
+        }
+        return items;
+    }
+
+    /**
+     * 处理单个用户的全部操作：按请求顺序执行，连续的角色授予/移除合并为一个变更单元，
+     * 遇到用户增删改时先提交之前的角色变更，保证同一用户的请求按提交顺序生效
+     */
+    private void applyForUser(String userId, List<UserOperation> operations, Map<Long, String> failures) {
+        List<UserOperation> ordered = operations.stream()
+            .sorted(Comparator.comparing(UserOperation::requestId))
+            .toList();
+
+        List<UserOperation> roleSegment = new ArrayList<>();
+        for (UserOperation operation : ordered) {
+            if (ROLE_TYPES.contains(operation.type())) {
+                roleSegment.add(operation);
+                continue;
+            }
+            applyRoleChanges(userId, roleSegment, failures);
+            roleSegment.clear();
+            try {
+                switch (operation.type()) {
+                    case CREATE_USER -> userSyncService.applyCreateUser(operation.payload());
+                    case UPDATE_USER -> userSyncService.applyUpdateUser(userId, operation.payload());
+                    case DELETE_USER -> userSyncService.applyDeleteUser(userId);
+                    default -> throw new IllegalArgumentException("Unsupported approval type: " + operation.type());
+                }
+            } catch (Exception e) {
+                logger.error("Error processing approval request {} for user {}", operation.requestId(), userId, e);
+                failures.putIfAbsent(operation.requestId(), errorMessage(e));
+            }
+        }
+        applyRoleChanges(userId, roleSegment, failures);
+    }
+
+    /**
+     * 合并同一用户的一段连续角色授予/移除：用户与角色状态只读取一次，逐个请求在该状态上做治理校验并暂存变更，
+     * 提交前再对合并后的最终角色集合做一次职责分离校验（单个请求各自合规、合并后冲突时整段失败），
+     * 数据角色在同一变更单元中计算，最后各发一次add/remove调用
+     */
+    private void applyRoleChanges(String userId, List<UserOperation> roleOperations, Map<Long, String> failures) {
+        List<UserOperation> pending = roleOperations.stream()
+            .filter(operation -> !failures.containsKey(operation.requestId()))
+            .toList();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        KeycloakUserMutation mutation;
+        try {
+            mutation = keycloakUserService.beginMutation(userId);
+        } catch (Exception e) {
+            logger.error("Error loading user {} for role changes", userId, e);
+            String message = errorMessage(e);
+            pending.forEach(operation -> failures.putIfAbsent(operation.requestId(), message));
+            return;
+        }
+
+        List<Long> contributing = new ArrayList<>();
+        for (UserOperation operation : pending) {
+            try {
+                List<KeycloakRoleDTO> roles = userSyncService.readRoleAssignment(operation.payload()).getRoles();
+                if (operation.type() == ApprovalType.GRANT_ROLE) {
+                    governancePolicyService.validateRoleAssignments(mutation, roles);
+                    mutation.grantRoles(roles);
+                } else {
+                    governancePolicyService.validateRoleRemoval(mutation, roles);
+                    mutation.revokeRoles(roles);
+                }
+                contributing.add(operation.requestId());
+            } catch (Exception e) {
+                logger.error("Role change in request {} rejected for user {}", operation.requestId(), userId, e);
+                failures.putIfAbsent(operation.requestId(), errorMessage(e));
+            }
+        }
+
+        if (contributing.isEmpty()) {
+            return;
+        }
+
+        try {
+            governancePolicyService.validateFinalRoles(mutation);
+            governancePolicyService.syncDataRoles(mutation);
+            keycloakUserService.commit(mutation);
+            logger.info("Applied {} role requests for user {}", contributing.size(), userId);
+        } catch (Exception e) {
+            logger.error("Error applying coalesced role changes for user {}", userId, e);
+            String message = errorMessage(e);
+            contributing.forEach(requestId -> failures.putIfAbsent(requestId, message));
+        }
+    }
+
+    private String errorMessage(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return message.length() > MAX_ERROR_MESSAGE_LENGTH ? message.substring(0, MAX_ERROR_MESSAGE_LENGTH) : message;
+    }
+
+    private record PendingItem(String targetId, String payload) {}
+
+    private record UserOperation(Long requestId, ApprovalType type, String payload) {}
+}
@@ -0,0 +1,193 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import jakarta.annotation.PreDestroy;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 登录后的用户信息解析
+ * 访问令牌刚由Keycloak签发（直连令牌端点），直接解析其中的用户ID（sub）、用户名/邮箱/姓名与realm_access角色，
+ * 令牌齐全时不再查询Keycloak；令牌缺少的部分（用户资料、角色）在有限线程池上并行查询，
+ * 查询结果按用户ID在短TTL内缓存（有容量上限，超出时按Caffeine策略淘汰），避免同一用户频繁登录时重复查询。
+ * <p>
+ * 注意：令牌中的realm_access.roles只包含客户端作用域允许的角色——客户端关闭Full Scope Allowed时，
+ * 仅包含其角色作用域映射内的角色，因此可能少于管理API{@link KeycloakRoleService#getUserRealmRoles}返回的生效角色。
+ * 令牌带有realm_access时以令牌为准（与该令牌实际能访问的权限一致），只有令牌缺少realm_access时才按生效角色查询。
+ */
+@Service
+public class KeycloakLoginUserService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakLoginUserService.class);
+
+    private final KeycloakAuthService authService;
+    private final KeycloakRoleService roleService;
+    private final Duration userInfoTtl;
+    private final ExecutorService executor;
+    private final Cache<String, LoginUser> userCache;
+
+    /**
+     * 登录用户信息
+     */
+    public record LoginUser(String id, String username, String email, String firstName, String lastName,
+                            boolean enabled, List<String> roles) {
+
+        LoginUser withRoles(List<String> roles) {
+            return new LoginUser(id, username, email, firstName, lastName, enabled, roles);
+        }
+    }
+
+    public KeycloakLoginUserService(KeycloakAuthService authService,
+                                    KeycloakRoleService roleService,
+                                    @Value("${app.keycloak.login.enrichment-concurrency:8}") int concurrency,
+                                    @Value("${app.keycloak.login.user-info-ttl:PT60S}") Duration userInfoTtl,
+                                    @Value("${app.keycloak.login.user-info-cache-size:10000}") int userInfoCacheSize) {
+        this.authService = authService;
+        this.roleService = roleService;
+        this.userInfoTtl = userInfoTtl;
+        this.userCache = Caffeine.newBuilder()
+            .maximumSize(Math.max(0, userInfoCacheSize))
+            .expireAfterWrite(userInfoTtl.isNegative() ? Duration.ZERO : userInfoTtl)
+            .build();
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-login-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 解析登录用户信息
+     *
+     * @param username 登录用户名
+     * @param accessToken 本次登录签发的访问令牌
+     * @return 用户信息，Keycloak中找不到该用户时返回null
+     */
+    public LoginUser resolve(String username, String accessToken) {
+        AccessToken token = decode(accessToken);
+        String subject = token != null ? token.getSubject() : null;
+        LoginUser tokenUser = token != null && subject != null && token.getPreferredUsername() != null
+            ? new LoginUser(subject, token.getPreferredUsername(), token.getEmail(), token.getGivenName(), token.getFamilyName(), true, null)
+            : null;
+        List<String> tokenRoles = token != null && token.getRealmAccess() != null && token.getRealmAccess().getRoles() != null
+            ? new ArrayList<>(token.getRealmAccess().getRoles())
+            : null;
+
+        if (tokenUser != null && tokenRoles != null) {
+            return tokenUser.withRoles(tokenRoles);
+        }
+
+        if (subject == null) {
+            // 令牌中没有用户ID，只能先按用户名查询用户再查询角色
+            UserRepresentation user = authService.getUserByUsername(username);
+            if (user == null) {
+                return null;
+            }
+            LoginUser loginUser = fromRepresentation(user.getId(), user);
+            List<String> roles = tokenRoles != null ? tokenRoles : fetchRoles(user.getId(), username);
+            return cache(user.getId(), loginUser.withRoles(roles != null ? roles : List.of()), roles != null);
+        }
+
+        LoginUser cached = userCache.getIfPresent(subject);
+        if (cached != null) {
+            return tokenRoles != null ? cached.withRoles(tokenRoles) : cached;
+        }
+
+        CompletableFuture<LoginUser> profileFuture = tokenUser != null
+            ? CompletableFuture.completedFuture(tokenUser)
+            : CompletableFuture.supplyAsync(() -> {
+                UserRepresentation user = authService.getUserByUsername(username);
+                return user != null ? fromRepresentation(subject, user) : null;
+            }, executor);
+        CompletableFuture<List<String>> rolesFuture = tokenRoles != null
+            ? CompletableFuture.completedFuture(tokenRoles)
+            : CompletableFuture.supplyAsync(() -> fetchRoles(subject, username), executor);
+
+        LoginUser profile = join(profileFuture);
+        List<String> roles = join(rolesFuture);
+        if (profile == null) {
+            return null;
+        }
+        return cache(subject, profile.withRoles(roles != null ? roles : List.of()), roles != null);
+    }
+
+    /**
+     * 清空缓存的登录用户信息
+     */
+    public void evictAll() {
+        userCache.invalidateAll();
+    }
+
+    /**
+     * 解析访问令牌内容（不校验签名：令牌由本服务直接从Keycloak令牌端点获取），格式不正确时返回null
+     */
+    private AccessToken decode(String accessToken) {
+        if (accessToken == null || accessToken.isBlank()) {
+            return null;
+        }
+        try {
+            return new JWSInput(accessToken).readJsonContent(AccessToken.class);
+        } catch (Exception e) {
+            logger.debug("Access token could not be decoded, falling back to Keycloak lookups", e);
+            return null;
+        }
+    }
+
+    /**
+     * 查询用户realm角色，失败时返回null（登录不因角色查询失败而失败，且不缓存该结果）
+     */
+    private List<String> fetchRoles(String userId, String username) {
+        try {
+            return roleService.getUserRealmRoles(userId).stream().map(KeycloakRoleDTO::getName).toList();
+        } catch (Exception e) {
+            logger.warn("Failed to retrieve roles for user: {}", username, e);
+            return null;
+        }
+    }
+
+    private LoginUser fromRepresentation(String id, UserRepresentation user) {
+        return new LoginUser(id, user.getUsername(), user.getEmail(), user.getFirstName(), user.getLastName(),
+            !Boolean.FALSE.equals(user.isEnabled()), null);
+    }
+
+    private LoginUser cache(String subject, LoginUser user, boolean complete) {
+        if (!complete || userInfoTtl.isZero() || userInfoTtl.isNegative()) {
+            return user;
+        }
+        userCache.put(subject, user);
+        return user;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
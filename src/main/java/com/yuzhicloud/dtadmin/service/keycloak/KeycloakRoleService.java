@@ -2,6 +2,9 @@ package com.yuzhicloud.dtadmin.service.keycloak;
 
 import com.yuzhicloud.dtadmin.config.KeycloakConfig;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.admin.client.resource.RoleResource;
@@ -10,10 +13,18 @@ import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -28,9 +39,35 @@ public class KeycloakRoleService {
     private final Keycloak keycloakAdminClient;
     private final KeycloakConfig keycloakConfig;
 
-    public KeycloakRoleService(Keycloak keycloakAdminClient, KeycloakConfig keycloakConfig) {
+    /**
+     * Realm角色缓存：一次roles().list()得到的快照，按名称和ID索引
+     */
+    private final Object roleSnapshotLock = new Object();
+    private final LongAdder roleCacheHits = new LongAdder();
+    private final LongAdder roleCacheMisses = new LongAdder();
+    private volatile RoleSnapshot roleSnapshot;
+    /**
+     * 每次清空缓存时递增；加载前记录，加载完成时未变化才发布快照，避免加载期间的角色写入被旧快照覆盖
+     */
+    private long roleSnapshotVersion;
+
+    @Value("${app.keycloak.role-cache.ttl:PT5M}")
+    private Duration roleCacheTtl = Duration.ofMinutes(5);
+
+    public KeycloakRoleService(Keycloak keycloakAdminClient, KeycloakConfig keycloakConfig, MeterRegistry meterRegistry) {
         this.keycloakAdminClient = keycloakAdminClient;
         this.keycloakConfig = keycloakConfig;
+        FunctionCounter.builder("keycloak.role.cache.requests", roleCacheHits, LongAdder::doubleValue)
+                .description("Realm role lookups served by the role cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("keycloak.role.cache.requests", roleCacheMisses, LongAdder::doubleValue)
+                .description("Realm role lookups served by the role cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.role.cache.hit.ratio", this, KeycloakRoleService::roleCacheHitRatio)
+                .description("Hit ratio of the realm role cache")
+                .register(meterRegistry);
     }
 
     /**
@@ -41,27 +78,115 @@ public class KeycloakRoleService {
     }
 
     /**
-     * 获取所有Realm角色 - 使用Admin Client
+     * 获取所有Realm角色 - 使用缓存的角色快照
      */
     public List<KeycloakRoleDTO> getAllRealmRoles() {
         try {
-            RealmResource realmResource = getTargetRealmResource();
-            RolesResource rolesResource = realmResource.roles();
-            
-            List<RoleRepresentation> roles = rolesResource.list();
-            
-            logger.debug("Successfully retrieved {} realm roles using Admin Client", roles.size());
-            
-            return roles.stream()
+            return currentRoleSnapshot().byName().values().stream()
                     .map(this::convertToDTO)
                     .collect(Collectors.toList());
-                    
         } catch (Exception e) {
             logger.error("Error retrieving realm roles using Admin Client", e);
             throw new RuntimeException("Error retrieving realm roles from Keycloak", e);
         }
     }
 
+    /**
+     * 按名称批量获取Realm角色 - 从同一份角色快照中解析，快照中不存在的角色才单独查询
+     */
+    public List<KeycloakRoleDTO> getRealmRolesByNames(Collection<String> roleNames) {
+        RoleSnapshot snapshot = currentRoleSnapshot();
+        List<KeycloakRoleDTO> result = new ArrayList<>(roleNames.size());
+        for (String roleName : roleNames) {
+            RoleRepresentation role = snapshot.byName().get(roleName);
+            if (role != null) {
+                roleCacheHits.increment();
+                result.add(convertToDTO(role));
+            } else {
+                result.add(getRealmRoleByName(roleName));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 根据ID获取Realm角色 - 优先使用缓存的角色快照
+     */
+    public KeycloakRoleDTO getRealmRoleById(String roleId) {
+        try {
+            RoleRepresentation cached = currentRoleSnapshot().byId().get(roleId);
+            if (cached != null) {
+                roleCacheHits.increment();
+                return convertToDTO(cached);
+            }
+            roleCacheMisses.increment();
+            RoleRepresentation role = getTargetRealmResource().rolesById().getRole(roleId);
+            logger.debug("Successfully retrieved role by ID: {}", roleId);
+            return convertToDTO(role);
+        } catch (Exception e) {
+            logger.error("Error retrieving role by ID: {}", roleId, e);
+            throw new RuntimeException("Error getting realm role by ID: " + roleId, e);
+        }
+    }
+
+    /**
+     * 清空角色缓存，下次访问时重新加载
+     */
+    public synchronized void invalidateRoleCache() {
+        roleSnapshot = null;
+        roleSnapshotVersion++;
+    }
+
+    /**
+     * 获取未过期的角色快照，过期或被清空时通过一次roles().list()重新加载
+     */
+    private RoleSnapshot currentRoleSnapshot() {
+        RoleSnapshot snapshot = roleSnapshot;
+        if (snapshot != null && !snapshot.isExpiredAt(Instant.now())) {
+            return snapshot;
+        }
+        synchronized (roleSnapshotLock) {
+            snapshot = roleSnapshot;
+            if (snapshot != null && !snapshot.isExpiredAt(Instant.now())) {
+                return snapshot;
+            }
+            long loadingVersion;
+            synchronized (this) {
+                loadingVersion = roleSnapshotVersion;
+            }
+            List<RoleRepresentation> roles = getTargetRealmResource().roles().list();
+            Map<String, RoleRepresentation> byName = new LinkedHashMap<>();
+            Map<String, RoleRepresentation> byId = new LinkedHashMap<>();
+            for (RoleRepresentation role : roles) {
+                byName.put(role.getName(), role);
+                if (role.getId() != null) {
+                    byId.put(role.getId(), role);
+                }
+            }
+            snapshot = new RoleSnapshot(Collections.unmodifiableMap(byName), Collections.unmodifiableMap(byId), Instant.now().plus(roleCacheTtl));
+            synchronized (this) {
+                // 加载期间有角色写入：本次调用使用该快照，但不缓存
+                if (roleSnapshotVersion == loadingVersion) {
+                    roleSnapshot = snapshot;
+                }
+            }
+            logger.debug("Loaded {} realm roles into role cache", roles.size());
+            return snapshot;
+        }
+    }
+
+    private double roleCacheHitRatio() {
+        double hits = roleCacheHits.doubleValue();
+        double total = hits + roleCacheMisses.doubleValue();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private record RoleSnapshot(Map<String, RoleRepresentation> byName, Map<String, RoleRepresentation> byId, Instant expiresAt) {
+        boolean isExpiredAt(Instant now) {
+            return now.isAfter(expiresAt);
+        }
+    }
+
     /**
      * 将Keycloak RoleRepresentation转换为DTO
      */
@@ -92,10 +217,16 @@ public class KeycloakRoleService {
     }
 
     /**
-     * 根据名称获取Realm角色 - 使用Admin Client
+     * 根据名称获取Realm角色 - 优先使用缓存的角色快照
      */
     public KeycloakRoleDTO getRealmRoleByName(String roleName) {
         try {
+            RoleRepresentation cached = currentRoleSnapshot().byName().get(roleName);
+            if (cached != null) {
+                roleCacheHits.increment();
+                return convertToDTO(cached);
+            }
+            roleCacheMisses.increment();
             RealmResource realmResource = getTargetRealmResource();
             RoleResource roleResource = realmResource.roles().get(roleName);
             
@@ -120,6 +251,7 @@ public class KeycloakRoleService {
             
             RoleRepresentation role = convertFromDTO(roleDTO);
             rolesResource.create(role);
+            invalidateRoleCache();
             
             logger.info("Successfully created realm role: {}", roleDTO.getName());
             
@@ -139,6 +271,7 @@ public class KeycloakRoleService {
             
             RoleRepresentation role = convertFromDTO(roleDTO);
             roleResource.update(role);
+            invalidateRoleCache();
             
             logger.info("Successfully updated realm role: {}", roleName);
             
@@ -157,6 +290,7 @@ public class KeycloakRoleService {
             RoleResource roleResource = realmResource.roles().get(roleName);
             
             roleResource.remove();
+            invalidateRoleCache();
             
             logger.info("Successfully deleted realm role: {}", roleName);
             
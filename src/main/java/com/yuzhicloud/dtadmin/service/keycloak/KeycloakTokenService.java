@@ -2,15 +2,23 @@ package com.yuzhicloud.dtadmin.service.keycloak;
 
 import com.yuzhicloud.dtadmin.config.KeycloakConfig;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakTokenDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.*;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Keycloak令牌服务 - 支持令牌刷新和登出的REST API实现
  * 用于补充官方Admin Client SDK的功能限制
@@ -22,51 +30,125 @@ public class KeycloakTokenService {
     
     private final RestTemplate restTemplate;
     private final KeycloakConfig keycloakConfig;
+    private final Duration adminTokenExpirySkew;
+    private final ReentrantLock adminTokenLock = new ReentrantLock();
+    private final Timer mintTimer;
+    private final Timer refreshTimer;
+    private final Counter refreshFailures;
+
+    private volatile AdminToken adminToken;
 
     public KeycloakTokenService(@Qualifier("keycloakRestTemplate") RestTemplate restTemplate, 
-                                KeycloakConfig keycloakConfig) {
+                                KeycloakConfig keycloakConfig,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.keycloak.admin-token.expiry-skew:PT30S}") Duration adminTokenExpirySkew) {
         this.restTemplate = restTemplate;
         this.keycloakConfig = keycloakConfig;
+        this.adminTokenExpirySkew = adminTokenExpirySkew;
+        this.mintTimer = Timer.builder("keycloak.admin.token.requests")
+                .description("Admin token requests to the Keycloak token endpoint")
+                .tag("op", "mint")
+                .register(meterRegistry);
+        this.refreshTimer = Timer.builder("keycloak.admin.token.requests")
+                .description("Admin token requests to the Keycloak token endpoint")
+                .tag("op", "refresh")
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("keycloak.admin.token.refresh.failures")
+                .description("Admin token refreshes that fell back to a password login")
+                .register(meterRegistry);
     }
 
     /**
-     * 获取管理员访问令牌 - 使用REST API实现
-     * 
+     * 获取管理员访问令牌
+     * 缓存的令牌在过期前（扣除expiry-skew）直接复用；过期后优先用refresh_token续期，续期失败才重新密码登录。
+     * 并发调用时只有一个线程访问Keycloak，其余线程等待并复用其结果。
+     *
      * @return 访问令牌
      */
     public String getAccessToken() {
+        AdminToken token = adminToken;
+        if (token != null && token.isUsableAt(Instant.now())) {
+            return token.accessToken();
+        }
+        adminTokenLock.lock();
         try {
-            String tokenUrl = String.format("%s/realms/%s/protocol/openid-connect/token",
-                    keycloakConfig.getKeycloakServerUrl(),
-                    keycloakConfig.getRealm()); // 使用auth-realm而不是target-realm
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-            MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
-            map.add("grant_type", "password");
-            map.add("client_id", keycloakConfig.getAdminClientId());
-            map.add("username", keycloakConfig.getAdminUsername());
-            map.add("password", keycloakConfig.getAdminPassword());
-
-            HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(map, headers);
+            // 等锁期间可能已由其他线程续期
+            token = adminToken;
+            Instant now = Instant.now();
+            if (token != null && token.isUsableAt(now)) {
+                return token.accessToken();
+            }
+            AdminToken renewed = renewAdminToken(token, now);
+            adminToken = renewed;
+            return renewed.accessToken();
+        } finally {
+            adminTokenLock.unlock();
+        }
+    }
 
-            ResponseEntity<KeycloakTokenDTO> response = restTemplate.postForEntity(
-                    tokenUrl, request, KeycloakTokenDTO.class);
+    /**
+     * 丢弃缓存的管理员令牌（例如Keycloak返回401时），下次调用重新获取
+     */
+    public void invalidateAdminToken() {
+        adminToken = null;
+    }
 
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                logger.info("Admin token acquisition successful using REST API");
-                return response.getBody().getAccessToken();
-            } else {
-                logger.warn("Admin token acquisition failed, status: {}", response.getStatusCode());
-                throw new RuntimeException("获取管理员令牌失败");
+    private AdminToken renewAdminToken(AdminToken stale, Instant now) {
+        if (stale != null && stale.canRefreshAt(now)) {
+            try {
+                return refreshTimer.record(() -> requestAdminToken(refreshForm(stale.refreshToken())));
+            } catch (RuntimeException e) {
+                refreshFailures.increment();
+                logger.warn("Admin token refresh failed, falling back to password login: {}", e.getMessage());
             }
-        } catch (Exception e) {
+        }
+        try {
+            AdminToken minted = mintTimer.record(() -> requestAdminToken(passwordForm()));
+            logger.info("Admin token acquisition successful using REST API");
+            return minted;
+        } catch (RuntimeException e) {
             logger.error("Admin token acquisition error using REST API", e);
             throw new RuntimeException("获取管理员令牌失败：" + e.getMessage(), e);
         }
     }
 
+    private MultiValueMap<String, String> passwordForm() {
+        MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
+        map.add("grant_type", "password");
+        map.add("client_id", keycloakConfig.getAdminClientId());
+        map.add("username", keycloakConfig.getAdminUsername());
+        map.add("password", keycloakConfig.getAdminPassword());
+        return map;
+    }
+
+    private MultiValueMap<String, String> refreshForm(String refreshToken) {
+        MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
+        map.add("grant_type", "refresh_token");
+        map.add("client_id", keycloakConfig.getAdminClientId());
+        map.add("refresh_token", refreshToken);
+        return map;
+    }
+
+    private AdminToken requestAdminToken(MultiValueMap<String, String> form) {
+        String tokenUrl = String.format("%s/realms/%s/protocol/openid-connect/token",
+                keycloakConfig.getKeycloakServerUrl(),
+                keycloakConfig.getRealm()); // 使用auth-realm而不是target-realm
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        Instant requestedAt = Instant.now();
+        ResponseEntity<KeycloakTokenDTO> response = restTemplate.postForEntity(
+                tokenUrl, new HttpEntity<>(form, headers), KeycloakTokenDTO.class);
+
+        KeycloakTokenDTO body = response.getBody();
+        if (response.getStatusCode() != HttpStatus.OK || body == null || body.getAccessToken() == null) {
+            logger.warn("Admin token request failed, status: {}", response.getStatusCode());
+            throw new RuntimeException("获取管理员令牌失败");
+        }
+        return AdminToken.of(body, requestedAt, adminTokenExpirySkew);
+    }
+
     /**
      * 用户登录 - 使用REST API实现
      * 
@@ -186,4 +268,32 @@ public class KeycloakTokenService {
             throw new RuntimeException("登出失败：" + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 缓存的管理员令牌；usableUntil与refreshUsableUntil均已扣除expiry-skew
+     */
+    private record AdminToken(String accessToken, Instant usableUntil, String refreshToken, Instant refreshUsableUntil) {
+
+        static AdminToken of(KeycloakTokenDTO dto, Instant requestedAt, Duration skew) {
+            long expiresIn = dto.getExpiresIn() != null ? dto.getExpiresIn() : 60L;
+            Instant refreshUsableUntil = null;
+            if (dto.getRefreshToken() != null) {
+                // refresh_expires_in为0表示不随会话过期（离线令牌）
+                Integer refreshExpiresIn = dto.getRefreshExpiresIn();
+                refreshUsableUntil = refreshExpiresIn == null || refreshExpiresIn == 0
+                        ? Instant.MAX
+                        : requestedAt.plusSeconds(refreshExpiresIn).minus(skew);
+            }
+            return new AdminToken(dto.getAccessToken(), requestedAt.plusSeconds(expiresIn).minus(skew),
+                    dto.getRefreshToken(), refreshUsableUntil);
+        }
+
+        boolean isUsableAt(Instant now) {
+            return now.isBefore(usableUntil);
+        }
+
+        boolean canRefreshAt(Instant now) {
+            return refreshToken != null && now.isBefore(refreshUsableUntil);
+        }
+    }
+}
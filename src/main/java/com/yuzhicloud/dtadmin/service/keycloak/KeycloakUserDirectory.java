@@ -0,0 +1,662 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.config.KeycloakConfig;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.NotFoundException;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RealmEventsConfigRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keycloak用户目录本地镜像
+ * 目标realm的用户（含直接所属组路径与直接分配的realm角色）保存在内存快照中，列表、搜索、按ID查询直接读取快照。
+ * 启动后并行分页全量抓取一次，并按full-resync-interval在后台全量重建。开启use-admin-events后按incremental-interval
+ * 读取realm管理事件，只重新获取发生变更的用户；realm未开启管理事件时跳过增量同步（同步时间不前移），重新开启后先全量重建。
+ * 本服务自身的写操作只把用户记为待刷新，不在调用线程上访问Keycloak：待刷新的用户在get中视为不在镜像中（调用方回退到
+ * 实时查询），已删除的用户不再出现在列表和搜索结果中；协调线程把积累的待刷新用户合并为一次抓取和一次快照更新。
+ * 全量同步、增量同步与待刷新合并在syncLock下串行执行，全量同步开始之后写入的用户保持待刷新，之后重新获取，
+ * 不会被同步抓到的旧数据覆盖。镜像尚未就绪时调用方应回退到Keycloak实时查询。
+ */
+@Service
+public class KeycloakUserDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakUserDirectory.class);
+
+    /**
+     * 与Keycloak用户搜索接口默认的max一致
+     */
+    public static final int DEFAULT_SEARCH_LIMIT = 100;
+
+    private static final List<String> USER_EVENT_RESOURCE_TYPES = List.of("USER", "GROUP_MEMBERSHIP", "REALM_ROLE_MAPPING");
+
+    /**
+     * 首次增量同步从全量抓取开始前这段时间起读取管理事件，覆盖两边时钟偏差
+     */
+    private static final Duration EVENT_CURSOR_MARGIN = Duration.ofMinutes(1);
+
+    private final Keycloak keycloakAdminClient;
+    private final KeycloakConfig keycloakConfig;
+    private final boolean enabled;
+    private final int pageSize;
+    private final boolean useAdminEvents;
+    private final List<String> searchAttributes;
+    private final Duration incrementalInterval;
+    private final Duration fullResyncInterval;
+    private final ScheduledExecutorService coordinator;
+    private final ExecutorService fetchers;
+    private final Timer fullSyncTimer;
+    private final Timer incrementalSyncTimer;
+
+    private volatile Snapshot snapshot;
+
+    private final Object snapshotLock = new Object();
+
+    /**
+     * 串行化全量同步、增量同步与待刷新合并；正常情况下它们都在协调线程上执行
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * 本服务写入后尚未刷新进快照的用户；同一用户再次写入时替换为序号更大的记录
+     */
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    /**
+     * 上次增量同步时realm未开启管理事件，只在协调线程上读写
+     */
+    private boolean adminEventsUnavailable;
+
+    /**
+     * 已处理的最新管理事件时间（Keycloak服务器时钟，毫秒），只在协调线程上读写
+     */
+    private long eventCursor;
+
+    public KeycloakUserDirectory(
+        Keycloak keycloakAdminClient,
+        KeycloakConfig keycloakConfig,
+        MeterRegistry meterRegistry,
+        @Value("${app.keycloak.user-directory.enabled:true}") boolean enabled,
+        @Value("${app.keycloak.user-directory.page-size:200}") int pageSize,
+        @Value("${app.keycloak.user-directory.crawl-concurrency:4}") int crawlConcurrency,
+        @Value("${app.keycloak.user-directory.use-admin-events:false}") boolean useAdminEvents,
+        @Value("${app.keycloak.user-directory.incremental-interval:PT30S}") Duration incrementalInterval,
+        @Value("${app.keycloak.user-directory.full-resync-interval:PT30M}") Duration fullResyncInterval,
+        @Value("${app.keycloak.user-directory.search-attributes:person_security_level,department}") String[] searchAttributes
+    ) {
+        this.keycloakAdminClient = keycloakAdminClient;
+        this.keycloakConfig = keycloakConfig;
+        this.enabled = enabled;
+        this.pageSize = Math.max(1, pageSize);
+        this.useAdminEvents = useAdminEvents;
+        this.incrementalInterval = incrementalInterval;
+        this.fullResyncInterval = fullResyncInterval;
+        this.searchAttributes = List.of(searchAttributes);
+        this.coordinator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-user-directory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.fetchers = Executors.newFixedThreadPool(Math.max(1, crawlConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-user-directory-fetch-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fullSyncTimer = Timer.builder("keycloak.user.directory.sync")
+                .description("Synchronizations of the local Keycloak user directory")
+                .tag("type", "full")
+                .register(meterRegistry);
+        this.incrementalSyncTimer = Timer.builder("keycloak.user.directory.sync")
+                .description("Synchronizations of the local Keycloak user directory")
+                .tag("type", "incremental")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.user.directory.users", this, d -> d.snapshot != null ? d.snapshot.byId().size() : 0)
+                .description("Users held in the local Keycloak user directory")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.user.directory.staleness", this,
+                        d -> d.snapshot != null ? Duration.between(d.snapshot.syncedAt(), Instant.now()).toSeconds() : -1)
+                .description("Seconds since the local Keycloak user directory was last known to be in sync")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 应用就绪后在后台完成首次全量抓取并启动定时同步
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("Keycloak user directory disabled, user reads go to Keycloak directly");
+            return;
+        }
+        coordinator.execute(this::fullSyncQuietly);
+        coordinator.scheduleWithFixedDelay(this::fullSyncQuietly,
+                fullResyncInterval.toMillis(), fullResyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        if (useAdminEvents) {
+            coordinator.scheduleWithFixedDelay(this::incrementalSyncQuietly,
+                    incrementalInterval.toMillis(), incrementalInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        fetchers.shutdownNow();
+    }
+
+    /**
+     * 镜像是否已完成首次全量抓取
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * 镜像最近一次确认与Keycloak一致的时间；未就绪时为null
+     */
+    public Instant getSyncedAt() {
+        Snapshot current = snapshot;
+        return current != null ? current.syncedAt() : null;
+    }
+
+    /**
+     * 按用户名排序分页获取用户
+     */
+    public List<KeycloakUserDTO> list(int first, int max) {
+        return requireSnapshot().ordered().stream()
+                .filter(user -> !isPendingDelete(user.getId()))
+                .skip(Math.max(first, 0))
+                .limit(Math.max(max, 0))
+                .map(KeycloakUserDirectory::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 通过搜索索引按相关度分页查询：匹配用户名、邮箱、姓名及search-attributes中的属性值，
+     * 支持前缀、中缀和编辑距离内的模糊匹配；查询词为空时按用户名顺序分页
+     */
+    public List<KeycloakUserDTO> search(String term, int first, int max) {
+        Snapshot current = requireSnapshot();
+        if (UserSearchIndex.normalize(term).replace("*", "").isBlank()) {
+            return list(first, max);
+        }
+        List<KeycloakUserDTO> result = new ArrayList<>();
+        for (String userId : current.index().search(term, first, max)) {
+            KeycloakUserDTO user = current.byId().get(userId);
+            if (user != null && !isPendingDelete(userId)) {
+                result.add(copyOf(user));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按ID获取用户；镜像中不存在或本服务写入后尚未刷新时返回空，调用方应实时查询
+     */
+    public Optional<KeycloakUserDTO> get(String userId) {
+        Snapshot current = requireSnapshot();
+        if (pendingWrites.containsKey(userId)) {
+            return Optional.empty();
+        }
+        KeycloakUserDTO user = current.byId().get(userId);
+        return user != null ? Optional.of(copyOf(user)) : Optional.empty();
+    }
+
+    /**
+     * 本服务写入用户后、或读路径上发现镜像缺少该用户时调用：记为待刷新，由协调线程合并后重新获取，不阻塞调用方
+     */
+    public void refreshUser(String userId) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        markPending(userId, false);
+    }
+
+    /**
+     * 本服务删除用户后调用：立即从列表和搜索结果中隐藏，由协调线程合并后移出快照
+     */
+    public void removeUser(String userId) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        markPending(userId, true);
+    }
+
+    private boolean isPendingDelete(String userId) {
+        PendingWrite write = pendingWrites.get(userId);
+        return write != null && write.deleted();
+    }
+
+    private void markPending(String userId, boolean deleted) {
+        pendingWrites.put(userId, new PendingWrite(writeSequence.incrementAndGet(), deleted));
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            try {
+                coordinator.execute(this::refreshPendingQuietly);
+            } catch (RejectedExecutionException e) {
+                refreshScheduled.set(false);
+            }
+        }
+    }
+
+    private void refreshPendingQuietly() {
+        try {
+            refreshPending();
+        } catch (RuntimeException e) {
+            // 保持待刷新，get继续回退到实时查询，直到下一次写入或全量同步
+            logger.warn("Refreshing {} written users in the Keycloak user directory failed: {}", pendingWrites.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 一次性重新获取当前所有待刷新的用户并更新快照；处理期间再次写入的用户保持待刷新，由下一轮处理
+     */
+    void refreshPending() {
+        refreshScheduled.set(false);
+        synchronized (syncLock) {
+            if (snapshot == null || pendingWrites.isEmpty()) {
+                return;
+            }
+            Map<String, PendingWrite> batch = new HashMap<>(pendingWrites);
+            List<String> written = batch.entrySet().stream()
+                    .filter(entry -> !entry.getValue().deleted())
+                    .map(Map.Entry::getKey)
+                    .toList();
+            Map<String, KeycloakUserDTO> changes = written.isEmpty() ? new HashMap<>() : fetchUsers(written);
+            batch.forEach((userId, write) -> {
+                if (write.deleted()) {
+                    changes.put(userId, null);
+                }
+            });
+            synchronized (snapshotLock) {
+                snapshot = snapshot.apply(changes, snapshot.syncedAt());
+            }
+            batch.forEach(pendingWrites::remove);
+            logger.debug("Keycloak user directory refreshed {} written users", batch.size());
+        }
+    }
+
+    private void fullSyncQuietly() {
+        try {
+            fullSync();
+        } catch (RuntimeException e) {
+            logger.warn("Full sync of the Keycloak user directory failed, keeping {} cached users: {}",
+                    snapshot != null ? snapshot.byId().size() : 0, e.getMessage());
+        }
+    }
+
+    private void incrementalSyncQuietly() {
+        try {
+            incrementalSync();
+        } catch (RuntimeException e) {
+            logger.warn("Incremental sync of the Keycloak user directory failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 并行分页抓取全部用户、组成员关系和realm角色成员关系，完成后原子替换快照
+     */
+    void fullSync() {
+        synchronized (syncLock) {
+            long sequenceAtStart = writeSequence.get();
+            Instant startedAt = Instant.now();
+            Map<String, KeycloakUserDTO> users = fullSyncTimer.record(this::crawl);
+            synchronized (snapshotLock) {
+                snapshot = Snapshot.of(users.values(), searchAttributes, startedAt);
+            }
+            // 抓取开始前的写入已包含在抓取结果中；之后的写入保持待刷新，稍后重新获取
+            pendingWrites.values().removeIf(write -> write.sequence() <= sequenceAtStart);
+            if (!pendingWrites.isEmpty()) {
+                scheduleRefresh();
+            }
+            // 抓取开始后的变更不一定在新快照中，之前已处理的这段事件需要重新读取
+            eventCursor = startedAt.minus(EVENT_CURSOR_MARGIN).toEpochMilli();
+            logger.info("Keycloak user directory synced: {} users in {} ms",
+                    users.size(), Duration.between(startedAt, Instant.now()).toMillis());
+        }
+    }
+
+    /**
+     * 读取上次之后的用户相关管理事件，只重新获取涉及的用户。realm未开启管理事件时读不到任何事件，
+     * 此时不前移同步时间；重新开启后中间的变更没有事件，先全量重建
+     */
+    void incrementalSync() {
+        synchronized (syncLock) {
+            if (snapshot != null) {
+                incrementalSyncLocked();
+            }
+        }
+    }
+
+    private void incrementalSyncLocked() {
+        RealmEventsConfigRepresentation eventsConfig = getTargetRealmResource().getRealmEventsConfig();
+        if (!Boolean.TRUE.equals(eventsConfig.isAdminEventsEnabled())) {
+            if (!adminEventsUnavailable) {
+                logger.warn("Admin events are disabled in realm {}, the Keycloak user directory only refreshes on full sync",
+                        keycloakConfig.getTargetRealm());
+                adminEventsUnavailable = true;
+            }
+            return;
+        }
+        if (adminEventsUnavailable) {
+            logger.info("Admin events re-enabled in realm {}, rebuilding the Keycloak user directory", keycloakConfig.getTargetRealm());
+            adminEventsUnavailable = false;
+            fullSync();
+            return;
+        }
+        incrementalSyncTimer.record(() -> {
+            Instant startedAt = Instant.now();
+            long cursor = eventCursor;
+            long newestEvent = cursor;
+            Set<String> changedUserIds = new LinkedHashSet<>();
+            // dateFrom只精确到天，按事件时间在本地过滤；事件按时间倒序返回
+            String dateFrom = LocalDate.ofInstant(Instant.ofEpochMilli(cursor), ZoneOffset.UTC).minusDays(1).toString();
+            RealmResource realm = getTargetRealmResource();
+            for (int first = 0; ; first += pageSize) {
+                List<AdminEventRepresentation> events = realm.getAdminEvents(
+                        null, null, null, null, null, null, USER_EVENT_RESOURCE_TYPES, dateFrom, null, first, pageSize);
+                boolean reachedCursor = false;
+                for (AdminEventRepresentation event : events) {
+                    if (event.getTime() <= cursor) {
+                        reachedCursor = true;
+                        break;
+                    }
+                    newestEvent = Math.max(newestEvent, event.getTime());
+                    String userId = userIdFromResourcePath(event.getResourcePath());
+                    if (userId != null) {
+                        changedUserIds.add(userId);
+                    }
+                }
+                if (reachedCursor || events.size() < pageSize) {
+                    break;
+                }
+            }
+            Map<String, KeycloakUserDTO> changes = changedUserIds.isEmpty() ? new HashMap<>() : fetchUsers(changedUserIds);
+            // 本服务写入的用户由待刷新处理重新获取
+            changes.keySet().removeAll(pendingWrites.keySet());
+            synchronized (snapshotLock) {
+                snapshot = snapshot.apply(changes, startedAt);
+            }
+            eventCursor = newestEvent;
+            if (!changes.isEmpty()) {
+                logger.debug("Keycloak user directory refreshed {} changed users", changes.size());
+            }
+        });
+    }
+
+    private Snapshot requireSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            throw new IllegalStateException("Keycloak user directory is not ready");
+        }
+        return current;
+    }
+
+    private RealmResource getTargetRealmResource() {
+        return keycloakAdminClient.realm(keycloakConfig.getTargetRealm());
+    }
+
+    private Map<String, KeycloakUserDTO> crawl() {
+        RealmResource realm = getTargetRealmResource();
+        UsersResource usersResource = realm.users();
+
+        // 按count()预先切分页并行抓取；最后一页满时继续顺序往后取，兼容抓取期间新增的用户
+        int total = usersResource.count();
+        int pages = Math.max(1, (total + pageSize - 1) / pageSize);
+        List<CompletableFuture<List<UserRepresentation>>> pageFutures = new ArrayList<>(pages);
+        for (int page = 0; page < pages; page++) {
+            int first = page * pageSize;
+            pageFutures.add(supply(() -> usersResource.list(first, pageSize)));
+        }
+
+        List<GroupRepresentation> groups = new ArrayList<>();
+        collectGroups(realm, realm.groups().groups(), groups);
+        Map<GroupRepresentation, CompletableFuture<List<UserRepresentation>>> groupMembers = new LinkedHashMap<>();
+        for (GroupRepresentation group : groups) {
+            groupMembers.put(group, supply(() -> fetchAllPages((first, max) ->
+                    realm.groups().group(group.getId()).members(first, max, true))));
+        }
+        Map<String, CompletableFuture<List<UserRepresentation>>> roleMembers = new LinkedHashMap<>();
+        for (RoleRepresentation role : realm.roles().list(true)) {
+            roleMembers.put(role.getName(), supply(() -> fetchAllPages((first, max) ->
+                    realm.roles().get(role.getName()).getUserMembers(true, first, max))));
+        }
+
+        Map<String, KeycloakUserDTO> users = new LinkedHashMap<>();
+        List<UserRepresentation> lastPage = List.of();
+        for (CompletableFuture<List<UserRepresentation>> pageFuture : pageFutures) {
+            lastPage = pageFuture.join();
+            lastPage.forEach(user -> users.put(user.getId(), toDTO(user)));
+        }
+        for (int first = pages * pageSize; lastPage.size() == pageSize; first += pageSize) {
+            lastPage = usersResource.list(first, pageSize);
+            lastPage.forEach(user -> users.put(user.getId(), toDTO(user)));
+        }
+
+        Map<String, Set<String>> groupPaths = new HashMap<>();
+        groupMembers.forEach((group, members) -> members.join().forEach(member ->
+                groupPaths.computeIfAbsent(member.getId(), id -> new TreeSet<>()).add(group.getPath())));
+        Map<String, Set<String>> roleNames = new HashMap<>();
+        roleMembers.forEach((role, members) -> members.join().forEach(member ->
+                roleNames.computeIfAbsent(member.getId(), id -> new TreeSet<>()).add(role)));
+        users.forEach((id, user) -> {
+            user.setGroups(new ArrayList<>(groupPaths.getOrDefault(id, Set.of())));
+            user.setRealmRoles(new ArrayList<>(roleNames.getOrDefault(id, Set.of())));
+        });
+        return users;
+    }
+
+    private void collectGroups(RealmResource realm, List<GroupRepresentation> groups, List<GroupRepresentation> out) {
+        for (GroupRepresentation group : groups) {
+            out.add(group);
+            List<GroupRepresentation> children = group.getSubGroups();
+            // 较新的Keycloak在列表中不再内联子组，只返回subGroupCount
+            if ((children == null || children.isEmpty()) && group.getSubGroupCount() != null && group.getSubGroupCount() > 0) {
+                children = realm.groups().group(group.getId()).getSubGroups(0, Integer.MAX_VALUE, true);
+            }
+            if (children != null) {
+                collectGroups(realm, children, out);
+            }
+        }
+    }
+
+    private List<UserRepresentation> fetchAllPages(BiFunction<Integer, Integer, List<UserRepresentation>> fetchPage) {
+        List<UserRepresentation> all = new ArrayList<>();
+        for (int first = 0; ; first += pageSize) {
+            List<UserRepresentation> page = fetchPage.apply(first, pageSize);
+            all.addAll(page);
+            if (page.size() < pageSize) {
+                return all;
+            }
+        }
+    }
+
+    /**
+     * 并行获取指定用户的当前状态；已不存在的用户映射为null（即从镜像中删除）
+     */
+    private Map<String, KeycloakUserDTO> fetchUsers(Collection<String> userIds) {
+        Map<String, CompletableFuture<KeycloakUserDTO>> futures = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            futures.put(userId, supply(() -> fetchUser(userId)));
+        }
+        Map<String, KeycloakUserDTO> result = new HashMap<>();
+        futures.forEach((userId, future) -> result.put(userId, future.join()));
+        return result;
+    }
+
+    private KeycloakUserDTO fetchUser(String userId) {
+        UserResource userResource = getTargetRealmResource().users().get(userId);
+        try {
+            KeycloakUserDTO user = toDTO(userResource.toRepresentation());
+            user.setGroups(userResource.groups().stream()
+                    .map(GroupRepresentation::getPath)
+                    .sorted()
+                    .collect(Collectors.toList()));
+            user.setRealmRoles(userResource.roles().realmLevel().listAll().stream()
+                    .map(RoleRepresentation::getName)
+                    .sorted()
+                    .collect(Collectors.toList()));
+            return user;
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, fetchers);
+    }
+
+    private static KeycloakUserDTO toDTO(UserRepresentation user) {
+        user.setUserProfileMetadata(null);
+        return KeycloakUserService.convertToDTO(user);
+    }
+
+    /**
+     * 从管理事件的资源路径（users/{id}、users/{id}/groups/{groupId}、users/{id}/role-mappings/realm）中取出用户ID
+     */
+    static String userIdFromResourcePath(String resourcePath) {
+        if (resourcePath == null || !resourcePath.startsWith("users/")) {
+            return null;
+        }
+        String rest = resourcePath.substring("users/".length());
+        int slash = rest.indexOf('/');
+        String userId = slash >= 0 ? rest.substring(0, slash) : rest;
+        return userId.isEmpty() ? null : userId;
+    }
+
+    /**
+     * 快照中的DTO不对外暴露，返回浅拷贝
+     */
+    private static KeycloakUserDTO copyOf(KeycloakUserDTO source) {
+        KeycloakUserDTO copy = new KeycloakUserDTO();
+        copy.setId(source.getId());
+        copy.setUsername(source.getUsername());
+        copy.setEmail(source.getEmail());
+        copy.setFirstName(source.getFirstName());
+        copy.setLastName(source.getLastName());
+        copy.setEnabled(source.getEnabled());
+        copy.setEmailVerified(source.getEmailVerified());
+        copy.setCreatedTimestamp(source.getCreatedTimestamp());
+        copy.setAttributes(source.getAttributes() != null ? new LinkedHashMap<>(source.getAttributes()) : null);
+        copy.setGroups(source.getGroups() != null ? new ArrayList<>(source.getGroups()) : null);
+        copy.setRealmRoles(source.getRealmRoles() != null ? new ArrayList<>(source.getRealmRoles()) : null);
+        copy.setClientRoles(source.getClientRoles() != null ? new LinkedHashMap<>(source.getClientRoles()) : null);
+        return copy;
+    }
+
+    private record PendingWrite(long sequence, boolean deleted) {}
+
+    /**
+     * 快照：按ID索引，并按用户名排序（与Keycloak列表顺序一致）。byId与ordered不可变，更新时生成新快照；
+     * 搜索索引不复制，由同一次全量同步之后的各快照共享并按用户增量更新，自身用读写锁保护。
+     * 因此旧快照的索引可能已包含之后的变更，搜索结果以快照的byId为准（不在byId中的ID被跳过）
+     */
+    private record Snapshot(Map<String, KeycloakUserDTO> byId, List<KeycloakUserDTO> ordered, UserSearchIndex index, Instant syncedAt) {
+
+        private static final Comparator<KeycloakUserDTO> BY_USERNAME = Comparator.comparing(
+                KeycloakUserDTO::getUsername, Comparator.nullsLast(Comparator.naturalOrder()));
+
+        static Snapshot of(Collection<KeycloakUserDTO> users, List<String> searchAttributes, Instant syncedAt) {
+            Map<String, KeycloakUserDTO> byId = new HashMap<>();
+            UserSearchIndex index = new UserSearchIndex(searchAttributes);
+            users.forEach(user -> {
+                byId.put(user.getId(), user);
+                index.put(user);
+            });
+            return create(byId, index, syncedAt);
+        }
+
+        /**
+         * changes中值为null的用户被删除。有序列表不整体重新排序：去掉变更的用户后与排好序的新数据归并
+         */
+        Snapshot apply(Map<String, KeycloakUserDTO> changes, Instant newSyncedAt) {
+            if (changes.isEmpty()) {
+                return new Snapshot(byId, ordered, index, newSyncedAt);
+            }
+            Map<String, KeycloakUserDTO> next = new HashMap<>(byId);
+            List<KeycloakUserDTO> added = new ArrayList<>();
+            changes.forEach((id, user) -> {
+                if (user != null) {
+                    next.put(id, user);
+                    added.add(user);
+                    index.put(user);
+                } else {
+                    next.remove(id);
+                    index.remove(id);
+                }
+            });
+            added.sort(BY_USERNAME);
+            List<KeycloakUserDTO> merged = new ArrayList<>(next.size());
+            int a = 0;
+            for (KeycloakUserDTO user : ordered) {
+                if (changes.containsKey(user.getId())) {
+                    continue;
+                }
+                while (a < added.size() && BY_USERNAME.compare(added.get(a), user) < 0) {
+                    merged.add(added.get(a++));
+                }
+                merged.add(user);
+            }
+            merged.addAll(added.subList(a, added.size()));
+            return new Snapshot(Map.copyOf(next), List.copyOf(merged), index, newSyncedAt);
+        }
+
+        private static Snapshot create(Map<String, KeycloakUserDTO> byId, UserSearchIndex index, Instant syncedAt) {
+            List<KeycloakUserDTO> ordered = new ArrayList<>(byId.values());
+            ordered.sort(BY_USERNAME);
+            return new Snapshot(Map.copyOf(byId), List.copyOf(ordered), index, syncedAt);
+        }
+    }
+}
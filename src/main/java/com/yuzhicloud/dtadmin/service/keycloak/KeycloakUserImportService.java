@@ -0,0 +1,429 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhi.dtadmin.domain.ApprovalItem;
+import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
+import com.yuzhi.dtadmin.repository.ApprovalItemRepository;
+import com.yuzhi.dtadmin.repository.ApprovalRequestRepository;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportProgressDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportResultDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportRowDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.policy.KeycloakGovernancePolicyService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Keycloak用户批量导入服务
+ * 提交阶段流式读取CSV/JSONL，逐行校验并规范化属性，通过的行按块写入一个IMPORT_USERS审批请求，每行一个审批项；
+ * 任一行未通过校验时整个提交事务回滚。
+ * 审批通过后由同步队列调用{@link #applyImport}，在独立的有界线程池上并行创建用户，逐行记录结果。
+ * 已成功的行不会重复执行，中断或部分失败的导入重新入队后从未成功的行继续。
+ */
+@Service
+public class KeycloakUserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakUserImportService.class);
+
+    /**
+     * 导入文件格式
+     */
+    public enum Format {
+        CSV,
+        JSONL
+    }
+
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+
+    /**
+     * 响应中最多列出的错误行数
+     */
+    static final int MAX_REPORTED_ROWS = 1000;
+
+    private static final int CHUNK_SIZE = 500;
+
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final ApprovalItemRepository approvalItemRepository;
+    private final KeycloakUserSyncService userSyncService;
+    private final KeycloakGovernancePolicyService governancePolicyService;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService writers;
+    private final int maxInFlight;
+    private final int maxRows;
+    private final Duration heartbeatInterval;
+    private final Counter succeededRows;
+    private final Counter failedRows;
+    private final Timer rowTimer;
+
+    public KeycloakUserImportService(ApprovalRequestRepository approvalRequestRepository,
+                                     ApprovalItemRepository approvalItemRepository,
+                                     KeycloakUserSyncService userSyncService,
+                                     KeycloakGovernancePolicyService governancePolicyService,
+                                     TransactionTemplate transactionTemplate,
+                                     EntityManager entityManager,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.keycloak.user-import.concurrency:8}") int concurrency,
+                                     @Value("${app.keycloak.user-import.max-rows:50000}") int maxRows,
+                                     @Value("${app.keycloak.user-import.heartbeat-interval:PT30S}") Duration heartbeatInterval) {
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.approvalItemRepository = approvalItemRepository;
+        this.userSyncService = userSyncService;
+        this.governancePolicyService = governancePolicyService;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.objectMapper = new ObjectMapper();
+        int writerCount = Math.max(1, concurrency);
+        // 在途的行数限制为线程数的两倍，按页读取，不会把整个导入加载到内存
+        this.maxInFlight = writerCount * 2;
+        this.maxRows = maxRows;
+        this.heartbeatInterval = heartbeatInterval;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerCount, runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-import-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.succeededRows = rowCounter(meterRegistry, "succeeded");
+        this.failedRows = rowCounter(meterRegistry, "failed");
+        this.rowTimer = Timer.builder("keycloak.user.import.row")
+            .description("Time to create one imported user in Keycloak")
+            .register(meterRegistry);
+    }
+
+    private static Counter rowCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("keycloak.user.import.rows")
+            .description("Imported user rows applied to Keycloak by outcome")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdown();
+    }
+
+    /**
+     * 校验导入文件并创建审批请求。任一行未通过校验时不创建请求，返回全部错误行，修正后重新提交
+     * 边读边写：请求与审批项在同一事务中按块写入，内存占用与行数无关；出现错误行后不再写入，只继续校验，事务回滚
+     */
+    public KeycloakUserImportResultDTO submit(InputStream in, Format format, String requester) throws IOException {
+        KeycloakUserImportResultDTO result = new KeycloakUserImportResultDTO();
+        Long requestId;
+        try {
+            requestId = transactionTemplate.execute(status -> {
+                Long id = stageRows(in, format, requester, result);
+                if (id == null) {
+                    status.setRollbackOnly();
+                }
+                return id;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (requestId == null) {
+            result.setAccepted(0);
+            logger.info("Rejected user import with {} invalid rows", result.getRejected());
+            return result;
+        }
+        result.setRequestId(requestId);
+        logger.info("Created user import request {} with {} rows", requestId, result.getAccepted());
+        return result;
+    }
+
+    /**
+     * 读取并写入全部行，返回请求ID；存在错误行时返回null，由调用方回滚
+     */
+    private Long stageRows(InputStream in, Format format, String requester, KeycloakUserImportResultDTO result) {
+        ApprovalRequest request = new ApprovalRequest();
+        request.setRequester(requester);
+        request.setType(ApprovalType.IMPORT_USERS);
+        request.setCreatedAt(Instant.now());
+        request.setStatus(ApprovalStatus.PENDING);
+        request = approvalRequestRepository.save(request);
+
+        Set<String> usernames = new HashSet<>();
+        List<ApprovalItem> chunk = new ArrayList<>(CHUNK_SIZE);
+        int rows = 0;
+        try (UserImportReader reader = new UserImportReader(in, format, objectMapper)) {
+            for (UserImportReader.Row row = reader.next(); row != null; row = reader.next()) {
+                if (++rows > maxRows) {
+                    throw new IllegalArgumentException("Import exceeds the limit of " + maxRows + " rows");
+                }
+                KeycloakUserDTO user = row.user();
+                String error = row.error();
+                String payload = null;
+                if (error == null) {
+                    try {
+                        payload = validate(user, usernames);
+                    } catch (IllegalArgumentException e) {
+                        error = e.getMessage();
+                    }
+                }
+                if (error != null) {
+                    // 出现错误行后只继续校验，不再写入审批项
+                    chunk.clear();
+                    result.setRejected(result.getRejected() + 1);
+                    if (result.getErrors().size() < MAX_REPORTED_ROWS) {
+                        result.getErrors().add(new KeycloakUserImportRowDTO(row.number(), user != null ? user.getUsername() : null, error));
+                    }
+                } else if (result.getRejected() == 0) {
+                    chunk.add(newItem(request, row.number(), user.getUsername(), payload));
+                    result.setAccepted(result.getAccepted() + 1);
+                    if (chunk.size() == CHUNK_SIZE) {
+                        saveChunk(chunk);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (result.getRejected() > 0) {
+            return null;
+        }
+        if (result.getAccepted() == 0) {
+            throw new IllegalArgumentException("Import file contains no users");
+        }
+        saveChunk(chunk);
+        // 请求实体已随分块清空持久化上下文而脱管，合并会按空的items删除审批项，因此直接更新原因
+        approvalRequestRepository.updateReason(request.getId(), "批量导入用户: " + result.getAccepted() + "个");
+        return request.getId();
+    }
+
+    /**
+     * 逐行校验：用户名必填且在文件内唯一，属性按治理规则规范化；未指定enabled（如CSV无该列）时默认启用。
+     * 返回写入审批项的载荷
+     */
+    private String validate(KeycloakUserDTO user, Set<String> usernames) {
+        if (user == null || user.getUsername() == null || user.getUsername().isBlank()) {
+            throw new IllegalArgumentException("username is required");
+        }
+        user.setUsername(user.getUsername().trim());
+        // Keycloak用户名不区分大小写
+        if (!usernames.add(user.getUsername().toLowerCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("Duplicate username in import: " + user.getUsername());
+        }
+        user.setId(null);
+        if (user.getEnabled() == null) {
+            user.setEnabled(true);
+        }
+        user.setAttributes(governancePolicyService.normalizeAttributes(user.getAttributes()));
+        try {
+            return objectMapper.writeValueAsString(user);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unable to serialize user: " + e.getOriginalMessage());
+        }
+    }
+
+    private static ApprovalItem newItem(ApprovalRequest request, int number, String username, String payload) {
+        ApprovalItem item = new ApprovalItem();
+        item.setTargetKind("USER");
+        // 创建前以用户名作为目标，成功后替换为Keycloak用户ID
+        item.setTargetId(username);
+        item.setSeqNumber(number);
+        item.setPayload(payload);
+        item.setRequest(request);
+        return item;
+    }
+
+    private void saveChunk(List<ApprovalItem> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        approvalItemRepository.saveAll(chunk);
+        entityManager.flush();
+        entityManager.clear();
+        chunk.clear();
+    }
+
+    /**
+     * 将已批准的导入请求同步到Keycloak：按序号分页读取未成功的行，在写入线程池上并行创建用户，
+     * 每行完成后立即记录结果。执行期间定期调用heartbeat延长队列任务的锁。
+     * 存在失败行时抛出异常，由同步队列退避重试，重试只处理失败和未处理的行
+     */
+    public KeycloakUserImportProgressDTO applyImport(Long requestId, Runnable heartbeat) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Heartbeat beat = new Heartbeat(heartbeat);
+        int afterSeq = 0;
+        List<PendingRow> page;
+        do {
+            int cursor = afterSeq;
+            page = transactionTemplate.execute(status -> approvalItemRepository
+                .findUnappliedAfter(requestId, cursor, PageRequest.of(0, CHUNK_SIZE))
+                .stream()
+                .map(item -> new PendingRow(item.getId(), item.getSeqNumber(), item.getTargetId(), item.getPayload()))
+                .toList());
+            if (page == null) {
+                page = List.of();
+            }
+            for (PendingRow row : page) {
+                afterSeq = row.seq();
+                acquire(inFlight, 1, beat);
+                try {
+                    writers.execute(() -> {
+                        try {
+                            applyRow(requestId, row);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw new IllegalStateException("User import writers are shut down", e);
+                }
+                beat.maybeBeat();
+            }
+        } while (page.size() == CHUNK_SIZE);
+
+        // 等待在途的行全部完成
+        acquire(inFlight, maxInFlight, beat);
+        inFlight.release(maxInFlight);
+
+        KeycloakUserImportProgressDTO progress = getProgress(requestId);
+        if (progress.getFailed() > 0) {
+            throw new IllegalStateException(progress.getFailed() + " of " + progress.getTotal() + " imported users failed");
+        }
+        return progress;
+    }
+
+    private void applyRow(Long requestId, PendingRow row) {
+        Timer.Sample sample = Timer.start();
+        String userId = null;
+        String error = null;
+        try {
+            userId = userSyncService.applyCreateUser(row.payload());
+        } catch (Exception e) {
+            error = errorMessage(e);
+            logger.warn("Import request {} row {} ({}) failed: {}", requestId, row.seq(), row.username(), error);
+        } finally {
+            sample.stop(rowTimer);
+        }
+
+        String createdId = userId;
+        String failure = error;
+        try {
+            Instant now = Instant.now();
+            transactionTemplate.executeWithoutResult(status -> {
+                if (failure == null) {
+                    approvalItemRepository.markApplied(row.id(), createdId, now);
+                } else {
+                    approvalItemRepository.markApplyFailed(row.id(), failure, now);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Unable to record result of import request {} row {}", requestId, row.seq(), e);
+        }
+        (failure == null ? succeededRows : failedRows).increment();
+    }
+
+    /**
+     * 导入进度：按审批项的同步结果统计
+     */
+    public KeycloakUserImportProgressDTO getProgress(Long requestId) {
+        return transactionTemplate.execute(status -> {
+            ApprovalRequest request = approvalRequestRepository.findById(requestId)
+                .filter(candidate -> candidate.getType() == ApprovalType.IMPORT_USERS)
+                .orElseThrow(() -> new IllegalArgumentException("User import request not found: " + requestId));
+
+            KeycloakUserImportProgressDTO progress = new KeycloakUserImportProgressDTO();
+            progress.setRequestId(requestId);
+            progress.setStatus(request.getStatus() != null ? request.getStatus().name() : null);
+            progress.setTotal(approvalItemRepository.countByRequestId(requestId));
+            progress.setSucceeded(approvalItemRepository.countByRequestIdAndApplyStatus(requestId, ApprovalItemApplyStatus.SUCCEEDED));
+            progress.setFailed(approvalItemRepository.countByRequestIdAndApplyStatus(requestId, ApprovalItemApplyStatus.FAILED));
+            progress.setPending(progress.getTotal() - progress.getSucceeded() - progress.getFailed());
+            if (progress.getFailed() > 0) {
+                progress.setFailures(approvalItemRepository
+                    .findByRequestIdAndApplyStatusOrderBySeqNumberAsc(requestId, ApprovalItemApplyStatus.FAILED, PageRequest.of(0, MAX_REPORTED_ROWS))
+                    .stream()
+                    .map(item -> new KeycloakUserImportRowDTO(item.getSeqNumber(), item.getTargetId(), item.getApplyError()))
+                    .collect(Collectors.toCollection(ArrayList::new)));
+            }
+            return progress;
+        });
+    }
+
+    /**
+     * 获取许可，等待期间按心跳间隔延长任务锁
+     */
+    private void acquire(Semaphore semaphore, int permits, Heartbeat beat) {
+        try {
+            while (!semaphore.tryAcquire(permits, heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS)) {
+                beat.maybeBeat();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while applying user import", e);
+        }
+    }
+
+    /**
+     * 取异常链中最内层的错误信息，外层通常只是通用的包装
+     */
+    private static String errorMessage(Exception e) {
+        String message = null;
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null) {
+                message = cause.getMessage();
+            }
+        }
+        if (message == null) {
+            message = e.getClass().getSimpleName();
+        }
+        return message.length() > MAX_ERROR_MESSAGE_LENGTH ? message.substring(0, MAX_ERROR_MESSAGE_LENGTH) : message;
+    }
+
+    private final class Heartbeat {
+
+        private final Runnable callback;
+        private long lastBeat = System.nanoTime();
+
+        private Heartbeat(Runnable callback) {
+            this.callback = callback;
+        }
+
+        void maybeBeat() {
+            long now = System.nanoTime();
+            if (now - lastBeat >= heartbeatInterval.toNanos()) {
+                lastBeat = now;
+                callback.run();
+            }
+        }
+    }
+
+    private record PendingRow(Long id, int seq, String username, String payload) {}
+}
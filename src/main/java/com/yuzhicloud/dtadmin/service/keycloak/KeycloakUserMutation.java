@@ -0,0 +1,174 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 单个用户的变更工作单元
+ * 由{@link KeycloakUserService#beginMutation}创建：用户表示在创建时读取一次；直接分配的realm角色与生效角色（含组、复合角色继承）
+ * 各在首次需要时读取一次。资料、启用状态与角色的修改只作用于本地状态，{@link KeycloakUserService#commit}时与读取时的状态比较，
+ * 只发出有差异的写请求：资料变化时一次update，新增/移除角色各一次批量调用。
+ * 角色授予/移除按直接分配计算差异：经组或复合角色继承的角色仍会建立直接分配，组变化后不会丢失。
+ * 治理校验通过{@link #getAttributes()}与{@link #getRealmRoleNames()}读取本地状态，不再单独查询Keycloak。
+ * 非线程安全，只在一次操作内使用。
+ */
+public final class KeycloakUserMutation {
+
+    private final String userId;
+    private final UserRepresentation user;
+    private final Profile original;
+    private final Supplier<Set<String>> directRoleLoader;
+    private final Supplier<Set<String>> effectiveRoleLoader;
+    private Set<String> directRoleNames;
+    private Set<String> effectiveRoleNames;
+    private final Map<String, KeycloakRoleDTO> rolesToAdd = new LinkedHashMap<>();
+    private final Map<String, KeycloakRoleDTO> rolesToRemove = new LinkedHashMap<>();
+
+    KeycloakUserMutation(String userId, UserRepresentation user, Supplier<Set<String>> directRoleLoader,
+                         Supplier<Set<String>> effectiveRoleLoader) {
+        this.userId = userId;
+        this.user = user;
+        this.original = Profile.of(user);
+        this.directRoleLoader = directRoleLoader;
+        this.effectiveRoleLoader = effectiveRoleLoader;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * 当前（含未提交修改的）用户属性
+     */
+    public Map<String, List<String>> getAttributes() {
+        return user.getAttributes() != null ? Collections.unmodifiableMap(user.getAttributes()) : Map.of();
+    }
+
+    /**
+     * 当前（含未提交修改的）生效realm角色名，包括经组、复合角色继承的角色；
+     * 待移除的角色视为已移除，即使它同时经组继承
+     */
+    public Set<String> getRealmRoleNames() {
+        Set<String> names = new LinkedHashSet<>(effectiveRoleNames());
+        names.removeAll(rolesToRemove.keySet());
+        names.addAll(rolesToAdd.keySet());
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * 待授予的角色名
+     */
+    public Set<String> getGrantedRoleNames() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(rolesToAdd.keySet()));
+    }
+
+    /**
+     * 按用户资料覆盖基本信息；属性为null时保留原有属性
+     */
+    public void applyProfile(KeycloakUserDTO profile) {
+        user.setUsername(profile.getUsername());
+        user.setEmail(profile.getEmail());
+        user.setFirstName(profile.getFirstName());
+        user.setLastName(profile.getLastName());
+        user.setEnabled(profile.getEnabled());
+        user.setEmailVerified(profile.getEmailVerified());
+        if (profile.getAttributes() != null) {
+            user.setAttributes(new HashMap<>(profile.getAttributes()));
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        user.setEnabled(enabled);
+    }
+
+    /**
+     * 授予角色，已直接分配的角色不再重复授予；同一角色待移除时撤销该移除
+     */
+    public void grantRoles(Collection<KeycloakRoleDTO> roles) {
+        if (roles == null) {
+            return;
+        }
+        for (KeycloakRoleDTO role : roles) {
+            if (rolesToRemove.remove(role.getName()) == null && !directRoleNames().contains(role.getName())) {
+                rolesToAdd.put(role.getName(), role);
+            }
+        }
+    }
+
+    /**
+     * 移除角色，未直接分配的角色忽略（继承的角色无法在用户上移除）；同一角色待授予时撤销该授予
+     */
+    public void revokeRoles(Collection<KeycloakRoleDTO> roles) {
+        if (roles == null) {
+            return;
+        }
+        for (KeycloakRoleDTO role : roles) {
+            if (rolesToAdd.remove(role.getName()) == null && directRoleNames().contains(role.getName())) {
+                rolesToRemove.put(role.getName(), role);
+            }
+        }
+    }
+
+    public boolean hasChanges() {
+        return isProfileChanged() || !rolesToAdd.isEmpty() || !rolesToRemove.isEmpty();
+    }
+
+    boolean isProfileChanged() {
+        return !original.equals(Profile.of(user));
+    }
+
+    UserRepresentation getRepresentation() {
+        return user;
+    }
+
+    List<KeycloakRoleDTO> getRolesToAdd() {
+        return new ArrayList<>(rolesToAdd.values());
+    }
+
+    List<KeycloakRoleDTO> getRolesToRemove() {
+        return new ArrayList<>(rolesToRemove.values());
+    }
+
+    private Set<String> directRoleNames() {
+        if (directRoleNames == null) {
+            directRoleNames = Objects.requireNonNull(directRoleLoader.get());
+        }
+        return directRoleNames;
+    }
+
+    private Set<String> effectiveRoleNames() {
+        if (effectiveRoleNames == null) {
+            effectiveRoleNames = Objects.requireNonNull(effectiveRoleLoader.get());
+        }
+        return effectiveRoleNames;
+    }
+
+    /**
+     * 参与差异比较的用户资料字段，属性做深拷贝，避免与工作副本共享列表
+     */
+    private record Profile(String username, String email, String firstName, String lastName,
+                           Boolean enabled, Boolean emailVerified, Map<String, List<String>> attributes) {
+
+        static Profile of(UserRepresentation user) {
+            Map<String, List<String>> attributes = new HashMap<>();
+            if (user.getAttributes() != null) {
+                user.getAttributes().forEach((key, values) -> attributes.put(key, values != null ? new ArrayList<>(values) : null));
+            }
+            return new Profile(user.getUsername(), user.getEmail(), user.getFirstName(), user.getLastName(),
+                user.isEnabled(), user.isEmailVerified(), attributes);
+        }
+    }
+}
@@ -13,19 +13,31 @@ import org.keycloak.representations.idm.UserProfileMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Keycloak UserProfile管理服务
- * 提供UserProfile配置的获取和管理功能
+ * 提供UserProfile配置的获取和管理功能；配置在TTL内缓存为快照（含属性名索引与ETag），更新配置后主动失效
  */
 @Service
 public class KeycloakUserProfileService {
@@ -38,6 +50,16 @@ public class KeycloakUserProfileService {
     private final RestTemplate keycloakRestTemplate;
     private final ObjectMapper objectMapper;
 
+    private final Object profileSnapshotLock = new Object();
+    private volatile UserProfileSnapshot profileSnapshot;
+    /**
+     * 每次清空缓存时递增；加载前记录，加载完成时未变化才发布快照，避免加载期间的配置更新被旧快照覆盖
+     */
+    private long profileSnapshotVersion;
+
+    @Value("${app.keycloak.user-profile-cache.ttl:PT5M}")
+    private Duration profileCacheTtl = Duration.ofMinutes(5);
+
     public KeycloakUserProfileService(
             Keycloak keycloakAdminClient, 
             KeycloakConfig keycloakConfig,
@@ -58,9 +80,54 @@ public class KeycloakUserProfileService {
     }
 
     /**
-     * 获取UserProfile配置 - 使用Admin Client
+     * 获取UserProfile配置 - 优先使用缓存的快照
+     * 返回的DTO在调用方之间共享，不要修改
      */
     public UserProfileConfigDTO getUserProfileConfig() {
+        return getUserProfileSnapshot().config();
+    }
+
+    /**
+     * 获取未过期的UserProfile快照，过期或被清空时重新加载
+     */
+    public UserProfileSnapshot getUserProfileSnapshot() {
+        UserProfileSnapshot snapshot = profileSnapshot;
+        if (snapshot != null && !snapshot.isExpiredAt(Instant.now())) {
+            return snapshot;
+        }
+        synchronized (profileSnapshotLock) {
+            snapshot = profileSnapshot;
+            if (snapshot != null && !snapshot.isExpiredAt(Instant.now())) {
+                return snapshot;
+            }
+            long loadingVersion;
+            synchronized (this) {
+                loadingVersion = profileSnapshotVersion;
+            }
+            snapshot = buildSnapshot(loadUserProfileConfig());
+            synchronized (this) {
+                // 加载期间有配置更新：本次调用使用该快照，但不缓存
+                if (profileSnapshotVersion == loadingVersion) {
+                    profileSnapshot = snapshot;
+                }
+            }
+            logger.debug("Loaded UserProfile config with {} attributes into cache", snapshot.attributeNames().size());
+            return snapshot;
+        }
+    }
+
+    /**
+     * 清空UserProfile缓存，下次访问时重新加载
+     */
+    public synchronized void invalidateUserProfileCache() {
+        profileSnapshot = null;
+        profileSnapshotVersion++;
+    }
+
+    /**
+     * 从Keycloak加载UserProfile配置 - 使用Admin Client，失败时回退到REST API
+     */
+    private UserProfileConfigDTO loadUserProfileConfig() {
         try {
             // 使用Admin Client获取UserProfile配置
             logger.debug("Attempting to get UserProfile config using Admin Client");
@@ -78,10 +145,42 @@ public class KeycloakUserProfileService {
         }
     }
 
+    private UserProfileSnapshot buildSnapshot(UserProfileConfigDTO config) {
+        Set<String> names = new LinkedHashSet<>();
+        if (config != null && config.getAttributes() != null) {
+            config.getAttributes().forEach(attr -> names.add(attr.getName()));
+        }
+        return new UserProfileSnapshot(
+            config,
+            List.copyOf(names),
+            Collections.unmodifiableSet(names),
+            etag(config),
+            Instant.now().plus(profileCacheTtl)
+        );
+    }
+
+    private String etag(UserProfileConfigDTO config) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(config));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            logger.warn("Cannot compute UserProfile config ETag: {}", e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * 更新UserProfile配置 - 使用Admin Client
      */
     public void updateUserProfileConfig(UserProfileConfigDTO config) {
+        try {
+            updateUserProfileConfigInKeycloak(config);
+        } finally {
+            invalidateUserProfileCache();
+        }
+    }
+
+    private void updateUserProfileConfigInKeycloak(UserProfileConfigDTO config) {
         try {
             // 使用Admin Client更新UserProfile配置
             logger.debug("Updating UserProfile config using Admin Client");
@@ -219,6 +318,11 @@ public class KeycloakUserProfileService {
                 throw new RuntimeException("Failed to get UserProfile config from Keycloak");
             }
             
+        } catch (HttpClientErrorException.Unauthorized e) {
+            // 缓存的管理员令牌已被Keycloak拒绝（如会话被注销），下次调用重新获取
+            tokenService.invalidateAdminToken();
+            logger.error("Admin token rejected while getting UserProfile config via REST API", e);
+            throw new RuntimeException("Error getting UserProfile config via REST API", e);
         } catch (Exception e) {
             logger.error("Error getting UserProfile config via REST API", e);
             throw new RuntimeException("Error getting UserProfile config via REST API", e);
@@ -262,6 +366,11 @@ public class KeycloakUserProfileService {
         } catch (JsonProcessingException e) {
             logger.error("Error serializing UserProfile config to JSON", e);
             throw new RuntimeException("Error serializing UserProfile config", e);
+        } catch (HttpClientErrorException.Unauthorized e) {
+            // 缓存的管理员令牌已被Keycloak拒绝（如会话被注销），下次调用重新获取
+            tokenService.invalidateAdminToken();
+            logger.error("Admin token rejected while updating UserProfile config via REST API", e);
+            throw new RuntimeException("Error updating UserProfile config via REST API", e);
         } catch (Exception e) {
             logger.error("Error updating UserProfile config via REST API", e);
             throw new RuntimeException("Error updating UserProfile config via REST API", e);
@@ -273,7 +382,7 @@ public class KeycloakUserProfileService {
      */
     public boolean isUserProfileConfigured() {
         try {
-            getUserProfileConfig();
+            getUserProfileSnapshot();
             return true;
         } catch (Exception e) {
             logger.debug("UserProfile not configured or accessible: {}", e.getMessage());
@@ -282,20 +391,47 @@ public class KeycloakUserProfileService {
     }
 
     /**
-     * 获取UserProfile中的所有属性名称列表
+     * 获取UserProfile中的所有属性名称列表（预先计算的不可变列表）
      */
-    public java.util.List<String> getUserProfileAttributeNames() {
+    public List<String> getUserProfileAttributeNames() {
         try {
-            UserProfileConfigDTO config = getUserProfileConfig();
-            if (config.getAttributes() != null) {
-                return config.getAttributes().stream()
-                        .map(attr -> attr.getName())
-                        .collect(java.util.stream.Collectors.toList());
-            }
-            return java.util.Collections.emptyList();
+            return getUserProfileSnapshot().attributeNames();
         } catch (Exception e) {
             logger.error("Error getting UserProfile attribute names", e);
-            return java.util.Collections.emptyList();
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * UserProfile中是否定义了该属性
+     */
+    public boolean hasUserProfileAttribute(String name) {
+        try {
+            return getUserProfileSnapshot().attributeNameIndex().contains(name);
+        } catch (Exception e) {
+            logger.error("Error checking UserProfile attribute {}", name, e);
+            return false;
+        }
+    }
+
+    /**
+     * UserProfile配置快照
+     *
+     * @param config 配置
+     * @param attributeNames 按定义顺序的属性名
+     * @param attributeNameIndex 属性名索引
+     * @param etag 配置JSON的强ETag（含引号）
+     * @param expiresAt 过期时间
+     */
+    public record UserProfileSnapshot(
+        UserProfileConfigDTO config,
+        List<String> attributeNames,
+        Set<String> attributeNameIndex,
+        String etag,
+        Instant expiresAt
+    ) {
+        boolean isExpiredAt(Instant now) {
+            return now.isAfter(expiresAt);
         }
     }
-}
\ No newline at end of file
+}
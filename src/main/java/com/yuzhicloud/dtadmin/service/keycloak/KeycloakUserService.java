@@ -15,11 +15,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -35,11 +39,14 @@ public class KeycloakUserService {
     private final Keycloak keycloakAdminClient;
     private final KeycloakConfig keycloakConfig;
     private final KeycloakRoleService roleService;
+    private final KeycloakUserDirectory userDirectory;
 
-    public KeycloakUserService(Keycloak keycloakAdminClient, KeycloakConfig keycloakConfig, KeycloakRoleService roleService) {
+    public KeycloakUserService(Keycloak keycloakAdminClient, KeycloakConfig keycloakConfig, KeycloakRoleService roleService,
+                               KeycloakUserDirectory userDirectory) {
         this.keycloakAdminClient = keycloakAdminClient;
         this.keycloakConfig = keycloakConfig;
         this.roleService = roleService;
+        this.userDirectory = userDirectory;
     }
 
     /**
@@ -52,7 +59,7 @@ public class KeycloakUserService {
     /**
      * 将Keycloak UserRepresentation转换为DTO
      */
-    private KeycloakUserDTO convertToDTO(UserRepresentation user) {
+    static KeycloakUserDTO convertToDTO(UserRepresentation user) {
         KeycloakUserDTO dto = new KeycloakUserDTO();
         dto.setId(user.getId());
         dto.setUsername(user.getUsername());
@@ -99,9 +106,12 @@ public class KeycloakUserService {
     }
 
     /**
-     * 获取用户列表（分页）- 使用Admin Client
+     * 获取用户列表（分页）- 优先读取本地用户目录，未就绪时使用Admin Client
      */
     public List<KeycloakUserDTO> getAllUsers(int first, int max) {
+        if (userDirectory.isReady()) {
+            return userDirectory.list(first, max);
+        }
         try {
             RealmResource realmResource = getTargetRealmResource();
             UsersResource usersResource = realmResource.users();
@@ -117,7 +127,7 @@ public class KeycloakUserService {
             logger.debug("Successfully retrieved {} users using Admin Client", users.size());
             
             return users.stream()
-                    .map(this::convertToDTO)
+                    .map(KeycloakUserService::convertToDTO)
                     .collect(Collectors.toList());
                     
         } catch (Exception e) {
@@ -127,15 +137,25 @@ public class KeycloakUserService {
     }
 
     /**
-     * 根据用户名搜索用户 - 使用Admin Client
+     * 根据用户名搜索用户 - 返回第一页结果
      */
     public List<KeycloakUserDTO> searchUsers(String username) {
+        return searchUsers(username, 0, KeycloakUserDirectory.DEFAULT_SEARCH_LIMIT);
+    }
+
+    /**
+     * 分页搜索用户 - 优先使用本地用户目录的搜索索引（按相关度排序），未就绪时使用Admin Client
+     */
+    public List<KeycloakUserDTO> searchUsers(String username, int first, int max) {
+        if (userDirectory.isReady()) {
+            return userDirectory.search(username, first, max);
+        }
         try {
             RealmResource realmResource = getTargetRealmResource();
             UsersResource usersResource = realmResource.users();
             
             // 使用基本的搜索方法
-            List<UserRepresentation> users = usersResource.search(username);
+            List<UserRepresentation> users = usersResource.search(username, first, max);
             
             // 清理可能导致问题的字段
             users.forEach(user -> {
@@ -145,7 +165,7 @@ public class KeycloakUserService {
             logger.debug("Successfully found {} users matching: {}", users.size(), username);
             
             return users.stream()
-                    .map(this::convertToDTO)
+                    .map(KeycloakUserService::convertToDTO)
                     .collect(Collectors.toList());
                     
         } catch (Exception e) {
@@ -155,9 +175,25 @@ public class KeycloakUserService {
     }
 
     /**
-     * 根据ID获取用户 - 使用Admin Client
+     * 根据ID获取用户 - 优先读取本地用户目录；目录中没有时实时查询并异步补入目录
      */
     public KeycloakUserDTO getUserById(String userId) {
+        if (userDirectory.isReady()) {
+            Optional<KeycloakUserDTO> cached = userDirectory.get(userId);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            KeycloakUserDTO user = fetchUserById(userId);
+            userDirectory.refreshUser(userId);
+            return user;
+        }
+        return fetchUserById(userId);
+    }
+
+    /**
+     * 根据ID实时获取用户 - 使用Admin Client，用于需要以Keycloak当前状态为准的校验
+     */
+    public KeycloakUserDTO fetchUserById(String userId) {
         try {
             RealmResource realmResource = getTargetRealmResource();
             UserResource userResource = realmResource.users().get(userId);
@@ -192,10 +228,11 @@ public class KeycloakUserService {
             if (response.getStatus() == 201) {
                 String userId = extractUserIdFromLocation(response.getLocation().toString());
                 logger.info("Successfully created user: {} with ID: {}", userDTO.getUsername(), userId);
+                userDirectory.refreshUser(userId);
                 return userId;
             } else {
                 logger.error("Failed to create user, status: {}", response.getStatus());
-                throw new RuntimeException("Failed to create user in Keycloak");
+                throw new RuntimeException("Failed to create user in Keycloak, status: " + response.getStatus());
             }
             
         } catch (Exception e) {
@@ -204,6 +241,38 @@ public class KeycloakUserService {
         }
     }
 
+    /**
+     * 创建用户，用户名已存在（409）时返回空，由调用方决定是否接管已有用户
+     */
+    public Optional<String> createUserIfAbsent(KeycloakUserDTO userDTO) {
+        try (Response response = getTargetRealmResource().users().create(convertFromDTO(userDTO))) {
+            if (response.getStatus() == Response.Status.CONFLICT.getStatusCode()) {
+                logger.info("User {} already exists in Keycloak", userDTO.getUsername());
+                return Optional.empty();
+            }
+            if (response.getStatus() != Response.Status.CREATED.getStatusCode()) {
+                throw new RuntimeException("Failed to create user in Keycloak, status: " + response.getStatus());
+            }
+            String userId = extractUserIdFromLocation(response.getLocation().toString());
+            logger.info("Successfully created user: {} with ID: {}", userDTO.getUsername(), userId);
+            userDirectory.refreshUser(userId);
+            return Optional.of(userId);
+        } catch (RuntimeException e) {
+            logger.error("Error creating user: {}", userDTO.getUsername(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 按用户名精确查询用户（直接查询Keycloak，不经本地用户目录）
+     */
+    public Optional<KeycloakUserDTO> findUserByUsername(String username) {
+        return getTargetRealmResource().users().search(username, true).stream()
+            .filter(user -> username.equalsIgnoreCase(user.getUsername()))
+            .findFirst()
+            .map(KeycloakUserService::convertToDTO);
+    }
+
     /**
      * 从Location头中提取用户ID
      */
@@ -213,46 +282,61 @@ public class KeycloakUserService {
 
     /**
      * 更新用户信息 - 使用Admin Client
+     * 与当前用户信息比较，没有变化时不发起写请求
      */
     public void updateUser(String userId, KeycloakUserDTO userDTO) {
-          final ObjectMapper MAPPER = new ObjectMapper();
+        KeycloakUserMutation mutation = beginMutation(userId);
+        mutation.applyProfile(userDTO);
+        commit(mutation);
+    }
 
+    /**
+     * 开始对单个用户的变更：读取一次用户信息，直接分配与生效的realm角色各在首次需要时读取一次
+     */
+    public KeycloakUserMutation beginMutation(String userId) {
         try {
-            RealmResource realmResource = getTargetRealmResource();
-            UserResource userResource = realmResource.users().get(userId);
-            logger.info("updated user: {}", MAPPER.writeValueAsString(userDTO));
-            // 先获取现有的用户信息
-            UserRepresentation existingUser = userResource.toRepresentation();
-            
-            // 清理可能导致问题的字段
-         //   existingUser.setUserProfileMetadata(null);
-         //   existingUser.setAccess(null);
-         //   existingUser.setNotBefore(null);
-         //   existingUser.setRequiredActions(null);
-            
-            // 更新用户信息
-            existingUser.setUsername(userDTO.getUsername());
-            existingUser.setEmail(userDTO.getEmail());
-            existingUser.setFirstName(userDTO.getFirstName());
-            existingUser.setLastName(userDTO.getLastName());
-            existingUser.setEnabled(userDTO.getEnabled());
-            existingUser.setEmailVerified(userDTO.getEmailVerified());
-            
-            // 如果有属性信息，也进行更新
-            if (userDTO.getAttributes() != null) {
-                existingUser.setAttributes(userDTO.getAttributes());
+            UserResource userResource = getTargetRealmResource().users().get(userId);
+            UserRepresentation user = userResource.toRepresentation();
+            // 用户档案元数据只读，回写会导致更新失败
+            user.setUserProfileMetadata(null);
+            return new KeycloakUserMutation(userId, user,
+                () -> roleNames(userResource.roles().realmLevel().listAll()),
+                () -> roleNames(userResource.roles().realmLevel().listEffective()));
+        } catch (Exception e) {
+            logger.error("Error loading user for update: {}", userId, e);
+            throw new RuntimeException("Error loading user from Keycloak: " + userId, e);
+        }
+    }
+
+    private static Set<String> roleNames(List<RoleRepresentation> roles) {
+        return roles.stream().map(RoleRepresentation::getName).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * 提交用户变更，只发出有差异的写请求：资料变化时一次update，新增/移除角色各一次批量调用
+     */
+    public void commit(KeycloakUserMutation mutation) {
+        String userId = mutation.getUserId();
+        if (!mutation.hasChanges()) {
+            logger.debug("No changes to apply for user: {}", userId);
+            return;
+        }
+        try {
+            UserResource userResource = getTargetRealmResource().users().get(userId);
+            if (mutation.isProfileChanged()) {
+                userResource.update(mutation.getRepresentation());
             }
-            
-            // 清理其他可能引起问题的字段
-         //   existingUser.setFederatedIdentities(null);
-        //    existingUser.setRealmRoles(null);
-        //    existingUser.setClientRoles(null);
-        //    existingUser.setGroups(null);
-            logger.info("updated existingUser: {}", MAPPER.writeValueAsString(existingUser));
-            userResource.update(existingUser);
-            
-            logger.info("Successfully updated user: {}", userId);
-            
+            List<KeycloakRoleDTO> rolesToAdd = mutation.getRolesToAdd();
+            if (!rolesToAdd.isEmpty()) {
+                userResource.roles().realmLevel().add(rolesToAdd.stream().map(this::convertRoleFromDTO).toList());
+            }
+            List<KeycloakRoleDTO> rolesToRemove = mutation.getRolesToRemove();
+            if (!rolesToRemove.isEmpty()) {
+                userResource.roles().realmLevel().remove(rolesToRemove.stream().map(this::convertRoleFromDTO).toList());
+            }
+            logger.info("Successfully updated user: {} (profile changed: {}, roles added: {}, roles removed: {})",
+                userId, mutation.isProfileChanged(), rolesToAdd.size(), rolesToRemove.size());
+            userDirectory.refreshUser(userId);
         } catch (Exception e) {
             logger.error("Error updating user: {}", userId, e);
             throw new RuntimeException("Error updating user in Keycloak", e);
@@ -270,7 +354,12 @@ public class KeycloakUserService {
             userResource.remove();
             
             logger.info("Successfully deleted user: {}", userId);
+            userDirectory.removeUser(userId);
             
+        } catch (NotFoundException e) {
+            // 幂等：重试时用户可能已在上一次尝试中删除
+            logger.info("User {} does not exist, treating delete as done", userId);
+            userDirectory.removeUser(userId);
         } catch (Exception e) {
             logger.error("Error deleting user: {}", userId, e);
             throw new RuntimeException("Error deleting user from Keycloak", e);
@@ -308,16 +397,14 @@ public class KeycloakUserService {
             RealmResource realmResource = getTargetRealmResource();
             UserResource userResource = realmResource.users().get(userId);
             
-            // 获取基本的用户信息
-            UserRepresentation user = userResource.toRepresentation();
-            
-            // 清理可能导致问题的字段
-            user.setUserProfileMetadata(null);
+            // 只提交enabled字段，未设置的属性由Keycloak保留，无需先读取用户
+            UserRepresentation user = new UserRepresentation();
             user.setEnabled(enabled);
             
             userResource.update(user);
             
             logger.info("Successfully {} user: {}", enabled ? "enabled" : "disabled", userId);
+            userDirectory.refreshUser(userId);
             
         } catch (Exception e) {
             logger.error("Error setting user enabled status: {}", userId, e);
@@ -340,6 +427,7 @@ public class KeycloakUserService {
             userResource.roles().realmLevel().add(roles);
             
             logger.info("Successfully assigned {} realm roles to user: {}", roles.size(), userId);
+            userDirectory.refreshUser(userId);
             
         } catch (Exception e) {
             logger.error("Error assigning realm roles to user: {}", userId, e);
@@ -362,6 +450,7 @@ public class KeycloakUserService {
             userResource.roles().realmLevel().remove(roles);
             
             logger.info("Successfully removed {} realm roles from user: {}", roles.size(), userId);
+            userDirectory.refreshUser(userId);
             
         } catch (Exception e) {
             logger.error("Error removing realm roles from user: {}", userId, e);
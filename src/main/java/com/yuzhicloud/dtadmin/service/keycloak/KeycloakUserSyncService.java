@@ -4,21 +4,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleAssignmentDTO;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
 import com.yuzhicloud.dtadmin.service.keycloak.policy.KeycloakGovernancePolicyService;
-import com.yuzhi.dtadmin.domain.ApprovalRequest;
-import com.yuzhi.dtadmin.domain.ApprovalItem;
-import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
-import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
-import com.yuzhi.dtadmin.repository.ApprovalRequestRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Set;
+import java.util.Locale;
 
 /**
  * Keycloak用户同步服务
- * 处理审批通过后的用户操作同步到Keycloak
+ * 提供审批通过后各类用户操作的Keycloak同步步骤，由同步队列（KeycloakApprovalApplyQueue）经批量执行器调用
  */
 @Service
 public class KeycloakUserSyncService {
@@ -26,194 +20,92 @@ public class KeycloakUserSyncService {
     private static final Logger logger = LoggerFactory.getLogger(KeycloakUserSyncService.class);
     
     private final KeycloakUserService keycloakUserService;
-    private final ApprovalRequestRepository approvalRequestRepository;
     private final ObjectMapper objectMapper;
     private final KeycloakGovernancePolicyService governancePolicyService;
 
-    public KeycloakUserSyncService(KeycloakUserService keycloakUserService, 
-                                  ApprovalRequestRepository approvalRequestRepository,
+    public KeycloakUserSyncService(KeycloakUserService keycloakUserService,
                                   KeycloakGovernancePolicyService governancePolicyService) {
         this.keycloakUserService = keycloakUserService;
-        this.approvalRequestRepository = approvalRequestRepository;
         this.objectMapper = new ObjectMapper();
         this.governancePolicyService = governancePolicyService;
     }
 
     /**
-     * 处理审批通过的请求
+     * 根据审批项载荷在Keycloak中创建用户。可安全重试：上一次尝试已创建用户、但之后的数据角色同步失败时，
+     * 再次执行会接管该用户并从数据角色同步继续，而不是因用户名冲突（409）永久失败
+     *
+     * @return 新用户（或接管的用户）的Keycloak ID
      */
-    @Transactional
-    public void processApprovedRequest(Long requestId) {
+    public String applyCreateUser(String payload) {
         try {
-            ApprovalRequest request = approvalRequestRepository.findById(requestId)
-                    .orElseThrow(() -> new RuntimeException("Approval request not found: " + requestId));
-            
-            // 检查状态是否为APPROVED
-            if (request.getStatus() != ApprovalStatus.APPROVED) {
-                logger.warn("Request {} is not approved, current status: {}", requestId, request.getStatus());
-                return;
-            }
-            
-            // 根据请求类型处理
-            switch (request.getType()) {
-                case CREATE_USER:
-                    handleCreateUser(request);
-                    break;
-                case UPDATE_USER:
-                    handleUpdateUser(request);
-                    break;
-                case DELETE_USER:
-                    handleDeleteUser(request);
-                    break;
-                case GRANT_ROLE:
-                    handleGrantRole(request);
-                    break;
-                case REVOKE_ROLE:
-                    handleRevokeRole(request);
-                    break;
-                default:
-                    logger.warn("Unsupported approval type: {}", request.getType());
-                    return;
-            }
-            
-            // 更新状态为APPLIED
-            request.setStatus(ApprovalStatus.APPLIED);
-            approvalRequestRepository.save(request);
-            
-            logger.info("Successfully processed approval request: {}", requestId);
-        } catch (Exception e) {
-            logger.error("Error processing approval request: {}", requestId, e);
-            // 更新状态为FAILED
-            try {
-                ApprovalRequest request = approvalRequestRepository.findById(requestId).orElse(null);
-                if (request != null) {
-                    request.setStatus(ApprovalStatus.FAILED);
-                    request.setErrorMessage(e.getMessage());
-                    approvalRequestRepository.save(request);
-                }
-            } catch (Exception ex) {
-                logger.error("Error updating request status to FAILED: {}", requestId, ex);
-            }
-            throw new RuntimeException("Failed to process approval request", e);
-        }
-    }
-
-    /**
-     * 处理创建用户请求
-     */
-    private void handleCreateUser(ApprovalRequest request) {
-        Set<ApprovalItem> items = request.getItems();
-        if (items == null || items.isEmpty()) {
-            throw new RuntimeException("No approval items found for CREATE_USER request");
-        }
-        
-        // 只处理第一个item
-        ApprovalItem item = items.iterator().next();
-        try {
-            KeycloakUserDTO user = objectMapper.readValue(item.getPayload(), KeycloakUserDTO.class);
+            KeycloakUserDTO user = objectMapper.readValue(payload, KeycloakUserDTO.class);
             user.setAttributes(governancePolicyService.normalizeAttributes(user.getAttributes()));
-            String userId = keycloakUserService.createUser(user);
+            String userId = keycloakUserService.createUserIfAbsent(user).orElseGet(() -> adoptExistingUser(user));
             governancePolicyService.syncDataRolesForUser(userId, user.getAttributes());
             logger.info("Created user {} with Keycloak ID: {}", user.getUsername(), userId);
+            return userId;
         } catch (Exception e) {
             throw new RuntimeException("Failed to create user in Keycloak", e);
         }
     }
 
     /**
-     * 处理更新用户请求
+     * 接管同名的已有用户：只有邮箱与请求一致时才视为上一次尝试创建的用户，否则按用户名冲突失败
      */
-    private void handleUpdateUser(ApprovalRequest request) {
-        Set<ApprovalItem> items = request.getItems();
-        if (items == null || items.isEmpty()) {
-            throw new RuntimeException("No approval items found for UPDATE_USER request");
-        }
-        
-        // 只处理第一个item
-        ApprovalItem item = items.iterator().next();
-        try {
-            KeycloakUserDTO user = objectMapper.readValue(item.getPayload(), KeycloakUserDTO.class);
-            user.setAttributes(governancePolicyService.normalizeAttributes(user.getAttributes()));
-            keycloakUserService.updateUser(item.getTargetId(), user);
-            governancePolicyService.syncDataRolesForUser(item.getTargetId(), user.getAttributes());
-            logger.info("Updated user with Keycloak ID: {}", item.getTargetId());
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to update user in Keycloak", e);
+    private String adoptExistingUser(KeycloakUserDTO requested) {
+        KeycloakUserDTO existing = keycloakUserService.findUserByUsername(requested.getUsername())
+            .orElseThrow(() -> new IllegalStateException("User creation conflicted but no user named " + requested.getUsername() + " exists"));
+        if (!normalizeEmail(existing.getEmail()).equals(normalizeEmail(requested.getEmail()))) {
+            throw new IllegalStateException("Username already exists in Keycloak: " + requested.getUsername());
         }
+        logger.info("User {} already exists with Keycloak ID {}, resuming its creation", requested.getUsername(), existing.getId());
+        return existing.getId();
+    }
+
+    private static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
     }
 
     /**
-     * 处理删除用户请求
+     * 根据审批项载荷更新Keycloak用户
+     * 用户资料与数据角色在同一个变更单元中比较，只提交有差异的部分；载荷未带属性时沿用现有属性计算数据角色
      */
-    private void handleDeleteUser(ApprovalRequest request) {
-        Set<ApprovalItem> items = request.getItems();
-        if (items == null || items.isEmpty()) {
-            throw new RuntimeException("No approval items found for DELETE_USER request");
-        }
-        
-        // 只处理第一个item
-        ApprovalItem item = items.iterator().next();
+    public void applyUpdateUser(String userId, String payload) {
         try {
-            keycloakUserService.deleteUser(item.getTargetId());
-            logger.info("Deleted user with Keycloak ID: {}", item.getTargetId());
+            KeycloakUserDTO user = objectMapper.readValue(payload, KeycloakUserDTO.class);
+            if (user.getAttributes() != null) {
+                user.setAttributes(governancePolicyService.normalizeAttributes(user.getAttributes()));
+            }
+            KeycloakUserMutation mutation = keycloakUserService.beginMutation(userId);
+            mutation.applyProfile(user);
+            governancePolicyService.syncDataRoles(mutation);
+            keycloakUserService.commit(mutation);
+            logger.info("Updated user with Keycloak ID: {}", userId);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to delete user in Keycloak", e);
+            throw new RuntimeException("Failed to update user in Keycloak", e);
         }
     }
 
     /**
-     * 处理分配角色请求
+     * 删除Keycloak用户
      */
-    private void handleGrantRole(ApprovalRequest request) {
-        Set<ApprovalItem> items = request.getItems();
-        if (items == null || items.isEmpty()) {
-            throw new RuntimeException("No approval items found for GRANT_ROLE request");
-        }
-        
-        // 处理所有items
-        for (ApprovalItem item : items) {
-            try {
-                // 解析角色信息
-                // 这里假设payload包含角色信息，targetId是用户ID
-                KeycloakRoleAssignmentDTO roleAssignment = objectMapper.readValue(item.getPayload(), KeycloakRoleAssignmentDTO.class);
-                
-                governancePolicyService.validateRoleAssignments(item.getTargetId(), roleAssignment.getRoles());
-                // 为用户分配角色
-                keycloakUserService.assignRealmRolesToUser(item.getTargetId(), roleAssignment.getRoles());
-                governancePolicyService.resyncDataRolesFromSource(item.getTargetId());
-                
-                logger.info("Granted roles to user: {}", item.getTargetId());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to grant roles to user in Keycloak", e);
-            }
+    public void applyDeleteUser(String userId) {
+        try {
+            keycloakUserService.deleteUser(userId);
+            logger.info("Deleted user with Keycloak ID: {}", userId);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to delete user in Keycloak", e);
         }
     }
 
     /**
-     * 处理移除角色请求
+     * 解析角色分配/移除审批项的载荷
      */
-    private void handleRevokeRole(ApprovalRequest request) {
-        Set<ApprovalItem> items = request.getItems();
-        if (items == null || items.isEmpty()) {
-            throw new RuntimeException("No approval items found for REVOKE_ROLE request");
-        }
-        
-        // 处理所有items
-        for (ApprovalItem item : items) {
-            try {
-                // 解析角色信息
-                // 这里假设payload包含角色信息，targetId是用户ID
-                KeycloakRoleAssignmentDTO roleAssignment = objectMapper.readValue(item.getPayload(), KeycloakRoleAssignmentDTO.class);
-                
-                governancePolicyService.validateRoleRemoval(item.getTargetId(), roleAssignment.getRoles());
-                // 从用户移除角色
-                keycloakUserService.removeRealmRolesFromUser(item.getTargetId(), roleAssignment.getRoles());
-                governancePolicyService.resyncDataRolesFromSource(item.getTargetId());
-                
-                logger.info("Revoked roles from user: {}", item.getTargetId());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to revoke roles from user in Keycloak", e);
-            }
+    public KeycloakRoleAssignmentDTO readRoleAssignment(String payload) {
+        try {
+            return objectMapper.readValue(payload, KeycloakRoleAssignmentDTO.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid role assignment payload", e);
         }
     }
 }
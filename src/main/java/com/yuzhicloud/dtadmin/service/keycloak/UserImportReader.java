@@ -0,0 +1,171 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量导入文件的流式读取器，每次返回一行用户数据，不缓存整个文件
+ * CSV：首行为表头，username/email/firstName/lastName/enabled/emailVerified映射到用户字段，
+ * 其余列作为用户属性，多个属性值以“|”分隔；字段可用双引号包裹（RFC 4180）。
+ * JSONL：每个非空行是一个KeycloakUserDTO对象。
+ * 行号从1开始计数数据行（不含CSV表头与空行）；某一行格式错误时返回带错误信息的行，不影响后续行。
+ */
+final class UserImportReader implements Closeable {
+
+    static final String MULTI_VALUE_SEPARATOR = "\\|";
+
+    private final BufferedReader reader;
+    private final KeycloakUserImportService.Format format;
+    private final ObjectMapper objectMapper;
+    private List<String> header;
+    private int rowNumber;
+
+    record Row(int number, KeycloakUserDTO user, String error) {}
+
+    UserImportReader(InputStream in, KeycloakUserImportService.Format format, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 读取下一行，文件结束时返回null
+     */
+    Row next() throws IOException {
+        return format == KeycloakUserImportService.Format.CSV ? nextCsv() : nextJson();
+    }
+
+    private Row nextJson() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        rowNumber++;
+        try {
+            return new Row(rowNumber, objectMapper.readValue(line, KeycloakUserDTO.class), null);
+        } catch (JsonProcessingException e) {
+            return new Row(rowNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private Row nextCsv() throws IOException {
+        if (header == null) {
+            List<String> names = readRecord();
+            if (names == null) {
+                return null;
+            }
+            if (!names.isEmpty() && names.get(0).startsWith("\uFEFF")) {
+                names.set(0, names.get(0).substring(1));
+            }
+            header = names.stream().map(String::trim).toList();
+            if (!header.contains("username")) {
+                throw new IllegalArgumentException("CSV header must contain a username column");
+            }
+        }
+        List<String> values;
+        do {
+            values = readRecord();
+            if (values == null) {
+                return null;
+            }
+        } while (values.size() == 1 && values.get(0).isBlank());
+        rowNumber++;
+        if (values.size() > header.size()) {
+            return new Row(rowNumber, null, "Expected at most " + header.size() + " columns but found " + values.size());
+        }
+        return new Row(rowNumber, toUser(values), null);
+    }
+
+    private KeycloakUserDTO toUser(List<String> values) {
+        KeycloakUserDTO user = new KeycloakUserDTO();
+        Map<String, List<String>> attributes = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (header.get(i)) {
+                case "username" -> user.setUsername(value);
+                case "email" -> user.setEmail(value);
+                case "firstName" -> user.setFirstName(value);
+                case "lastName" -> user.setLastName(value);
+                case "enabled" -> user.setEnabled(Boolean.valueOf(value));
+                case "emailVerified" -> user.setEmailVerified(Boolean.valueOf(value));
+                default -> {
+                    List<String> parts = new ArrayList<>();
+                    for (String part : value.split(MULTI_VALUE_SEPARATOR)) {
+                        if (!part.isBlank()) {
+                            parts.add(part.trim());
+                        }
+                    }
+                    attributes.put(header.get(i), parts);
+                }
+            }
+        }
+        user.setAttributes(attributes);
+        return user;
+    }
+
+    /**
+     * 读取一条CSV记录，带引号的字段可以跨行；文件结束时返回null
+     */
+    private List<String> readRecord() throws IOException {
+        int c = reader.read();
+        if (c < 0) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int following = reader.read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (following >= 0) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,447 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 用户目录的内存搜索索引
+ * 对用户名、邮箱、姓名及配置的属性值建立两类倒排：词元有序表用于前缀匹配，字符二元组（bigram）用于中缀匹配，
+ * 对中文姓名同样适用；某个查询词的精确/前缀/中缀候选不足一页时，再在词表上按编辑距离做模糊匹配。
+ * 模糊匹配不扫描整个词表：只看长度差不超过允许编辑次数的词元，并要求与查询词共享足够多的bigram
+ * （每次编辑至多破坏3个bigram，按此下限过滤不会漏掉编辑距离内的词元），编辑距离计算次数另有上限。
+ * 多个查询词（空白分隔）需同时命中，结果按命中类型与字段权重打分排序后分页。
+ * 按用户增量更新；更新只在同步线程上执行，与查询之间通过读写锁隔离。
+ */
+final class UserSearchIndex {
+
+    private static final int EXACT = 100;
+    private static final int PREFIX = 60;
+    private static final int INFIX = 30;
+    private static final int FUZZY = 10;
+
+    /**
+     * 单个查询词最多计算编辑距离的词元数，共享bigram多的优先
+     */
+    static final int MAX_FUZZY_EVALUATIONS = 512;
+
+    private enum Field {
+        USERNAME(4),
+        EMAIL(3),
+        NAME(3),
+        ATTRIBUTE(1);
+
+        private final int weight;
+
+        Field(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private record FieldValue(Field field, String text, List<String> tokens) {}
+
+    private record Document(String userId, String username, List<FieldValue> values, Set<String> tokens, Set<String> bigrams) {}
+
+    private record Hit(String userId, String username, int score) {}
+
+    private static final Comparator<Hit> RANKING = Comparator.comparingInt(Hit::score).reversed()
+            .thenComparing(Hit::username, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final List<String> attributeNames;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Document> documents = new HashMap<>();
+    private final NavigableMap<String, Set<String>> tokenPostings = new TreeMap<>();
+    private final Map<String, Set<String>> bigramPostings = new HashMap<>();
+
+    /**
+     * 模糊匹配用的词表：词元长度 -> bigram -> 含该bigram的词元
+     */
+    private final Map<Integer, Map<String, Set<String>>> vocabulary = new HashMap<>();
+
+    UserSearchIndex(Collection<String> attributeNames) {
+        this.attributeNames = List.copyOf(attributeNames);
+    }
+
+    /**
+     * 新增或替换用户
+     */
+    void put(KeycloakUserDTO user) {
+        Document document = toDocument(user);
+        lock.writeLock().lock();
+        try {
+            removeLocked(user.getId());
+            documents.put(document.userId(), document);
+            for (String token : document.tokens()) {
+                Set<String> ids = tokenPostings.get(token);
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    tokenPostings.put(token, ids);
+                    addToVocabulary(token);
+                }
+                ids.add(document.userId());
+            }
+            document.bigrams().forEach(gram -> bigramPostings.computeIfAbsent(gram, g -> new HashSet<>()).add(document.userId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String userId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按相关度排序返回第first条起的至多max个用户ID
+     */
+    List<String> search(String query, int first, int max) {
+        List<String> terms = terms(query);
+        if (terms.isEmpty() || max <= 0) {
+            return List.of();
+        }
+        int offset = Math.max(first, 0);
+        int requested;
+        try {
+            requested = Math.addExact(offset, max);
+        } catch (ArithmeticException e) {
+            requested = Integer.MAX_VALUE;
+        }
+        lock.readLock().lock();
+        try {
+            // 命中数不会超过用户数
+            int limit = Math.min(requested, documents.size());
+            if (offset >= limit) {
+                return List.of();
+            }
+            Set<String> candidates = null;
+            for (String term : terms) {
+                Set<String> termCandidates = candidates(term, limit);
+                if (candidates == null) {
+                    candidates = termCandidates;
+                } else {
+                    candidates.retainAll(termCandidates);
+                }
+                if (candidates.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            // 只保留前limit个命中的小顶堆
+            PriorityQueue<Hit> top = new PriorityQueue<>(RANKING.reversed());
+            for (String userId : candidates) {
+                Document document = documents.get(userId);
+                int score = score(document, terms);
+                if (score > 0) {
+                    top.add(new Hit(userId, document.username(), score));
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+            List<Hit> ranked = new ArrayList<>(top);
+            ranked.sort(RANKING);
+            return ranked.stream()
+                    .skip(offset)
+                    .map(Hit::userId)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(String userId) {
+        Document existing = documents.remove(userId);
+        if (existing == null) {
+            return;
+        }
+        for (String token : existing.tokens()) {
+            if (removePosting(tokenPostings, token, userId)) {
+                removeFromVocabulary(token);
+            }
+        }
+        existing.bigrams().forEach(gram -> removePosting(bigramPostings, gram, userId));
+    }
+
+    private void addToVocabulary(String token) {
+        Map<String, Set<String>> bucket = vocabulary.computeIfAbsent(token.length(), length -> new HashMap<>());
+        bigrams(token).forEach(gram -> bucket.computeIfAbsent(gram, g -> new HashSet<>()).add(token));
+    }
+
+    private void removeFromVocabulary(String token) {
+        Map<String, Set<String>> bucket = vocabulary.get(token.length());
+        if (bucket == null) {
+            return;
+        }
+        bigrams(token).forEach(gram -> removePosting(bucket, gram, token));
+        if (bucket.isEmpty()) {
+            vocabulary.remove(token.length());
+        }
+    }
+
+    /**
+     * 返回该键是否因此被移除
+     */
+    private static boolean removePosting(Map<String, Set<String>> postings, String key, String value) {
+        Set<String> values = postings.get(key);
+        if (values == null) {
+            return false;
+        }
+        values.remove(value);
+        if (values.isEmpty()) {
+            postings.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 可能命中该查询词的用户：至少两个字符时取各bigram倒排的交集，单个字符时取词元前缀；
+     * 不足limit个时补充编辑距离内的词元
+     */
+    private Set<String> candidates(String term, int limit) {
+        Set<String> result = new HashSet<>();
+        List<String> grams = bigrams(term);
+        if (grams.isEmpty()) {
+            tokenPostings.subMap(term, true, term + Character.MAX_VALUE, false).values().forEach(result::addAll);
+        } else {
+            Set<String> intersection = null;
+            for (String gram : grams) {
+                Set<String> ids = bigramPostings.getOrDefault(gram, Set.of());
+                if (intersection == null) {
+                    intersection = new HashSet<>(ids);
+                } else {
+                    intersection.retainAll(ids);
+                }
+                if (intersection.isEmpty()) {
+                    break;
+                }
+            }
+            result.addAll(intersection);
+        }
+        int maxEdits = maxEdits(term);
+        if (result.size() < limit && maxEdits > 0) {
+            for (String token : fuzzyTokens(term, maxEdits)) {
+                result.addAll(tokenPostings.get(token));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 编辑距离内的词元：先按长度分桶和共享bigram数筛选，再对共享最多的至多MAX_FUZZY_EVALUATIONS个计算编辑距离
+     */
+    private List<String> fuzzyTokens(String term, int maxEdits) {
+        Set<String> grams = new HashSet<>(bigrams(term));
+        int required = Math.max(1, grams.size() - 3 * maxEdits);
+        Map<String, Integer> shared = new HashMap<>();
+        for (int length = term.length() - maxEdits; length <= term.length() + maxEdits; length++) {
+            Map<String, Set<String>> bucket = vocabulary.get(length);
+            if (bucket == null) {
+                continue;
+            }
+            for (String gram : grams) {
+                for (String token : bucket.getOrDefault(gram, Set.of())) {
+                    shared.merge(token, 1, Integer::sum);
+                }
+            }
+        }
+        return shared.entrySet().stream()
+                .filter(entry -> entry.getValue() >= required)
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(MAX_FUZZY_EVALUATIONS)
+                .map(Map.Entry::getKey)
+                .filter(token -> withinEditDistance(term, token, maxEdits))
+                .toList();
+    }
+
+    /**
+     * 各查询词在所有字段中的最佳得分之和；任一查询词未命中时为0
+     */
+    private int score(Document document, List<String> terms) {
+        int total = 0;
+        for (String term : terms) {
+            int best = 0;
+            int maxEdits = maxEdits(term);
+            for (FieldValue value : document.values()) {
+                int kind;
+                if (value.text().equals(term)) {
+                    kind = EXACT;
+                } else if (value.text().startsWith(term) || value.tokens().stream().anyMatch(token -> token.startsWith(term))) {
+                    kind = PREFIX;
+                } else if (term.length() > 1 && value.text().contains(term)) {
+                    kind = INFIX;
+                } else if (maxEdits > 0 && value.tokens().stream().anyMatch(token -> withinEditDistance(term, token, maxEdits))) {
+                    kind = FUZZY;
+                } else {
+                    continue;
+                }
+                best = Math.max(best, kind * value.field().weight);
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private Document toDocument(KeycloakUserDTO user) {
+        List<FieldValue> values = new ArrayList<>();
+        addValue(values, Field.USERNAME, user.getUsername());
+        addValue(values, Field.EMAIL, user.getEmail());
+        addValue(values, Field.NAME, user.getFirstName());
+        addValue(values, Field.NAME, user.getLastName());
+        if (user.getFirstName() != null && user.getLastName() != null) {
+            // 中文姓名习惯“姓+名”连写，西文习惯“名 姓”
+            addValue(values, Field.NAME, user.getLastName() + user.getFirstName());
+            addValue(values, Field.NAME, user.getFirstName() + " " + user.getLastName());
+        }
+        if (user.getAttributes() != null) {
+            for (String attributeName : attributeNames) {
+                List<String> attributeValues = user.getAttributes().get(attributeName);
+                if (attributeValues != null) {
+                    attributeValues.forEach(value -> addValue(values, Field.ATTRIBUTE, value));
+                }
+            }
+        }
+        Set<String> tokens = new HashSet<>();
+        Set<String> grams = new HashSet<>();
+        for (FieldValue value : values) {
+            tokens.addAll(value.tokens());
+            grams.addAll(bigrams(value.text()));
+        }
+        return new Document(user.getId(), user.getUsername(), List.copyOf(values), tokens, grams);
+    }
+
+    private static void addValue(List<FieldValue> values, Field field, String raw) {
+        String text = normalize(raw);
+        if (!text.isEmpty()) {
+            values.add(new FieldValue(field, text, tokens(text)));
+        }
+    }
+
+    static String normalize(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        return Normalizer.normalize(raw, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static List<String> terms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String part : normalize(query).replace("*", " ").split("\\s+")) {
+            if (!part.isEmpty()) {
+                terms.add(part);
+            }
+        }
+        return List.copyOf(terms);
+    }
+
+    /**
+     * 按非字母数字字符切分（邮箱拆为本地部分、域名各段）
+     */
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            boolean wordChar = Character.isLetterOrDigit(codePoint);
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i));
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (start >= 0) {
+            tokens.add(text.substring(start));
+        }
+        return tokens;
+    }
+
+    private static List<String> bigrams(String text) {
+        int[] codePoints = text.codePoints().toArray();
+        if (codePoints.length < 2) {
+            return List.of();
+        }
+        List<String> grams = new ArrayList<>(codePoints.length - 1);
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 2));
+        }
+        return grams;
+    }
+
+    /**
+     * 短词不做模糊匹配，避免噪声
+     */
+    private static int maxEdits(String term) {
+        int length = term.codePointCount(0, term.length());
+        if (length < 4) {
+            return 0;
+        }
+        return length < 8 ? 1 : 2;
+    }
+
+    /**
+     * 带上限的编辑距离判断（相邻字符交换计为一次编辑，按行计算，整行超过上限时提前结束）
+     */
+    static boolean withinEditDistance(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return false;
+        }
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(previous[j - 1] + cost, Math.min(previous[j] + 1, current[j - 1] + 1));
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], beforePrevious[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()] <= maxEdits;
+    }
+}
@@ -3,6 +3,7 @@ package com.yuzhicloud.dtadmin.service.keycloak.policy;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakRoleService;
+import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserMutation;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -80,17 +82,8 @@ public class KeycloakGovernancePolicyService {
      * Ensure data classification roles are synchronised with the stored person level.
      */
     public void syncDataRolesForUser(String userId, Map<String, List<String>> attributes) {
-        PersonSecurityLevel level = PersonSecurityLevel.fromAttributes(attributes).orElse(null);
-
-        Set<String> desiredRoleNames = level == null
-            ? Set.of()
-            : new LinkedHashSet<>(level.getDataRoleNames());
-
-        List<KeycloakRoleDTO> currentRoles = roleService.getUserRealmRoles(userId);
-        Set<String> currentDataRoles = currentRoles.stream()
-            .map(KeycloakRoleDTO::getName)
-            .filter(DATA_CLASSIFICATION_ROLES::contains)
-            .collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<String> desiredRoleNames = desiredDataRoles(attributes);
+        Set<String> currentDataRoles = currentDataRoles(fetchCurrentRoleNames(userId));
 
         Set<String> rolesToAssign = new LinkedHashSet<>(desiredRoleNames);
         rolesToAssign.removeAll(currentDataRoles);
@@ -111,10 +104,76 @@ public class KeycloakGovernancePolicyService {
         }
     }
 
+    /**
+     * Stage the data role changes implied by the mutation's (possibly updated) attributes.
+     * Uses the attributes and roles already loaded by the mutation; nothing is written until it is committed.
+     */
+    public void syncDataRoles(KeycloakUserMutation mutation) {
+        Set<String> desiredRoleNames = desiredDataRoles(mutation.getAttributes());
+        Set<String> currentDataRoles = currentDataRoles(mutation.getRealmRoleNames());
+
+        Set<String> rolesToAssign = new LinkedHashSet<>(desiredRoleNames);
+        rolesToAssign.removeAll(currentDataRoles);
+
+        Set<String> rolesToRemove = new LinkedHashSet<>(currentDataRoles);
+        rolesToRemove.removeAll(desiredRoleNames);
+
+        if (!rolesToAssign.isEmpty()) {
+            mutation.grantRoles(resolveRoles(rolesToAssign));
+            log.debug("Staged data roles {} for user {}", rolesToAssign, mutation.getUserId());
+        }
+
+        if (!rolesToRemove.isEmpty()) {
+            mutation.revokeRoles(resolveRoles(rolesToRemove));
+            log.debug("Staged removal of data roles {} from user {}", rolesToRemove, mutation.getUserId());
+        }
+    }
+
     /**
      * Validate a role assignment request against governance rules.
      */
     public void validateRoleAssignments(String userId, List<KeycloakRoleDTO> rolesToAssign) {
+        validateRoleAssignments(rolesToAssign, () -> fetchCurrentRoleNames(userId), () -> fetchAttributes(userId));
+    }
+
+    /**
+     * Validate a role assignment against the state already loaded by the mutation, including staged changes.
+     */
+    public void validateRoleAssignments(KeycloakUserMutation mutation, List<KeycloakRoleDTO> rolesToAssign) {
+        validateRoleAssignments(rolesToAssign, mutation::getRealmRoleNames, mutation::getAttributes);
+    }
+
+    /**
+     * Validate the role set the mutation would leave the user with (current roles plus staged grants minus staged
+     * removals) before it is committed. Grants that were each valid on their own can still conflict once merged.
+     */
+    public void validateFinalRoles(KeycloakUserMutation mutation) {
+        Set<String> granted = mutation.getGrantedRoleNames();
+        if (!granted.contains(ROLE_OP_ADMIN) && granted.stream().noneMatch(GOVERNANCE_ROLES::contains)) {
+            return;
+        }
+        Set<String> finalRoles = mutation.getRealmRoleNames();
+        if (finalRoles.contains(ROLE_OP_ADMIN) && finalRoles.stream().anyMatch(GOVERNANCE_ROLES::contains)) {
+            throw new IllegalStateException("ROLE_OP_ADMIN cannot be combined with governance roles (ROLE_SYS_ADMIN/ROLE_AUTH_ADMIN/ROLE_AUDITOR_ADMIN).");
+        }
+    }
+
+    /**
+     * Validate a role removal request to ensure minimum data roles stay intact.
+     */
+    public void validateRoleRemoval(String userId, List<KeycloakRoleDTO> rolesToRemove) {
+        validateRoleRemoval(rolesToRemove, () -> fetchAttributes(userId));
+    }
+
+    /**
+     * Validate a role removal against the attributes already loaded by the mutation.
+     */
+    public void validateRoleRemoval(KeycloakUserMutation mutation, List<KeycloakRoleDTO> rolesToRemove) {
+        validateRoleRemoval(rolesToRemove, mutation::getAttributes);
+    }
+
+    private void validateRoleAssignments(List<KeycloakRoleDTO> rolesToAssign, Supplier<Set<String>> currentRoles,
+                                         Supplier<Map<String, List<String>>> attributes) {
         if (rolesToAssign == null || rolesToAssign.isEmpty()) {
             return;
         }
@@ -123,17 +182,12 @@ public class KeycloakGovernancePolicyService {
             .map(KeycloakRoleDTO::getName)
             .collect(Collectors.toSet());
 
-        Set<String> currentRoles = fetchCurrentRoleNames(userId);
-
-        enforceSeparationOfDuties(currentRoles, requestedNames);
+        enforceSeparationOfDuties(currentRoles.get(), requestedNames);
 
-        validateDataRoles(userId, requestedNames);
+        validateDataRoles(attributes, requestedNames);
     }
 
-    /**
-     * Validate a role removal request to ensure minimum data roles stay intact.
-     */
-    public void validateRoleRemoval(String userId, List<KeycloakRoleDTO> rolesToRemove) {
+    private void validateRoleRemoval(List<KeycloakRoleDTO> rolesToRemove, Supplier<Map<String, List<String>>> attributes) {
         if (rolesToRemove == null || rolesToRemove.isEmpty()) {
             return;
         }
@@ -142,7 +196,7 @@ public class KeycloakGovernancePolicyService {
             .map(KeycloakRoleDTO::getName)
             .collect(Collectors.toSet());
 
-        PersonSecurityLevel level = PersonSecurityLevel.fromAttributes(fetchAttributes(userId)).orElse(null);
+        PersonSecurityLevel level = PersonSecurityLevel.fromAttributes(attributes.get()).orElse(null);
         if (level == null) {
             return;
         }
@@ -164,12 +218,12 @@ public class KeycloakGovernancePolicyService {
         syncDataRolesForUser(userId, attributes);
     }
 
-    private void validateDataRoles(String userId, Set<String> requestedNames) {
+    private void validateDataRoles(Supplier<Map<String, List<String>>> attributes, Set<String> requestedNames) {
         if (requestedNames.stream().noneMatch(DATA_CLASSIFICATION_ROLES::contains)) {
             return;
         }
 
-        PersonSecurityLevel level = PersonSecurityLevel.fromAttributes(fetchAttributes(userId)).orElse(null);
+        PersonSecurityLevel level = PersonSecurityLevel.fromAttributes(attributes.get()).orElse(null);
         if (level == null) {
             throw new IllegalStateException("Assign data classification roles after configuring person_security_level.");
         }
@@ -200,8 +254,20 @@ public class KeycloakGovernancePolicyService {
         }
     }
 
+    private Set<String> desiredDataRoles(Map<String, List<String>> attributes) {
+        return PersonSecurityLevel.fromAttributes(attributes)
+            .<Set<String>>map(level -> new LinkedHashSet<>(level.getDataRoleNames()))
+            .orElse(Set.of());
+    }
+
+    private Set<String> currentDataRoles(Set<String> currentRoleNames) {
+        return currentRoleNames.stream()
+            .filter(DATA_CLASSIFICATION_ROLES::contains)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
     private Map<String, List<String>> fetchAttributes(String userId) {
-        KeycloakUserDTO user = userService.getUserById(userId);
+        KeycloakUserDTO user = userService.fetchUserById(userId);
         Map<String, List<String>> attributes = user.getAttributes();
         return attributes != null ? attributes : Map.of();
     }
@@ -213,9 +279,7 @@ public class KeycloakGovernancePolicyService {
     }
 
     private List<KeycloakRoleDTO> resolveRoles(Set<String> names) {
-        return names.stream()
-            .map(roleService::getRealmRoleByName)
-            .collect(Collectors.toList());
+        return roleService.getRealmRolesByNames(names);
     }
 
     private Optional<String> extractFirst(Map<String, List<String>> attributes, String key) {
@@ -0,0 +1,28 @@
+package com.yuzhicloud.dtadmin.web.rest.keycloak;
+
+/**
+ * 条件请求辅助方法
+ */
+final class ETags {
+
+    private ETags() {}
+
+    /**
+     * If-None-Match可能是以逗号分隔的多个ETag，按弱比较匹配
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank() || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,12 +1,17 @@
 package com.yuzhicloud.dtadmin.web.rest.keycloak;
 
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakBatchApprovalDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakBatchApprovalResultDTO;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakApprovalService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Keycloak审批管理REST控制器
@@ -44,6 +49,33 @@ public class KeycloakApprovalController {
         }
     }
 
+    /**
+     * 批量审批通过请求，返回每个请求的处理结果：QUEUED表示已批准并登记同步，SKIPPED表示不存在或已不是待审批状态
+     */
+    @PostMapping("/batch/approve")
+    public ResponseEntity<?> approveRequests(@RequestBody KeycloakBatchApprovalDTO batch) {
+        if (batch.getRequestIds() == null || batch.getRequestIds().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "requestIds is required"));
+        }
+        try {
+            String approver = batch.getApprover() != null ? batch.getApprover() : "unknown";
+            String note = batch.getNote() != null ? batch.getNote() : "";
+
+            Set<Long> approved = new HashSet<>(approvalService.approveRequests(batch.getRequestIds(), approver, note));
+            List<KeycloakBatchApprovalResultDTO> results = batch.getRequestIds().stream()
+                .distinct()
+                .map(id -> approved.contains(id)
+                    ? new KeycloakBatchApprovalResultDTO(id, "QUEUED", null)
+                    : new KeycloakBatchApprovalResultDTO(id, "SKIPPED", "Request not found or not pending"))
+                .toList();
+            return ResponseEntity.ok(results);
+        } catch (Exception e) {
+            logger.error("Error approving requests: {}", batch.getRequestIds(), e);
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Failed to approve requests: " + e.getMessage()));
+        }
+    }
+
     /**
      * 审批拒绝请求
      */
@@ -65,17 +97,36 @@ public class KeycloakApprovalController {
     }
     
     /**
-     * 处理已批准的请求并同步到Keycloak
+     * 重新同步失败的请求，批量导入只重试未成功的行
+     */
+    @PostMapping("/{requestId}/retry")
+    public ResponseEntity<Map<String, String>> retryRequest(@PathVariable Long requestId) {
+        try {
+            approvalService.retryRequest(requestId);
+            return ResponseEntity.accepted().body(Map.of("message", "Request queued for retry"));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error retrying request: {}", requestId, e);
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Failed to retry request: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 为已批准的请求登记Keycloak同步任务，由同步队列异步执行
      */
     @PostMapping("/{requestId}/process")
     public ResponseEntity<Map<String, String>> processApprovedRequest(@PathVariable Long requestId) {
         try {
-            approvalService.processApprovedRequest(requestId);
-            return ResponseEntity.ok(Map.of("message", "Approved request processed successfully"));
+            approvalService.queueApprovedRequest(requestId);
+            return ResponseEntity.accepted().body(Map.of("message", "Approved request queued for Keycloak apply"));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            logger.error("Error processing approved request: {}", requestId, e);
+            logger.error("Error queueing approved request: {}", requestId, e);
             return ResponseEntity.status(500)
-                    .body(Map.of("error", "Failed to process approved request: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to queue approved request: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+}
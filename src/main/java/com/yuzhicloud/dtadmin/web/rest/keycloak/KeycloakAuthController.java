@@ -1,19 +1,18 @@
 package com.yuzhicloud.dtadmin.web.rest.keycloak;
 
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakTokenDTO;
-import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakAuthService;
+import com.yuzhicloud.dtadmin.service.keycloak.KeycloakLoginUserService;
+import com.yuzhicloud.dtadmin.service.keycloak.KeycloakLoginUserService.LoginUser;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakTokenService;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserService;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakRoleService;
-import org.keycloak.representations.idm.UserRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -30,15 +29,18 @@ public class KeycloakAuthController {
     private final KeycloakTokenService tokenService;
     private final KeycloakUserService userService;
     private final KeycloakRoleService roleService;
+    private final KeycloakLoginUserService loginUserService;
 
     public KeycloakAuthController(KeycloakAuthService authService, 
                                   KeycloakTokenService tokenService,
                                   KeycloakUserService userService,
-                                  KeycloakRoleService roleService) {
+                                  KeycloakRoleService roleService,
+                                  KeycloakLoginUserService loginUserService) {
         this.authService = authService;
         this.tokenService = tokenService;
         this.userService = userService;
         this.roleService = roleService;
+        this.loginUserService = loginUserService;
     }
 
     /**
@@ -194,28 +196,19 @@ public class KeycloakAuthController {
             // 使用官方SDK进行认证
             //KeycloakTokenDTO token = authService.login(loginRequest.getUsername(), loginRequest.getPassword());
             KeycloakTokenDTO token =  tokenService.login(loginRequest.getUsername(), loginRequest.getPassword());
-            // 获取用户信息
-            UserRepresentation userRep = authService.getUserByUsername(loginRequest.getUsername());
+            // 获取用户信息：优先从访问令牌解析，令牌缺少的部分并行查询
+            LoginUser loginUser = loginUserService.resolve(loginRequest.getUsername(), token.getAccessToken());
             UserInfo userInfo;
             
-            if (userRep != null) {
-                // 获取用户角色
-                String[] userRoles = new String[0];
-                try {
-                    List<KeycloakRoleDTO> roles = roleService.getUserRealmRoles(userRep.getId());
-                    userRoles = roles.stream().map(KeycloakRoleDTO::getName).toArray(String[]::new);
-                } catch (Exception e) {
-                    logger.warn("Failed to retrieve roles for user: {}", loginRequest.getUsername(), e);
-                }
-                
+            if (loginUser != null) {
                 userInfo = new UserInfo(
-                    userRep.getId(),
-                    userRep.getUsername(),
-                    userRep.getEmail(),
-                    userRep.getFirstName(),
-                    userRep.getLastName(),
-                    userRep.isEnabled(),
-                    userRoles
+                    loginUser.id(),
+                    loginUser.username(),
+                    loginUser.email(),
+                    loginUser.firstName(),
+                    loginUser.lastName(),
+                    loginUser.enabled(),
+                    loginUser.roles().toArray(String[]::new)
                 );
             } else {
                 // 如果获取不到用户信息，使用默认值
@@ -4,12 +4,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
 import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleAssignmentDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportProgressDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportResultDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportRowDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserImportService;
+import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserDirectory;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserService;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakRoleService;
 import com.yuzhi.dtadmin.domain.ApprovalRequest;
 import com.yuzhi.dtadmin.domain.ApprovalItem;
 import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
 import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
+import com.yuzhi.dtadmin.security.SecurityUtils;
 import com.yuzhi.dtadmin.service.ApprovalRequestService;
 import com.yuzhi.dtadmin.service.AuditLogUtil;
 import com.yuzhi.dtadmin.service.dto.ApprovalRequestDTO;
@@ -17,11 +23,14 @@ import com.yuzhi.dtadmin.service.dto.ApprovalItemDTO;
 import com.yuzhi.dtadmin.service.mapper.ApprovalRequestMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.HashSet;
 import java.util.List;
@@ -39,19 +48,28 @@ import java.util.UUID;
 public class KeycloakUserController {
 
     private static final Logger logger = LoggerFactory.getLogger(KeycloakUserController.class);
+
+    static final String DIRECTORY_SYNCED_AT_HEADER = "X-Directory-Synced-At";
+
+    static final int MAX_SEARCH_PAGE_SIZE = 1000;
     
     private final KeycloakUserService userService;
     private final KeycloakRoleService roleService;
+    private final KeycloakUserDirectory userDirectory;
+    private final KeycloakUserImportService userImportService;
     private final ApprovalRequestService approvalRequestService;
     private final ApprovalRequestMapper approvalRequestMapper;
     private final ObjectMapper objectMapper;
     private final AuditLogUtil auditLogUtil;
 
     public KeycloakUserController(KeycloakUserService userService, KeycloakRoleService roleService, 
+                                  KeycloakUserDirectory userDirectory, KeycloakUserImportService userImportService,
                                   ApprovalRequestService approvalRequestService, ApprovalRequestMapper approvalRequestMapper,
                                   AuditLogUtil auditLogUtil) {
         this.userService = userService;
         this.roleService = roleService;
+        this.userDirectory = userDirectory;
+        this.userImportService = userImportService;
         this.approvalRequestService = approvalRequestService;
         this.approvalRequestMapper = approvalRequestMapper;
         this.objectMapper = new ObjectMapper();
@@ -67,7 +85,7 @@ public class KeycloakUserController {
             @RequestParam(defaultValue = "100") int max) {
         try {
             List<KeycloakUserDTO> users = userService.getAllUsers(first, max);
-            return ResponseEntity.ok(users);
+            return withDirectorySyncedAt(users);
         } catch (Exception e) {
             logger.error("Error retrieving users", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -75,14 +93,19 @@ public class KeycloakUserController {
     }
 
     /**
-     * 根据用户名搜索用户
+     * 搜索用户（用户名、邮箱、姓名及部分属性），按相关度排序分页；first不能为负，max需在1到MAX_SEARCH_PAGE_SIZE之间
      */
     @GetMapping("/search")
     public ResponseEntity<List<KeycloakUserDTO>> searchUsers(
-            @RequestParam("username") String username) {
+            @RequestParam("username") String username,
+            @RequestParam(defaultValue = "0") int first,
+            @RequestParam(defaultValue = "100") int max) {
+        if (first < 0 || max <= 0 || max > MAX_SEARCH_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            List<KeycloakUserDTO> users = userService.searchUsersByUsername(username);
-            return ResponseEntity.ok(users);
+            List<KeycloakUserDTO> users = userService.searchUsers(username, first, max);
+            return withDirectorySyncedAt(users);
         } catch (Exception e) {
             logger.error("Error searching users by username: {}", username, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -96,13 +119,24 @@ public class KeycloakUserController {
     public ResponseEntity<KeycloakUserDTO> getUserById(@PathVariable String userId) {
         try {
             KeycloakUserDTO user = userService.getUserById(userId);
-            return ResponseEntity.ok(user);
+            return withDirectorySyncedAt(user);
         } catch (Exception e) {
             logger.error("Error retrieving user by ID: {}", userId, e);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
 
+    /**
+     * 读取接口由本地用户目录提供时，通过响应头告知数据最近一次与Keycloak同步的时间
+     */
+    private <T> ResponseEntity<T> withDirectorySyncedAt(T body) {
+        Instant syncedAt = userDirectory.getSyncedAt();
+        if (syncedAt == null) {
+            return ResponseEntity.ok(body);
+        }
+        return ResponseEntity.ok().header(DIRECTORY_SYNCED_AT_HEADER, syncedAt.toString()).body(body);
+    }
+
     /**
      * 创建新用户 - 改为创建审批请求
      */
@@ -147,6 +181,55 @@ public class KeycloakUserController {
         }
     }
 
+    /**
+     * 批量导入用户 - 流式读取CSV或JSONL请求体，全部行校验通过后创建一个审批请求，申请人为当前登录用户
+     * CSV首行为表头（username必填，未知列作为用户属性），JSONL每行一个用户对象。
+     * 存在校验失败的行时返回400及错误行列表，不创建请求
+     */
+    @PostMapping(value = "/import", consumes = { "text/csv", "application/x-ndjson", "application/jsonl" })
+    public ResponseEntity<KeycloakUserImportResultDTO> importUsers(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body) {
+        KeycloakUserImportService.Format format = contentType.startsWith("text/csv")
+                ? KeycloakUserImportService.Format.CSV
+                : KeycloakUserImportService.Format.JSONL;
+        String requester = SecurityUtils.getCurrentUserLogin()
+                .orElseThrow(() -> new AccessDeniedException("Authentication required"));
+        try {
+            KeycloakUserImportResultDTO result = userImportService.submit(body, format, requester);
+            if (result.getRequestId() == null) {
+                return ResponseEntity.badRequest().body(result);
+            }
+
+            // 记录审计日志
+            auditLogUtil.logApprovalRequestCreated(requester, result.getRequestId(), "IMPORT_USERS", "批量导入用户: " + result.getAccepted() + "个");
+
+            return ResponseEntity.status(HttpStatus.CREATED).body(result);
+        } catch (IllegalArgumentException e) {
+            KeycloakUserImportResultDTO result = new KeycloakUserImportResultDTO();
+            result.getErrors().add(new KeycloakUserImportRowDTO(null, null, e.getMessage()));
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            logger.error("Error importing users", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * 查询批量导入的同步进度与失败行
+     */
+    @GetMapping("/import/{requestId}")
+    public ResponseEntity<KeycloakUserImportProgressDTO> getImportProgress(@PathVariable Long requestId) {
+        try {
+            return ResponseEntity.ok(userImportService.getProgress(requestId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (Exception e) {
+            logger.error("Error retrieving import progress: {}", requestId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * 更新用户信息 - 改为创建审批请求
      */
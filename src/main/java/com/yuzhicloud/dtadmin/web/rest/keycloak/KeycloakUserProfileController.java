@@ -4,6 +4,8 @@ import com.yuzhicloud.dtadmin.dto.keycloak.UserProfileConfigDTO;
 import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserProfileService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -30,12 +32,17 @@ public class KeycloakUserProfileController {
 
     /**
      * 获取UserProfile配置
+     * If-None-Match与当前配置的ETag一致时返回304
      */
     @GetMapping("/config")
-    public ResponseEntity<UserProfileConfigDTO> getUserProfileConfig() {
+    public ResponseEntity<UserProfileConfigDTO> getUserProfileConfig(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            UserProfileConfigDTO config = userProfileService.getUserProfileConfig();
-            return ResponseEntity.ok(config);
+            KeycloakUserProfileService.UserProfileSnapshot snapshot = userProfileService.getUserProfileSnapshot();
+            if (ETags.matches(ifNoneMatch, snapshot.etag())) {
+                return notModified(snapshot);
+            }
+            return withValidators(ResponseEntity.ok(), snapshot).body(snapshot.config());
         } catch (Exception e) {
             logger.error("Error retrieving UserProfile config", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -74,12 +81,17 @@ public class KeycloakUserProfileController {
 
     /**
      * 获取UserProfile中定义的所有属性名称
+     * 与配置共用ETag，If-None-Match一致时返回304
      */
     @GetMapping("/attributes")
-    public ResponseEntity<List<String>> getUserProfileAttributeNames() {
+    public ResponseEntity<List<String>> getUserProfileAttributeNames(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            List<String> attributeNames = userProfileService.getUserProfileAttributeNames();
-            return ResponseEntity.ok(attributeNames);
+            KeycloakUserProfileService.UserProfileSnapshot snapshot = userProfileService.getUserProfileSnapshot();
+            if (ETags.matches(ifNoneMatch, snapshot.etag())) {
+                return notModified(snapshot);
+            }
+            return withValidators(ResponseEntity.ok(), snapshot).body(snapshot.attributeNames());
         } catch (Exception e) {
             logger.error("Error retrieving UserProfile attribute names", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -113,4 +125,20 @@ public class KeycloakUserProfileController {
                     .body(Map.of("error", "UserProfile service test failed: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    private static <T> ResponseEntity<T> notModified(KeycloakUserProfileService.UserProfileSnapshot snapshot) {
+        return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), snapshot).build();
+    }
+
+    /**
+     * no-cache：浏览器每次打开表单都带ETag重新验证，配置未变时只返回304
+     */
+    private static ResponseEntity.BodyBuilder withValidators(
+            ResponseEntity.BodyBuilder builder, KeycloakUserProfileService.UserProfileSnapshot snapshot) {
+        builder.cacheControl(CacheControl.noCache());
+        if (snapshot.etag() != null) {
+            builder.eTag(snapshot.etag());
+        }
+        return builder;
+    }
+}
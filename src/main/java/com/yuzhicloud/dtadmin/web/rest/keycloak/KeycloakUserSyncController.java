@@ -1,6 +1,6 @@
 package com.yuzhicloud.dtadmin.web.rest.keycloak;
 
-import com.yuzhicloud.dtadmin.service.keycloak.KeycloakUserSyncService;
+import com.yuzhicloud.dtadmin.service.keycloak.KeycloakApprovalService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -10,7 +10,7 @@ import java.util.Map;
 
 /**
  * Keycloak用户同步REST控制器
- * 处理审批通过后的用户操作同步到Keycloak
+ * 将审批通过的用户操作登记到同步队列，由队列同步到Keycloak
  */
 @RestController
 @RequestMapping("/api/keycloak/user-sync")
@@ -18,24 +18,26 @@ public class KeycloakUserSyncController {
 
     private static final Logger logger = LoggerFactory.getLogger(KeycloakUserSyncController.class);
     
-    private final KeycloakUserSyncService userSyncService;
+    private final KeycloakApprovalService approvalService;
 
-    public KeycloakUserSyncController(KeycloakUserSyncService userSyncService) {
-        this.userSyncService = userSyncService;
+    public KeycloakUserSyncController(KeycloakApprovalService approvalService) {
+        this.approvalService = approvalService;
     }
 
     /**
-     * 处理审批通过的请求
+     * 为审批通过的请求登记同步任务
      */
     @PostMapping("/process/{requestId}")
     public ResponseEntity<Map<String, String>> processApprovedRequest(@PathVariable Long requestId) {
         try {
-            userSyncService.processApprovedRequest(requestId);
-            return ResponseEntity.ok(Map.of("message", "Approval request processed successfully"));
+            approvalService.queueApprovedRequest(requestId);
+            return ResponseEntity.accepted().body(Map.of("message", "Approval request queued for Keycloak apply"));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            logger.error("Error processing approval request: {}", requestId, e);
+            logger.error("Error queueing approval request: {}", requestId, e);
             return ResponseEntity.status(500)
-                    .body(Map.of("error", "Failed to process approval request: " + e.getMessage()));
+                    .body(Map.of("error", "Failed to queue approval request: " + e.getMessage()));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.yuzhi.dtadmin.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.domain.enumeration.AdminRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Test class for {@link TokenAuthorizationContext} and {@link TokenAuthorizationContextCache}.
+ */
+class TokenAuthorizationContextTest {
+
+    private final TokenAuthorizationContextCache tokenContexts = new TokenAuthorizationContextCache(
+        new ApplicationProperties.TokenContext(),
+        new SimpleMeterRegistry()
+    );
+
+    @Test
+    void shouldParseClaimsOncePerToken() {
+        Jwt jwt = jwt(UUID.randomUUID().toString());
+
+        TokenAuthorizationContext context = tokenContexts.get(jwt);
+
+        assertThat(tokenContexts.get(jwt)).isSameAs(context);
+        assertThat(context.getUsername()).isEqualTo("sysadmin");
+        assertThat(context.getRealmRoles()).containsExactly("SYSADMIN", "offline_access");
+        assertThat(context.getAuthorityNames()).containsExactly(AuthoritiesConstants.ADMIN);
+    }
+
+    @Test
+    void shouldDropAdminPrincipalWhenWhitelistVersionChanges() {
+        TokenAuthorizationContext context = tokenContexts.get(jwt(UUID.randomUUID().toString()));
+        AdminPrincipal principal = new AdminPrincipal("sysadmin", "sys@example.com", AdminRole.SYSADMIN);
+
+        context.setAdminPrincipal(principal, 3L);
+
+        assertThat(context.getAdminPrincipal(3L)).isSameAs(principal);
+        assertThat(context.getAdminPrincipal(4L)).isNull();
+    }
+
+    @Test
+    void shouldNotShareContextsBetweenIssuersUsingTheSameJti() {
+        String jti = UUID.randomUUID().toString();
+        Jwt fromRealm = jwt(jti);
+        Jwt fromOtherRealm = Jwt.withTokenValue("other-" + jti)
+            .header("alg", "RS256")
+            .issuer("https://sso.example.com/realms/other")
+            .jti(jti)
+            .expiresAt(Instant.now().plusSeconds(300))
+            .claim("preferred_username", "someone-else")
+            .build();
+
+        TokenAuthorizationContext context = tokenContexts.get(fromRealm);
+
+        assertThat(tokenContexts.get(fromOtherRealm)).isNotSameAs(context);
+        assertThat(tokenContexts.get(fromOtherRealm).getUsername()).isEqualTo("someone-else");
+        assertThat(tokenContexts.get(fromRealm)).isSameAs(context);
+    }
+
+    @Test
+    void shouldKeyTokensWithoutJtiByHashInsteadOfRawValue() {
+        Jwt jwt = Jwt.withTokenValue("opaque-" + UUID.randomUUID())
+            .header("alg", "RS256")
+            .issuer("https://sso.example.com/realms/s10")
+            .expiresAt(Instant.now().plusSeconds(300))
+            .claim("preferred_username", "sysadmin")
+            .build();
+
+        String key = TokenAuthorizationContext.cacheKey(jwt);
+
+        assertThat(key).startsWith("sha256:").doesNotContain(jwt.getTokenValue());
+        assertThat(tokenContexts.get(jwt)).isSameAs(tokenContexts.get(jwt));
+    }
+
+    @Test
+    void shouldExpireContextsOfTokensWithoutExpWithTheConfiguredLifetime() {
+        ApplicationProperties.TokenContext properties = new ApplicationProperties.TokenContext();
+        properties.setDefaultLifetime(Duration.ZERO);
+        TokenAuthorizationContextCache shortLived = new TokenAuthorizationContextCache(properties, new SimpleMeterRegistry());
+        Jwt jwt = Jwt.withTokenValue("no-exp-" + UUID.randomUUID())
+            .header("alg", "RS256")
+            .issuer("https://sso.example.com/realms/s10")
+            .jti(UUID.randomUUID().toString())
+            .claim("preferred_username", "sysadmin")
+            .build();
+
+        assertThat(shortLived.get(jwt)).isNotSameAs(shortLived.get(jwt));
+    }
+
+    private Jwt jwt(String jti) {
+        return Jwt.withTokenValue("token-" + jti)
+            .header("alg", "RS256")
+            .issuer("https://sso.example.com/realms/s10")
+            .jti(jti)
+            .expiresAt(Instant.now().plusSeconds(300))
+            .claim("preferred_username", "sysadmin")
+            .claim("email", "sys@example.com")
+            .claim("roles", List.of(AuthoritiesConstants.ADMIN))
+            .claim("realm_access", Map.of("roles", List.of("SYSADMIN", "offline_access")))
+            .build();
+    }
+}
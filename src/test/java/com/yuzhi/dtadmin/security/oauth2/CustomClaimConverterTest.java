@@ -0,0 +1,147 @@
+package com.yuzhi.dtadmin.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Unit tests for the userinfo fallback of {@link CustomClaimConverter}.
+ */
+class CustomClaimConverterTest {
+
+    private static final String USERINFO_URI = "https://idp.example.com/userinfo";
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CustomClaimConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties.Userinfo properties = new ApplicationProperties.Userinfo();
+        properties.setFailureThreshold(2);
+        ClientRegistration registration = ClientRegistration.withRegistrationId("oidc")
+            .clientId("web_app")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+            .authorizationUri("https://idp.example.com/auth")
+            .tokenUri("https://idp.example.com/token")
+            .userInfoUri(USERINFO_URI)
+            .build();
+        converter = new CustomClaimConverter(registration, restTemplate, properties, meterRegistry);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer token");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldFallBackToTokenClaimsAndStopCallingAfterRepeatedFailures() {
+        when(
+            restTemplate.exchange(eq(USERINFO_URI), eq(HttpMethod.GET), any(HttpEntity.class), ArgumentMatchers.<Class<ObjectNode>>any())
+        ).thenThrow(new ResourceAccessException("Read timed out"));
+
+        for (int i = 0; i < 4; i++) {
+            Map<String, Object> converted = converter.convert(claims("user-" + i));
+            assertThat(converted).containsEntry("preferred_username", "token-user").doesNotContainKey("given_name");
+        }
+
+        // Two failures open the breaker, the remaining conversions skip the endpoint
+        verify(restTemplate, times(2)).exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), ArgumentMatchers.<Class<ObjectNode>>any());
+        assertThat(meterRegistry.get("oauth2.userinfo.degraded").counter().count()).isEqualTo(4);
+        assertThat(meterRegistry.get("oauth2.userinfo.circuit.open").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void halfOpenBreakerShouldLetASingleProbeThrough() throws Exception {
+        CustomClaimConverter.CircuitBreaker breaker = new CustomClaimConverter.CircuitBreaker(1, Duration.ZERO);
+        breaker.onFailure();
+        assertThat(breaker.isOpen()).isTrue();
+
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> attempts = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                attempts.add(
+                    executor.submit(() -> {
+                        start.await();
+                        return breaker.tryAcquire();
+                    })
+                );
+            }
+            start.countDown();
+            int permitted = 0;
+            for (Future<Boolean> attempt : attempts) {
+                permitted += attempt.get() ? 1 : 0;
+            }
+            assertThat(permitted).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void probeResultShouldCloseOrReopenTheBreaker() {
+        CustomClaimConverter.CircuitBreaker breaker = new CustomClaimConverter.CircuitBreaker(1, Duration.ZERO);
+        breaker.onFailure();
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.isOpen()).isTrue();
+
+        // The reopened breaker grants the next probe once openDuration has passed again
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    private Map<String, Object> claims(String sub) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", sub);
+        claims.put("preferred_username", "token-user");
+        return claims;
+    }
+}
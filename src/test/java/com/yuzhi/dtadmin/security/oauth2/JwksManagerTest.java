@@ -0,0 +1,155 @@
+package com.yuzhi.dtadmin.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+class JwksManagerTest {
+
+    private static final String URI = "https://idp.example.com/certs";
+
+    @TempDir
+    Path tempDir;
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldServePersistedKeysWhenIdpIsUnreachable() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        Path cacheFile = tempDir.resolve("jwks.json");
+        Files.writeString(cacheFile, new JWKSet(key).toString());
+        when(restTemplate.getForObject(URI, String.class)).thenThrow(new ResourceAccessException("Connection refused"));
+
+        try (JwksManager manager = new JwksManager(URI, restTemplate, properties(cacheFile), meterRegistry)) {
+            assertThat(manager.get(selector("k1"), null)).extracting(jwk -> jwk.getKeyID()).containsExactly("k1");
+        }
+    }
+
+    @Test
+    void shouldRefetchOnceForUnknownKidAndPersistKeys() throws Exception {
+        RSAKey oldKey = new RSAKeyGenerator(2048).keyID("old").generate();
+        RSAKey newKey = new RSAKeyGenerator(2048).keyID("new").generate();
+        Path cacheFile = tempDir.resolve("jwks.json");
+        when(restTemplate.getForObject(URI, String.class))
+            .thenReturn(new JWKSet(oldKey).toString())
+            .thenReturn(new JWKSet(List.of(oldKey, newKey)).toString());
+        ApplicationProperties.Jwks properties = properties(cacheFile);
+        properties.setUnknownKidMinInterval(Duration.ZERO);
+
+        try (JwksManager manager = new JwksManager(URI, restTemplate, properties, meterRegistry)) {
+            awaitInitialFetch();
+
+            assertThat(manager.get(selector("new"), null)).extracting(jwk -> jwk.getKeyID()).containsExactly("new");
+            assertThat(JWKSet.parse(Files.readString(cacheFile)).getKeyByKeyId("new")).isNotNull();
+            assertThat(meterRegistry.get("jwks.unknown.kid").tag("action", "refetched").counter().count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldThrottleRefetchesForUnknownKid() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        when(restTemplate.getForObject(URI, String.class)).thenReturn(new JWKSet(key).toString());
+
+        try (JwksManager manager = new JwksManager(URI, restTemplate, properties(tempDir.resolve("jwks.json")), meterRegistry)) {
+            awaitInitialFetch();
+
+            for (int i = 0; i < 5; i++) {
+                assertThat(manager.get(selector("unknown"), null)).isEmpty();
+            }
+
+            verify(restTemplate, after(100).times(1)).getForObject(eq(URI), eq(String.class));
+            assertThat(meterRegistry.get("jwks.unknown.kid").tag("action", "throttled").counter().count()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    void shouldNotLoadOrWriteCacheFileInDirectoryAccessibleToOthers() throws Exception {
+        RSAKey cachedKey = new RSAKeyGenerator(2048).keyID("planted").generate();
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        Path sharedDir = Files.createDirectory(tempDir.resolve("shared"));
+        Files.setPosixFilePermissions(sharedDir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        Path cacheFile = sharedDir.resolve("jwks.json");
+        Files.writeString(cacheFile, new JWKSet(cachedKey).toString());
+        when(restTemplate.getForObject(URI, String.class)).thenReturn(new JWKSet(key).toString());
+
+        try (JwksManager manager = new JwksManager(URI, restTemplate, properties(cacheFile), meterRegistry)) {
+            awaitInitialFetch();
+
+            assertThat(manager.get(selector("k1"), null)).extracting(jwk -> jwk.getKeyID()).containsExactly("k1");
+            assertThat(manager.get(selector("planted"), null)).isEmpty();
+            assertThat(JWKSet.parse(Files.readString(cacheFile)).getKeyByKeyId("k1")).isNull();
+        }
+    }
+
+    @Test
+    void shouldWriteCacheFileWithOwnerOnlyPermissions() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        Path cacheFile = tempDir.resolve("jwks.json");
+        when(restTemplate.getForObject(URI, String.class)).thenReturn(new JWKSet(key).toString());
+
+        try (JwksManager manager = new JwksManager(URI, restTemplate, properties(cacheFile), meterRegistry)) {
+            awaitInitialFetch();
+
+            assertThat(manager.get(selector("k1"), null)).hasSize(1);
+            assertThat(Files.getPosixFilePermissions(cacheFile)).isEqualTo(PosixFilePermissions.fromString("rw-------"));
+            try (Stream<Path> files = Files.list(tempDir)) {
+                assertThat(files).containsExactly(cacheFile);
+            }
+        }
+    }
+
+    @Test
+    void shouldNotPersistKeysUnlessCacheFileIsConfigured() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        when(restTemplate.getForObject(URI, String.class)).thenReturn(new JWKSet(key).toString());
+        ApplicationProperties.Jwks properties = new ApplicationProperties.Jwks();
+        properties.setRefreshInterval(Duration.ofHours(1));
+
+        assertThat(properties.getCacheFile()).isNull();
+        try (JwksManager manager = new JwksManager(URI, restTemplate, properties, meterRegistry)) {
+            assertThat(manager.get(selector("k1"), null)).hasSize(1);
+        }
+    }
+
+    private void awaitInitialFetch() throws InterruptedException {
+        // The fetch counter is incremented once the background refresh has installed the keys
+        for (int i = 0; i < 100 && meterRegistry.get("jwks.fetch").tag("result", "success").counter().count() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(meterRegistry.get("jwks.fetch").tag("result", "success").counter().count()).isPositive();
+    }
+
+    private ApplicationProperties.Jwks properties(Path cacheFile) {
+        ApplicationProperties.Jwks properties = new ApplicationProperties.Jwks();
+        properties.setCacheFile(cacheFile.toString());
+        properties.setRefreshInterval(Duration.ofHours(1));
+        return properties;
+    }
+
+    private JWKSelector selector(String kid) {
+        return new JWKSelector(new JWKMatcher.Builder().keyID(kid).build());
+    }
+}
@@ -0,0 +1,237 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.domain.enumeration.AuditOutcome;
+import com.yuzhi.dtadmin.service.dto.AuditQueryCriteria;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+@ExtendWith(MockitoExtension.class)
+class AuditExportServiceTest {
+
+    private static final Instant FROM = Instant.parse("2026-10-01T00:00:00Z");
+
+    private static final Instant TO = Instant.parse("2026-10-18T00:00:00Z");
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private AuditExportService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getAudit().setExportFetchSize(250);
+        service = new AuditExportService(jdbcTemplate, objectMapper, applicationProperties);
+    }
+
+    @Test
+    void csvShouldQuoteValuesContainingSeparatorsQuotesAndLineBreaks() throws Exception {
+        stubRows(2, i ->
+            i == 0
+                ? row(1L, "alice", "ROLE_A,ROLE_B", "say \"hi\"", "line1\nline2", "SUCCESS")
+                : row(2L, "bob", null, "carriage\rreturn", "plain", "FAILURE")
+        );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.export(criteria(), true, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+            "id,timestamp,actor,roles,ip,action,resource,outcome\n" +
+            "1,2026-10-17T08:00:00Z,alice,\"ROLE_A,ROLE_B\",10.0.0.1,\"say \"\"hi\"\"\",\"line1\nline2\",SUCCESS\n" +
+            "2,2026-10-17T08:00:00Z,bob,,10.0.0.1,\"carriage\rreturn\",plain,FAILURE\n"
+        );
+    }
+
+    @Test
+    void jsonShouldEscapeStringsAndWriteNullsAsEmpty() throws Exception {
+        stubRows(1, i -> row(7L, "alice", null, "quote \" and \\ backslash", "tab\tand\nnewline", "REJECTED"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.export(criteria(), false, out);
+
+        JsonNode array = objectMapper.readTree(out.toByteArray());
+        assertThat(array.isArray()).isTrue();
+        assertThat(array).hasSize(1);
+        JsonNode event = array.get(0);
+        assertThat(event.get("id").asLong()).isEqualTo(7L);
+        assertThat(event.get("timestamp").asText()).isEqualTo("2026-10-17T08:00:00Z");
+        assertThat(event.get("roles").asText()).isEmpty();
+        assertThat(event.get("action").asText()).isEqualTo("quote \" and \\ backslash");
+        assertThat(event.get("resource").asText()).isEqualTo("tab\tand\nnewline");
+    }
+
+    @Test
+    void filtersShouldBeBoundAsParametersInOrder() throws Exception {
+        stubRows(0, i -> Map.of());
+        AuditQueryCriteria criteria = criteria();
+        criteria.setActor("alice'; drop table audit_event; --");
+        criteria.setAction("EXPORT");
+        criteria.setResource("report/1");
+        criteria.setOutcome(AuditOutcome.FAILURE);
+
+        service.export(criteria, true, new ByteArrayOutputStream());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connection).prepareStatement(sql.capture(), eq(ResultSet.TYPE_FORWARD_ONLY), eq(ResultSet.CONCUR_READ_ONLY));
+        assertThat(sql.getValue())
+            .contains("event_ts >= ? and event_ts <= ? and actor = ? and action = ? and resource = ? and outcome = ?")
+            .endsWith(" order by event_ts desc, id desc")
+            .doesNotContain("alice");
+        InOrder order = inOrder(statement);
+        order.verify(statement).setFetchSize(250);
+        order.verify(statement).setTimestamp(eq(1), eq(Timestamp.from(FROM)), any(Calendar.class));
+        order.verify(statement).setTimestamp(eq(2), eq(Timestamp.from(TO)), any(Calendar.class));
+        order.verify(statement).setString(3, "alice'; drop table audit_event; --");
+        order.verify(statement).setString(4, "EXPORT");
+        order.verify(statement).setString(5, "report/1");
+        order.verify(statement).setString(6, "FAILURE");
+    }
+
+    @Test
+    void omittedFiltersShouldNotConstrainTheQuery() throws Exception {
+        stubRows(0, i -> Map.of());
+
+        service.export(criteria(), false, new ByteArrayOutputStream());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connection).prepareStatement(sql.capture(), anyInt(), anyInt());
+        assertThat(sql.getValue()).doesNotContain("actor =", "action =", "resource =", "outcome =");
+    }
+
+    @Test
+    void largeExportsShouldReachTheStreamWhileRowsAreStillBeingRead() throws Exception {
+        int rows = 20_000;
+        CountingOutputStream out = new CountingOutputStream();
+        List<Long> writtenBeforeRow = new ArrayList<>();
+        stubRows(rows, i -> {
+            if (i % 4_000 == 0) {
+                writtenBeforeRow.add(out.count.get());
+            }
+            return row(i, "user" + i, "ROLE_USER", "LOGIN", "portal", "SUCCESS");
+        });
+
+        service.export(criteria(), true, out);
+
+        // Output grows with the rows read instead of being produced in one piece at the end
+        assertThat(writtenBeforeRow).hasSize(5).isSorted();
+        assertThat(writtenBeforeRow.get(4)).isGreaterThan(out.count.get() / 2);
+        assertThat(out.lines.get()).isEqualTo(rows + 1);
+    }
+
+    private void stubRows(int count, IntFunction<Map<String, Object>> rowAt) throws Exception {
+        AtomicInteger index = new AtomicInteger();
+        AtomicReference<Map<String, Object>> current = new AtomicReference<>();
+        // A plain proxy rather than a mock: Mockito would record every column read of a large export
+        ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class }, (proxy, method, args) ->
+            switch (method.getName()) {
+                case "getLong" -> ((Number) current.get().get((String) args[0])).longValue();
+                case "getString", "getTimestamp" -> current.get().get((String) args[0]);
+                default -> throw new UnsupportedOperationException(method.getName());
+            }
+        );
+        doAnswer(invocation -> {
+            invocation.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            while (index.get() < count) {
+                current.set(rowAt.apply(index.getAndIncrement()));
+                handler.processRow(resultSet);
+            }
+            return null;
+        })
+            .when(jdbcTemplate)
+            .query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    private static Map<String, Object> row(long id, String actor, String roles, String action, String resource, String outcome) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("event_ts", Timestamp.from(Instant.parse("2026-10-17T08:00:00Z")));
+        row.put("actor", actor);
+        row.put("actor_roles", roles);
+        row.put("ip", "10.0.0.1");
+        row.put("action", action);
+        row.put("resource", resource);
+        row.put("outcome", outcome);
+        return row;
+    }
+
+    private static AuditQueryCriteria criteria() {
+        AuditQueryCriteria criteria = new AuditQueryCriteria();
+        criteria.setFrom(FROM);
+        criteria.setTo(TO);
+        return criteria;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong lines = new AtomicLong();
+
+        @Override
+        public void write(int b) {
+            count.incrementAndGet();
+            if (b == '\n') {
+                lines.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count.addAndGet(len);
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhi.dtadmin.domain.ChangeRequest;
+import com.yuzhi.dtadmin.domain.OrgUnit;
+import com.yuzhi.dtadmin.domain.enumeration.ChangeAction;
+import com.yuzhi.dtadmin.domain.enumeration.ChangeResourceType;
+import com.yuzhi.dtadmin.repository.OrgUnitRepository;
+import com.yuzhi.dtadmin.repository.PortalMenuRepository;
+import com.yuzhi.dtadmin.repository.SystemConfigRepository;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ChangeExecutorTest {
+
+    @Mock
+    private KeycloakAdapter keycloakAdapter;
+
+    @Mock
+    private OrgUnitRepository orgUnitRepository;
+
+    @Mock
+    private PortalMenuRepository portalMenuRepository;
+
+    @Mock
+    private SystemConfigRepository systemConfigRepository;
+
+    @Mock
+    private PortalMenuService portalMenuService;
+
+    @Mock
+    private SystemConfigRegistry systemConfigRegistry;
+
+    private ChangeExecutor changeExecutor;
+
+    @BeforeEach
+    void setUp() {
+        changeExecutor = new ChangeExecutor(
+            keycloakAdapter,
+            orgUnitRepository,
+            portalMenuRepository,
+            systemConfigRepository,
+            portalMenuService,
+            systemConfigRegistry,
+            new ObjectMapper()
+        );
+    }
+
+    @Test
+    void shouldAssignPathBelowParentOnCreate() {
+        OrgUnit parent = unit(7L, "/1/7/", 1);
+        when(orgUnitRepository.findById(7L)).thenReturn(Optional.of(parent));
+
+        OrgUnit created = captureCreated(request(ChangeAction.CREATE, null, "{\"name\":\"Ops\",\"code\":\"ops\",\"parentId\":7}"));
+
+        assertThat(created.getPath()).isEqualTo("/1/7/42/");
+        assertThat(created.getDepth()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRewriteDescendantPathsOnMove() {
+        OrgUnit unit = unit(42L, "/1/7/42/", 2);
+        unit.setParent(unit(7L, "/1/7/", 1));
+        when(orgUnitRepository.findById(42L)).thenReturn(Optional.of(unit));
+        when(orgUnitRepository.findById(3L)).thenReturn(Optional.of(unit(3L, "/3/", 0)));
+
+        changeExecutor.execute(request(ChangeAction.UPDATE, "42", "{\"parentId\":3}"));
+
+        assertThat(unit.getPath()).isEqualTo("/3/42/");
+        assertThat(unit.getDepth()).isEqualTo(1);
+        verify(orgUnitRepository).moveDescendants("/1/7/42/", "/3/42/", -1);
+    }
+
+    @Test
+    void shouldRejectMoveIntoOwnSubtree() {
+        OrgUnit unit = unit(7L, "/1/7/", 1);
+        unit.setParent(unit(1L, "/1/", 0));
+        when(orgUnitRepository.findById(7L)).thenReturn(Optional.of(unit));
+        when(orgUnitRepository.findById(42L)).thenReturn(Optional.of(unit(42L, "/1/7/42/", 2)));
+
+        assertThatThrownBy(() -> changeExecutor.execute(request(ChangeAction.UPDATE, "7", "{\"parentId\":42}"))).isInstanceOf(
+            AdminOperationException.class
+        );
+        verify(orgUnitRepository, never()).moveDescendants(anyString(), anyString(), anyInt());
+    }
+
+    private OrgUnit captureCreated(ChangeRequest request) {
+        OrgUnit[] created = new OrgUnit[1];
+        when(orgUnitRepository.saveAndFlush(any(OrgUnit.class))).thenAnswer(invocation -> {
+            OrgUnit saved = invocation.getArgument(0);
+            saved.setId(42L);
+            created[0] = saved;
+            return saved;
+        });
+        changeExecutor.execute(request);
+        return created[0];
+    }
+
+    private ChangeRequest request(ChangeAction action, String resourceId, String payload) {
+        ChangeRequest request = new ChangeRequest();
+        request.setResourceType(ChangeResourceType.ORG);
+        request.setAction(action);
+        request.setResourceId(resourceId);
+        request.setPayloadJson(payload);
+        return request;
+    }
+
+    private OrgUnit unit(Long id, String path, int depth) {
+        OrgUnit unit = new OrgUnit();
+        unit.setId(id);
+        unit.setPath(path);
+        unit.setDepth(depth);
+        return unit;
+    }
+}
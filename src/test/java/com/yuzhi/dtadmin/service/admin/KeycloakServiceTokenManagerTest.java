@@ -0,0 +1,85 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakServiceTokenManagerTest {
+
+    private static final String TOKEN_URL = "http://keycloak/token";
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private KeycloakServiceTokenManager tokenManager;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tokenManager = new KeycloakServiceTokenManager(restTemplate, Runnable::run, meterRegistry);
+        ReflectionTestUtils.setField(tokenManager, "tokenUrl", TOKEN_URL);
+        ReflectionTestUtils.setField(tokenManager, "clientId", "client");
+        ReflectionTestUtils.setField(tokenManager, "clientSecret", "secret");
+        ReflectionTestUtils.setField(tokenManager, "expirySkew", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(tokenManager, "refreshAhead", Duration.ofSeconds(60));
+    }
+
+    @Test
+    void shouldReuseTokenUntilRefreshWindow() {
+        stubTokenResponse("token-1", 300);
+
+        assertThat(tokenManager.getToken()).isEqualTo("token-1");
+        assertThat(tokenManager.getToken()).isEqualTo("token-1");
+
+        verify(restTemplate, times(1)).postForEntity(eq(TOKEN_URL), any(HttpEntity.class), eq(Map.class));
+        assertThat(meterRegistry.counter("keycloak.service.token.requests", "result", "hit").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.counter("keycloak.service.token.requests", "result", "miss").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldRefreshInBackgroundWhenInsideRefreshWindow() {
+        stubTokenResponse("short-lived", 60);
+
+        assertThat(tokenManager.getToken()).isEqualTo("short-lived");
+        // 60s lifetime minus skew and refresh-ahead puts the token straight into the refresh window
+        assertThat(tokenManager.getToken()).isEqualTo("short-lived");
+
+        verify(restTemplate, times(2)).postForEntity(eq(TOKEN_URL), any(HttpEntity.class), eq(Map.class));
+    }
+
+    @Test
+    void shouldFetchAgainAfterInvalidate() {
+        stubTokenResponse("token-1", 300);
+
+        tokenManager.getToken();
+        tokenManager.invalidate();
+        tokenManager.getToken();
+
+        verify(restTemplate, times(2)).postForEntity(eq(TOKEN_URL), any(HttpEntity.class), eq(Map.class));
+    }
+
+    private void stubTokenResponse(String token, int expiresIn) {
+        when(restTemplate.postForEntity(eq(TOKEN_URL), any(HttpEntity.class), eq(Map.class))).thenReturn(
+            ResponseEntity.ok(Map.of("access_token", token, "expires_in", expiresIn))
+        );
+    }
+}
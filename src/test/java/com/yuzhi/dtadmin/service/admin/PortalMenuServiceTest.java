@@ -0,0 +1,64 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.yuzhi.dtadmin.repository.PortalMenuRepository;
+import com.yuzhi.dtadmin.repository.PortalMenuRow;
+import com.yuzhi.dtadmin.service.dto.PortalMenuDTO;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class PortalMenuServiceTest {
+
+    @Mock
+    private PortalMenuRepository portalMenuRepository;
+
+    @InjectMocks
+    private PortalMenuService portalMenuService;
+
+    @Test
+    void shouldAssembleTreeFromFlatRows() {
+        when(portalMenuRepository.findAllRows()).thenReturn(
+            List.of(
+                row(3L, "users", 0, 1L),
+                row(1L, "system", 0, null),
+                row(4L, "roles", 1, 1L),
+                row(5L, "detail", 0, 3L),
+                row(2L, "audit", 1, null)
+            )
+        );
+
+        List<PortalMenuDTO> tree = portalMenuService.findTree();
+
+        assertThat(tree).extracting(PortalMenuDTO::getName).containsExactly("system", "audit");
+        PortalMenuDTO system = tree.get(0);
+        assertThat(system.getChildren()).extracting(PortalMenuDTO::getName).containsExactly("users", "roles");
+        assertThat(system.getChildren().get(0).getChildren()).extracting(PortalMenuDTO::getParentId).containsExactly(3L);
+        assertThat(tree.get(1).getChildren()).isEmpty();
+    }
+
+    @Test
+    void shouldServeSnapshotUntilInvalidated() {
+        when(portalMenuRepository.findAllRows()).thenReturn(List.of(row(1L, "system", 0, null)));
+
+        List<PortalMenuDTO> first = portalMenuService.findTree();
+        assertThat(portalMenuService.findTree()).isSameAs(first);
+
+        portalMenuService.invalidateAfterCommit();
+
+        assertThat(portalMenuService.findTree()).isNotSameAs(first);
+        verify(portalMenuRepository, times(2)).findAllRows();
+    }
+
+    private PortalMenuRow row(Long id, String name, int sortOrder, Long parentId) {
+        return new PortalMenuRow(id, name, "/" + name, null, sortOrder, null, parentId);
+    }
+}
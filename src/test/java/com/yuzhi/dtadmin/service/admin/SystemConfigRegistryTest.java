@@ -0,0 +1,68 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.yuzhi.dtadmin.domain.SystemConfig;
+import com.yuzhi.dtadmin.repository.SystemConfigRepository;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+@ExtendWith(MockitoExtension.class)
+class SystemConfigRegistryTest {
+
+    @Mock
+    private SystemConfigRepository systemConfigRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private SystemConfigRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SystemConfigRegistry(systemConfigRepository, eventPublisher);
+    }
+
+    @Test
+    void shouldServeTypedLookupsFromOneLoad() {
+        when(systemConfigRepository.findAll()).thenReturn(
+            List.of(config(1L, "session.max", "20"), config(2L, "session.ttl", "15m"), config(3L, "feature.on", "TRUE"), config(4L, "bad", "x"))
+        );
+        registry.onStartup();
+
+        assertThat(registry.getInt("session.max", 5)).isEqualTo(20);
+        assertThat(registry.getDuration("session.ttl", Duration.ZERO)).isEqualTo(Duration.ofMinutes(15));
+        assertThat(registry.getBoolean("feature.on", false)).isTrue();
+        assertThat(registry.getInt("bad", 7)).isEqualTo(7);
+        assertThat(registry.getString("missing", "fallback")).isEqualTo("fallback");
+        verify(systemConfigRepository, times(1)).findAll();
+    }
+
+    @Test
+    void shouldSwapValueAndPublishEvent() {
+        when(systemConfigRepository.findAll()).thenReturn(List.of(config(1L, "session.max", "20")));
+        registry.onStartup();
+
+        registry.putAfterCommit(config(1L, "session.max", "50"));
+
+        assertThat(registry.getInt("session.max", 5)).isEqualTo(50);
+        verify(eventPublisher).publishEvent(new SystemConfigChangedEvent("session.max", "20", "50"));
+    }
+
+    private SystemConfig config(Long id, String key, String value) {
+        SystemConfig config = new SystemConfig();
+        config.setId(id);
+        config.setKey(key);
+        config.setValue(value);
+        return config;
+    }
+}
@@ -0,0 +1,124 @@
+package com.yuzhi.dtadmin.service.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.domain.AdminUserWhitelist;
+import com.yuzhi.dtadmin.domain.AdminUserWhitelistChangedEvent;
+import com.yuzhi.dtadmin.domain.enumeration.AdminRole;
+import com.yuzhi.dtadmin.repository.AdminUserWhitelistRepository;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.access.AccessDeniedException;
+
+@ExtendWith(MockitoExtension.class)
+class WhitelistServiceTest {
+
+    @Mock
+    private AdminUserWhitelistRepository whitelistRepository;
+
+    private WhitelistService whitelistService;
+
+    @BeforeEach
+    void setUp() {
+        whitelistService = new WhitelistService(whitelistRepository, new ApplicationProperties());
+    }
+
+    @Test
+    void shouldServeRepeatedDecisionsWithoutReloadingWhitelist() {
+        when(whitelistRepository.findAll()).thenReturn(List.of(entry("sysadmin", "sys@example.com", AdminRole.SYSADMIN)));
+
+        assertThat(whitelistService.enforceWhitelist("SysAdmin", null, List.of("sysadmin", "offline_access"))).isEqualTo(AdminRole.SYSADMIN);
+        assertThat(whitelistService.enforceWhitelist("SysAdmin", null, List.of("offline_access", "sysadmin"))).isEqualTo(AdminRole.SYSADMIN);
+        assertThat(whitelistService.enforceWhitelist(null, "SYS@example.com", List.of("SYSADMIN"))).isEqualTo(AdminRole.SYSADMIN);
+
+        verify(whitelistRepository, times(1)).findAll();
+    }
+
+    @Test
+    void shouldRejectMismatchedOrMultipleAdminRoles() {
+        when(whitelistRepository.findAll()).thenReturn(List.of(entry("auditor", "audit@example.com", AdminRole.AUDITADMIN)));
+
+        assertThatThrownBy(() -> whitelistService.enforceWhitelist("auditor", null, List.of("SYSADMIN")))
+            .isInstanceOf(AccessDeniedException.class)
+            .hasMessage("User role not permitted for admin");
+        assertThatThrownBy(() -> whitelistService.enforceWhitelist("auditor", null, List.of("SYSADMIN", "AUDITADMIN")))
+            .isInstanceOf(AccessDeniedException.class)
+            .hasMessage("Admin user must only have one admin role");
+        assertThatThrownBy(() -> whitelistService.enforceWhitelist("stranger", null, List.of("AUDITADMIN")))
+            .isInstanceOf(AccessDeniedException.class)
+            .hasMessage("User not allowed to access admin");
+    }
+
+    @Test
+    void shouldReloadAfterWhitelistChange() {
+        when(whitelistRepository.findAll())
+            .thenReturn(List.of())
+            .thenReturn(List.of(entry("authadmin", "auth@example.com", AdminRole.AUTHADMIN)));
+
+        assertThatThrownBy(() -> whitelistService.enforceWhitelist("authadmin", null, List.of("AUTHADMIN"))).isInstanceOf(
+            AccessDeniedException.class
+        );
+
+        whitelistService.onWhitelistChanged(new AdminUserWhitelistChangedEvent(1L));
+
+        assertThat(whitelistService.enforceWhitelist("authadmin", null, List.of("AUTHADMIN"))).isEqualTo(AdminRole.AUTHADMIN);
+        verify(whitelistRepository, times(2)).findAll();
+    }
+
+    @Test
+    void periodicReloadShouldNotServeDecisionsMadeAgainstTheOldSnapshot() throws Exception {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.getWhitelist().setSnapshotRefresh(Duration.ofMillis(1));
+        whitelistService = new WhitelistService(whitelistRepository, properties);
+        when(whitelistRepository.findAll())
+            .thenReturn(List.of(entry("authadmin", "auth@example.com", AdminRole.AUTHADMIN)))
+            .thenReturn(List.of());
+
+        assertThat(whitelistService.enforceWhitelist("authadmin", null, List.of("AUTHADMIN"))).isEqualTo(AdminRole.AUTHADMIN);
+        long versionBefore = whitelistService.version();
+        Thread.sleep(5);
+
+        // The expired snapshot is reloaded before the decision cache is consulted
+        assertThatThrownBy(() -> whitelistService.enforceWhitelist("authadmin", null, List.of("AUTHADMIN"))).isInstanceOf(
+            AccessDeniedException.class
+        );
+        assertThat(whitelistService.version()).isGreaterThan(versionBefore);
+        verify(whitelistRepository, times(2)).findAll();
+    }
+
+    @Test
+    void periodicReloadWithUnchangedEntriesShouldKeepTheVersion() throws Exception {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.getWhitelist().setSnapshotRefresh(Duration.ofMillis(1));
+        whitelistService = new WhitelistService(whitelistRepository, properties);
+        when(whitelistRepository.findAll()).thenReturn(List.of(entry("authadmin", "auth@example.com", AdminRole.AUTHADMIN)));
+
+        assertThat(whitelistService.enforceWhitelist("authadmin", null, List.of("AUTHADMIN"))).isEqualTo(AdminRole.AUTHADMIN);
+        long versionBefore = whitelistService.version();
+        Thread.sleep(5);
+
+        assertThat(whitelistService.enforceWhitelist("authadmin", null, List.of("AUTHADMIN"))).isEqualTo(AdminRole.AUTHADMIN);
+
+        // Admin principals cached on tokens against the old version remain valid
+        assertThat(whitelistService.version()).isEqualTo(versionBefore);
+        verify(whitelistRepository, times(2)).findAll();
+    }
+
+    private AdminUserWhitelist entry(String username, String email, AdminRole role) {
+        AdminUserWhitelist entry = new AdminUserWhitelist();
+        entry.setUsername(username);
+        entry.setEmail(email);
+        entry.setRole(role);
+        return entry;
+    }
+}
@@ -0,0 +1,189 @@
+package com.yuzhi.dtadmin.service.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.config.ApplicationProperties.Audit.RetentionAction;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class AuditPartitionManagerTest {
+
+    private static final String EXPIRED = "audit_event_y2020m01";
+
+    private static final String ARCHIVE = "id,action,detail\n1,login,ok\n2,export,\"two\nlines\"\n";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private CopyManager copyManager;
+
+    @TempDir
+    Path archiveDirectory;
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private AuditPartitionManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Connection connection = mock(Connection.class);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        lenient().when(connection.getMetaData()).thenReturn(metaData);
+        lenient().when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+        lenient().when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        lenient().when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        lenient()
+            .when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+            .thenAnswer(invocation -> invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+        lenient().when(jdbcTemplate.queryForObject(contains("pg_partitioned_table"), eq(Integer.class))).thenReturn(1);
+        lenient()
+            .when(jdbcTemplate.queryForObject(startsWith("select pg_try_advisory_xact_lock"), eq(Boolean.class), any(Object[].class)))
+            .thenReturn(true);
+        lenient().when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class))).thenReturn(List.of(EXPIRED));
+        lenient().when(copyManager.copyOut(anyString(), any(OutputStream.class))).thenAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write(ARCHIVE.getBytes(StandardCharsets.UTF_8));
+            return 2L;
+        });
+
+        manager = new AuditPartitionManager(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)), applicationProperties);
+    }
+
+    @Test
+    void retentionShouldBeDisabledByDefault() {
+        ApplicationProperties.Audit audit = new ApplicationProperties().getAudit();
+        assertThat(audit.getRetentionMonths()).isZero();
+        assertThat(audit.getRetentionAction()).isEqualTo(RetentionAction.DETACH);
+        assertThat(audit.getArchiveDirectory()).isNull();
+
+        manager.maintain();
+
+        verify(jdbcTemplate, times(4)).execute(startsWith("create table if not exists audit_event_y"));
+        verify(jdbcTemplate, never()).queryForList(contains("pg_inherits"), eq(String.class));
+        verify(jdbcTemplate, never()).execute(contains("detach partition"));
+    }
+
+    @Test
+    void shouldNotDropOrPurgeWithoutArchiveDirectory() {
+        applicationProperties.getAudit().setRetentionMonths(12);
+        applicationProperties.getAudit().setRetentionAction(RetentionAction.DROP);
+
+        manager.maintain();
+
+        verify(jdbcTemplate, never()).execute(contains("detach partition"));
+        verify(jdbcTemplate, never()).execute(startsWith("drop table"));
+        verify(jdbcTemplate, never()).update(startsWith("delete from audit_log"));
+        verify(jdbcTemplate, never()).update(startsWith("create temporary table"), any(Object[].class));
+    }
+
+    @Test
+    void shouldDetachWithoutArchiveWhenOnlyDetaching() {
+        applicationProperties.getAudit().setRetentionMonths(12);
+
+        manager.maintain();
+
+        verify(jdbcTemplate).execute("alter table audit_event detach partition " + EXPIRED);
+        verify(jdbcTemplate, never()).execute(startsWith("drop table"));
+    }
+
+    @Test
+    void shouldArchiveAndVerifyBeforeDroppingInOneLockedTransaction() throws Exception {
+        enableDropWithArchive();
+        when(jdbcTemplate.queryForObject(eq("select count(*) from " + EXPIRED), eq(Long.class), any(Object[].class))).thenReturn(2L);
+
+        manager.maintain();
+
+        InOrder order = inOrder(jdbcTemplate, copyManager);
+        order.verify(jdbcTemplate).queryForObject(startsWith("select pg_try_advisory_xact_lock"), eq(Boolean.class), any(Object[].class));
+        order.verify(jdbcTemplate).execute("lock table " + EXPIRED + " in share mode");
+        order.verify(copyManager).copyOut(eq("COPY " + EXPIRED + " TO STDOUT WITH (FORMAT csv, HEADER)"), any(OutputStream.class));
+        order.verify(jdbcTemplate).execute("alter table audit_event detach partition " + EXPIRED);
+        order.verify(jdbcTemplate).execute("drop table " + EXPIRED);
+        Path archive = archiveDirectory.resolve(EXPIRED + ".csv.gz");
+        assertThat(AuditPartitionManager.countCsvRecords(archive)).isEqualTo(2);
+        try (var files = Files.list(archiveDirectory)) {
+            assertThat(files).containsExactly(archive);
+        }
+    }
+
+    @Test
+    void shouldKeepPartitionWhenArchiveDoesNotMatchRowCount() throws Exception {
+        enableDropWithArchive();
+        when(jdbcTemplate.queryForObject(eq("select count(*) from " + EXPIRED), eq(Long.class), any(Object[].class))).thenReturn(3L);
+
+        manager.maintain();
+
+        verify(jdbcTemplate, never()).execute(contains("detach partition"));
+        verify(jdbcTemplate, never()).execute(startsWith("drop table"));
+        try (var files = Files.list(archiveDirectory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void shouldArchiveAuditLogRowsBeforeDeletingThem() throws Exception {
+        enableDropWithArchive();
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class))).thenReturn(List.of());
+        when(jdbcTemplate.queryForObject(eq("select count(*) from audit_log_expired"), eq(Long.class), any(Object[].class))).thenReturn(2L);
+
+        manager.maintain();
+
+        InOrder order = inOrder(jdbcTemplate, copyManager);
+        order.verify(jdbcTemplate).update(startsWith("create temporary table audit_log_expired"), any(Object[].class));
+        order.verify(copyManager).copyOut(contains("join audit_log_expired"), any(OutputStream.class));
+        order.verify(jdbcTemplate).update("delete from audit_log where id in (select id from audit_log_expired)");
+        try (var files = Files.list(archiveDirectory)) {
+            assertThat(files).singleElement().satisfies(file -> assertThat(file.getFileName().toString()).startsWith("audit_log_before_"));
+        }
+    }
+
+    @Test
+    void countCsvRecordsShouldIgnoreLineBreaksInsideQuotedValues() throws Exception {
+        Path file = archiveDirectory.resolve("sample.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write("id,detail\n1,\"a \"\"quoted\"\"\nvalue\"\n2,plain\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThat(AuditPartitionManager.countCsvRecords(file)).isEqualTo(2);
+    }
+
+    private void enableDropWithArchive() {
+        applicationProperties.getAudit().setRetentionMonths(12);
+        applicationProperties.getAudit().setRetentionAction(RetentionAction.DROP);
+        applicationProperties.getAudit().setArchiveDirectory(archiveDirectory.toString());
+    }
+}
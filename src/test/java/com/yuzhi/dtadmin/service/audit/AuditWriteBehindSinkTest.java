@@ -0,0 +1,230 @@
+package com.yuzhi.dtadmin.service.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yuzhi.dtadmin.config.ApplicationProperties;
+import com.yuzhi.dtadmin.config.ApplicationProperties.Audit.OverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class AuditWriteBehindSinkTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path spillDirectory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final ApplicationProperties properties = new ApplicationProperties();
+
+    private final List<String> writtenActors = new CopyOnWriteArrayList<>();
+
+    private AuditWriteBehindSink sink;
+
+    @AfterEach
+    void tearDown() {
+        if (sink != null) {
+            sink.stop();
+        }
+    }
+
+    @Test
+    void shouldWriteBufferedEntriesInBatches() {
+        sink = newSink(OverflowPolicy.SPILL, 16);
+        sink.start();
+
+        sink.submit(entry(AuditEntry.Kind.AUDIT_EVENT));
+        sink.submit(entry(AuditEntry.Kind.AUDIT_LOG));
+
+        verify(jdbcTemplate, timeout(2000)).batchUpdate(startsWith("insert into audit_event"), any(BatchPreparedStatementSetter.class));
+        verify(jdbcTemplate, timeout(2000)).batchUpdate(startsWith("insert into audit_log"), any(BatchPreparedStatementSetter.class));
+    }
+
+    @Test
+    void shouldCountDroppedEntriesWhenBufferIsFull() {
+        sink = newSink(OverflowPolicy.DROP, 1);
+
+        sink.submit(entry(AuditEntry.Kind.AUDIT_EVENT));
+        sink.submit(entry(AuditEntry.Kind.AUDIT_EVENT));
+
+        assertThat(meterRegistry.counter("audit.events.dropped").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("audit.buffer.depth").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldSpillOverflowToDiskAndReplayIt() throws Exception {
+        sink = newSink(OverflowPolicy.SPILL, 1);
+
+        sink.submit(entry(AuditEntry.Kind.AUDIT_EVENT));
+        sink.submit(entry(AuditEntry.Kind.AUDIT_LOG));
+
+        assertThat(meterRegistry.counter("audit.events.spilled").count()).isEqualTo(1.0);
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+
+        sink.start();
+
+        verify(jdbcTemplate, timeout(3000)).batchUpdate(startsWith("insert into audit_log"), any(BatchPreparedStatementSetter.class));
+    }
+
+    @Test
+    void shouldMoveRejectedRowsToDeadLetterFileAndKeepReplaying() throws Exception {
+        stubDatabase(actors -> actors.contains("poison") ? new DataIntegrityViolationException("value too long") : null);
+        Path spillFile = writeSpillFile("audit-1.jsonl", "alice", "poison", "bob");
+        Path nextFile = writeSpillFile("audit-2.jsonl", "carol");
+        Files.writeString(spillFile, "not json\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        sink = newSink(OverflowPolicy.SPILL, 16);
+
+        sink.start();
+
+        awaitDeleted(nextFile);
+        assertThat(writtenActors).containsExactly("alice", "bob", "carol");
+        assertThat(Files.readAllLines(spillDirectory.resolve("audit-dead-letter.jsonl.dead")))
+            .hasSize(2)
+            .satisfies(lines -> assertThat(lines.get(0)).contains("\"poison\""))
+            .satisfies(lines -> assertThat(lines.get(1)).isEqualTo("not json"));
+        assertThat(meterRegistry.counter("audit.events.dead_lettered").count()).isEqualTo(2.0);
+        assertThat(spillFile).doesNotExist();
+    }
+
+    @Test
+    void shouldResumeReplayAfterTheLastWrittenBatch() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        // The second batch fails twice (batch and line-by-line retry) while the database is unreachable
+        stubDatabase(actors -> {
+            int call = calls.incrementAndGet();
+            return call == 2 || call == 3 ? new CannotGetJdbcConnectionException("connection refused") : null;
+        });
+        Path spillFile = writeSpillFile("audit-1.jsonl", "alice", "bob", "carol");
+        properties.getAudit().setBatchSize(1);
+        sink = newSink(OverflowPolicy.SPILL, 16);
+
+        sink.start();
+
+        awaitDeleted(spillFile);
+        assertThat(writtenActors).containsExactly("alice", "bob", "carol");
+        assertThat(meterRegistry.counter("audit.events.dead_lettered").count()).isZero();
+        sink.stop();
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    /**
+     * Records the actor of every audit_event row that is written; {@code failure} may reject a batch by actors.
+     */
+    private void stubDatabase(Function<List<String>, RuntimeException> failure) throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class))).thenAnswer(invocation -> {
+            BatchPreparedStatementSetter setter = invocation.getArgument(1);
+            List<String> actors = new ArrayList<>();
+            PreparedStatement ps = mock(PreparedStatement.class);
+            doAnswer(set -> actors.add(set.getArgument(1))).when(ps).setString(eq(2), anyString());
+            for (int i = 0; i < setter.getBatchSize(); i++) {
+                setter.setValues(ps, i);
+            }
+            RuntimeException error = failure.apply(actors);
+            if (error != null) {
+                throw error;
+            }
+            writtenActors.addAll(actors);
+            return new int[actors.size()];
+        });
+    }
+
+    private Path writeSpillFile(String name, String... actors) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (String actor : actors) {
+            lines.add(objectMapper.writeValueAsString(entry(AuditEntry.Kind.AUDIT_EVENT, actor)));
+        }
+        return Files.write(spillDirectory.resolve(name), lines, StandardCharsets.UTF_8);
+    }
+
+    private static void awaitDeleted(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((Files.exists(file) || Files.exists(file.resolveSibling(file.getFileName() + ".replay"))) &&
+            System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    void shouldFailStartupWhenSpillDirectoryIsNotWritable() throws Exception {
+        Path notADirectory = Files.createFile(spillDirectory.resolve("spill"));
+        properties.getAudit().setSpillDirectory(notADirectory.toString());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        AuditWriteBehindSink unusable = new AuditWriteBehindSink(jdbcTemplate, transactionTemplate, objectMapper, properties, meterRegistry);
+
+        assertThatThrownBy(unusable::start).isInstanceOf(IllegalStateException.class).hasMessageContaining("spill directory");
+    }
+
+    @Test
+    void shouldRequireASpillDirectory() {
+        properties.getAudit().setSpillDirectory(" ");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
+        assertThatThrownBy(() -> new AuditWriteBehindSink(jdbcTemplate, transactionTemplate, objectMapper, properties, meterRegistry))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("spill-directory");
+    }
+
+    private AuditWriteBehindSink newSink(OverflowPolicy policy, int capacity) {
+        properties.getAudit().setOverflowPolicy(policy);
+        properties.getAudit().setBufferCapacity(capacity);
+        properties.getAudit().setFlushInterval(Duration.ofMillis(50));
+        properties.getAudit().setShutdownTimeout(Duration.ofSeconds(1));
+        properties.getAudit().setSpillDirectory(spillDirectory.toString());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        return new AuditWriteBehindSink(jdbcTemplate, transactionTemplate, objectMapper, properties, meterRegistry);
+    }
+
+    private AuditEntry entry(AuditEntry.Kind kind) {
+        return entry(kind, "admin");
+    }
+
+    private AuditEntry entry(AuditEntry.Kind kind, String actor) {
+        return new AuditEntry(kind, Instant.now(), actor, "ROLE_SYS_ADMIN", "127.0.0.1", "junit", "TEST", "res", "SUCCESS", "{}", "admin");
+    }
+}
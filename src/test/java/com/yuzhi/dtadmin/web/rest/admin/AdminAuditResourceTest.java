@@ -0,0 +1,152 @@
+package com.yuzhi.dtadmin.web.rest.admin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhi.dtadmin.domain.enumeration.AdminRole;
+import com.yuzhi.dtadmin.security.AdminPrincipal;
+import com.yuzhi.dtadmin.service.admin.AuditExportService;
+import com.yuzhi.dtadmin.service.admin.AuditService;
+import com.yuzhi.dtadmin.service.dto.AuditEventDTO;
+import com.yuzhi.dtadmin.service.dto.AuditQueryCriteria;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@ExtendWith(MockitoExtension.class)
+class AdminAuditResourceTest {
+
+    private static final Instant T1 = Instant.parse("2026-10-18T08:00:00.123456Z");
+
+    private static final Instant T2 = Instant.parse("2026-10-18T09:00:00Z");
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private AuditExportService auditExportService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new AdminAuditResource(auditService, auditExportService)).build();
+        TestingAuthenticationToken authentication = new TestingAuthenticationToken("auditor", null);
+        authentication.setDetails(new AdminPrincipal("auditor", null, AdminRole.AUDITADMIN));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void cursorShouldRoundTripTimestampAndId() {
+        AuditQueryCriteria criteria = new AuditQueryCriteria();
+
+        AdminAuditResource.applyCursor(criteria, AdminAuditResource.encodeCursor(event(42L, T1)));
+
+        assertThat(criteria.getBeforeTimestamp()).isEqualTo(T1);
+        assertThat(criteria.getBeforeId()).isEqualTo(42L);
+    }
+
+    @Test
+    void malformedCursorShouldBeRejected() {
+        for (String cursor : List.of("garbage", ",42", T1 + ",abc", "yesterday,42")) {
+            assertThatThrownBy(() -> AdminAuditResource.applyCursor(new AuditQueryCriteria(), cursor))
+                .as(cursor)
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void invalidCursorShouldBeAnsweredWithBadRequest() throws Exception {
+        mockMvc.perform(get("/admin/audit").param("cursor", T1 + ",abc")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/admin/audit").param("outcome", "maybe")).andExpect(status().isBadRequest());
+
+        verify(auditService, never()).findByCriteria(any());
+    }
+
+    @Test
+    void pagesShouldVisitEveryEventOnceWhenTimestampsTie() throws Exception {
+        List<AuditEventDTO> stored = List.of(event(1L, T1), event(2L, T2), event(3L, T2), event(4L, T2), event(5L, T1));
+        when(auditService.findByCriteria(any())).thenAnswer(invocation -> keysetPage(stored, invocation.getArgument(0)));
+
+        List<Long> visited = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var request = get("/admin/audit").param("size", "2");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            MvcResult result = mockMvc.perform(request).andExpect(status().isOk()).andExpect(header().string("X-Page-Size", "2")).andReturn();
+            JsonNode body = objectMapper.readTree(result.getResponse().getContentAsString());
+            body.get("data").forEach(node -> visited.add(node.get("id").asLong()));
+            cursor = result.getResponse().getHeader(AdminAuditResource.NEXT_CURSOR_HEADER);
+            pages++;
+        } while (cursor != null);
+
+        // Newest first; events sharing a timestamp are ordered by id so a page boundary between them loses nothing
+        assertThat(visited).containsExactly(4L, 3L, 2L, 5L, 1L);
+        assertThat(pages).isEqualTo(3);
+    }
+
+    @Test
+    void defaultPageSizeShouldBeReported() throws Exception {
+        when(auditService.findByCriteria(any())).thenReturn(List.of());
+
+        mockMvc.perform(get("/admin/audit")).andExpect(status().isOk()).andExpect(header().string("X-Page-Size", "100"));
+        mockMvc.perform(get("/admin/audit").param("size", "5000")).andExpect(header().string("X-Page-Size", "1000"));
+    }
+
+    /**
+     * Same ordering and keyset condition as the SQL query: (timestamp, id) descending, strictly before the cursor.
+     */
+    private static List<AuditEventDTO> keysetPage(List<AuditEventDTO> stored, AuditQueryCriteria criteria) {
+        Comparator<AuditEventDTO> newestFirst = Comparator.comparing(AuditEventDTO::getTimestamp).thenComparing(AuditEventDTO::getId).reversed();
+        return stored
+            .stream()
+            .filter(
+                e ->
+                    criteria.getBeforeTimestamp() == null ||
+                    e.getTimestamp().isBefore(criteria.getBeforeTimestamp()) ||
+                    (e.getTimestamp().equals(criteria.getBeforeTimestamp()) && e.getId() < criteria.getBeforeId())
+            )
+            .sorted(newestFirst)
+            .limit(criteria.getSize())
+            .toList();
+    }
+
+    private static AuditEventDTO event(Long id, Instant timestamp) {
+        AuditEventDTO event = new AuditEventDTO();
+        event.setId(id);
+        event.setTimestamp(timestamp);
+        event.setAction("TEST");
+        return event;
+    }
+}
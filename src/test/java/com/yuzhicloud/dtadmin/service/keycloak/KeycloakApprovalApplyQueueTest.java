@@ -0,0 +1,222 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhi.dtadmin.domain.ApprovalApplyJob;
+import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalApplyJobStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
+import com.yuzhi.dtadmin.repository.ApprovalApplyJobRepository;
+import com.yuzhi.dtadmin.repository.ApprovalRequestRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakApprovalApplyQueueTest {
+
+    @Mock
+    private ApprovalApplyJobRepository jobRepository;
+
+    @Mock
+    private ApprovalRequestRepository approvalRequestRepository;
+
+    @Mock
+    private KeycloakBatchApprovalExecutor batchExecutor;
+
+    @Mock
+    private KeycloakUserImportService userImportService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private KeycloakApprovalApplyQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        queue = new KeycloakApprovalApplyQueue(jobRepository, approvalRequestRepository, batchExecutor,
+            userImportService, transactionTemplate, Runnable::run, 2, meterRegistry);
+        ReflectionTestUtils.setField(queue, "maxAttempts", 2);
+        ReflectionTestUtils.setField(queue, "initialBackoff", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(queue, "maxBackoff", Duration.ofSeconds(60));
+        ReflectionTestUtils.setField(queue, "lockTimeout", Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.shutdown();
+    }
+
+    @Test
+    void processShouldMarkRequestAppliedAndJobSucceeded() {
+        ApprovalApplyJob job = job(0);
+        ApprovalRequest request = request(ApprovalStatus.APPROVED);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(approvalRequestRepository.findById(10L)).thenReturn(Optional.of(request));
+        when(batchExecutor.apply(List.of(request))).thenReturn(Map.of());
+
+        queue.process(1L);
+
+        verify(batchExecutor).apply(List.of(request));
+        assertEquals(ApprovalApplyJobStatus.SUCCEEDED, job.getStatus());
+        assertEquals(ApprovalStatus.APPLIED, request.getStatus());
+        assertEquals(1, meterRegistry.timer("keycloak.approval.apply.lag").count());
+    }
+
+    @Test
+    void processShouldApplyImportRequestsThroughImportService() {
+        ApprovalApplyJob job = job(0);
+        ApprovalRequest request = request(ApprovalStatus.APPROVED).type(ApprovalType.IMPORT_USERS);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(approvalRequestRepository.findById(10L)).thenReturn(Optional.of(request));
+
+        queue.process(1L);
+
+        verify(userImportService).applyImport(eq(10L), any());
+        verify(batchExecutor, never()).apply(any());
+        assertEquals(ApprovalApplyJobStatus.SUCCEEDED, job.getStatus());
+        assertEquals(ApprovalStatus.APPLIED, request.getStatus());
+    }
+
+    @Test
+    void processShouldSkipApplyWhenRequestAlreadyApplied() {
+        ApprovalApplyJob job = job(0);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(approvalRequestRepository.findById(10L)).thenReturn(Optional.of(request(ApprovalStatus.APPLIED)));
+
+        queue.process(1L);
+
+        verify(batchExecutor, never()).apply(any());
+        assertEquals(ApprovalApplyJobStatus.SUCCEEDED, job.getStatus());
+    }
+
+    @Test
+    void processShouldScheduleRetryWithBackoffOnFailure() {
+        ApprovalApplyJob job = job(0);
+        ApprovalRequest request = request(ApprovalStatus.APPROVED);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(approvalRequestRepository.findById(10L)).thenReturn(Optional.of(request));
+        when(batchExecutor.apply(List.of(request))).thenReturn(Map.of(10L, "keycloak down"));
+
+        Instant before = Instant.now();
+        queue.process(1L);
+
+        assertEquals(ApprovalApplyJobStatus.PENDING, job.getStatus());
+        assertEquals(1, job.getAttempts());
+        assertEquals("keycloak down", job.getLastError());
+        assertTrue(job.getNextAttemptAt().isAfter(before.plusSeconds(4)));
+        assertEquals(ApprovalStatus.APPROVED, request.getStatus());
+    }
+
+    @Test
+    void processShouldDeadLetterAfterMaxAttempts() {
+        ApprovalApplyJob job = job(1);
+        ApprovalRequest request = request(ApprovalStatus.APPROVED);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(approvalRequestRepository.findById(10L)).thenReturn(Optional.of(request));
+        when(batchExecutor.apply(List.of(request))).thenThrow(new RuntimeException("keycloak down"));
+
+        queue.process(1L);
+
+        assertEquals(ApprovalApplyJobStatus.DEAD, job.getStatus());
+        assertNotNull(job.getCompletedAt());
+        assertEquals(ApprovalStatus.FAILED, request.getStatus());
+        assertEquals(1.0, meterRegistry.counter("keycloak.approval.apply.jobs", "result", "dead").count());
+    }
+
+    @Test
+    void processShouldRenewTheLeaseWhileAnyRequestTypeIsApplied() {
+        ReflectionTestUtils.setField(queue, "lockTimeout", Duration.ofSeconds(3));
+        ApprovalApplyJob job = job(0);
+        ApprovalRequest request = request(ApprovalStatus.APPROVED);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(approvalRequestRepository.findById(10L)).thenReturn(Optional.of(request));
+        when(jobRepository.heartbeat(eq(1L), any())).thenReturn(1);
+        doAnswer(invocation -> {
+            Thread.sleep(1500);
+            return Map.of();
+        }).when(batchExecutor).apply(List.of(request));
+
+        queue.process(1L);
+
+        verify(jobRepository, atLeastOnce()).heartbeat(eq(1L), any());
+        assertEquals(ApprovalApplyJobStatus.SUCCEEDED, job.getStatus());
+    }
+
+    @Test
+    void processShouldApplyJobsAsOneBatchAndRecordEachResult() {
+        ApprovalApplyJob first = job(1L, 10L, 0);
+        ApprovalApplyJob second = job(2L, 20L, 0);
+        ApprovalRequest firstRequest = request(ApprovalStatus.APPROVED);
+        ApprovalRequest secondRequest = new ApprovalRequest().id(20L).type(ApprovalType.REVOKE_ROLE).status(ApprovalStatus.APPROVED);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(first));
+        when(jobRepository.findById(2L)).thenReturn(Optional.of(second));
+        when(approvalRequestRepository.findById(10L)).thenReturn(Optional.of(firstRequest));
+        when(approvalRequestRepository.findById(20L)).thenReturn(Optional.of(secondRequest));
+        when(batchExecutor.apply(List.of(firstRequest, secondRequest))).thenReturn(Map.of(20L, "role conflict"));
+
+        queue.process(List.of(1L, 2L));
+
+        verify(batchExecutor).apply(List.of(firstRequest, secondRequest));
+        assertEquals(ApprovalApplyJobStatus.SUCCEEDED, first.getStatus());
+        assertEquals(ApprovalStatus.APPLIED, firstRequest.getStatus());
+        assertEquals(ApprovalApplyJobStatus.PENDING, second.getStatus());
+        assertEquals("role conflict", second.getLastError());
+        assertEquals(ApprovalStatus.APPROVED, secondRequest.getStatus());
+    }
+
+    @Test
+    void backoffShouldGrowExponentiallyUpToMax() {
+        Duration first = queue.backoff(1);
+        Duration third = queue.backoff(3);
+        Duration tenth = queue.backoff(10);
+
+        assertTrue(first.toMillis() >= 5_000 && first.toMillis() <= 6_000);
+        assertTrue(third.toMillis() >= 20_000 && third.toMillis() <= 24_000);
+        assertTrue(tenth.toMillis() >= 60_000 && tenth.toMillis() <= 72_000);
+    }
+
+    private ApprovalApplyJob job(int attempts) {
+        return job(1L, 10L, attempts);
+    }
+
+    private ApprovalApplyJob job(Long id, Long requestId, int attempts) {
+        ApprovalApplyJob job = new ApprovalApplyJob();
+        job.setId(id);
+        job.setRequestId(requestId);
+        job.setIdempotencyKey(KeycloakApprovalApplyQueue.idempotencyKey(requestId));
+        job.setStatus(ApprovalApplyJobStatus.RUNNING);
+        job.setAttempts(attempts);
+        job.setEnqueuedAt(Instant.now().minusSeconds(1));
+        return job;
+    }
+
+    private ApprovalRequest request(ApprovalStatus status) {
+        return new ApprovalRequest().id(10L).type(ApprovalType.GRANT_ROLE).status(status);
+    }
+}
@@ -0,0 +1,75 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
+import com.yuzhi.dtadmin.repository.ApprovalRequestRepository;
+import com.yuzhi.dtadmin.service.AuditLogUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakApprovalServiceTest {
+
+    @Mock
+    private ApprovalRequestRepository approvalRequestRepository;
+
+    @Mock
+    private AuditLogUtil auditLogUtil;
+
+    @Mock
+    private KeycloakApprovalApplyQueue applyQueue;
+
+    private KeycloakApprovalService approvalService;
+
+    @BeforeEach
+    void setUp() {
+        approvalService = new KeycloakApprovalService(approvalRequestRepository, auditLogUtil, applyQueue);
+    }
+
+    @Test
+    void approveRequestsShouldQueueOnlyRequestsApprovedByThisCall() {
+        when(approvalRequestRepository.approveIfPending(eq(1L), eq("approver"), any(), any())).thenReturn(1);
+        // 已被并发审批的请求不再登记
+        when(approvalRequestRepository.approveIfPending(eq(2L), eq("approver"), any(), any())).thenReturn(0);
+
+        List<Long> approved = approvalService.approveRequests(List.of(1L, 2L, 1L), "approver", null);
+
+        assertEquals(List.of(1L), approved);
+        verify(applyQueue).enqueue(1L);
+        verify(applyQueue, never()).enqueue(2L);
+    }
+
+    @Test
+    void queueApprovedRequestShouldOnlyEnqueue() {
+        when(approvalRequestRepository.findById(1L))
+            .thenReturn(Optional.of(new ApprovalRequest().id(1L).type(ApprovalType.GRANT_ROLE).status(ApprovalStatus.APPROVED)));
+
+        approvalService.queueApprovedRequest(1L);
+
+        verify(applyQueue).enqueue(1L);
+    }
+
+    @Test
+    void queueApprovedRequestShouldRejectRequestsThatAreNotApproved() {
+        when(approvalRequestRepository.findById(1L))
+            .thenReturn(Optional.of(new ApprovalRequest().id(1L).type(ApprovalType.GRANT_ROLE).status(ApprovalStatus.PENDING)));
+
+        assertThrows(IllegalStateException.class, () -> approvalService.queueApprovedRequest(1L));
+        verify(applyQueue, never()).enqueue(any());
+    }
+}
@@ -0,0 +1,144 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhi.dtadmin.domain.ApprovalItem;
+import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleAssignmentDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.policy.KeycloakGovernancePolicyService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakBatchApprovalExecutorTest {
+
+    private static final String USER_ID = "user-1";
+
+    @Mock
+    private KeycloakUserSyncService userSyncService;
+
+    @Mock
+    private KeycloakUserService keycloakUserService;
+
+    @Mock
+    private KeycloakRoleService roleService;
+
+    private final Map<Long, ApprovalRequest> requests = new HashMap<>();
+
+    private KeycloakBatchApprovalExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        KeycloakGovernancePolicyService policyService = new KeycloakGovernancePolicyService(roleService, keycloakUserService);
+        executor = new KeycloakBatchApprovalExecutor(userSyncService, keycloakUserService, policyService, 2);
+
+        lenient().when(userSyncService.readRoleAssignment(anyString()))
+            .thenAnswer(invocation -> new KeycloakRoleAssignmentDTO(List.of(role(invocation.getArgument(0)))));
+        lenient().when(keycloakUserService.beginMutation(USER_ID)).thenAnswer(invocation -> mutation(Set.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void grantsThatConflictOnlyWhenMergedShouldNotBeCommittedTogether() {
+        request(1L, ApprovalType.GRANT_ROLE, KeycloakGovernancePolicyService.ROLE_OP_ADMIN);
+        request(2L, ApprovalType.GRANT_ROLE, "ROLE_SYS_ADMIN");
+
+        Map<Long, String> failures = executor.apply(List.of(requests.get(1L), requests.get(2L)));
+
+        assertEquals(Set.of(2L), failures.keySet());
+        ArgumentCaptor<KeycloakUserMutation> committed = ArgumentCaptor.forClass(KeycloakUserMutation.class);
+        verify(keycloakUserService).commit(committed.capture());
+        Set<String> finalRoles = committed.getValue().getRealmRoleNames();
+        assertFalse(finalRoles.contains(KeycloakGovernancePolicyService.ROLE_OP_ADMIN) && finalRoles.contains("ROLE_SYS_ADMIN"));
+    }
+
+    @Test
+    void grantShouldBeCheckedAgainstInheritedRolesThatARevokeCannotRemove() {
+        // ROLE_SYS_ADMIN is only inherited through a group, so the earlier revoke cannot remove it
+        when(keycloakUserService.beginMutation(USER_ID)).thenAnswer(invocation -> mutation(Set.of("ROLE_SYS_ADMIN")));
+        request(1L, ApprovalType.REVOKE_ROLE, "ROLE_SYS_ADMIN");
+        request(2L, ApprovalType.GRANT_ROLE, KeycloakGovernancePolicyService.ROLE_OP_ADMIN);
+
+        Map<Long, String> failures = executor.apply(List.of(requests.get(1L), requests.get(2L)));
+
+        assertTrue(failures.containsKey(2L));
+        ArgumentCaptor<KeycloakUserMutation> committed = ArgumentCaptor.forClass(KeycloakUserMutation.class);
+        verify(keycloakUserService).commit(committed.capture());
+        assertFalse(committed.getValue().getGrantedRoleNames().contains(KeycloakGovernancePolicyService.ROLE_OP_ADMIN));
+    }
+
+    @Test
+    void roleChangesShouldBeAppliedInRequestOrderAroundUserOperations() {
+        request(1L, ApprovalType.GRANT_ROLE, "ROLE_REPORTER");
+        request(2L, ApprovalType.DELETE_USER, "{}");
+
+        // Handed over in a different order than they were submitted
+        Map<Long, String> failures = executor.apply(List.of(requests.get(2L), requests.get(1L)));
+
+        InOrder order = inOrder(keycloakUserService, userSyncService);
+        order.verify(keycloakUserService).commit(any());
+        order.verify(userSyncService).applyDeleteUser(USER_ID);
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    void requestWithoutItemsShouldFailWithoutTouchingKeycloak() {
+        requests.put(3L, new ApprovalRequest().id(3L).type(ApprovalType.UPDATE_USER).status(ApprovalStatus.APPROVED));
+
+        Map<Long, String> failures = executor.apply(List.of(requests.get(3L)));
+
+        assertEquals("No approval items found for UPDATE_USER request", failures.get(3L));
+        verify(keycloakUserService, never()).beginMutation(anyString());
+    }
+
+    private ApprovalRequest request(Long id, ApprovalType type, String payload) {
+        ApprovalRequest request = new ApprovalRequest().id(id).type(type).status(ApprovalStatus.APPROVED);
+        ApprovalItem item = new ApprovalItem().targetKind("USER").targetId(USER_ID).seqNumber(1).payload(payload);
+        request.addItems(item);
+        requests.put(id, request);
+        return request;
+    }
+
+    private KeycloakUserMutation mutation(Collection<String> inheritedRoles) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(USER_ID);
+        user.setUsername("zhangsan");
+        user.setEnabled(true);
+        return new KeycloakUserMutation(USER_ID, user, Set::of, () -> Set.copyOf(inheritedRoles));
+    }
+
+    private static KeycloakRoleDTO role(String name) {
+        KeycloakRoleDTO dto = new KeycloakRoleDTO();
+        dto.setName(name);
+        return dto;
+    }
+}
@@ -0,0 +1,59 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhicloud.dtadmin.config.KeycloakConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.keycloak.admin.client.Keycloak;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakLocalizationServiceTest {
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private Keycloak keycloakAdminClient;
+
+    @Mock
+    private KeycloakConfig keycloakConfig;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void shouldBuildBundleOnceWithStableEtag() throws Exception {
+        KeycloakLocalizationService first = new KeycloakLocalizationService(keycloakAdminClient, keycloakConfig, objectMapper, false);
+        KeycloakLocalizationService second = new KeycloakLocalizationService(keycloakAdminClient, keycloakConfig, objectMapper, false);
+
+        KeycloakLocalizationService.Bundle bundle = first.getBundle();
+        first.refreshRealmTexts();
+
+        assertSame(bundle, first.getBundle());
+        assertEquals(bundle.etag(), second.getBundle().etag());
+        JsonNode json = objectMapper.readTree(bundle.body());
+        assertEquals("用户名", json.path("userManagement").path("username").asText());
+        verifyNoInteractions(keycloakAdminClient);
+    }
+
+    @Test
+    void shouldMergeRealmTextsAndChangeEtag() throws Exception {
+        when(keycloakConfig.getTargetRealm()).thenReturn("s10");
+        when(keycloakAdminClient.realm("s10").localization().getRealmLocalizationTexts("zh-CN")).thenReturn(Map.of("loginTitle", "登录"));
+        KeycloakLocalizationService service = new KeycloakLocalizationService(keycloakAdminClient, keycloakConfig, objectMapper, true);
+        String initialEtag = service.getBundle().etag();
+
+        service.refreshRealmTexts();
+
+        assertNotEquals(initialEtag, service.getBundle().etag());
+        assertEquals("登录", objectMapper.readTree(service.getBundle().body()).path("realm").path("loginTitle").asText());
+    }
+}
@@ -0,0 +1,163 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.KeycloakLoginUserService.LoginUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakLoginUserServiceTest {
+
+    @Mock
+    private KeycloakAuthService authService;
+
+    @Mock
+    private KeycloakRoleService roleService;
+
+    private KeycloakLoginUserService loginUserService;
+
+    @BeforeEach
+    void setUp() {
+        loginUserService = new KeycloakLoginUserService(authService, roleService, 2, Duration.ofSeconds(60), 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loginUserService.shutdown();
+    }
+
+    @Test
+    void shouldTakeUserAndRolesFromTheAccessTokenWithoutLookups() {
+        String token = token("""
+            {"sub":"kc-1","preferred_username":"zhangsan","email":"zhangsan@example.com",
+             "given_name":"三","family_name":"张","realm_access":{"roles":["ROLE_OP_ADMIN","default-roles-s10"]}}
+            """);
+
+        LoginUser user = loginUserService.resolve("zhangsan", token);
+
+        assertEquals("kc-1", user.id());
+        assertEquals("zhangsan@example.com", user.email());
+        assertEquals("张", user.lastName());
+        assertEquals(Set.of("ROLE_OP_ADMIN", "default-roles-s10"), Set.copyOf(user.roles()));
+        verifyNoInteractions(authService, roleService);
+    }
+
+    @Test
+    void shouldLookUpMissingRolesBySubjectAndCacheTheResult() {
+        when(roleService.getUserRealmRoles("kc-2")).thenReturn(List.of(role("ROLE_AUDITOR_ADMIN")));
+        String token = token("""
+            {"sub":"kc-2","preferred_username":"lisi"}
+            """);
+
+        LoginUser first = loginUserService.resolve("lisi", token);
+        LoginUser second = loginUserService.resolve("lisi", token);
+
+        assertEquals(List.of("ROLE_AUDITOR_ADMIN"), first.roles());
+        assertEquals(first, second);
+        verify(roleService, times(1)).getUserRealmRoles("kc-2");
+        verify(authService, never()).getUserByUsername(anyString());
+    }
+
+    @Test
+    void shouldFetchProfileAndRolesWhenTheTokenOnlyCarriesTheSubject() {
+        UserRepresentation representation = new UserRepresentation();
+        representation.setId("kc-3");
+        representation.setUsername("wangwu");
+        representation.setEmail("wangwu@example.com");
+        representation.setEnabled(true);
+        when(authService.getUserByUsername("wangwu")).thenReturn(representation);
+        when(roleService.getUserRealmRoles("kc-3")).thenReturn(List.of(role("ROLE_SYS_ADMIN")));
+
+        LoginUser user = loginUserService.resolve("wangwu", token("""
+            {"sub":"kc-3"}
+            """));
+
+        assertEquals("kc-3", user.id());
+        assertEquals("wangwu@example.com", user.email());
+        assertEquals(List.of("ROLE_SYS_ADMIN"), user.roles());
+    }
+
+    @Test
+    void shouldNotCacheWhenRoleLookupFails() {
+        when(roleService.getUserRealmRoles("kc-4"))
+            .thenThrow(new RuntimeException("Keycloak unavailable"))
+            .thenReturn(List.of(role("ROLE_OP_ADMIN")));
+        String token = token("""
+            {"sub":"kc-4","preferred_username":"zhaoliu"}
+            """);
+
+        assertEquals(List.of(), loginUserService.resolve("zhaoliu", token).roles());
+        assertEquals(List.of("ROLE_OP_ADMIN"), loginUserService.resolve("zhaoliu", token).roles());
+    }
+
+    @Test
+    void shouldFallBackToUsernameLookupWhenTheTokenCannotBeDecoded() {
+        when(authService.getUserByUsername("ghost")).thenReturn(null);
+
+        assertNull(loginUserService.resolve("ghost", "not-a-jwt"));
+        verify(roleService, never()).getUserRealmRoles(anyString());
+    }
+
+    @Test
+    void shouldUseTheScopeFilteredTokenRolesEvenWhenTheUserHasMoreEffectiveRoles() {
+        // The client's role scope mapping only lets ROLE_OP_ADMIN into the token; the admin API would also list ROLE_SYS_ADMIN
+        lenient().when(roleService.getUserRealmRoles("kc-5")).thenReturn(List.of(role("ROLE_OP_ADMIN"), role("ROLE_SYS_ADMIN")));
+        String token = token("""
+            {"sub":"kc-5","preferred_username":"sunqi","realm_access":{"roles":["ROLE_OP_ADMIN"]}}
+            """);
+
+        LoginUser user = loginUserService.resolve("sunqi", token);
+
+        assertEquals(List.of("ROLE_OP_ADMIN"), user.roles());
+        verify(roleService, never()).getUserRealmRoles(anyString());
+    }
+
+    @Test
+    void evictAllShouldForceTheNextLoginToLookUpAgain() {
+        when(roleService.getUserRealmRoles("kc-6")).thenReturn(List.of(role("ROLE_OP_ADMIN")));
+        String token = token("""
+            {"sub":"kc-6","preferred_username":"zhouba"}
+            """);
+        loginUserService.resolve("zhouba", token);
+        loginUserService.resolve("zhouba", token);
+
+        loginUserService.evictAll();
+        loginUserService.resolve("zhouba", token);
+
+        verify(roleService, times(2)).getUserRealmRoles("kc-6");
+    }
+
+    private static String token(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"RS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8))
+            + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+            + "." + encoder.encodeToString("signature".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static KeycloakRoleDTO role(String name) {
+        KeycloakRoleDTO dto = new KeycloakRoleDTO();
+        dto.setName(name);
+        return dto;
+    }
+}
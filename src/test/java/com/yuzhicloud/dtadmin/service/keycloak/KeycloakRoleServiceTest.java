@@ -0,0 +1,150 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.config.KeycloakConfig;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleResource;
+import org.keycloak.admin.client.resource.RolesResource;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakRoleServiceTest {
+
+    @Mock
+    private Keycloak keycloakAdminClient;
+
+    @Mock
+    private KeycloakConfig keycloakConfig;
+
+    @Mock
+    private RealmResource realmResource;
+
+    @Mock
+    private RolesResource rolesResource;
+
+    @Mock
+    private RoleResource roleResource;
+
+    private KeycloakRoleService roleService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(keycloakConfig.getTargetRealm()).thenReturn("s10");
+        lenient().when(keycloakAdminClient.realm("s10")).thenReturn(realmResource);
+        lenient().when(realmResource.roles()).thenReturn(rolesResource);
+        roleService = new KeycloakRoleService(keycloakAdminClient, keycloakConfig, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void createdRoleShouldBeServedFromTheReloadedSnapshot() {
+        when(rolesResource.list()).thenReturn(List.of(role("ROLE_A", "a")), List.of(role("ROLE_A", "a"), role("ROLE_B", "b")));
+        assertEquals(List.of("ROLE_A"), names(roleService.getAllRealmRoles()));
+
+        roleService.createRealmRole(dto("ROLE_B", "b"));
+
+        assertEquals("b", roleService.getRealmRoleByName("ROLE_B").getDescription());
+        verify(rolesResource, times(2)).list();
+        // Resolved from the new snapshot, not by a per-role lookup
+        verify(rolesResource, never()).get("ROLE_B");
+    }
+
+    @Test
+    void updatedRoleShouldNotBeServedFromTheStaleSnapshot() {
+        when(rolesResource.get("ROLE_A")).thenReturn(roleResource);
+        when(rolesResource.list()).thenReturn(List.of(role("ROLE_A", "old")), List.of(role("ROLE_A", "new")));
+        assertEquals("old", roleService.getRealmRoleByName("ROLE_A").getDescription());
+
+        roleService.updateRealmRole("ROLE_A", dto("ROLE_A", "new"));
+
+        assertEquals("new", roleService.getRealmRoleByName("ROLE_A").getDescription());
+    }
+
+    @Test
+    void deletedRoleShouldDisappearFromTheSnapshot() {
+        when(rolesResource.get("ROLE_A")).thenReturn(roleResource);
+        when(rolesResource.list()).thenReturn(List.of(role("ROLE_A", "a"), role("ROLE_B", "b")), List.of(role("ROLE_B", "b")));
+        assertEquals(List.of("ROLE_A", "ROLE_B"), names(roleService.getAllRealmRoles()));
+
+        roleService.deleteRealmRole("ROLE_A");
+
+        assertEquals(List.of("ROLE_B"), names(roleService.getAllRealmRoles()));
+    }
+
+    @Test
+    void failedWriteShouldKeepTheCachedSnapshot() {
+        when(rolesResource.list()).thenReturn(List.of(role("ROLE_A", "a")));
+        when(rolesResource.get("ROLE_A")).thenReturn(roleResource);
+        doThrow(new IllegalStateException("conflict")).when(roleResource).update(any());
+        roleService.getAllRealmRoles();
+
+        assertThrows(RuntimeException.class, () -> roleService.updateRealmRole("ROLE_A", dto("ROLE_A", "x")));
+
+        assertEquals("a", roleService.getRealmRoleByName("ROLE_A").getDescription());
+        verify(rolesResource, times(1)).list();
+    }
+
+    @Test
+    void snapshotLoadedAcrossARoleWriteShouldNotBeKept() {
+        when(rolesResource.list())
+            .thenAnswer(invocation -> {
+                // A role write lands while the list is in flight
+                roleService.invalidateRoleCache();
+                return List.of(role("ROLE_A", "old"));
+            })
+            .thenReturn(List.of(role("ROLE_A", "new")));
+
+        assertEquals("old", roleService.getRealmRoleByName("ROLE_A").getDescription());
+        assertEquals("new", roleService.getRealmRoleByName("ROLE_A").getDescription());
+        verify(rolesResource, times(2)).list();
+    }
+
+    @Test
+    void snapshotLoadFailureShouldBeWrappedLikeALookupFailure() {
+        when(rolesResource.list()).thenThrow(new IllegalStateException("keycloak unavailable"));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> roleService.getRealmRoleByName("ROLE_A"));
+
+        assertTrue(error.getMessage().contains("ROLE_A"));
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+    }
+
+    private static List<String> names(List<KeycloakRoleDTO> roles) {
+        return roles.stream().map(KeycloakRoleDTO::getName).toList();
+    }
+
+    private static RoleRepresentation role(String name, String description) {
+        RoleRepresentation role = new RoleRepresentation();
+        role.setId(name.toLowerCase());
+        role.setName(name);
+        role.setDescription(description);
+        return role;
+    }
+
+    private static KeycloakRoleDTO dto(String name, String description) {
+        KeycloakRoleDTO dto = new KeycloakRoleDTO();
+        dto.setName(name);
+        dto.setDescription(description);
+        return dto;
+    }
+}
@@ -0,0 +1,143 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.config.KeycloakConfig;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakTokenDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakTokenServiceTest {
+
+    private static final String TOKEN_URL = "https://sso.example.com/realms/master/protocol/openid-connect/token";
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private KeycloakConfig keycloakConfig;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private KeycloakTokenService service;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(keycloakConfig.getKeycloakServerUrl()).thenReturn("https://sso.example.com");
+        lenient().when(keycloakConfig.getRealm()).thenReturn("master");
+        lenient().when(keycloakConfig.getAdminClientId()).thenReturn("admin-cli");
+        meterRegistry = new SimpleMeterRegistry();
+        service = new KeycloakTokenService(restTemplate, keycloakConfig, meterRegistry, Duration.ofSeconds(30));
+    }
+
+    @Test
+    void shouldReuseCachedTokenUntilExpiry() {
+        when(restTemplate.postForEntity(eq(TOKEN_URL), grant("password"), eq(KeycloakTokenDTO.class)))
+            .thenReturn(ResponseEntity.ok(token("access-1", 300, "refresh-1")));
+
+        assertEquals("access-1", service.getAccessToken());
+        assertEquals("access-1", service.getAccessToken());
+
+        verify(restTemplate, times(1)).postForEntity(eq(TOKEN_URL), any(HttpEntity.class), eq(KeycloakTokenDTO.class));
+        assertEquals(1, meterRegistry.get("keycloak.admin.token.requests").tag("op", "mint").timer().count());
+    }
+
+    @Test
+    void shouldRenewExpiredTokenWithRefreshToken() {
+        // 20s有效期小于30s的skew，首次获取后即视为过期
+        when(restTemplate.postForEntity(eq(TOKEN_URL), grant("password"), eq(KeycloakTokenDTO.class)))
+            .thenReturn(ResponseEntity.ok(token("access-1", 20, "refresh-1")));
+        when(restTemplate.postForEntity(eq(TOKEN_URL), grant("refresh_token"), eq(KeycloakTokenDTO.class)))
+            .thenReturn(ResponseEntity.ok(token("access-2", 300, "refresh-2")));
+
+        assertEquals("access-1", service.getAccessToken());
+        assertEquals("access-2", service.getAccessToken());
+        assertEquals("access-2", service.getAccessToken());
+
+        assertEquals(1, meterRegistry.get("keycloak.admin.token.requests").tag("op", "mint").timer().count());
+        assertEquals(1, meterRegistry.get("keycloak.admin.token.requests").tag("op", "refresh").timer().count());
+    }
+
+    @Test
+    void shouldFallBackToPasswordLoginWhenRefreshFails() {
+        when(restTemplate.postForEntity(eq(TOKEN_URL), grant("password"), eq(KeycloakTokenDTO.class)))
+            .thenReturn(ResponseEntity.ok(token("access-1", 20, "refresh-1")))
+            .thenReturn(ResponseEntity.ok(token("access-2", 300, "refresh-2")));
+        when(restTemplate.postForEntity(eq(TOKEN_URL), grant("refresh_token"), eq(KeycloakTokenDTO.class)))
+            .thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST, "invalid_grant"));
+
+        service.getAccessToken();
+
+        assertEquals("access-2", service.getAccessToken());
+        assertEquals(2, meterRegistry.get("keycloak.admin.token.requests").tag("op", "mint").timer().count());
+        assertEquals(1, meterRegistry.get("keycloak.admin.token.refresh.failures").counter().count());
+    }
+
+    @Test
+    void shouldCollapseConcurrentCallsIntoOneLogin() throws Exception {
+        CountDownLatch inFlight = new CountDownLatch(1);
+        when(restTemplate.postForEntity(eq(TOKEN_URL), grant("password"), eq(KeycloakTokenDTO.class)))
+            .thenAnswer(invocation -> {
+                inFlight.await(5, TimeUnit.SECONDS);
+                return ResponseEntity.ok(token("access-1", 300, "refresh-1"));
+            });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(service::getAccessToken));
+            }
+            inFlight.countDown();
+            for (Future<String> result : results) {
+                assertEquals("access-1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(restTemplate, times(1)).postForEntity(eq(TOKEN_URL), any(HttpEntity.class), eq(KeycloakTokenDTO.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpEntity<?> grant(String grantType) {
+        return argThat(entity -> entity != null
+            && grantType.equals(((MultiValueMap<String, String>) entity.getBody()).getFirst("grant_type")));
+    }
+
+    private static KeycloakTokenDTO token(String accessToken, int expiresIn, String refreshToken) {
+        KeycloakTokenDTO dto = new KeycloakTokenDTO();
+        dto.setAccessToken(accessToken);
+        dto.setExpiresIn(expiresIn);
+        dto.setRefreshToken(refreshToken);
+        dto.setRefreshExpiresIn(1800);
+        return dto;
+    }
+}
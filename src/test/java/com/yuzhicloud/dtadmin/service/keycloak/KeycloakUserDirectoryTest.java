@@ -0,0 +1,237 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.config.KeycloakConfig;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.ws.rs.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakUserDirectoryTest {
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private Keycloak keycloakAdminClient;
+
+    @Mock
+    private KeycloakConfig keycloakConfig;
+
+    private RealmResource realm;
+
+    private KeycloakUserDirectory directory;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(keycloakConfig.getTargetRealm()).thenReturn("s10");
+        realm = keycloakAdminClient.realm("s10");
+        directory = new KeycloakUserDirectory(keycloakAdminClient, keycloakConfig, new SimpleMeterRegistry(),
+                true, 2, 2, true, Duration.ofSeconds(30), Duration.ofMinutes(30), new String[] { "department" });
+    }
+
+    @AfterEach
+    void tearDown() {
+        directory.shutdown();
+    }
+
+    @Test
+    void shouldServeListSearchAndGetFromCrawledSnapshot() {
+        stubCrawl();
+
+        assertFalse(directory.isReady());
+        directory.fullSync();
+
+        assertTrue(directory.isReady());
+        assertEquals(List.of("alice", "bob"), usernames(directory.list(0, 2)));
+        assertEquals(List.of("carol"), usernames(directory.list(2, 2)));
+        assertEquals(List.of("bob"), usernames(directory.search("BOB@example", 0, 10)));
+        assertEquals(List.of("alice"), usernames(directory.search("*ali*", 0, 10)));
+
+        KeycloakUserDTO alice = directory.get("id-alice").orElseThrow();
+        assertEquals(List.of("/dev"), alice.getGroups());
+        assertEquals(List.of("ROLE_ADMIN"), directory.get("id-bob").orElseThrow().getRealmRoles());
+
+        // 返回的是拷贝，调用方修改不影响快照
+        alice.getGroups().clear();
+        assertEquals(List.of("/dev"), directory.get("id-alice").orElseThrow().getGroups());
+    }
+
+    @Test
+    void shouldRefreshOnlyUsersNamedInAdminEvents() {
+        stubCrawl();
+        directory.fullSync();
+        Instant firstSync = directory.getSyncedAt();
+        when(realm.getRealmEventsConfig().isAdminEventsEnabled()).thenReturn(true);
+
+        long now = System.currentTimeMillis();
+        when(realm.getAdminEvents(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), any(), any(), isNull(), anyInt(), eq(2)))
+                .thenReturn(List.of(event(now, "users/id-bob/role-mappings/realm"), event(now - 1, "users/id-carol")), List.of());
+        UserResource bob = realm.users().get("id-bob");
+        when(bob.toRepresentation()).thenReturn(user("id-bob", "bob", "bob@example.com"));
+        when(bob.groups()).thenReturn(List.of());
+        when(bob.roles().realmLevel().listAll()).thenReturn(List.of(role("ROLE_ADMIN"), role("ROLE_AUDITOR")));
+        when(realm.users().get("id-carol").toRepresentation()).thenThrow(new NotFoundException());
+
+        directory.incrementalSync();
+
+        assertEquals(List.of("ROLE_ADMIN", "ROLE_AUDITOR"), directory.get("id-bob").orElseThrow().getRealmRoles());
+        assertTrue(directory.get("id-carol").isEmpty());
+        assertEquals(List.of("/dev"), directory.get("id-alice").orElseThrow().getGroups());
+        assertFalse(directory.getSyncedAt().isBefore(firstSync));
+    }
+
+    @Test
+    void shouldNotAdvanceSyncTimeWhileAdminEventsAreDisabled() {
+        stubCrawl();
+        directory.fullSync();
+        Instant firstSync = directory.getSyncedAt();
+        when(realm.getRealmEventsConfig().isAdminEventsEnabled()).thenReturn(false, false, true);
+
+        directory.incrementalSync();
+        directory.incrementalSync();
+
+        assertEquals(firstSync, directory.getSyncedAt());
+        verify(realm, never()).getAdminEvents(any(), any(), any(), any(), any(), any(), anyList(), any(), any(), anyInt(), anyInt());
+
+        // Changes made while events were off have no events: re-enabling rebuilds the directory first
+        directory.incrementalSync();
+
+        verify(realm.users(), times(2)).count();
+        verify(realm, never()).getAdminEvents(any(), any(), any(), any(), any(), any(), anyList(), any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void ownWritesShouldBeRefreshedInTheBackgroundAndSurviveAnOlderCrawl() throws InterruptedException {
+        stubCrawl();
+        directory.fullSync();
+        CountDownLatch fetchAllowed = new CountDownLatch(1);
+        UserResource bob = realm.users().get("id-bob");
+        when(bob.toRepresentation()).thenAnswer(invocation -> {
+            fetchAllowed.await(5, TimeUnit.SECONDS);
+            return user("id-bob", "bob", "bob@new.example.com");
+        });
+        when(bob.groups()).thenReturn(List.of());
+        when(bob.roles().realmLevel().listAll()).thenReturn(List.of(role("ROLE_ADMIN")));
+
+        directory.refreshUser("id-bob");
+
+        // 刷新完成前不返回镜像中的旧数据，调用方回退到实时查询
+        assertTrue(directory.get("id-bob").isEmpty());
+        fetchAllowed.countDown();
+        assertEquals("bob@new.example.com", awaitEmail("id-bob"));
+
+        // A full sync that started before the next write returns bob's old email
+        when(realm.users().list(0, 2)).thenAnswer(invocation -> {
+            directory.refreshUser("id-bob");
+            return List.of(user("id-bob", "bob", "bob@example.com"), user("id-alice", "alice", "alice@example.com"));
+        });
+        directory.fullSync();
+
+        assertEquals("bob@new.example.com", awaitEmail("id-bob"));
+        assertEquals(List.of("alice", "bob", "carol"), usernames(directory.list(0, 10)));
+
+        directory.removeUser("id-carol");
+
+        assertTrue(directory.get("id-carol").isEmpty());
+        assertEquals(List.of("alice", "bob"), usernames(directory.list(0, 10)));
+        assertTrue(directory.search("carol", 0, 10).isEmpty());
+    }
+
+    @Test
+    void shouldExtractUserIdFromAdminEventResourcePath() {
+        assertEquals("u1", KeycloakUserDirectory.userIdFromResourcePath("users/u1"));
+        assertEquals("u1", KeycloakUserDirectory.userIdFromResourcePath("users/u1/groups/g1"));
+        assertNull(KeycloakUserDirectory.userIdFromResourcePath("groups/g1/role-mappings/realm"));
+        assertNull(KeycloakUserDirectory.userIdFromResourcePath(null));
+    }
+
+    private void stubCrawl() {
+        when(realm.users().count()).thenReturn(3);
+        when(realm.users().list(0, 2)).thenReturn(List.of(
+                user("id-bob", "bob", "bob@example.com"), user("id-alice", "alice", "alice@example.com")));
+        when(realm.users().list(2, 2)).thenReturn(List.of(user("id-carol", "carol", "carol@example.com")));
+
+        GroupRepresentation dev = new GroupRepresentation();
+        dev.setId("g-dev");
+        dev.setPath("/dev");
+        dev.setSubGroupCount(0L);
+        when(realm.groups().groups()).thenReturn(List.of(dev));
+        when(realm.groups().group("g-dev").members(anyInt(), anyInt(), eq(true)))
+                .thenReturn(List.of(user("id-alice", "alice", null)));
+
+        when(realm.roles().list(true)).thenReturn(List.of(role("ROLE_ADMIN")));
+        when(realm.roles().get("ROLE_ADMIN").getUserMembers(eq(true), anyInt(), anyInt()))
+                .thenReturn(List.of(user("id-bob", "bob", null)));
+    }
+
+    private String awaitEmail(String userId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Optional<KeycloakUserDTO> user = directory.get(userId);
+            if (user.isPresent()) {
+                return user.get().getEmail();
+            }
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    private static List<String> usernames(List<KeycloakUserDTO> users) {
+        return users.stream().map(KeycloakUserDTO::getUsername).toList();
+    }
+
+    private static UserRepresentation user(String id, String username, String email) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setEnabled(true);
+        return user;
+    }
+
+    private static RoleRepresentation role(String name) {
+        RoleRepresentation role = new RoleRepresentation();
+        role.setName(name);
+        return role;
+    }
+
+    private static AdminEventRepresentation event(long time, String resourcePath) {
+        AdminEventRepresentation event = new AdminEventRepresentation();
+        event.setTime(time);
+        event.setResourcePath(resourcePath);
+        return event;
+    }
+}
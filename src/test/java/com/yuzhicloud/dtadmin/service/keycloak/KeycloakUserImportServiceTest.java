@@ -0,0 +1,281 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhi.dtadmin.domain.ApprovalItem;
+import com.yuzhi.dtadmin.domain.ApprovalRequest;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalItemApplyStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalStatus;
+import com.yuzhi.dtadmin.domain.enumeration.ApprovalType;
+import com.yuzhi.dtadmin.repository.ApprovalItemRepository;
+import com.yuzhi.dtadmin.repository.ApprovalRequestRepository;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportResultDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserImportRowDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.policy.KeycloakGovernancePolicyService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakUserImportServiceTest {
+
+    @Mock
+    private ApprovalRequestRepository approvalRequestRepository;
+
+    @Mock
+    private ApprovalItemRepository approvalItemRepository;
+
+    @Mock
+    private KeycloakUserSyncService userSyncService;
+
+    @Mock
+    private KeycloakGovernancePolicyService governancePolicyService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private final SimpleTransactionStatus transactionStatus = new SimpleTransactionStatus();
+
+    private TransactionTemplate transactionTemplate;
+
+    private KeycloakUserImportService service;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        service = newService(userSyncService, 100);
+        lenient().when(governancePolicyService.normalizeAttributes(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void submitShouldCreateOneRequestWithAnItemPerCsvRow() throws Exception {
+        List<ApprovalItem> saved = new ArrayList<>();
+        when(approvalRequestRepository.save(any(ApprovalRequest.class))).thenAnswer(invocation -> {
+            ApprovalRequest request = invocation.getArgument(0);
+            request.setId(7L);
+            return request;
+        });
+        when(approvalItemRepository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<ApprovalItem> items = invocation.getArgument(0);
+            items.forEach(saved::add);
+            return List.of();
+        });
+
+        String csv = """
+            username,email,lastName,firstName,department
+            zhangsan,zhangsan@example.com,张,三,研发部|测试部
+            lisi,lisi@example.com,李,"四, Jr.",财务部
+            """;
+        KeycloakUserImportResultDTO result = service.submit(stream(csv), KeycloakUserImportService.Format.CSV, "admin");
+
+        assertEquals(7L, result.getRequestId());
+        assertEquals(2, result.getAccepted());
+        assertEquals(0, result.getRejected());
+        verify(approvalRequestRepository).save(argThat(request ->
+            request.getType() == ApprovalType.IMPORT_USERS && request.getStatus() == ApprovalStatus.PENDING));
+
+        verify(approvalRequestRepository).updateReason(7L, "批量导入用户: 2个");
+        assertEquals(List.of("zhangsan", "lisi"), saved.stream().map(ApprovalItem::getTargetId).toList());
+        assertEquals(List.of(1, 2), saved.stream().map(ApprovalItem::getSeqNumber).toList());
+        KeycloakUserDTO zhangsan = objectMapper.readValue(saved.get(0).getPayload(), KeycloakUserDTO.class);
+        assertEquals(List.of("研发部", "测试部"), zhangsan.getAttributes().get("department"));
+        assertEquals("四, Jr.", objectMapper.readValue(saved.get(1).getPayload(), KeycloakUserDTO.class).getFirstName());
+        // The CSV has no enabled column: imported users are enabled
+        assertEquals(Boolean.TRUE, zhangsan.getEnabled());
+    }
+
+    @Test
+    void submitShouldWriteItemsInChunksWhileReading() throws Exception {
+        service.shutdown();
+        service = newService(userSyncService, 1000);
+        List<Integer> chunkSizes = new ArrayList<>();
+        when(approvalRequestRepository.save(any(ApprovalRequest.class))).thenAnswer(invocation -> {
+            ApprovalRequest request = invocation.getArgument(0);
+            request.setId(7L);
+            return request;
+        });
+        when(approvalItemRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<ApprovalItem> items = invocation.getArgument(0);
+            chunkSizes.add(items.size());
+            return List.of();
+        });
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 1; i <= 600; i++) {
+            jsonl.append("{\"username\":\"user").append(i).append("\",\"enabled\":false}\n");
+        }
+
+        KeycloakUserImportResultDTO result = service.submit(stream(jsonl.toString()), KeycloakUserImportService.Format.JSONL, "admin");
+
+        assertEquals(600, result.getAccepted());
+        assertEquals(List.of(500, 100), chunkSizes);
+        verify(entityManager, times(2)).clear();
+        assertFalse(transactionStatus.isRollbackOnly());
+    }
+
+    @Test
+    void submitShouldReportEveryInvalidRowWithoutCreatingRequest() throws Exception {
+        when(governancePolicyService.normalizeAttributes(eq(Map.of("person_security_level", List.of("TOP")))))
+            .thenThrow(new IllegalArgumentException("Unsupported person_security_level: TOP"));
+
+        String jsonl = """
+            {"username":"alice"}
+            {"username":"ALICE"}
+
+            {"email":"nobody@example.com"}
+            {"username":"bob",
+            {"username":"carol","attributes":{"person_security_level":["TOP"]}}
+            {"username":"dave"}
+            """;
+        KeycloakUserImportResultDTO result = service.submit(stream(jsonl), KeycloakUserImportService.Format.JSONL, "admin");
+
+        assertNull(result.getRequestId());
+        assertEquals(0, result.getAccepted());
+        assertEquals(4, result.getRejected());
+        assertEquals(List.of(2, 3, 4, 5), result.getErrors().stream().map(KeycloakUserImportRowDTO::getRow).toList());
+        assertEquals("Unsupported person_security_level: TOP", result.getErrors().get(3).getMessage());
+        // alice was read before the first invalid row; nothing is written after it and the transaction rolls back
+        assertTrue(transactionStatus.isRollbackOnly());
+        verify(approvalItemRepository, never()).saveAll(any());
+        verify(approvalRequestRepository, never()).updateReason(any(), any());
+    }
+
+    @Test
+    void applyImportShouldRecordEachRowAndFailWhenAnyRowFails() {
+        when(approvalItemRepository.findUnappliedAfter(eq(7L), eq(0), any()))
+            .thenReturn(List.of(item(11L, 1, "alice"), item(12L, 2, "bob"), item(13L, 3, "carol")));
+        when(userSyncService.applyCreateUser(any())).thenAnswer(invocation -> {
+            String payload = invocation.getArgument(0);
+            if (payload.contains("bob")) {
+                throw new RuntimeException("Failed to create user in Keycloak",
+                    new RuntimeException("Failed to create user in Keycloak, status: 409"));
+            }
+            return "kc-" + objectMapper.readValue(payload, KeycloakUserDTO.class).getUsername();
+        });
+        when(approvalRequestRepository.findById(7L))
+            .thenReturn(Optional.of(new ApprovalRequest().id(7L).type(ApprovalType.IMPORT_USERS).status(ApprovalStatus.APPROVED)));
+        when(approvalItemRepository.countByRequestId(7L)).thenReturn(3L);
+        when(approvalItemRepository.countByRequestIdAndApplyStatus(7L, ApprovalItemApplyStatus.SUCCEEDED)).thenReturn(2L);
+        when(approvalItemRepository.countByRequestIdAndApplyStatus(7L, ApprovalItemApplyStatus.FAILED)).thenReturn(1L);
+        when(approvalItemRepository.findByRequestIdAndApplyStatusOrderBySeqNumberAsc(eq(7L), eq(ApprovalItemApplyStatus.FAILED), any()))
+            .thenReturn(List.of());
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> service.applyImport(7L, () -> {}));
+
+        assertEquals("1 of 3 imported users failed", error.getMessage());
+        verify(approvalItemRepository).markApplied(eq(11L), eq("kc-alice"), any());
+        verify(approvalItemRepository).markApplied(eq(13L), eq("kc-carol"), any());
+        verify(approvalItemRepository).markApplyFailed(eq(12L), eq("Failed to create user in Keycloak, status: 409"), any());
+        assertEquals(2.0, meterRegistry.counter("keycloak.user.import.rows", "result", "succeeded").count());
+        assertEquals(1.0, meterRegistry.counter("keycloak.user.import.rows", "result", "failed").count());
+    }
+
+    @Test
+    void applyImportShouldPageThroughUnappliedRowsBySequence() {
+        List<ApprovalItem> firstPage = new ArrayList<>();
+        for (int seq = 1; seq <= 500; seq++) {
+            firstPage.add(item((long) seq, seq, "user" + seq));
+        }
+        when(approvalItemRepository.findUnappliedAfter(eq(7L), anyInt(), any())).thenAnswer(invocation ->
+            invocation.<Integer>getArgument(1) == 0 ? firstPage : List.of(item(501L, 501, "user501")));
+        when(userSyncService.applyCreateUser(any())).thenReturn("kc-id");
+        when(approvalRequestRepository.findById(7L))
+            .thenReturn(Optional.of(new ApprovalRequest().id(7L).type(ApprovalType.IMPORT_USERS).status(ApprovalStatus.APPROVED)));
+        when(approvalItemRepository.countByRequestId(7L)).thenReturn(501L);
+        when(approvalItemRepository.countByRequestIdAndApplyStatus(7L, ApprovalItemApplyStatus.SUCCEEDED)).thenReturn(501L);
+        when(approvalItemRepository.countByRequestIdAndApplyStatus(7L, ApprovalItemApplyStatus.FAILED)).thenReturn(0L);
+
+        assertEquals(0, service.applyImport(7L, () -> {}).getPending());
+
+        verify(approvalItemRepository).findUnappliedAfter(eq(7L), eq(500), any());
+        verify(approvalItemRepository).markApplied(eq(501L), eq("kc-id"), any());
+        assertEquals(501.0, meterRegistry.counter("keycloak.user.import.rows", "result", "succeeded").count());
+    }
+
+    @Test
+    void retryAfterAPartialFailureShouldAdoptUsersCreatedByThePreviousAttempt() {
+        KeycloakUserService keycloakUserService = mock(KeycloakUserService.class);
+        service.shutdown();
+        service = newService(new KeycloakUserSyncService(keycloakUserService, governancePolicyService), 100);
+        ApprovalItem failed = item(12L, 2, "bob");
+        failed.setPayload("{\"username\":\"bob\",\"email\":\"bob@example.com\",\"enabled\":true}");
+        when(approvalItemRepository.findUnappliedAfter(eq(7L), eq(0), any())).thenReturn(List.of(failed));
+        // The previous attempt created bob in Keycloak but failed before recording the result
+        when(keycloakUserService.createUserIfAbsent(any())).thenReturn(Optional.empty());
+        KeycloakUserDTO existing = new KeycloakUserDTO("bob", "bob@example.com", null, null, true);
+        existing.setId("kc-bob");
+        when(keycloakUserService.findUserByUsername("bob")).thenReturn(Optional.of(existing));
+        when(approvalRequestRepository.findById(7L))
+            .thenReturn(Optional.of(new ApprovalRequest().id(7L).type(ApprovalType.IMPORT_USERS).status(ApprovalStatus.APPROVED)));
+        when(approvalItemRepository.countByRequestId(7L)).thenReturn(3L);
+        when(approvalItemRepository.countByRequestIdAndApplyStatus(7L, ApprovalItemApplyStatus.SUCCEEDED)).thenReturn(3L);
+        when(approvalItemRepository.countByRequestIdAndApplyStatus(7L, ApprovalItemApplyStatus.FAILED)).thenReturn(0L);
+
+        assertEquals(0, service.applyImport(7L, () -> {}).getFailed());
+
+        verify(approvalItemRepository).markApplied(eq(12L), eq("kc-bob"), any());
+        verify(approvalItemRepository, never()).markApplyFailed(any(), any(), any());
+    }
+
+    private KeycloakUserImportService newService(KeycloakUserSyncService syncService, int maxRows) {
+        return new KeycloakUserImportService(approvalRequestRepository, approvalItemRepository, syncService,
+            governancePolicyService, transactionTemplate, entityManager, meterRegistry, 4, maxRows, Duration.ofSeconds(30));
+    }
+
+    private ApprovalItem item(Long id, int seq, String username) {
+        ApprovalItem item = new ApprovalItem();
+        item.setId(id);
+        item.setSeqNumber(seq);
+        item.setTargetId(username);
+        item.setPayload("{\"username\":\"" + username + "\"}");
+        return item;
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
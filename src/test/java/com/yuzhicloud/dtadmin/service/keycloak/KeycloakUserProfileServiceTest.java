@@ -0,0 +1,114 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.config.KeycloakConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.UserProfileResource;
+import org.keycloak.representations.idm.UserProfileAttributeMetadata;
+import org.keycloak.representations.idm.UserProfileMetadata;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakUserProfileServiceTest {
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private Keycloak keycloakAdminClient;
+
+    @Mock
+    private KeycloakConfig keycloakConfig;
+
+    @Mock
+    private KeycloakTokenService tokenService;
+
+    @Mock
+    private RestTemplate keycloakRestTemplate;
+
+    private UserProfileResource userProfileResource;
+
+    private KeycloakUserProfileService service;
+
+    @BeforeEach
+    void setUp() {
+        when(keycloakConfig.getTargetRealm()).thenReturn("s10");
+        userProfileResource = keycloakAdminClient.realm("s10").users().userProfile();
+        service = new KeycloakUserProfileService(keycloakAdminClient, keycloakConfig, tokenService, keycloakRestTemplate);
+    }
+
+    @Test
+    void shouldServeConfigAndAttributeIndexFromOneFetch() {
+        UserProfileMetadata metadata = metadata("username", "email", "department");
+        when(userProfileResource.getMetadata()).thenReturn(metadata);
+
+        KeycloakUserProfileService.UserProfileSnapshot snapshot = service.getUserProfileSnapshot();
+
+        assertSame(snapshot.config(), service.getUserProfileConfig());
+        assertEquals(List.of("username", "email", "department"), service.getUserProfileAttributeNames());
+        assertTrue(service.hasUserProfileAttribute("department"));
+        assertFalse(service.hasUserProfileAttribute("phone"));
+        assertTrue(service.isUserProfileConfigured());
+        assertNotNull(snapshot.etag());
+        verify(userProfileResource, times(1)).getMetadata();
+    }
+
+    @Test
+    void shouldReloadAfterUpdate() {
+        UserProfileMetadata before = metadata("username");
+        UserProfileMetadata after = metadata("username", "phone");
+        when(userProfileResource.getMetadata()).thenReturn(before, after);
+        String initialEtag = service.getUserProfileSnapshot().etag();
+
+        service.updateUserProfileConfig(service.getUserProfileConfig());
+
+        assertTrue(service.hasUserProfileAttribute("phone"));
+        assertFalse(initialEtag.equals(service.getUserProfileSnapshot().etag()));
+        verify(userProfileResource, times(2)).getMetadata();
+    }
+
+    @Test
+    void snapshotLoadedAcrossAnUpdateShouldNotBeKept() {
+        UserProfileMetadata before = metadata("username");
+        UserProfileMetadata after = metadata("username", "phone");
+        when(userProfileResource.getMetadata())
+            .thenAnswer(invocation -> {
+                // An update lands while the metadata is in flight
+                service.invalidateUserProfileCache();
+                return before;
+            })
+            .thenReturn(after);
+
+        assertFalse(service.hasUserProfileAttribute("phone"));
+        assertTrue(service.hasUserProfileAttribute("phone"));
+        verify(userProfileResource, times(2)).getMetadata();
+    }
+
+    private UserProfileMetadata metadata(String... names) {
+        UserProfileMetadata metadata = mock(UserProfileMetadata.class);
+        List<UserProfileAttributeMetadata> attributes = Arrays.stream(names)
+            .map(name -> {
+                UserProfileAttributeMetadata attribute = mock(UserProfileAttributeMetadata.class);
+                when(attribute.getName()).thenReturn(name);
+                return attribute;
+            })
+            .toList();
+        when(metadata.getAttributes()).thenReturn(attributes);
+        return metadata;
+    }
+}
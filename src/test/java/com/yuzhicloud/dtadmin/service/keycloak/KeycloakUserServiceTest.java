@@ -0,0 +1,217 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuzhicloud.dtadmin.config.KeycloakConfig;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakRoleDTO;
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.policy.KeycloakGovernancePolicyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RoleScopeResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakUserServiceTest {
+
+    private static final String USER_ID = "user-1";
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private Keycloak keycloakAdminClient;
+
+    @Mock
+    private KeycloakConfig keycloakConfig;
+
+    @Mock
+    private KeycloakRoleService roleService;
+
+    @Mock
+    private KeycloakUserDirectory userDirectory;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private UserResource userResource;
+
+    @Mock
+    private RoleScopeResource realmRoles;
+
+    private KeycloakUserService userService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(keycloakConfig.getTargetRealm()).thenReturn("s10");
+        lenient().when(keycloakAdminClient.realm("s10").users().get(USER_ID)).thenReturn(userResource);
+        lenient().when(userResource.roles().realmLevel()).thenReturn(realmRoles);
+        userService = new KeycloakUserService(keycloakAdminClient, keycloakConfig, roleService, userDirectory);
+    }
+
+    @Test
+    void updateUserShouldNotWriteWhenNothingChanged() {
+        when(userResource.toRepresentation()).thenReturn(user("zhangsan", "zhangsan@example.com", Map.of("department", List.of("研发部"))));
+
+        KeycloakUserDTO dto = new KeycloakUserDTO();
+        dto.setUsername("zhangsan");
+        dto.setEmail("zhangsan@example.com");
+        dto.setEnabled(true);
+        dto.setAttributes(Map.of("department", List.of("研发部")));
+        userService.updateUser(USER_ID, dto);
+
+        verify(userResource, never()).update(any());
+        verify(userDirectory, never()).refreshUser(anyString());
+    }
+
+    @Test
+    void commitShouldIssueOnlyTheComputedDiff() {
+        when(userResource.toRepresentation()).thenReturn(user("zhangsan", "zhangsan@example.com", null));
+        when(realmRoles.listAll()).thenReturn(List.of(representation("ROLE_USER"), representation("ROLE_AUDITOR")));
+
+        KeycloakUserMutation mutation = userService.beginMutation(USER_ID);
+        mutation.setEnabled(false);
+        mutation.grantRoles(List.of(role("ROLE_USER"), role("ROLE_REPORTER"), role("ROLE_VIEWER")));
+        mutation.revokeRoles(List.of(role("ROLE_VIEWER"), role("ROLE_AUDITOR"), role("ROLE_MISSING")));
+        userService.commit(mutation);
+
+        verify(userResource).update(mutation.getRepresentation());
+        ArgumentCaptor<List<RoleRepresentation>> added = rolesCaptor();
+        verify(realmRoles).add(added.capture());
+        assertEquals(List.of("ROLE_REPORTER"), added.getValue().stream().map(RoleRepresentation::getName).toList());
+        ArgumentCaptor<List<RoleRepresentation>> removed = rolesCaptor();
+        verify(realmRoles).remove(removed.capture());
+        assertEquals(List.of("ROLE_AUDITOR"), removed.getValue().stream().map(RoleRepresentation::getName).toList());
+        verify(realmRoles, times(1)).listAll();
+        verify(realmRoles, never()).listEffective();
+        verify(userDirectory).refreshUser(USER_ID);
+    }
+
+    @Test
+    void grantShouldCreateDirectMappingForRoleInheritedThroughGroup() {
+        when(userResource.toRepresentation()).thenReturn(user("zhangsan", null, null));
+        // ROLE_OP_ADMIN is effective through a group but not mapped on the user
+        when(realmRoles.listAll()).thenReturn(List.of());
+
+        KeycloakUserMutation mutation = userService.beginMutation(USER_ID);
+        mutation.grantRoles(List.of(role(KeycloakGovernancePolicyService.ROLE_OP_ADMIN)));
+        mutation.revokeRoles(List.of(role("ROLE_FROM_GROUP")));
+        userService.commit(mutation);
+
+        ArgumentCaptor<List<RoleRepresentation>> added = rolesCaptor();
+        verify(realmRoles).add(added.capture());
+        assertEquals(List.of(KeycloakGovernancePolicyService.ROLE_OP_ADMIN),
+            added.getValue().stream().map(RoleRepresentation::getName).toList());
+        verify(realmRoles, never()).remove(anyList());
+    }
+
+    @Test
+    void setUserEnabledShouldOnlySendTheEnabledFlag() throws Exception {
+        userService.setUserEnabled(USER_ID, false);
+
+        ArgumentCaptor<UserRepresentation> sent = ArgumentCaptor.forClass(UserRepresentation.class);
+        verify(userResource).update(sent.capture());
+        verify(userResource, never()).toRepresentation();
+        // The admin client serialises representations without null fields, so username, email, names and
+        // attributes are absent from the request body and Keycloak keeps their stored values
+        ObjectMapper adminClientMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        assertEquals("{\"enabled\":false}", adminClientMapper.writeValueAsString(sent.getValue()));
+        verify(userDirectory).refreshUser(USER_ID);
+    }
+
+    @Test
+    void governanceChecksShouldUseTheMutationStateInsteadOfRefetching() {
+        KeycloakGovernancePolicyService policyService = new KeycloakGovernancePolicyService(roleService, userService);
+        when(userResource.toRepresentation()).thenReturn(user("lisi", null, Map.of("person_security_level", List.of("GENERAL"))));
+        when(realmRoles.listEffective()).thenReturn(List.of(representation("DATA_PUBLIC"), representation("ROLE_SYS_ADMIN")));
+        when(realmRoles.listAll()).thenReturn(List.of(representation("DATA_PUBLIC")));
+        when(roleService.getRealmRolesByNames(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> names = invocation.getArgument(0);
+            return names.stream().map(this::role).toList();
+        });
+
+        KeycloakUserMutation mutation = userService.beginMutation(USER_ID);
+        assertThrows(IllegalStateException.class, () ->
+            policyService.validateRoleAssignments(mutation, List.of(role(KeycloakGovernancePolicyService.ROLE_OP_ADMIN))));
+        assertThrows(IllegalStateException.class, () ->
+            policyService.validateRoleRemoval(mutation, List.of(role("DATA_PUBLIC"))));
+        policyService.syncDataRoles(mutation);
+        userService.commit(mutation);
+
+        ArgumentCaptor<List<RoleRepresentation>> added = rolesCaptor();
+        verify(realmRoles).add(added.capture());
+        assertEquals(List.of("DATA_INTERNAL"), added.getValue().stream().map(RoleRepresentation::getName).toList());
+        verify(realmRoles, never()).remove(anyList());
+        verify(userResource, never()).update(any());
+        verify(userResource, times(1)).toRepresentation();
+        verify(realmRoles, times(1)).listEffective();
+        verify(realmRoles, times(1)).listAll();
+        verify(roleService, never()).getUserRealmRoles(anyString());
+    }
+
+    @Test
+    void mutationWithoutChangesShouldNotLoadRoles() {
+        when(userResource.toRepresentation()).thenReturn(user("wangwu", null, null));
+
+        KeycloakUserMutation mutation = userService.beginMutation(USER_ID);
+        mutation.setEnabled(true);
+
+        assertFalse(mutation.hasChanges());
+        userService.commit(mutation);
+        verify(realmRoles, never()).listEffective();
+        verify(realmRoles, never()).listAll();
+        verify(userResource, never()).update(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<List<RoleRepresentation>> rolesCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private UserRepresentation user(String username, String email, Map<String, List<String>> attributes) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(USER_ID);
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setEnabled(true);
+        if (attributes != null) {
+            user.setAttributes(new HashMap<>(attributes));
+        }
+        return user;
+    }
+
+    private RoleRepresentation representation(String name) {
+        RoleRepresentation role = new RoleRepresentation();
+        role.setId(name);
+        role.setName(name);
+        return role;
+    }
+
+    private KeycloakRoleDTO role(String name) {
+        KeycloakRoleDTO dto = new KeycloakRoleDTO();
+        dto.setId(name);
+        dto.setName(name);
+        return dto;
+    }
+}
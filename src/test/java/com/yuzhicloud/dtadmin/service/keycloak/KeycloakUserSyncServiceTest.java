@@ -0,0 +1,80 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import com.yuzhicloud.dtadmin.service.keycloak.policy.KeycloakGovernancePolicyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakUserSyncServiceTest {
+
+    private static final String PAYLOAD = """
+        {"username":"zhangsan","email":"zhangsan@example.com","enabled":true}
+        """;
+
+    @Mock
+    private KeycloakUserService keycloakUserService;
+
+    @Mock
+    private KeycloakGovernancePolicyService governancePolicyService;
+
+    private KeycloakUserSyncService syncService;
+
+    @BeforeEach
+    void setUp() {
+        syncService = new KeycloakUserSyncService(keycloakUserService, governancePolicyService);
+    }
+
+    @Test
+    void applyCreateUserShouldCreateAndSyncDataRoles() {
+        when(keycloakUserService.createUserIfAbsent(any())).thenReturn(Optional.of("kc-1"));
+
+        assertEquals("kc-1", syncService.applyCreateUser(PAYLOAD));
+
+        verify(governancePolicyService).syncDataRolesForUser(eq("kc-1"), any());
+        verify(keycloakUserService, never()).findUserByUsername(anyString());
+    }
+
+    @Test
+    void retriedCreateShouldAdoptTheUserCreatedByThePreviousAttempt() {
+        when(keycloakUserService.createUserIfAbsent(any())).thenReturn(Optional.empty());
+        when(keycloakUserService.findUserByUsername("zhangsan")).thenReturn(Optional.of(user("kc-1", "ZhangSan@example.com")));
+
+        assertEquals("kc-1", syncService.applyCreateUser(PAYLOAD));
+
+        // Resumes from the step that failed last time
+        verify(governancePolicyService).syncDataRolesForUser(eq("kc-1"), any());
+    }
+
+    @Test
+    void createShouldStillFailForAnUnrelatedUserWithTheSameUsername() {
+        when(keycloakUserService.createUserIfAbsent(any())).thenReturn(Optional.empty());
+        when(keycloakUserService.findUserByUsername("zhangsan")).thenReturn(Optional.of(user("kc-9", "someone.else@example.com")));
+
+        assertThrows(RuntimeException.class, () -> syncService.applyCreateUser(PAYLOAD));
+
+        verify(governancePolicyService, never()).syncDataRolesForUser(anyString(), any());
+    }
+
+    private static KeycloakUserDTO user(String id, String email) {
+        KeycloakUserDTO user = new KeycloakUserDTO();
+        user.setId(id);
+        user.setUsername("zhangsan");
+        user.setEmail(email);
+        return user;
+    }
+}
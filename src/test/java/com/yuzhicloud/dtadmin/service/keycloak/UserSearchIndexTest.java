@@ -0,0 +1,98 @@
+package com.yuzhicloud.dtadmin.service.keycloak;
+
+import com.yuzhicloud.dtadmin.dto.keycloak.KeycloakUserDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserSearchIndexTest {
+
+    private UserSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new UserSearchIndex(List.of("department"));
+        index.put(user("1", "zhangsan", "zhangsan@example.com", "三", "张", "研发部"));
+        index.put(user("2", "lisi", "lisi@example.com", "四", "李", "财务部"));
+        index.put(user("3", "zhangsanfeng", "sanfeng@example.com", "三丰", "张", "研发部"));
+        index.put(user("4", "wangwu", "wangwu@corp.example.com", "五", "王", "研发部"));
+    }
+
+    @Test
+    void shouldRankExactMatchBeforePrefixMatch() {
+        assertEquals(List.of("1", "3"), index.search("zhangsan", 0, 10));
+    }
+
+    @Test
+    void shouldMatchChineseNameByInfix() {
+        assertEquals(List.of("3"), index.search("三丰", 0, 10));
+        assertEquals(List.of("1", "3"), index.search("张三", 0, 10));
+    }
+
+    @Test
+    void shouldMatchIndexedAttributesAndRequireAllTerms() {
+        assertEquals(List.of("2"), index.search("财务", 0, 10));
+        assertEquals(List.of("4"), index.search("研发 wang", 0, 10));
+    }
+
+    @Test
+    void shouldTolerateTyposInLongerTerms() {
+        assertEquals(List.of("4"), index.search("wnagwu", 0, 10));
+        assertTrue(UserSearchIndex.withinEditDistance("wangwu", "wnagwu", 2));
+        assertFalse(UserSearchIndex.withinEditDistance("wangwu", "lisi", 2));
+    }
+
+    @Test
+    void shouldFindTyposAmongManyTokensSharingBigrams() {
+        // 大量与查询词等长、只共享一个bigram的词元在计算编辑距离前被过滤，不占用计算次数上限
+        for (int i = 0; i < UserSearchIndex.MAX_FUZZY_EVALUATIONS * 2; i++) {
+            index.put(user("n" + i, String.format("%04dwu", i), null, null, null, "运维部"));
+        }
+
+        assertEquals(List.of("4"), index.search("wnagwu", 0, 10));
+        assertEquals(List.of(), index.search("wnagxx", 0, 10));
+    }
+
+    @Test
+    void shouldNotOverflowWhenPagingFarAhead() {
+        assertEquals(List.of(), index.search("example", Integer.MAX_VALUE, Integer.MAX_VALUE));
+        assertEquals(4, index.search("example", 0, Integer.MAX_VALUE).size());
+        assertEquals(List.of(), index.search("example", 0, 0));
+    }
+
+    @Test
+    void shouldPageRankedResults() {
+        List<String> all = index.search("example", 0, 10);
+
+        assertEquals(4, all.size());
+        assertEquals(all.subList(1, 3), index.search("example", 1, 2));
+    }
+
+    @Test
+    void shouldReflectUpdatesAndRemovals() {
+        index.put(user("2", "lisi", "lisi@example.com", "四", "李", "研发部"));
+        index.remove("4");
+
+        assertEquals(List.of(), index.search("财务", 0, 10));
+        assertEquals(List.of("2"), index.search("lisi 研发", 0, 10));
+        assertEquals(List.of(), index.search("wangwu", 0, 10));
+        assertEquals(3, index.size());
+    }
+
+    private static KeycloakUserDTO user(String id, String username, String email, String firstName, String lastName, String department) {
+        KeycloakUserDTO user = new KeycloakUserDTO();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setAttributes(Map.of("department", List.of(department)));
+        return user;
+    }
+}
@@ -11,11 +11,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -54,33 +56,38 @@ class KeycloakGovernancePolicyServiceTest {
     void validateRoleAssignmentsShouldRejectConflicts() {
         String userId = "user-1";
         when(roleService.getUserRealmRoles(userId)).thenReturn(List.of(role("ROLE_SYS_ADMIN")));
-        when(userService.getUserById(userId)).thenReturn(userWithLevel("CORE"));
 
         assertThrows(IllegalStateException.class, () ->
             policyService.validateRoleAssignments(userId, List.of(role(KeycloakGovernancePolicyService.ROLE_OP_ADMIN)))
         );
+        // The profile is only loaded when data classification roles are requested
+        verify(userService, never()).fetchUserById(anyString());
     }
 
     @Test
     void validateRoleRemovalShouldPreventDataRoleRevocation() {
         String userId = "user-2";
-        when(roleService.getUserRealmRoles(userId)).thenReturn(List.of(role("DATA_PUBLIC"), role("DATA_INTERNAL")));
-        when(userService.getUserById(userId)).thenReturn(userWithLevel("GENERAL"));
+        when(userService.fetchUserById(userId)).thenReturn(userWithLevel("GENERAL"));
 
         assertThrows(IllegalStateException.class, () ->
             policyService.validateRoleRemoval(userId, List.of(role("DATA_PUBLIC")))
         );
+        verify(roleService, never()).getUserRealmRoles(anyString());
     }
 
     @Test
     void syncDataRolesForUserAssignsMissingRoles() {
         String userId = "user-3";
         when(roleService.getUserRealmRoles(userId)).thenReturn(List.of(role("DATA_PUBLIC")));
-        when(roleService.getRealmRoleByName(anyString())).thenAnswer(invocation -> role(invocation.getArgument(0)));
+        when(roleService.getRealmRolesByNames(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> names = invocation.getArgument(0);
+            return names.stream().map(this::role).toList();
+        });
 
         policyService.syncDataRolesForUser(userId, Map.of("person_security_level", List.of("CORE")));
 
-        ArgumentCaptor<List<?>> assignCaptor = ArgumentCaptor.forClass(List.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<KeycloakRoleDTO>> assignCaptor = ArgumentCaptor.forClass(List.class);
         verify(roleService).assignRealmRolesToUser(eq(userId), assignCaptor.capture());
         assertEquals(3, assignCaptor.getValue().size());
 